@@ -5,6 +5,7 @@ import static asl.utils.ReportingUtils.chartsToImageList;
 import static asl.utils.ResponseUnits.enumerateAllResponseFilenames;
 import static asl.utils.TimeSeriesUtils.getFirstTimeSeries;
 
+import asl.sensor.experiment.AzimuthBatch;
 import asl.sensor.experiment.GainExperiment;
 import asl.sensor.experiment.GainSixExperiment;
 import asl.sensor.experiment.RandomizedExperiment;
@@ -12,6 +13,7 @@ import asl.sensor.experiment.SineExperiment;
 import asl.sensor.experiment.StepExperiment;
 import asl.sensor.experiment.VoltageExperiment;
 import asl.sensor.gui.ExperimentPanel;
+import asl.sensor.input.CalibrationWindowDetector;
 import asl.sensor.input.DataStore;
 import asl.sensor.output.CalResult;
 import asl.utils.input.DataBlock;
@@ -30,6 +32,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.List;
 import javax.imageio.ImageIO;
 import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.util.Pair;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.annotations.XYTitleAnnotation;
@@ -81,6 +84,34 @@ public class CalProcessingServer {
     System.out.println("Gateway Server Started");
   }
 
+  /**
+   * Get the time range calibration data should be trimmed to. If no dates are given, the range is
+   * that of the active calibration signal in the calibration input (see
+   * CalibrationWindowDetector), which allows full days of cal data to be processed unattended;
+   * if no calibration signal is found there, the full range of the input is used.
+   *
+   * @param startDate ISO-861 formatted datetime string with timezone offset, or null
+   * @param endDate ISO-861 formatted datetime string with timezone offset, or null
+   * @param calBlock Calibration input signal to scan if no dates are given
+   * @return Start and end of the trim range as epoch milliseconds
+   */
+  private static Pair<Long, Long> getCalibrationTrimRange(String startDate, String endDate,
+      DataBlock calBlock) {
+    if (startDate == null && endDate == null) {
+      Pair<Long, Long> window = CalibrationWindowDetector.findCalibrationWindow(calBlock);
+      if (window == null) {
+        window = new Pair<>(calBlock.getStartTime(), calBlock.getEndTime());
+      }
+      return window;
+    }
+    DateTimeFormatter dtf = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+    OffsetDateTime startDateTime = OffsetDateTime.parse(startDate, dtf);
+    OffsetDateTime endDateTime = OffsetDateTime.parse(endDate, dtf);
+    long start = startDateTime.toInstant().toEpochMilli();
+    long end = endDateTime.toInstant().toEpochMilli();
+    return new Pair<>(start, end);
+  }
+
   /**
    * Acquire data and run a gain experiment over it. Angle and gain references can be set
    * independently using the command line parameters. Each RESP file can be set as embedded
@@ -160,6 +191,7 @@ public class CalProcessingServer {
    * @param respName Filename of response to load in
    * @param useEmbeddedResp True if response is an embedded response in program
    * @param startDate ISO-861 formatted datetime string with timezone offset; start of data window
+   * (if this and endDate are null, the window is found from the calibration signal instead)
    * @param endDate ISO-861 formatted datetime string with timezone offset; end of data window
    * @param lowFreq True if a low-freq cal should be run
    * @return Data from running the experiment (plots and fit pole/zero values)
@@ -170,15 +202,12 @@ public class CalProcessingServer {
   public CalResult runRand(String calFileName, String outFileName,
       String respName, boolean useEmbeddedResp, String startDate, String endDate, boolean lowFreq)
       throws IOException, SeedFormatException, CodecException {
-    DateTimeFormatter dtf = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
-    OffsetDateTime startDateTime = OffsetDateTime.parse(startDate, dtf);
-    OffsetDateTime endDateTime = OffsetDateTime.parse(endDate, dtf);
-    long start = startDateTime.toInstant().toEpochMilli();
-    long end = endDateTime.toInstant().toEpochMilli();
-
     DataStore ds = new DataStore();
     DataBlock calBlock = getFirstTimeSeries(calFileName);
     DataBlock outBlock = getFirstTimeSeries(outFileName);
+    Pair<Long, Long> trimRange = getCalibrationTrimRange(startDate, endDate, calBlock);
+    long start = trimRange.getFirst();
+    long end = trimRange.getSecond();
     InstrumentResponse ir;
     if (useEmbeddedResp) {
       ir = InstrumentResponse.loadEmbeddedResponse(respName);
@@ -210,6 +239,7 @@ public class CalProcessingServer {
    * @param respName Filename of response to load in
    * @param useEmbeddedResp True if response is an embedded response in program
    * @param startDate ISO-861 formatted datetime string with timezone offset; start of data window
+   * (if this and endDate are null, the window is found from the calibration signal instead)
    * @param endDate ISO-861 formatted datetime string with timezone offset; end of data window
    * @param lowFreq True if a low-freq cal should be run
    * @return Data from running the experiment (plots and fit pole/zero values)
@@ -221,18 +251,14 @@ public class CalProcessingServer {
       String outFileNameD1, String outFileNameD2, String respName, boolean useEmbeddedResp,
       String startDate, String endDate, boolean lowFreq)
       throws IOException, SeedFormatException, CodecException {
-    DateTimeFormatter dtf = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
-    OffsetDateTime startDateTime = OffsetDateTime.parse(startDate, dtf);
-    OffsetDateTime endDateTime = OffsetDateTime.parse(endDate, dtf);
-
-    long start = startDateTime.toInstant().toEpochMilli();
-    long end = endDateTime.toInstant().toEpochMilli();
-
     DataStore ds = new DataStore();
     String[] calFileName = new String[]{calFileNameD1, calFileNameD2};
     String[] outFileName = new String[]{outFileNameD1, outFileNameD2};
     DataBlock calBlock = getFirstTimeSeries(calFileName);
     DataBlock outBlock = getFirstTimeSeries(outFileName);
+    Pair<Long, Long> trimRange = getCalibrationTrimRange(startDate, endDate, calBlock);
+    long start = trimRange.getFirst();
+    long end = trimRange.getSecond();
     InstrumentResponse ir;
     if (useEmbeddedResp) {
       ir = InstrumentResponse.loadEmbeddedResponse(respName);
@@ -260,6 +286,7 @@ public class CalProcessingServer {
    * @param respName Filename of response to load in
    * @param useEmbeddedResp True if response is an embedded response in program
    * @param startDate ISO-861 formatted datetime string with timezone offset; start of data window
+   * (if this and endDate are null, the window is found from the calibration signal instead)
    * @param endDate ISO-861 formatted datetime string with timezone offset; end of data window
    * @return Data from running the experiment (plots and fit corner/damping values)
    * @throws IOException If a string does not refer to a valid accessible file
@@ -269,18 +296,14 @@ public class CalProcessingServer {
   public CalResult runStep(String calFileNameD1, String calFileNameD2, String outFileNameD1,
       String outFileNameD2, String respName, boolean useEmbeddedResp, String startDate,
       String endDate) throws SeedFormatException, CodecException, IOException {
-    DateTimeFormatter dtf = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
-    OffsetDateTime startDateTime = OffsetDateTime.parse(startDate, dtf);
-    OffsetDateTime endDateTime = OffsetDateTime.parse(endDate, dtf);
-
-    long start = startDateTime.toInstant().toEpochMilli();
-    long end = endDateTime.toInstant().toEpochMilli();
-
     DataStore ds = new DataStore();
     String[] calFileName = new String[]{calFileNameD1, calFileNameD2};
     String[] outFileName = new String[]{outFileNameD1, outFileNameD2};
     DataBlock calBlock = getFirstTimeSeries(calFileName);
     DataBlock outBlock = getFirstTimeSeries(outFileName);
+    Pair<Long, Long> trimRange = getCalibrationTrimRange(startDate, endDate, calBlock);
+    long start = trimRange.getFirst();
+    long end = trimRange.getSecond();
     InstrumentResponse ir;
     if (useEmbeddedResp) {
       ir = InstrumentResponse.loadEmbeddedResponse(respName);
@@ -307,6 +330,7 @@ public class CalProcessingServer {
    * @param respName Filename of response to load in
    * @param useEmbeddedResp True if response is an embedded response in program
    * @param startDate ISO-861 formatted datetime string with timezone offset; start of data window
+   * (if this and endDate are null, the window is found from the calibration signal instead)
    * @param endDate ISO-861 formatted datetime string with timezone offset; end of data window
    * @return Data from running the experiment (plots and fit corner/damping values)
    * @throws IOException If a string does not refer to a valid accessible file
@@ -316,16 +340,12 @@ public class CalProcessingServer {
   public CalResult runStep(String calFileName, String outFileName, String respName,
       boolean useEmbeddedResp, String startDate, String endDate)
       throws SeedFormatException, CodecException, IOException {
-    DateTimeFormatter dtf = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
-    OffsetDateTime startDateTime = OffsetDateTime.parse(startDate, dtf);
-    OffsetDateTime endDateTime = OffsetDateTime.parse(endDate, dtf);
-
-    long start = startDateTime.toInstant().toEpochMilli();
-    long end = endDateTime.toInstant().toEpochMilli();
-
     DataStore ds = new DataStore();
     DataBlock calBlock = getFirstTimeSeries(calFileName);
     DataBlock outBlock = getFirstTimeSeries(outFileName);
+    Pair<Long, Long> trimRange = getCalibrationTrimRange(startDate, endDate, calBlock);
+    long start = trimRange.getFirst();
+    long end = trimRange.getSecond();
     InstrumentResponse ir;
     if (useEmbeddedResp) {
       ir = InstrumentResponse.loadEmbeddedResponse(respName);
@@ -350,6 +370,7 @@ public class CalProcessingServer {
    * @param calFileName Filename of calibration signal
    * @param outFileName Filename of sensor output
    * @param startDate ISO-861 formatted datetime string with timezone offset; start of data window
+   * (if this and endDate are null, the window is found from the calibration signal instead)
    * @param endDate ISO-861 formatted datetime string with timezone offset; end of data window
    * @return Data from running the experiment (plots and amplitude estimations)
    * @throws IOException If a string does not refer to a valid accessible file
@@ -358,16 +379,12 @@ public class CalProcessingServer {
    */
   public CalResult runSine(String calFileName, String outFileName, String startDate,
       String endDate) throws SeedFormatException, CodecException, IOException {
-    DateTimeFormatter dtf = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
-    OffsetDateTime startDateTime = OffsetDateTime.parse(startDate, dtf);
-    OffsetDateTime endDateTime = OffsetDateTime.parse(endDate, dtf);
-
-    long start = startDateTime.toInstant().toEpochMilli();
-    long end = endDateTime.toInstant().toEpochMilli();
-
     DataStore ds = new DataStore();
     DataBlock calBlock = getFirstTimeSeries(calFileName);
     DataBlock outBlock = getFirstTimeSeries(outFileName);
+    Pair<Long, Long> trimRange = getCalibrationTrimRange(startDate, endDate, calBlock);
+    long start = trimRange.getFirst();
+    long end = trimRange.getSecond();
 
     ds.setBlock(0, calBlock);
     ds.setBlock(1, outBlock);
@@ -385,6 +402,7 @@ public class CalProcessingServer {
    * @param outFileNameD1 Filename of sensor output (day 1)
    * @param outFileNameD2 Filename of sensor output (day 2)
    * @param startDate ISO-861 formatted datetime string with timezone offset; start of data window
+   * (if this and endDate are null, the window is found from the calibration signal instead)
    * @param endDate ISO-861 formatted datetime string with timezone offset; end of data window
    * @return Data from running the experiment (plots and amplitude estimations)
    * @throws IOException If a string does not refer to a valid accessible file
@@ -394,18 +412,14 @@ public class CalProcessingServer {
   public CalResult runSine(String calFileNameD1, String calFileNameD2, String outFileNameD1,
       String outFileNameD2, String startDate, String endDate)
       throws SeedFormatException, CodecException, IOException {
-    DateTimeFormatter dtf = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
-    OffsetDateTime startDateTime = OffsetDateTime.parse(startDate, dtf);
-    OffsetDateTime endDateTime = OffsetDateTime.parse(endDate, dtf);
-
-    long start = startDateTime.toInstant().toEpochMilli();
-    long end = endDateTime.toInstant().toEpochMilli();
-
     DataStore ds = new DataStore();
     String[] calFileName = new String[]{calFileNameD1, calFileNameD2};
     String[] outFileName = new String[]{outFileNameD1, outFileNameD2};
     DataBlock calBlock = getFirstTimeSeries(calFileName);
     DataBlock outBlock = getFirstTimeSeries(outFileName);
+    Pair<Long, Long> trimRange = getCalibrationTrimRange(startDate, endDate, calBlock);
+    long start = trimRange.getFirst();
+    long end = trimRange.getSecond();
 
     ds.setBlock(0, calBlock);
     ds.setBlock(1, outBlock);
@@ -414,6 +428,62 @@ public class CalProcessingServer {
     return runExpGetDataSine(ds);
   }
 
+  /**
+   * Run azimuth estimation over many sets of test and reference data, such as every sensor
+   * pair in a network. Each distinct file is only decoded once, and the sets are solved
+   * concurrently.
+   *
+   * @param testNorthFileNames Filenames of each set's test north data
+   * @param testEastFileNames Filenames of each set's test east data
+   * @param referenceFileNames Filenames of each set's reference north data; this array, or any
+   * entry of it, may be null to use the shared reference instead
+   * @param sharedReferenceFileName Filename of reference north data used by sets without their
+   * own reference (can be null if every set has a reference)
+   * @param offsets Angle (degrees from north) of each set's reference sensor, or null if all are 0
+   * @param startDate ISO-861 formatted datetime string with timezone offset; start of data window
+   * (if this and endDate are null, each set uses the full range its data has in common)
+   * @param endDate ISO-861 formatted datetime string with timezone offset; end of data window
+   * @return Azimuth, uncertainty and correlation of each set, in the order given (NaN for any set
+   * that could not be solved), whether each set was solved and had enough data for a windowed
+   * estimate, the reason any set could not be solved, and a table of all the results
+   */
+  public CalResult runOrientationBatch(String[] testNorthFileNames, String[] testEastFileNames,
+      String[] referenceFileNames, String sharedReferenceFileName, double[] offsets,
+      String startDate, String endDate) {
+    AzimuthBatch batch = new AzimuthBatch();
+    batch.setSharedReference(sharedReferenceFileName);
+    for (int i = 0; i < testNorthFileNames.length; ++i) {
+      String reference = (referenceFileNames == null) ? null : referenceFileNames[i];
+      double offset = (offsets == null) ? 0. : offsets[i];
+      batch.addJob(testNorthFileNames[i], testEastFileNames[i], reference, offset);
+    }
+    if (startDate != null && endDate != null) {
+      DateTimeFormatter dtf = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+      long start = OffsetDateTime.parse(startDate, dtf).toInstant().toEpochMilli();
+      long end = OffsetDateTime.parse(endDate, dtf).toInstant().toEpochMilli();
+      batch.setTimeRange(start, end);
+    }
+
+    List<AzimuthBatch.Result> results = batch.run();
+    double[] azimuths = new double[results.size()];
+    double[] uncertainties = new double[results.size()];
+    double[] correlations = new double[results.size()];
+    double[] solved = new double[results.size()];
+    double[] enoughPoints = new double[results.size()];
+    String[] errors = new String[results.size()];
+    for (int i = 0; i < results.size(); ++i) {
+      AzimuthBatch.Result result = results.get(i);
+      azimuths[i] = result.getAzimuth();
+      uncertainties[i] = result.getUncertainty();
+      correlations[i] = result.getCorrelation();
+      solved[i] = result.succeeded() ? 1. : 0.;
+      enoughPoints[i] = result.hadEnoughPoints() ? 1. : 0.;
+      errors[i] = result.getError();
+    }
+    return CalResult.buildOrientationBatchData(azimuths, uncertainties, correlations,
+        solved, enoughPoints, errors, AzimuthBatch.getResultTable(results));
+  }
+
   /**
    * Run 10-volt test on given data.
    *
@@ -0,0 +1,405 @@
+package asl.sensor.experiment;
+
+import static asl.sensor.experiment.Experiment.DECIMAL_FORMAT;
+import static asl.utils.TimeSeriesUtils.getFirstTimeSeries;
+
+import asl.sensor.input.DataStore;
+import asl.utils.input.DataBlock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Runs azimuth estimation over many sets of test and reference data at once, such as when
+ * checking the orientation of every sensor across a network after servicing. Each set is a test
+ * sensor's north and east components and a reference sensor's north component, where the
+ * reference may be given per set or shared between all sets that do not specify their own
+ * (e.g., a single surface sensor used as reference for several borehole sensors).
+ *
+ * Each distinct file is decoded only once no matter how many sets it is used in, and both the
+ * decoding and the azimuth solves are scheduled across the common thread pool. Because trimming
+ * and interval matching modify data in place, each solve works on its own copies of the decoded
+ * data. A set whose data cannot be loaded or solved gets an error in its result rather than
+ * stopping the rest of the batch.
+ */
+public class AzimuthBatch {
+
+  /**
+   * Sets of data to be solved, in the order they were added
+   */
+  private final List<Job> jobs;
+  /**
+   * Decoded data, keyed by the filename it was loaded from
+   */
+  private final Map<String, DataBlock> decodedBlocks;
+  /**
+   * Errors from files that could not be decoded, keyed by filename
+   */
+  private final Map<String, String> decodeErrors;
+  /**
+   * Reference north data used by any set that does not specify its own
+   */
+  private String sharedReference;
+  /**
+   * Time range to trim each set of data to, or null to use each set's full common range
+   */
+  private Long start;
+  private Long end;
+  private boolean parallelWindows;
+  private boolean closedForm;
+  private boolean refineClosedForm;
+  private boolean multiBand;
+  private boolean gridSearchSeed;
+
+  public AzimuthBatch() {
+    jobs = new ArrayList<>();
+    decodedBlocks = new ConcurrentHashMap<>();
+    decodeErrors = new ConcurrentHashMap<>();
+    sharedReference = null;
+    start = null;
+    end = null;
+  }
+
+  /**
+   * Add a set of test data solved against the shared reference
+   *
+   * @param testNorth Filename of the test sensor's north-facing component
+   * @param testEast Filename of the test sensor's east-facing component
+   */
+  public void addJob(String testNorth, String testEast) {
+    addJob(testNorth, testEast, null, 0.);
+  }
+
+  /**
+   * Add a set of test and reference data to be solved
+   *
+   * @param testNorth Filename of the test sensor's north-facing component
+   * @param testEast Filename of the test sensor's east-facing component
+   * @param referenceNorth Filename of the reference sensor's north-facing component, or null
+   * if the shared reference should be used
+   * @param offset Angle (degrees from north) that the reference sensor points
+   */
+  public void addJob(String testNorth, String testEast, String referenceNorth, double offset) {
+    jobs.add(new Job(testNorth, testEast, referenceNorth, offset));
+  }
+
+  /**
+   * Use already-decoded data in place of loading the given filename. This allows data that is
+   * already in memory to be run through the batch without reading it from disk again.
+   *
+   * @param name Filename (as used in the batch's sets) the data should be used for
+   * @param block Data to be used
+   */
+  public void addDecodedBlock(String name, DataBlock block) {
+    decodedBlocks.put(name, block);
+    decodeErrors.remove(name);
+  }
+
+  /**
+   * Get the number of sets to be solved in the batch
+   *
+   * @return Number of sets added to the batch
+   */
+  public int getJobCount() {
+    return jobs.size();
+  }
+
+  /**
+   * Set the reference data used by any set that does not specify its own reference
+   *
+   * @param referenceNorth Filename of the shared reference's north-facing component
+   */
+  public void setSharedReference(String referenceNorth) {
+    sharedReference = referenceNorth;
+  }
+
+  /**
+   * Set the time range each set of data is trimmed to before solving. If not set, each set is
+   * solved over the full range its three inputs have in common.
+   *
+   * @param startTime Start of the range as epoch milliseconds
+   * @param endTime End of the range as epoch milliseconds
+   */
+  public void setTimeRange(long startTime, long endTime) {
+    start = startTime;
+    end = endTime;
+  }
+
+  /**
+   * Fit each set's windows in parallel (see AzimuthExperiment.setParallelWindows)
+   *
+   * @param parallel True if windows should be fit independently of each other
+   */
+  public void setParallelWindows(boolean parallel) {
+    parallelWindows = parallel;
+  }
+
+  /**
+   * Use the closed-form azimuth estimate (see AzimuthExperiment.setClosedFormEstimate)
+   *
+   * @param useClosedForm True if the closed-form estimate should be used
+   */
+  public void setClosedFormEstimate(boolean useClosedForm) {
+    closedForm = useClosedForm;
+  }
+
+  /**
+   * Refine closed-form estimates with the iterative solver (see
+   * AzimuthExperiment.setLeastSquaresRefinement)
+   *
+   * @param refine True if closed-form estimates should be refined
+   */
+  public void setLeastSquaresRefinement(boolean refine) {
+    refineClosedForm = refine;
+  }
+
+  /**
+   * Combine estimates over several period bands (see AzimuthExperiment.setMultiBand)
+   *
+   * @param useMultiBand True if the multi-band consensus should be used
+   */
+  public void setMultiBand(boolean useMultiBand) {
+    multiBand = useMultiBand;
+  }
+
+  /**
+   * Seed the iterative solver with a grid search (see AzimuthExperiment.setGridSearchSeed)
+   *
+   * @param useGridSearch True if the solver should be seeded by a grid search
+   */
+  public void setGridSearchSeed(boolean useGridSearch) {
+    gridSearchSeed = useGridSearch;
+  }
+
+  /**
+   * Decode all data used by the batch and solve each set's azimuth
+   *
+   * @return Result of each set, in the order the sets were added
+   */
+  public List<Result> run() {
+    decodeAll();
+    final Result[] results = new Result[jobs.size()];
+    IntStream.range(0, jobs.size()).parallel().forEach(i -> results[i] = solve(jobs.get(i)));
+    List<Result> resultList = new ArrayList<>();
+    Collections.addAll(resultList, results);
+    return resultList;
+  }
+
+  /**
+   * Decode each distinct file used by any set exactly once, concurrently
+   */
+  private void decodeAll() {
+    Set<String> names = new LinkedHashSet<>();
+    for (Job job : jobs) {
+      names.add(job.testNorth);
+      names.add(job.testEast);
+      String reference = getReference(job);
+      if (reference != null) {
+        names.add(reference);
+      }
+    }
+    names.removeAll(decodedBlocks.keySet());
+    names.parallelStream().forEach(name -> {
+      try {
+        DataBlock block = getFirstTimeSeries(name);
+        if (block == null) {
+          decodeErrors.put(name, "No data found in " + name);
+        } else {
+          decodedBlocks.put(name, block);
+        }
+      } catch (Exception e) {
+        decodeErrors.put(name, "Could not load " + name + ": " + e.getMessage());
+      }
+    });
+  }
+
+  private String getReference(Job job) {
+    return (job.referenceNorth == null) ? sharedReference : job.referenceNorth;
+  }
+
+  private Result solve(Job job) {
+    String reference = getReference(job);
+    if (reference == null) {
+      return new Result(job, null, "No reference data specified");
+    }
+    String[] names = {job.testNorth, job.testEast, reference};
+    DataStore dataStore = new DataStore();
+    for (int i = 0; i < names.length; ++i) {
+      String error = decodeErrors.get(names[i]);
+      if (error != null) {
+        return new Result(job, reference, error);
+      }
+      // trim and decimation operate in place, and blocks may be shared with other sets
+      dataStore.setBlock(i, new DataBlock(decodedBlocks.get(names[i])));
+    }
+
+    try {
+      if (start != null && end != null) {
+        dataStore.trim(start, end);
+      } else {
+        dataStore.trimToCommonTime();
+      }
+      AzimuthExperiment azimuth = new AzimuthExperiment();
+      azimuth.setOffset(job.offset);
+      azimuth.setParallelWindows(parallelWindows);
+      azimuth.setClosedFormEstimate(closedForm);
+      azimuth.setLeastSquaresRefinement(refineClosedForm);
+      azimuth.setMultiBand(multiBand);
+      azimuth.setGridSearchSeed(gridSearchSeed);
+      azimuth.runExperimentOnData(dataStore);
+      return new Result(job, reference, azimuth);
+    } catch (RuntimeException e) {
+      return new Result(job, reference, "Could not solve azimuth: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Format the results of a batch as a table, one row per set, with columns separated by tabs
+   *
+   * @param results Results of a batch run
+   * @return Table of the angle, uncertainty and correlation of each set
+   */
+  public static String getResultTable(List<Result> results) {
+    StringBuilder table = new StringBuilder();
+    table.append("TEST NORTH\tTEST EAST\tREFERENCE\tAZIMUTH\tUNCERTAINTY\tCORRELATION\tNOTES");
+    for (Result result : results) {
+      table.append('\n').append(result.toString());
+    }
+    return table.toString();
+  }
+
+  /**
+   * Filenames and reference offset of a single set of data in the batch
+   */
+  private static class Job {
+
+    private final String testNorth;
+    private final String testEast;
+    private final String referenceNorth;
+    private final double offset;
+
+    private Job(String testNorth, String testEast, String referenceNorth, double offset) {
+      this.testNorth = testNorth;
+      this.testEast = testEast;
+      this.referenceNorth = referenceNorth;
+      this.offset = offset;
+    }
+  }
+
+  /**
+   * Outcome of solving a single set of data in the batch
+   */
+  public static class Result {
+
+    private final String testNorth;
+    private final String testEast;
+    private final String referenceNorth;
+    private final double azimuth;
+    private final double uncertainty;
+    private final double correlation;
+    private final boolean enoughPts;
+    private final String error;
+
+    private Result(Job job, String reference, AzimuthExperiment azimuth) {
+      testNorth = job.testNorth;
+      testEast = job.testEast;
+      referenceNorth = reference;
+      this.azimuth = ((azimuth.getFitAngle() + job.offset) % 360 + 360) % 360;
+      uncertainty = azimuth.getUncertainty();
+      correlation = azimuth.getFitCorrelation();
+      enoughPts = azimuth.hadEnoughPoints();
+      error = null;
+    }
+
+    private Result(Job job, String reference, String error) {
+      testNorth = job.testNorth;
+      testEast = job.testEast;
+      referenceNorth = reference;
+      azimuth = Double.NaN;
+      uncertainty = Double.NaN;
+      correlation = Double.NaN;
+      enoughPts = false;
+      this.error = error;
+    }
+
+    public String getTestNorth() {
+      return testNorth;
+    }
+
+    public String getTestEast() {
+      return testEast;
+    }
+
+    /**
+     * Get the reference used for this set (which may be the batch's shared reference)
+     *
+     * @return Filename of the reference north data, or null if none was specified
+     */
+    public String getReferenceNorth() {
+      return referenceNorth;
+    }
+
+    /**
+     * Get the azimuth of the test sensor's north component, including the reference offset
+     *
+     * @return Azimuth in degrees from north (NaN if the set could not be solved)
+     */
+    public double getAzimuth() {
+      return azimuth;
+    }
+
+    /**
+     * @return Uncertainty of the azimuth in degrees (NaN if the set could not be solved)
+     */
+    public double getUncertainty() {
+      return uncertainty;
+    }
+
+    /**
+     * @return Correlation of the reference and rotated test data at the fit angle
+     */
+    public double getCorrelation() {
+      return correlation;
+    }
+
+    public boolean hadEnoughPoints() {
+      return enoughPts;
+    }
+
+    /**
+     * @return True if the set's data was loaded and solved without error
+     */
+    public boolean succeeded() {
+      return error == null;
+    }
+
+    /**
+     * @return Description of why the set could not be solved, or null if it was solved
+     */
+    public String getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder row = new StringBuilder();
+      row.append(testNorth).append('\t').append(testEast).append('\t')
+          .append(referenceNorth).append('\t');
+      if (error != null) {
+        return row.append("-\t-\t-\t").append(error).toString();
+      }
+      row.append(DECIMAL_FORMAT.get().format(azimuth)).append('\t')
+          .append(DECIMAL_FORMAT.get().format(uncertainty)).append('\t')
+          .append(DECIMAL_FORMAT.get().format(correlation)).append('\t');
+      if (!enoughPts) {
+        row.append("WARNING: SMALL RANGE");
+      }
+      return row.toString();
+    }
+  }
+}
@@ -16,6 +16,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 import org.apache.commons.math3.fitting.leastsquares.LeastSquaresBuilder;
 import org.apache.commons.math3.fitting.leastsquares.LeastSquaresOptimizer;
 import org.apache.commons.math3.fitting.leastsquares.LeastSquaresProblem;
@@ -49,12 +50,40 @@ import org.jfree.data.xy.XYSeriesCollection;
  */
 public class AzimuthExperiment extends Experiment {
 
-  private double offset = 0.;
+  /**
+   * Lower corner of the bandpass applied to data before fitting (filter from 8 seconds interval)
+   */
+  private static final double LOW_FREQ = 1. / 8;
+
+  /**
+   * Upper corner of the bandpass applied to data before fitting (up to 3 seconds interval)
+   */
+  private static final double HIGH_FREQ = 1. / 3;
+
+  /**
+   * Period bands (lower and upper period, in seconds) solved for in multi-band mode; the first is
+   * the same band used for single-band estimates, the others cover the primary microseism
+   */
+  private static final double[][] MULTI_BAND_PERIODS = {{3., 8.}, {8., 16.}, {16., 32.}};
+
+  /**
+   * Fraction of the best band's correlation a band must reach to be used in the consensus angle
+   */
+  private static final double MIN_BAND_CORRELATION_RATIO = 0.8;
+
+  /**
+   * Number of evenly-spaced angles (1 degree apart) evaluated by the grid search for the solver's
+   * starting point
+   */
+  private static final int GRID_SEARCH_STEPS = 360;
 
   /**
-   * Cache correlation estimates during windowing
+   * Fewest windows averaged into the final angle estimate; with fewer windows than this, the
+   * full-range estimate is used instead
    */
-  private double latestCorrelation = 0.;
+  private static final int MIN_ACCEPTED_WINDOWS = 5;
+
+  private double offset = 0.;
 
   /**
    * Angle offset radians
@@ -82,10 +111,51 @@ public class AzimuthExperiment extends Experiment {
    * True if there is enough points in range for estimation.
    */
   private boolean enoughPts;
+  /**
+   * True if windows are fit independently of each other (and therefore concurrently)
+   */
+  private boolean parallelWindows;
+  /**
+   * True if angles are estimated with the closed-form solution rather than the iterative solver
+   */
+  private boolean closedForm;
+  /**
+   * True if closed-form estimates are used as the starting point of the iterative solver
+   */
+  private boolean refineClosedForm;
+  /**
+   * True if the iterative solver starts from the best angle of a coarse grid search
+   */
+  private boolean gridSearchSeed;
+  /**
+   * True if the azimuth is solved over several period bands and combined into a consensus angle
+   */
+  private boolean multiBand;
+  /**
+   * Per-band results from the most recent multi-band run (empty if run over a single band)
+   */
+  private List<BandEstimate> bandEstimates;
+  /**
+   * Correlation of the full-range filtered data at the fit angle
+   */
+  private double fitCorrelation;
+  /**
+   * Frequency range of the bandpass applied to data before fitting
+   */
+  private double lowFreq;
+  private double highFreq;
 
   public AzimuthExperiment() {
     super();
     simpleCalc = false;
+    parallelWindows = false;
+    closedForm = false;
+    refineClosedForm = false;
+    gridSearchSeed = false;
+    multiBand = false;
+    bandEstimates = new ArrayList<>();
+    lowFreq = LOW_FREQ;
+    highFreq = HIGH_FREQ;
   }
 
   private String getAzimuthResults() {
@@ -131,7 +201,14 @@ public class AzimuthExperiment extends Experiment {
   @Override
   public String[] getDataStrings() {
     // get azimuth (with offset) and uncertainty
-    return new String[]{getAzimuthResults(), getAzimuthResultsEast()};
+    if (bandEstimates.isEmpty()) {
+      return new String[]{getAzimuthResults(), getAzimuthResultsEast()};
+    }
+    StringBuilder bandStr = new StringBuilder("Per-band estimates (N, not including offset):");
+    for (BandEstimate estimate : bandEstimates) {
+      bandStr.append("\n").append(estimate.toString());
+    }
+    return new String[]{getAzimuthResults(), getAzimuthResultsEast(), bandStr.toString()};
   }
 
   @Override
@@ -171,6 +248,26 @@ public class AzimuthExperiment extends Experiment {
     return azimuthExperiment.getFitAngleRad();
   }
 
+  /**
+   * Get the orientation of data relative to a pair of sensors whose data was already prepared,
+   * which avoids repeating the preprocessing of that pair when several sensors' orientations are
+   * found relative to it. Because the solve does not modify the prepared data, this may be called
+   * on the same prepared pair from multiple threads at once.
+   *
+   * @param reference Prepared data from north- and east-facing reference sensors
+   * @param toAlign Timeseries data from test sensor (either north or east), with the same sample
+   * interval as the data used to prepare the reference
+   * @param start Start time of data
+   * @param end End time of data
+   * @return double representing radian-unit rotation angle of data
+   */
+  static double getAzimuth(PreparedReference reference, double[] toAlign, long start, long end) {
+    AzimuthExperiment azimuthExperiment = new AzimuthExperiment();
+    azimuthExperiment.setSimple(false); // don't do the faster angle calculation
+    azimuthExperiment.alternateEntryPoint(reference, toAlign, start, end);
+    return azimuthExperiment.getFitAngleRad();
+  }
+
   static double[][] matchArrayLengths(double[]... toTrim) {
     int len = toTrim[0].length;
     for (double[] timeseries : toTrim) {
@@ -212,6 +309,58 @@ public class AzimuthExperiment extends Experiment {
         interval, start, end);
   }
 
+  /**
+   * Entry point for this experiment using a north/east pair of data that has already been
+   * prepared, such as when several sensors are compared against the same pair.
+   * Callable from another experiment.
+   *
+   * @param prepared prepared data from presumed north- and east-facing test sensors
+   * @param referenceNorth timeseries data from known north-facing sensor, with the same sample
+   * interval as the data used to prepare the north/east pair
+   * @param start start time of data
+   * @param end end time of data
+   */
+  void alternateEntryPoint(PreparedReference prepared, double[] referenceNorth, long start,
+      long end) {
+    dataNames = new ArrayList<>();
+    dataNames.add("N");
+    dataNames.add("E");
+    dataNames.add("R");
+
+    xySeriesData = new ArrayList<>();
+
+    double[] preparedRefNorth = prepareData(referenceNorth, prepared.initialInterval,
+        prepared.lowFreq, prepared.highFreq);
+    backendHelper(prepared, preparedRefNorth, start, end);
+  }
+
+  /**
+   * Decimate data to 1Hz (if above that rate), then demean, detrend, and bandpass it to the range
+   * used for orientation estimates
+   *
+   * @param data Timeseries data to prepare
+   * @param interval Sampling interval of the data
+   * @param low Lower corner of the bandpass (Hz)
+   * @param high Upper corner of the bandpass (Hz)
+   * @return Prepared copy of the data
+   */
+  private static double[] prepareData(double[] data, long interval, double low, double high) {
+    // does nothing if the data is already 1Hz sample rate
+    double[] prepared = decimate(data, interval, ONE_HZ_INTERVAL);
+    // update the actual sample rate if data was above 1Hz sampling
+    interval = Math.max(interval, ONE_HZ_INTERVAL);
+
+    prepared = demean(prepared);
+    prepared = detrend(prepared);
+
+    // should there be a normalization step here?
+
+    // data will be downsampled to 1 if > 1Hz rate, else will keep sample rate from input
+    double samplesPerSecond = Math.min(1., ONE_HZ_INTERVAL / (double)interval);
+    // bandpass filters of order 2 in the range specified above
+    return bandFilter(prepared, samplesPerSecond, low, high, 2);
+  }
+
   @Override
   protected void backend(final DataStore dataStore) {
     // assume the first two are the reference and the second two are the test
@@ -252,36 +401,149 @@ public class AzimuthExperiment extends Experiment {
   private void backendHelper(
       double[] testNorth, double[] testEast,
       double[] refNorth, long interval, long startTime, long endTime) {
+    if (multiBand) {
+      multiBandHelper(testNorth, testEast, refNorth, interval, startTime, endTime);
+      return;
+    }
+    bandEstimates = new ArrayList<>();
+    PreparedReference preparedPair = new PreparedReference(testNorth, testEast, interval);
+    double[] preparedRefNorth = prepareData(refNorth, interval, LOW_FREQ, HIGH_FREQ);
+    backendHelper(preparedPair, preparedRefNorth, startTime, endTime);
+  }
 
-    minCorr = 0; // make sure to initialize
+  /**
+   * Backend library call solving for the azimuth over each of several period bands concurrently,
+   * then combining the bands into a consensus angle. Each band's data is filtered and solved
+   * independently, with the same solver settings as this experiment.
+   * The consensus is the correlation-weighted circular mean of the angles of each band whose
+   * correlation is close to that of the best-correlated band. Its uncertainty is the larger of the
+   * weighted mean of those bands' uncertainties and the two-sigma spread of their angles.
+   *
+   * @param testNorth North-facing data to find azimuth of
+   * @param testEast East-facing data to find azimuth of
+   * @param refNorth North-facing data to use as reference
+   * @param interval Time in nanoseconds between data samples
+   * @param startTime Start time of data
+   * @param endTime End time of data
+   */
+  private void multiBandHelper(
+      double[] testNorth, double[] testEast,
+      double[] refNorth, long interval, long startTime, long endTime) {
+    fireStateChange("Solving for azimuth over " + MULTI_BAND_PERIODS.length + " period bands...");
+    AzimuthExperiment[] bandExperiments = new AzimuthExperiment[MULTI_BAND_PERIODS.length];
+    IntStream.range(0, MULTI_BAND_PERIODS.length).parallel().forEach(i -> {
+      double low = 1. / MULTI_BAND_PERIODS[i][1];
+      double high = 1. / MULTI_BAND_PERIODS[i][0];
+      AzimuthExperiment bandExperiment = new AzimuthExperiment();
+      bandExperiment.setSimple(simpleCalc);
+      bandExperiment.setParallelWindows(parallelWindows);
+      bandExperiment.setClosedFormEstimate(closedForm);
+      bandExperiment.setLeastSquaresRefinement(refineClosedForm);
+      bandExperiment.setGridSearchSeed(gridSearchSeed);
+      bandExperiment.setOffset(offset);
+      PreparedReference preparedPair =
+          new PreparedReference(testNorth, testEast, interval, low, high);
+      bandExperiment.alternateEntryPoint(preparedPair, refNorth, startTime, endTime);
+      bandExperiments[i] = bandExperiment;
+    });
+
+    bandEstimates = new ArrayList<>();
+    int bestBand = 0;
+    for (int i = 0; i < bandExperiments.length; ++i) {
+      AzimuthExperiment bandExperiment = bandExperiments[i];
+      bandEstimates.add(new BandEstimate(MULTI_BAND_PERIODS[i][0], MULTI_BAND_PERIODS[i][1],
+          bandExperiment.angle, bandExperiment.uncertainty, bandExperiment.fitCorrelation,
+          bandExperiment.enoughPts));
+      if (bandExperiment.fitCorrelation > bandExperiments[bestBand].fitCorrelation) {
+        bestBand = i;
+      }
+    }
+
+    // correlation-weighted circular mean of the well-correlated bands
+    double minBandCorrelation =
+        MIN_BAND_CORRELATION_RATIO * bandExperiments[bestBand].fitCorrelation;
+    double sumCos = 0.;
+    double sumSin = 0.;
+    double sumWeights = 0.;
+    for (AzimuthExperiment bandExperiment : bandExperiments) {
+      double weight = bandExperiment.fitCorrelation;
+      if (weight < minBandCorrelation || !(weight > 0.)) {
+        continue;
+      }
+      sumCos += weight * Math.cos(bandExperiment.angle);
+      sumSin += weight * Math.sin(bandExperiment.angle);
+      sumWeights += weight;
+    }
+    if (!(sumWeights > 0.)) {
+      // no band had any correlation at all, so just use the default band's result
+      sumCos = Math.cos(bandExperiments[0].angle);
+      sumSin = Math.sin(bandExperiments[0].angle);
+    }
+    angle = ((Math.atan2(sumSin, sumCos) % TAU) + TAU) % TAU;
 
+    double meanUncertainty = 0.;
+    double variance = 0.;
     enoughPts = false;
+    for (AzimuthExperiment bandExperiment : bandExperiments) {
+      double weight = bandExperiment.fitCorrelation;
+      if (weight < minBandCorrelation || !(weight > 0.)) {
+        continue;
+      }
+      enoughPts |= bandExperiment.enoughPts;
+      // difference between angles wrapped to the range (-pi, pi]
+      double difference = bandExperiment.angle - angle;
+      difference = Math.atan2(Math.sin(difference), Math.cos(difference));
+      meanUncertainty += weight * bandExperiment.uncertainty / sumWeights;
+      variance += weight * difference * difference / sumWeights;
+    }
+    uncertainty = Math.max(meanUncertainty, 2 * Math.sqrt(variance));
+    if (!(sumWeights > 0.)) {
+      uncertainty = bandExperiments[0].uncertainty;
+      enoughPts = bandExperiments[0].enoughPts;
+    }
 
-    // does nothing if the data is already 1Hz sample rate
-    testNorth = decimate(testNorth, interval, ONE_HZ_INTERVAL);
-    testEast = decimate(testEast, interval, ONE_HZ_INTERVAL);
-    refNorth = decimate(refNorth, interval, ONE_HZ_INTERVAL);
-    // update the actual sample rate if data was above 1Hz sampling
-    interval = Math.max(interval, ONE_HZ_INTERVAL);
+    AzimuthExperiment best = bandExperiments[bestBand];
+    fitCorrelation = best.fitCorrelation;
+    minCorr = best.minCorr;
+    correlations = best.correlations;
+    lowFreq = best.lowFreq;
+    highFreq = best.highFreq;
+
+    if (simpleCalc) {
+      return;
+    }
+
+    fireStateChange("Solver completed! Producing plots...");
+    // windowed estimates are shown for the best-correlated band
+    xySeriesData.add(getAnglePlot());
+    xySeriesData.addAll(best.xySeriesData.subList(1, best.xySeriesData.size()));
+  }
 
-    double[] initTestNorth = demean(testNorth);
-    double[] initTestEast = demean(testEast);
-    double[] initRefNorth = demean(refNorth);
+  /**
+   * Backend library call for data that has already been decimated, detrended and filtered
+   *
+   * @param preparedPair Prepared north- and east-facing data to find azimuth of
+   * @param preparedRefNorth Prepared north-facing data to use as reference, at the same sample
+   * rate as the north- and east-facing data
+   * @param startTime Start time of data
+   * @param endTime End time of data
+   */
+  private void backendHelper(PreparedReference preparedPair, double[] preparedRefNorth,
+      long startTime, long endTime) {
 
-    initTestNorth = detrend(initTestNorth);
-    initTestEast = detrend(initTestEast);
-    initRefNorth = detrend(initRefNorth);
+    minCorr = 0; // make sure to initialize
 
-    // should there be a normalization step here?
+    enoughPts = false;
 
+    long interval = preparedPair.interval;
+    lowFreq = preparedPair.lowFreq;
+    highFreq = preparedPair.highFreq;
     // data will be downsampled to 1 if > 1Hz rate, else will keep sample rate from input
     double samplesPerSecond = Math.min(1., ONE_HZ_INTERVAL / (double)interval);
-    double low = 1. / 8; // filter from 8 seconds interval
-    double high = 1. / 3; // up to 3 seconds interval
-    // bandpass filters of order 2 in the range specified above
-    initTestNorth = bandFilter(initTestNorth, samplesPerSecond, low, high, 2);
-    initTestEast = bandFilter(initTestEast, samplesPerSecond, low, high, 2);
-    initRefNorth = bandFilter(initRefNorth, samplesPerSecond, low, high, 2);
+
+    double[] initTestNorth = preparedPair.north;
+    double[] initTestEast = preparedPair.east;
+    double[] initRefNorth = preparedRefNorth;
 
     // enforce length constraint -- all data must be the same length
     double[][] data = matchArrayLengths(initTestNorth, initTestEast, initRefNorth);
@@ -289,29 +551,50 @@ public class AzimuthExperiment extends Experiment {
     initTestEast = data[1];
     initRefNorth = data[2];
 
-    MultivariateJacobianFunction jacobian =
-        getJacobianFunction(initTestNorth, initTestEast, initRefNorth);
+    LeastSquaresOptimizer optimizer = new LevenbergMarquardtOptimizer().
+        withCostRelativeTolerance(1E-8).
+        withParameterRelativeTolerance(1E-5);
 
     double initAngle = 0.;
+    double bestGuessAngle = 0.;
+    // the best correlation and azimuth angle producing that correlation
+    // for the purpose of providing damped estimates
+    // (improves susceptibility to noise)
+    double bestCorr = 0.;
+    // closed-form estimates get each window's covariances from running sums over the whole range
+    WindowCovarianceIndex index = null;
+    if (closedForm) {
+      index = new WindowCovarianceIndex(initTestNorth, initTestEast, initRefNorth);
+      Pair<Double, Double> estimate =
+          index.getCovariances(0, index.size()).getClosedFormEstimate();
+      bestGuessAngle = estimate.getFirst();
+      bestCorr = estimate.getSecond();
+      initAngle = bestGuessAngle;
+    } else if (gridSearchSeed) {
+      initAngle = getGridSearchAngle(
+          WindowCovarianceIndex.getCovariances(initTestNorth, initTestEast, initRefNorth));
+    }
 
-    LeastSquaresProblem findAngleY = new LeastSquaresBuilder().
-        start(new double[]{initAngle}).
-        model(jacobian).
-        target(new double[]{1}).
-        maxEvaluations(Integer.MAX_VALUE).
-        maxIterations(Integer.MAX_VALUE).
-        lazyEvaluation(false).
-        build();
+    if (!closedForm || refineClosedForm) {
+      MultivariateJacobianFunction jacobian =
+          getJacobianFunction(initTestNorth, initTestEast, initRefNorth);
 
-    LeastSquaresOptimizer optimizer = new LevenbergMarquardtOptimizer().
-        withCostRelativeTolerance(1E-8).
-        withParameterRelativeTolerance(1E-5);
+      LeastSquaresProblem findAngleY = new LeastSquaresBuilder().
+          start(new double[]{initAngle}).
+          model(jacobian).
+          target(new double[]{1}).
+          maxEvaluations(Integer.MAX_VALUE).
+          maxIterations(Integer.MAX_VALUE).
+          lazyEvaluation(false).
+          build();
 
-    LeastSquaresOptimizer.Optimum optimumY = optimizer.optimize(findAngleY);
-    RealVector angleVector = optimumY.getPoint();
-    double bestGuessAngle = angleVector.getEntry(0);
-    bestGuessAngle = ((bestGuessAngle % TAU) + TAU)
-        % TAU;
+      LeastSquaresOptimizer.Optimum optimumY = optimizer.optimize(findAngleY);
+      RealVector angleVector = optimumY.getPoint();
+      bestGuessAngle = angleVector.getEntry(0);
+      bestGuessAngle = ((bestGuessAngle % TAU) + TAU)
+          % TAU;
+      bestCorr = jacobian.value(angleVector).getFirst().getEntry(0);
+    }
 
     fireStateChange("Found initial guess for angle: " + bestGuessAngle);
 
@@ -320,10 +603,11 @@ public class AzimuthExperiment extends Experiment {
       // where a 'pretty good' estimate of the angle is all we need
       // just stop here, don't do windowing
       angle = bestGuessAngle;
+      fitCorrelation = bestCorr;
       return;
     }
 
-    // angleVector is our new best guess for the azimuth
+    // bestGuessAngle is our new best guess for the azimuth
     // now let's cut the data into 1000-sec windows with 500-sec overlap
     // store the angle and resulting correlation of each window
     // and then take the best-correlation angles and average them
@@ -335,78 +619,56 @@ public class AzimuthExperiment extends Experiment {
         new LinkedHashMap<>();
     List<Double> sortedCorrelation = new ArrayList<>();
 
-    // want (correlation-1+damping) to be as close to 0 as possible
-    RealVector target = MatrixUtils.createRealVector(new double[]{0});
-
-    // the best correlation and azimuth angle producing that correlation
-    // for the purpose of providing damped estimates
-    // (improves susceptibility to noise)
-    double bestCorr = jacobian.value(angleVector).getFirst().getEntry(0);
     double bestTheta = bestGuessAngle;
     final long twoThouSecs = 2000L * ONE_HZ_INTERVAL;
     // 1000 ms per second, range length
     final long fiveHundredSecs = twoThouSecs / 4L; // distance between windows
-    int numWindows = (int) ((timeRange - twoThouSecs) / fiveHundredSecs);
+    int numWindows = (int) Math.max(0, (timeRange - twoThouSecs) / fiveHundredSecs);
     // look at 2000s windows, sliding over 500s of data at a time
+    int[] startIndices = new int[numWindows];
+    int[] endIndices = new int[numWindows];
     for (int i = 0; i < numWindows; ++i) {
-      fireStateChange("Fitting angle over data in window " + (i + 1) + " of " + numWindows);
-
       // get start and end indices from given times
       long wdStart = fiveHundredSecs * i; // start of 500s-sliding window
       long wdEnd = wdStart + twoThouSecs; // end of window (2000s long)
+      startIndices[i] = (int) (wdStart / interval);
+      endIndices[i] = (int) (wdEnd / interval);
+    }
 
-      int startIdx = (int) (wdStart / interval);
-      int endIdx = (int) (wdEnd / interval);
-
-      double[] testNorthWin = Arrays.copyOfRange(initTestNorth, startIdx, endIdx);
-      double[] testEastWin = Arrays.copyOfRange(initTestEast, startIdx, endIdx);
-      double[] refNorthWin = Arrays.copyOfRange(initRefNorth, startIdx, endIdx);
-
-      testNorthWin = detrend(testNorthWin);
-      testEastWin = detrend(testEastWin);
-      refNorthWin = detrend(refNorthWin);
-
-      // bandpass filters of order 2 again
-      testNorthWin = bandFilter(testNorthWin, samplesPerSecond, low, high, 2);
-      testEastWin = bandFilter(testEastWin, samplesPerSecond, low, high, 2);
-      refNorthWin = bandFilter(refNorthWin, samplesPerSecond, low, high, 2);
-
-      jacobian =
-          getDampedJacobianFunction(testNorthWin, testEastWin, refNorthWin, bestCorr, bestTheta);
-
-      LeastSquaresProblem findAngleWindow = new LeastSquaresBuilder().
-          start(new double[]{bestTheta}).
-          model(jacobian).
-          target(target).
-          maxEvaluations(Integer.MAX_VALUE).
-          maxIterations(Integer.MAX_VALUE).
-          lazyEvaluation(false).
-          build();
-
-      optimumY = optimizer.optimize(findAngleWindow);
-
-      RealVector angleVectorWindow = optimumY.getPoint();
-      findAngleWindow.evaluate(angleVectorWindow);
-      // call to evaluate at best-fit point gives corresponding latestCorrelation as side effect
-      double currentWindowAngle = angleVectorWindow.getEntry(0);
+    double[][] filteredData = new double[][]{initTestNorth, initTestEast, initRefNorth};
+    double[] windowAngles = new double[numWindows];
+    double[] windowCorrelations = new double[numWindows];
+    if (parallelWindows) {
+      fitWindowsInParallel(optimizer, filteredData, index, startIndices, endIndices,
+          samplesPerSecond, bestCorr, bestTheta, windowAngles, windowCorrelations);
+    } else {
+      for (int i = 0; i < numWindows; ++i) {
+        fireStateChange("Fitting angle over data in window " + (i + 1) + " of " + numWindows);
 
-      currentWindowAngle = ((currentWindowAngle % TAU) + TAU) % TAU;
+        Pair<Double, Double> angleAndCorrelation = fitWindow(optimizer, filteredData, index,
+            startIndices[i], endIndices[i], samplesPerSecond, bestCorr, bestTheta);
+        double currentWindowAngle = angleAndCorrelation.getFirst();
+        double correlation = angleAndCorrelation.getSecond();
 
-      double correlation = latestCorrelation;
+        if (correlation > bestCorr) {
+          bestCorr = correlation;
+          bestTheta = currentWindowAngle;
+        }
 
-      if (correlation > bestCorr) {
-        bestCorr = correlation;
-        bestTheta = currentWindowAngle;
+        windowAngles[i] = currentWindowAngle;
+        windowCorrelations[i] = correlation;
       }
+    }
 
-      angleCorrelationMap.put(wdStart, new Pair<>(currentWindowAngle, correlation));
-      sortedCorrelation.add(correlation);
+    for (int i = 0; i < numWindows; ++i) {
+      angleCorrelationMap.put(fiveHundredSecs * i,
+          new Pair<>(windowAngles[i], windowCorrelations[i]));
+      sortedCorrelation.add(windowCorrelations[i]);
     }
 
-    int minCorrelations = 5;
     double[] angles = new double[]{};
     correlations = new double[]{};
-    if (angleCorrelationMap.size() < minCorrelations) {
+    if (angleCorrelationMap.size() < MIN_ACCEPTED_WINDOWS) {
       fireStateChange("Window size too small for good angle estimation...");
 
       // The initial best estimate from before windowing occurs
@@ -417,8 +679,7 @@ public class AzimuthExperiment extends Experiment {
       enoughPts = true;
       Collections.sort(sortedCorrelation);
       Collections.reverse(sortedCorrelation); // sort from best to worst
-      // get either exactly top 5 or (if larger), top 15% of estimates
-      int maxBoundary = Math.max(minCorrelations, sortedCorrelation.size() * 3 / 20);
+      int maxBoundary = getAcceptedWindowCount(sortedCorrelation.size());
       // start from 0 because sort is descending order
       sortedCorrelation = sortedCorrelation.subList(0, maxBoundary);
       minCorr = sortedCorrelation.get(sortedCorrelation.size() - 1);
@@ -470,18 +731,44 @@ public class AzimuthExperiment extends Experiment {
       uncertainty = Math.sqrt(uncertainty / acceptedAngles.size());
       uncertainty *= 2; // two-sigma gets us 95% confidence interval
 
-      // do this calculation to get plot of freq/correlation, a side effect
-      // of running evaluation at the given point; this will be plotted
-      RealVector angleVec =
-          MatrixUtils.createRealVector(new double[]{averageAngle});
-      findAngleY.evaluate(angleVec);
-
       angle = ((averageAngle % TAU) + TAU) % TAU;
 
     }
 
+    fitCorrelation = WindowCovarianceIndex
+        .getCovariances(initTestNorth, initTestEast, initRefNorth).getCorrelation(angle);
+
     fireStateChange("Solver completed! Producing plots...");
 
+    xySeriesData.add(getAnglePlot());
+
+    XYSeriesCollection plotTimeseries = new XYSeriesCollection();
+    XYSeries timeMapAngle = new XYSeries("Best-fit angle per window (not including ref. shift)");
+    XYSeries timeMapCorrelation = new XYSeries("Correlation estimate per window");
+    plotTimeseries.addSeries(timeMapAngle);
+    plotTimeseries.addSeries(timeMapCorrelation);
+
+    for (int i = 0; i < angles.length; ++i) {
+      long xVal = i * 500;
+      double angle = angles[i];
+      angle = (angle % TAU);
+      double correlation = correlations[i];
+      timeMapCorrelation.add(xVal, correlation);
+      timeMapAngle.add(xVal, Math.toDegrees(angle));
+      angles[i] = Math.toDegrees(angle);
+    }
+
+    xySeriesData.add(new XYSeriesCollection(timeMapAngle));
+    xySeriesData.add(new XYSeriesCollection(timeMapCorrelation));
+  }
+
+  /**
+   * Get the polar plot of the fit angle, showing the directions of the north and east sensors
+   * relative to the reference
+   *
+   * @return Plottable data for the fit angle
+   */
+  private XYSeriesCollection getAnglePlot() {
     double angleDeg = Math.toDegrees(angle);
 
     String northName = dataNames.get(0);
@@ -502,26 +789,249 @@ public class AzimuthExperiment extends Experiment {
     plotTimeseries.addSeries(ref);
     plotTimeseries.addSeries(set);
     plotTimeseries.addSeries(fromNorth);
-    xySeriesData.add(plotTimeseries);
+    return plotTimeseries;
+  }
 
-    plotTimeseries = new XYSeriesCollection();
-    XYSeries timeMapAngle = new XYSeries("Best-fit angle per window (not including ref. shift)");
-    XYSeries timeMapCorrelation = new XYSeries("Correlation estimate per window");
-    plotTimeseries.addSeries(timeMapAngle);
-    plotTimeseries.addSeries(timeMapCorrelation);
+  /**
+   * Fit the angle of every window concurrently. Because the damped estimate of a window in the
+   * sequential solver depends on the best result of the windows before it, this is done in two
+   * passes instead: first every window is fit independently, damped towards the initial full-range
+   * estimate; then the windows that can affect the final angle are fit again, this time damped
+   * towards the best-correlated window of the first pass. Only the best-correlated windows are
+   * averaged into the final angle (see getAcceptedWindowCount), so the second pass refits just the
+   * windows ranked within twice that many of the best: the accepted windows themselves, whose
+   * damping target has moved, and those just below the cutoff, which could move above it. Windows
+   * further down are never used, so they are not refit. If no window is better correlated than
+   * the full-range estimate, the damping target does not move and there is no second pass.
+   *
+   * @param optimizer Optimizer to solve each window with
+   * @param filteredData Full-range filtered test north, test east, and reference north data
+   * @param index Covariance index of the filtered data if using closed-form estimates, else null
+   * @param startIndices Index of the first sample of each window
+   * @param endIndices Index after the last sample of each window
+   * @param samplesPerSecond Sample rate of the data
+   * @param initialCorr Correlation of the full-range estimate
+   * @param initialTheta Angle of the full-range estimate
+   * @param angles Array to populate with each window's best-fit angle
+   * @param correlations Array to populate with each window's best-fit correlation
+   */
+  private void fitWindowsInParallel(LeastSquaresOptimizer optimizer, double[][] filteredData,
+      WindowCovarianceIndex index, int[] startIndices, int[] endIndices, double samplesPerSecond,
+      double initialCorr, double initialTheta, double[] angles, double[] correlations) {
+    int numWindows = startIndices.length;
+    fireStateChange("Fitting angle over " + numWindows + " data windows in parallel...");
+    IntStream.range(0, numWindows).parallel().forEach(i -> {
+      Pair<Double, Double> angleAndCorrelation = fitWindow(optimizer, filteredData, index,
+          startIndices[i], endIndices[i], samplesPerSecond, initialCorr, initialTheta);
+      angles[i] = angleAndCorrelation.getFirst();
+      correlations[i] = angleAndCorrelation.getSecond();
+    });
+
+    if (numWindows < MIN_ACCEPTED_WINDOWS || (closedForm && !refineClosedForm)) {
+      // too few windows means the windowed estimates are not used, and closed-form estimates
+      // are undamped, so refitting them would give the same result
+      return;
+    }
 
-    for (int i = 0; i < angles.length; ++i) {
-      long xVal = i * 500;
-      double angle = angles[i];
-      angle = (angle % TAU);
-      double correlation = correlations[i];
-      timeMapCorrelation.add(xVal, correlation);
-      timeMapAngle.add(xVal, Math.toDegrees(angle));
-      angles[i] = Math.toDegrees(angle);
+    double bestCorr = initialCorr;
+    double bestTheta = initialTheta;
+    for (int i = 0; i < numWindows; ++i) {
+      if (correlations[i] > bestCorr) {
+        bestCorr = correlations[i];
+        bestTheta = angles[i];
+      }
     }
 
-    xySeriesData.add(new XYSeriesCollection(timeMapAngle));
-    xySeriesData.add(new XYSeriesCollection(timeMapCorrelation));
+    if (bestCorr == initialCorr) {
+      return;
+    }
+
+    // correlation of the last window that could be accepted after refitting
+    double[] sorted = correlations.clone();
+    Arrays.sort(sorted);
+    int refitCount = Math.min(numWindows, 2 * getAcceptedWindowCount(numWindows));
+    double refitCorr = sorted[numWindows - refitCount];
+    final double dampCorr = bestCorr;
+    final double dampTheta = bestTheta;
+    fireStateChange("Refitting best-correlated windows against best window estimate...");
+    IntStream.range(0, numWindows).parallel().filter(i -> correlations[i] >= refitCorr)
+        .forEach(i -> {
+          Pair<Double, Double> angleAndCorrelation = fitWindow(optimizer, filteredData, index,
+              startIndices[i], endIndices[i], samplesPerSecond, dampCorr, dampTheta);
+          angles[i] = angleAndCorrelation.getFirst();
+          correlations[i] = angleAndCorrelation.getSecond();
+        });
+  }
+
+  /**
+   * Get the number of best-correlated windows whose angles are averaged into the final estimate:
+   * the top 15% of them, or at least MIN_ACCEPTED_WINDOWS
+   *
+   * @param numWindows Total number of windows fit
+   * @return Number of windows to accept
+   */
+  private static int getAcceptedWindowCount(int numWindows) {
+    return Math.max(MIN_ACCEPTED_WINDOWS, numWindows * 3 / 20);
+  }
+
+  /**
+   * Get the data for a single window, detrended and filtered again over just that range
+   *
+   * @param filteredData Full-range filtered test north, test east, and reference north data
+   * @param startIdx Index of the first sample of the window
+   * @param endIdx Index after the last sample of the window
+   * @param samplesPerSecond Sample rate of the data
+   * @return Test north, test east, and reference north data over the window
+   */
+  private double[][] getWindowData(double[][] filteredData, int startIdx, int endIdx,
+      double samplesPerSecond) {
+    double[][] windowData = new double[filteredData.length][];
+    for (int i = 0; i < filteredData.length; ++i) {
+      double[] window = Arrays.copyOfRange(filteredData[i], startIdx, endIdx);
+      window = detrend(window);
+      // bandpass filters of order 2 again
+      windowData[i] = bandFilter(window, samplesPerSecond, lowFreq, highFreq, 2);
+    }
+    return windowData;
+  }
+
+  /**
+   * Solve for the best-fit angle of a single window. If closed-form estimation is enabled, the
+   * window's covariances are taken from the index of the full-range filtered data, and the damped
+   * solver is only run if the estimate is to be refined, starting from the closed-form angle.
+   * Otherwise the window's data is detrended and filtered again and fit with the damped solver.
+   * This does not modify any state of the experiment, so multiple windows can be fit at once.
+   *
+   * @param optimizer Optimizer to solve the window with
+   * @param filteredData Full-range filtered test north, test east, and reference north data
+   * @param index Covariance index of the filtered data if using closed-form estimates, else null
+   * @param startIdx Index of the first sample of the window
+   * @param endIdx Index after the last sample of the window
+   * @param samplesPerSecond Sample rate of the data
+   * @param bestCorr Correlation of the estimate to damp towards
+   * @param bestTheta Angle of the estimate to damp towards, which is also the starting point
+   * if the closed-form estimate is not used
+   * @return Best-fit angle (radians, between 0 and 2pi) and the correlation at that angle
+   */
+  private Pair<Double, Double> fitWindow(LeastSquaresOptimizer optimizer,
+      double[][] filteredData, WindowCovarianceIndex index, int startIdx, int endIdx,
+      double samplesPerSecond, double bestCorr, double bestTheta) {
+
+    if (index == null) {
+      double[][] windowData = getWindowData(filteredData, startIdx, endIdx, samplesPerSecond);
+      return fitFilteredWindow(optimizer, windowData, bestCorr, bestTheta);
+    }
+
+    WindowCovarianceIndex.Covariances covariances = index.getCovariances(startIdx, endIdx);
+    Pair<Double, Double> estimate = covariances.getClosedFormEstimate();
+    if (!refineClosedForm) {
+      return estimate;
+    }
+
+    // same damped cost function as for the data-based solver, but evaluated from covariances
+    MultivariateJacobianFunction jacobian = point -> {
+      double theta = point.getEntry(0);
+      double correlation = covariances.getCorrelation(theta);
+      double residual = correlation - 1 + (bestCorr - 1) * (theta - bestTheta);
+      double change =
+          2 * residual * (covariances.getCorrelationDerivative(theta) + (bestCorr - 1));
+      RealVector valueVec = MatrixUtils.createRealVector(new double[]{residual * residual});
+      RealMatrix jacobianMatrix = MatrixUtils.createRealMatrix(new double[][]{{change}});
+      return new Pair<>(valueVec, jacobianMatrix);
+    };
+
+    LeastSquaresProblem findAngleWindow = new LeastSquaresBuilder().
+        start(new double[]{estimate.getFirst()}).
+        model(jacobian).
+        target(new double[]{0}).
+        maxEvaluations(Integer.MAX_VALUE).
+        maxIterations(Integer.MAX_VALUE).
+        lazyEvaluation(false).
+        build();
+
+    double windowAngle = optimizer.optimize(findAngleWindow).getPoint().getEntry(0);
+    double correlation = covariances.getCorrelation(windowAngle);
+    windowAngle = ((windowAngle % TAU) + TAU) % TAU;
+    return new Pair<>(windowAngle, correlation);
+  }
+
+  /**
+   * Solve for the best-fit angle of a single window's data using the damped cost function.
+   *
+   * @param optimizer Optimizer to solve the window with
+   * @param windowData Test north, test east, and reference north data over the window
+   * @param bestCorr Correlation of the estimate to damp towards
+   * @param bestTheta Angle of the estimate to damp towards, which is also the starting point
+   * @return Best-fit angle (radians, between 0 and 2pi) and the correlation at that angle
+   */
+  private static Pair<Double, Double> fitFilteredWindow(LeastSquaresOptimizer optimizer,
+      double[][] windowData, double bestCorr, double bestTheta) {
+    double[] testNorthWin = windowData[0];
+    double[] testEastWin = windowData[1];
+    double[] refNorthWin = windowData[2];
+
+    MultivariateJacobianFunction jacobian =
+        getDampedJacobianFunction(testNorthWin, testEastWin, refNorthWin, bestCorr, bestTheta);
+
+    // want (correlation-1+damping) to be as close to 0 as possible
+    LeastSquaresProblem findAngleWindow = new LeastSquaresBuilder().
+        start(new double[]{bestTheta}).
+        model(jacobian).
+        target(new double[]{0}).
+        maxEvaluations(Integer.MAX_VALUE).
+        maxIterations(Integer.MAX_VALUE).
+        lazyEvaluation(false).
+        build();
+
+    LeastSquaresOptimizer.Optimum optimum = optimizer.optimize(findAngleWindow);
+    double windowAngle = optimum.getPoint().getEntry(0);
+    double[] testRotated = rotate(testNorthWin, testEastWin, windowAngle);
+    double correlation = new PearsonsCorrelation().correlation(refNorthWin, testRotated);
+    windowAngle = ((windowAngle % TAU) + TAU) % TAU;
+    return new Pair<>(windowAngle, correlation);
+  }
+
+  /**
+   * Get the angle maximizing the correlation between the reference and the rotated test data
+   * directly from the data's covariances, without any iteration
+   * (see WindowCovarianceIndex.Covariances.getClosedFormEstimate for the derivation).
+   *
+   * @param testNorth Data from the test sensor's north-facing component
+   * @param testEast Data from the test sensor's east-facing component
+   * @param refNorth Data from the known north-facing sensor
+   * @return Angle of maximum correlation (radians, between 0 and 2pi) and the correlation at that
+   * angle; if the test components are degenerate (i.e., zero or collinear) or the reference has no
+   * variance, the angle and correlation are both 0.
+   */
+  static Pair<Double, Double> getClosedFormEstimate(double[] testNorth, double[] testEast,
+      double[] refNorth) {
+    return WindowCovarianceIndex.getCovariances(testNorth, testEast, refNorth)
+        .getClosedFormEstimate();
+  }
+
+  /**
+   * Get the angle with the highest correlation between the reference and the rotated test data
+   * out of a grid of angles one degree apart over the full circle. The correlation at each angle
+   * comes directly from the data's covariances, so the search is a fixed, small cost regardless
+   * of the length of the data. Used as the starting point of the iterative solver, so that it
+   * converges to the global maximum rather than a stationary point near its default start
+   * (such as the correlation minimum, 180 degrees from the true angle).
+   *
+   * @param covariances Covariances of the test and reference data
+   * @return Angle of highest correlation on the grid (radians, between 0 and 2pi)
+   */
+  static double getGridSearchAngle(WindowCovarianceIndex.Covariances covariances) {
+    double bestAngle = 0.;
+    double bestCorrelation = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < GRID_SEARCH_STEPS; ++i) {
+      double theta = i * TAU / GRID_SEARCH_STEPS;
+      double correlation = covariances.getCorrelation(theta);
+      if (correlation > bestCorrelation) {
+        bestCorrelation = correlation;
+        bestAngle = theta;
+      }
+    }
+    return bestAngle;
   }
 
   @Override
@@ -538,6 +1048,25 @@ public class AzimuthExperiment extends Experiment {
     return correlations;
   }
 
+  /**
+   * Get the correlation between the reference and the test data rotated by the fit angle, over
+   * the full range of data (filtered to the band the angle was fit over)
+   *
+   * @return Correlation at the fit angle
+   */
+  public double getFitCorrelation() {
+    return fitCorrelation;
+  }
+
+  /**
+   * Get the results for each period band from the most recent multi-band run
+   *
+   * @return List of per-band estimates, which is empty if multi-band mode was not used
+   */
+  public List<BandEstimate> getBandEstimates() {
+    return Collections.unmodifiableList(bandEstimates);
+  }
+
   /**
    * This is the damped jacobian function for windowed estimates
    * we use a different cost function for initial estimate since using the
@@ -545,7 +1074,7 @@ public class AzimuthExperiment extends Experiment {
    *
    * @return Jacobian Function
    */
-  private MultivariateJacobianFunction
+  private static MultivariateJacobianFunction
   getDampedJacobianFunction(double[] l1, double[] l2, double[] l3, double cr, double th) {
 
     // make my func the j-func, I want that func-y stuff
@@ -717,7 +1246,7 @@ public class AzimuthExperiment extends Experiment {
    * @return Correlation (RealVector) and forward difference
    * approximation of the Jacobian (RealMatrix) at the current angle
    */
-  private Pair<RealVector, RealMatrix> jacobian(
+  private static Pair<RealVector, RealMatrix> jacobian(
       final RealVector point,
       final double[] refNorth,
       final double[] testNorth,
@@ -738,7 +1267,6 @@ public class AzimuthExperiment extends Experiment {
 
     PearsonsCorrelation pearsonsCorrelation = new PearsonsCorrelation();
     double value = pearsonsCorrelation.correlation(refNorth, testRotated);
-    latestCorrelation = value;
     double damping = (bestCorr - 1) * (theta - bestTheta);
     value = Math.pow(value - 1 + damping, 2);
     RealVector valueVec = MatrixUtils.createRealVector(new double[]{value});
@@ -766,6 +1294,70 @@ public class AzimuthExperiment extends Experiment {
     simpleCalc = isSimple;
   }
 
+  /**
+   * Set whether the data windows should be fit independently of each other, which allows them to
+   * be solved concurrently (see fitWindowsInParallel). This is much faster over long ranges of data
+   * such as week-long orientation checks. By default windows are solved in sequence, each one
+   * damped towards the best result of the windows before it.
+   *
+   * @param parallel True if windows should be fit in parallel
+   */
+  public void setParallelWindows(boolean parallel) {
+    parallelWindows = parallel;
+  }
+
+  /**
+   * Set whether angles should be estimated with the closed-form solution for maximum correlation
+   * (see getClosedFormEstimate) instead of the iterative least-squares solver. This applies to the
+   * full-range initial estimate as well as each data window. Closed-form window estimates are not
+   * damped towards previous windows unless the least-squares refinement is also enabled.
+   * Because each window's covariances are taken from running sums over the full range of filtered
+   * data (see WindowCovarianceIndex), windows are not detrended and filtered again individually,
+   * and no copies of the window data are made.
+   *
+   * @param useClosedForm True if angles should be estimated with the closed-form solution
+   */
+  public void setClosedFormEstimate(boolean useClosedForm) {
+    closedForm = useClosedForm;
+  }
+
+  /**
+   * Set whether closed-form angle estimates should be refined with the (damped) least-squares
+   * solver, using each closed-form estimate as the solver's starting point. This has no effect
+   * unless closed-form estimation is enabled.
+   *
+   * @param refine True if closed-form estimates should be refined by the iterative solver
+   */
+  public void setLeastSquaresRefinement(boolean refine) {
+    refineClosedForm = refine;
+  }
+
+  /**
+   * Set whether the iterative solver's full-range estimate should start from the best angle of a
+   * one-degree grid search over the full circle (see getGridSearchAngle) rather than from 0.
+   * This makes the solver converge to the global correlation maximum in one deterministic pass on
+   * noisy data, where starting from 0 can leave it at the wrong stationary point. Data windows
+   * start from the full-range estimate as usual. This has no effect with closed-form estimation,
+   * whose estimate is already the global maximum.
+   *
+   * @param useGridSearch True if the solver should be seeded by a grid search
+   */
+  public void setGridSearchSeed(boolean useGridSearch) {
+    gridSearchSeed = useGridSearch;
+  }
+
+  /**
+   * Set whether the azimuth should be solved over several period bands at once (3-8, 8-16 and
+   * 16-32 seconds) and combined into a consensus angle, rather than over the 3-8 second band only.
+   * This gives a usable estimate from a single run when microseism energy in any one band is weak.
+   * The per-band results are available from getBandEstimates.
+   *
+   * @param useMultiBand True if multiple period bands should be solved for
+   */
+  public void setMultiBand(boolean useMultiBand) {
+    multiBand = useMultiBand;
+  }
+
   /**
    * Used for test case verification.
    *
@@ -774,4 +1366,126 @@ public class AzimuthExperiment extends Experiment {
   boolean getSimpleCalc() {
     return simpleCalc;
   }
-}
\ No newline at end of file
+
+  /**
+   * Data from a pair of orthogonal horizontal sensors, preprocessed (decimated, detrended and
+   * filtered) once so that it can be shared by several orientation solves against the same pair.
+   * Instances are immutable and can be used from multiple threads at once.
+   */
+  static class PreparedReference {
+
+    private final double[] north;
+    private final double[] east;
+    private final long initialInterval;
+    private final long interval;
+    private final double lowFreq;
+    private final double highFreq;
+
+    /**
+     * Prepare a pair of north- and east-facing sensors' data
+     *
+     * @param north Timeseries data from north-facing sensor
+     * @param east Timeseries data from east-facing sensor
+     * @param interval Sampling interval of the data
+     */
+    PreparedReference(double[] north, double[] east, long interval) {
+      this(north, east, interval, LOW_FREQ, HIGH_FREQ);
+    }
+
+    /**
+     * Prepare a pair of north- and east-facing sensors' data over a specific frequency band
+     *
+     * @param north Timeseries data from north-facing sensor
+     * @param east Timeseries data from east-facing sensor
+     * @param interval Sampling interval of the data
+     * @param low Lower corner of the bandpass (Hz)
+     * @param high Upper corner of the bandpass (Hz)
+     */
+    PreparedReference(double[] north, double[] east, long interval, double low, double high) {
+      this.north = prepareData(north, interval, low, high);
+      this.east = prepareData(east, interval, low, high);
+      initialInterval = interval;
+      this.interval = Math.max(interval, ONE_HZ_INTERVAL);
+      lowFreq = low;
+      highFreq = high;
+    }
+  }
+
+  /**
+   * Azimuth estimate over a single period band from a multi-band run
+   */
+  public static class BandEstimate {
+
+    private final double shortPeriod;
+    private final double longPeriod;
+    private final double angle;
+    private final double uncertainty;
+    private final double correlation;
+    private final boolean enoughPts;
+
+    private BandEstimate(double shortPeriod, double longPeriod, double angle, double uncertainty,
+        double correlation, boolean enoughPts) {
+      this.shortPeriod = shortPeriod;
+      this.longPeriod = longPeriod;
+      this.angle = angle;
+      this.uncertainty = uncertainty;
+      this.correlation = correlation;
+      this.enoughPts = enoughPts;
+    }
+
+    /**
+     * @return Shortest period of the band, in seconds
+     */
+    public double getShortPeriod() {
+      return shortPeriod;
+    }
+
+    /**
+     * @return Longest period of the band, in seconds
+     */
+    public double getLongPeriod() {
+      return longPeriod;
+    }
+
+    /**
+     * @return Fit angle over this band in degrees, not including the reference offset
+     */
+    public double getFitAngle() {
+      return Math.toDegrees(angle);
+    }
+
+    /**
+     * @return Uncertainty of the fit angle over this band in degrees
+     */
+    public double getUncertainty() {
+      return Math.toDegrees(uncertainty);
+    }
+
+    /**
+     * @return Correlation of the reference and rotated test data over this band
+     */
+    public double getCorrelation() {
+      return correlation;
+    }
+
+    /**
+     * @return True if there were enough points in this band to do the windowing step
+     */
+    public boolean hadEnoughPoints() {
+      return enoughPts;
+    }
+
+    @Override
+    public String toString() {
+      String result = DECIMAL_FORMAT.get().format(shortPeriod) + "-"
+          + DECIMAL_FORMAT.get().format(longPeriod) + " s: "
+          + DECIMAL_FORMAT.get().format(getFitAngle())
+          + " (+/- " + DECIMAL_FORMAT.get().format(getUncertainty()) + "), correlation "
+          + DECIMAL_FORMAT.get().format(correlation);
+      if (!enoughPts) {
+        result += " | WARNING: SMALL RANGE";
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,281 @@
+package asl.sensor.experiment;
+
+import static asl.utils.NumericUtils.demean;
+import static asl.utils.NumericUtils.detrend;
+import static asl.utils.TimeSeriesUtils.ONE_HZ_INTERVAL;
+
+import asl.utils.FFTResult;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import org.apache.commons.math3.complex.Complex;
+
+/**
+ * Accumulates averaged auto- and cross-power spectra of a set of simultaneously recorded
+ * channels as their data arrives, rather than requiring the full timeseries up front (i.e., an
+ * incremental version of Welch's method). Incoming data is split into fixed-length segments that
+ * overlap by 75%; each complete segment is demeaned, detrended, tapered and transformed, and the
+ * products of its spectra are added to running sums. Only the samples of the not-yet-complete
+ * segment are kept between calls, so memory use is bounded by the segment length and channel count
+ * no matter how much data is appended over the accumulator's lifetime.
+ *
+ * Data passed in to each call is assumed to continue directly from the data passed in to the
+ * previous call, and all channels are assumed to share the same sample interval and start time.
+ */
+class CrossSpectralAccumulator {
+
+  /**
+   * Width of the cosine taper applied to each segment before taking its FFT
+   */
+  private static final double TAPER_WIDTH = 0.05;
+
+  private final int channelCount;
+  private final int segmentLength;
+  private final int segmentStep;
+  private final long interval;
+  private final double psdScale;
+  private final double[][] pending;
+  // sums of fft(i) * conj(fft(j)) over all segments, only populated for j >= i
+  private Complex[][][] spectralSums;
+  private double[] freqs;
+  private int segmentCount;
+
+  /**
+   * Create a new accumulator with no data in it.
+   *
+   * @param channelCount Number of channels whose spectra are accumulated
+   * @param segmentLength Number of samples in each segment; if this is not a power of 2, each
+   * segment is zero-padded up to the next one before its FFT is taken
+   * @param interval Sample interval of the data in ms (see TimeSeriesUtils.ONE_HZ_INTERVAL)
+   */
+  CrossSpectralAccumulator(int channelCount, int segmentLength, long interval) {
+    if (segmentLength < 4) {
+      throw new IllegalArgumentException("Segment length must be at least 4 samples, got "
+          + segmentLength);
+    }
+    this.channelCount = channelCount;
+    this.segmentLength = segmentLength;
+    this.interval = interval;
+    segmentStep = segmentLength / 4;
+    pending = new double[channelCount][0];
+    segmentCount = 0;
+
+    // normalize according to the power of the taper window, which we get by tapering a
+    // constant-valued signal; this gives a one-sided PSD in units of (input units)^2 / Hz
+    double[] window = new double[segmentLength];
+    Arrays.fill(window, 1.);
+    FFTResult.cosineTaper(window, TAPER_WIDTH);
+    double windowPower = 0.;
+    for (double point : window) {
+      windowPower += point * point;
+    }
+    double period = interval / (double) ONE_HZ_INTERVAL;
+    psdScale = 2. * period / windowPower;
+  }
+
+  /**
+   * Get the segment length that splits data the way FFTResult.crossPower does for a single
+   * timeseries: segments 1/4 the length of the data (which, with the 75% overlap, gives 13
+   * segments over the data), zero-padded to a power of 2 for the FFT
+   *
+   * @param dataLength Number of samples of data the spectra are taken over
+   * @return Segment length to create an accumulator with
+   */
+  static int getCrossPowerSegmentLength(int dataLength) {
+    return dataLength / 4;
+  }
+
+  /**
+   * Add the next chunk of data for each channel. Chunks do not need to be the same length; any
+   * samples not yet usable as part of a complete segment are held until the next call.
+   *
+   * @param data Next chunk of samples for each channel, in channel order
+   */
+  void append(double[]... data) {
+    if (data.length != channelCount) {
+      throw new IllegalArgumentException("Expected data for " + channelCount
+          + " channels, got " + data.length);
+    }
+    for (int i = 0; i < channelCount; ++i) {
+      double[] joined = Arrays.copyOf(pending[i], pending[i].length + data[i].length);
+      System.arraycopy(data[i], 0, joined, pending[i].length, data[i].length);
+      pending[i] = joined;
+    }
+
+    int available = Integer.MAX_VALUE;
+    for (double[] channel : pending) {
+      available = Math.min(available, channel.length);
+    }
+
+    int offset = 0;
+    while (offset + segmentLength <= available) {
+      addSegment(offset);
+      offset += segmentStep;
+    }
+
+    // drop the samples that no future segment will start at or include
+    for (int i = 0; i < channelCount; ++i) {
+      pending[i] = Arrays.copyOfRange(pending[i], offset, pending[i].length);
+    }
+  }
+
+  /**
+   * Drop any samples held for a not-yet-complete segment, so that the next appended data starts
+   * a new segment. This is used when there is a gap in the data, as a segment spanning the gap
+   * would not be a contiguous record. The spectral sums accumulated so far are kept.
+   */
+  void discardPending() {
+    for (int i = 0; i < channelCount; ++i) {
+      pending[i] = new double[0];
+    }
+  }
+
+  /**
+   * Transform the segment starting at the given offset of each channel's pending data and add its
+   * spectral products to the running sums
+   *
+   * @param offset Index of the first sample of the segment within the pending data
+   */
+  private void addSegment(int offset) {
+    double sampleRate = ONE_HZ_INTERVAL / (double) interval;
+    Complex[][] ffts = new Complex[channelCount][];
+    double[][] fftFreqs = new double[channelCount][];
+    IntStream.range(0, channelCount).parallel().forEach(i -> {
+      double[] segment = Arrays.copyOfRange(pending[i], offset, offset + segmentLength);
+      segment = detrend(demean(segment));
+      FFTResult.cosineTaper(segment, TAPER_WIDTH);
+      FFTResult fft = FFTResult.singleSidedFFT(segment, sampleRate, false);
+      ffts[i] = fft.getFFT();
+      fftFreqs[i] = fft.getFreqs();
+    });
+    if (freqs == null) {
+      freqs = fftFreqs[0];
+    }
+
+    if (spectralSums == null) {
+      spectralSums = new Complex[channelCount][channelCount][];
+      for (int i = 0; i < channelCount; ++i) {
+        for (int j = i; j < channelCount; ++j) {
+          spectralSums[i][j] = new Complex[freqs.length];
+          Arrays.fill(spectralSums[i][j], Complex.ZERO);
+        }
+      }
+    }
+
+    for (int i = 0; i < channelCount; ++i) {
+      for (int j = i; j < channelCount; ++j) {
+        Complex[] sums = spectralSums[i][j];
+        for (int k = 0; k < sums.length; ++k) {
+          sums[k] = sums[k].add(ffts[i][k].multiply(ffts[j][k].conjugate()));
+        }
+      }
+    }
+    ++segmentCount;
+  }
+
+  /**
+   * Add the spectral sums of another accumulator to this one, as though this accumulator had
+   * also processed every segment the other did (i.e., to combine the results of different days).
+   * Samples the other accumulator holds for a not-yet-complete segment are not included.
+   *
+   * @param other Accumulator with the same channel count, segment length and sample interval
+   */
+  void merge(CrossSpectralAccumulator other) {
+    if (channelCount != other.channelCount || segmentLength != other.segmentLength
+        || interval != other.interval) {
+      throw new IllegalArgumentException("Accumulators to be merged must have the same channel "
+          + "count, segment length and sample interval");
+    }
+    if (other.segmentCount == 0) {
+      return;
+    }
+    if (spectralSums == null) {
+      freqs = other.freqs.clone();
+      spectralSums = new Complex[channelCount][channelCount][];
+      for (int i = 0; i < channelCount; ++i) {
+        for (int j = i; j < channelCount; ++j) {
+          spectralSums[i][j] = other.spectralSums[i][j].clone();
+        }
+      }
+    } else {
+      for (int i = 0; i < channelCount; ++i) {
+        for (int j = i; j < channelCount; ++j) {
+          Complex[] sums = spectralSums[i][j];
+          for (int k = 0; k < sums.length; ++k) {
+            sums[k] = sums[k].add(other.spectralSums[i][j][k]);
+          }
+        }
+      }
+    }
+    segmentCount += other.segmentCount;
+  }
+
+  /**
+   * Get the averaged cross-power spectrum of two channels over all segments processed so far,
+   * that is, the mean of fft(first) * conj(fft(second)). When both indices are the same, this is
+   * the (real-valued) power spectrum of that channel.
+   *
+   * @param first Index of the first channel
+   * @param second Index of the second channel
+   * @return Averaged spectrum, with frequencies given by getFrequencies
+   * @throws IllegalStateException if no complete segment has been accumulated yet
+   */
+  Complex[] getCrossSpectrum(int first, int second) {
+    checkHasSegments();
+    boolean conjugate = second < first;
+    Complex[] sums = conjugate ? spectralSums[second][first] : spectralSums[first][second];
+    Complex[] spectrum = new Complex[sums.length];
+    double scale = psdScale / segmentCount;
+    for (int k = 0; k < sums.length; ++k) {
+      spectrum[k] = sums[k].multiply(scale);
+      if (conjugate) {
+        spectrum[k] = spectrum[k].conjugate();
+      }
+    }
+    return spectrum;
+  }
+
+  /**
+   * Get the frequencies corresponding to each point of the accumulated spectra
+   *
+   * @return Frequencies of spectrum points in Hz
+   * @throws IllegalStateException if no complete segment has been accumulated yet
+   */
+  double[] getFrequencies() {
+    checkHasSegments();
+    return freqs.clone();
+  }
+
+  private void checkHasSegments() {
+    if (segmentCount == 0) {
+      throw new IllegalStateException("Not enough data accumulated to produce a spectrum; "
+          + "need at least " + segmentLength + " samples per channel");
+    }
+  }
+
+  /**
+   * Get the number of complete segments that have been added into the spectral averages
+   *
+   * @return Number of segments averaged so far
+   */
+  int getSegmentCount() {
+    return segmentCount;
+  }
+
+  /**
+   * Get the number of samples in each segment
+   *
+   * @return Segment length in samples
+   */
+  int getSegmentLength() {
+    return segmentLength;
+  }
+
+  /**
+   * Get the sample interval of the data being accumulated
+   *
+   * @return Interval between samples in ms
+   */
+  long getInterval() {
+    return interval;
+  }
+}
@@ -9,6 +9,7 @@ import asl.utils.input.DataBlock;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -76,6 +77,11 @@ public abstract class Experiment {
   private final EventListenerList eventHelper;
   long start;
   long end;
+  /**
+   * Number of log-spaced bins per octave spectral plots are reduced to, or 0 to plot every
+   * frequency point with a moving average applied
+   */
+  int plotBinsPerOctave;
   List<XYSeriesCollection> xySeriesData;
   /**
    * list of filenames of seed, resp files
@@ -93,36 +99,12 @@ public abstract class Experiment {
   Experiment() {
     start = 0L;
     end = 0L;
+    plotBinsPerOctave = 0;
     dataNames = new ArrayList<>();
     status = "";
     eventHelper = new EventListenerList();
   }
 
-  /**
-   * Helper function to add data from a DataStore object (the PSD calculation)
-   * into an XYSeriesCollection to eventually be plotted
-   * Used in both self-noise and relative gain calculations
-   *
-   * @param dataStore DataStore to collect data from
-   * @param freqSpace True if using units of Hz, False if units of s
-   * (sample rate vs. interval between points)
-   * @param index Specifies which of the DataBlocks in the DataStore to get the data from
-   */
-  static void addToPlot(
-      final DataStore dataStore,
-      final boolean freqSpace,
-      final int index,
-      XYSeriesCollection xysc) {
-
-    XYSeries powerSeries =
-        new XYSeries("PSD " + dataStore.getBlock(index).getName() + " [" + index + "]");
-
-    Complex[] resultPSD = dataStore.getPSD(index).getFFT();
-    double[] freqs = dataStore.getPSD(index).getFreqs();
-
-    addToPlot(powerSeries, resultPSD, freqs, freqSpace, xysc);
-  }
-
   /**
    * Stub method to be overridden for other methods to produce String data for experiment result.
    * Includes formatting of numeric data. This may not be used for all experiments.
@@ -202,13 +184,31 @@ public abstract class Experiment {
    * @param freqSpace True if using units of Hz, False if units of s
    * @param xysc XYSeriesCollection the given XYSeries will be loaded into
    */
-  static void addToPlot(
+  void addToPlot(
       final XYSeries powerSeries,
       final Complex[] resultPSD,
       final double[] freqs,
       final boolean freqSpace,
       XYSeriesCollection xysc) {
 
+    if (plotBinsPerOctave > 0) {
+      double[] power = new double[resultPSD.length];
+      for (int i = 0; i < power.length; ++i) {
+        power[i] = resultPSD[i].abs();
+      }
+      double[][] smoothed = smoothFractionalOctave(freqs, power, plotBinsPerOctave);
+      for (int j = 0; j < smoothed[0].length; ++j) {
+        double freq = smoothed[0][j];
+        if (1 / freq > MAX_PLOT_PERIOD) {
+          continue;
+        }
+        double temp = 10 * Math.log10(smoothed[1][j]);
+        powerSeries.add(freqSpace ? freq : 1 / freq, temp);
+      }
+      xysc.addSeries(powerSeries);
+      return;
+    }
+
     // Smooth the PSD data before it goes out to the plots
     Complex[] smoothedPSD = multipointMovingAverage(resultPSD, 9, false);
     // for the last 3 points, do 7, 5, 3 last points
@@ -247,6 +247,70 @@ public abstract class Experiment {
     xysc.addSeries(powerSeries);
   }
 
+  /**
+   * Reduce a spectrum to fractional-octave bins, averaging the power of all points within each
+   * bin. Bins are centered on frequencies 2^(k/binsPerOctave) Hz and span from halfway (in log
+   * frequency) to the previous center to halfway to the next, so each point falls in exactly one
+   * bin. Each bin's frequency is the geometric mean of the frequencies of its points, so bins at
+   * low frequency holding only a single point are placed exactly on that point.
+   * This takes a single pass over the data, which must be in increasing order of frequency.
+   *
+   * @param freqs Frequencies of the spectrum (Hz), in increasing order
+   * @param power Power at each frequency, in linear (not dB) units
+   * @param binsPerOctave Number of bins per octave (i.e., 8 for 1/8-octave bins)
+   * @return Array {frequencies, power} of each non-empty bin, in increasing frequency
+   */
+  static double[][] smoothFractionalOctave(double[] freqs, double[] power, int binsPerOctave) {
+    double[] binFreqs = new double[freqs.length];
+    double[] binPower = new double[freqs.length];
+    int binCount = 0;
+    long currentBin = Long.MIN_VALUE;
+    double logFreqSum = 0.;
+    double powerSum = 0.;
+    int points = 0;
+    for (int i = 0; i < freqs.length; ++i) {
+      if (freqs[i] <= 0.) {
+        continue; // DC has no place on a log axis
+      }
+      double logFreq = Math.log(freqs[i]) / Math.log(2);
+      long bin = Math.round(logFreq * binsPerOctave);
+      if (bin != currentBin && points > 0) {
+        binFreqs[binCount] = Math.pow(2, logFreqSum / points);
+        binPower[binCount] = powerSum / points;
+        ++binCount;
+        logFreqSum = 0.;
+        powerSum = 0.;
+        points = 0;
+      }
+      currentBin = bin;
+      logFreqSum += logFreq;
+      powerSum += power[i];
+      ++points;
+    }
+    if (points > 0) {
+      binFreqs[binCount] = Math.pow(2, logFreqSum / points);
+      binPower[binCount] = powerSum / points;
+      ++binCount;
+    }
+    return new double[][]{
+        Arrays.copyOf(binFreqs, binCount), Arrays.copyOf(binPower, binCount)};
+  }
+
+  /**
+   * Set how PSDs and similar spectra are plotted. By default every frequency point is plotted
+   * after a 9-point moving average, which can be hundreds of thousands of points for long data.
+   * Setting a number of bins per octave instead reduces each spectrum to that many log-spaced
+   * points per octave (see smoothFractionalOctave), which is how spectra are usually read and is
+   * much faster to plot and write to reports. This only affects plotted data, not any statistics
+   * the experiment calculates from its spectra.
+   *
+   * @param binsPerOctave Number of bins per octave (i.e., 8 for 1/8 octave), or 0 to plot every
+   * point
+   */
+  public void setPlotBinsPerOctave(int binsPerOctave) {
+    plotBinsPerOctave = Math.max(0, binsPerOctave);
+  }
+
   /**
    * Add an object to the list of objects to be notified when the experiment's
    * status changes
@@ -1,8 +1,5 @@
 package asl.sensor.experiment;
 
-import static asl.utils.NumericUtils.getFFTMean;
-import static asl.utils.NumericUtils.getFFTSDev;
-
 import asl.sensor.input.DataStore;
 import asl.utils.FFTResult;
 import asl.utils.input.InstrumentResponse;
@@ -38,6 +35,11 @@ public class GainExperiment extends Experiment {
   private int[] indices; // indices of valid data sources (i.e., 0 and 1)
   private int referenceIndex;
   private double lowPeriod, highPeriod;
+  // running sums over the PSD bins so that the statistics of any range are found in constant
+  // time; element i of each is the sum over bins 0 to i - 1.
+  // magnitudeSums is indexed by series, ratioSums and ratioSquareSums by reference series
+  private double[][] magnitudeSums, ratioSums, ratioSquareSums;
+  private int[] peakIndices;
 
 
   /**
@@ -145,6 +147,48 @@ public class GainExperiment extends Experiment {
     xysc.addSeries(FFTResult.getLowNoiseModel(false));
 
     xySeriesData.add(xysc);
+
+    fireStateChange("Accumulating PSD sums...");
+    accumulateSums();
+  }
+
+  /**
+   * Precompute running sums of each PSD's magnitude and of the ratios between the PSDs (and their
+   * squares), along with the peak of each PSD, so that moving the range the statistics are taken
+   * over (i.e., with the GUI's sliders) does not require scanning the PSDs again
+   */
+  private void accumulateSums() {
+    int length = Integer.MAX_VALUE;
+    double[][] magnitudes = new double[NUMBER_TO_LOAD][];
+    for (int i = 0; i < NUMBER_TO_LOAD; ++i) {
+      Complex[] fft = fftResults[i].getFFT();
+      length = Math.min(length, fft.length);
+      magnitudes[i] = new double[fft.length];
+      for (int j = 0; j < fft.length; ++j) {
+        magnitudes[i][j] = fft[j].abs();
+      }
+    }
+
+    magnitudeSums = new double[NUMBER_TO_LOAD][];
+    ratioSums = new double[NUMBER_TO_LOAD][length + 1];
+    ratioSquareSums = new double[NUMBER_TO_LOAD][length + 1];
+    peakIndices = new int[NUMBER_TO_LOAD];
+    for (int i = 0; i < NUMBER_TO_LOAD; ++i) {
+      magnitudeSums[i] = new double[magnitudes[i].length + 1];
+      for (int j = 0; j < magnitudes[i].length; ++j) {
+        magnitudeSums[i][j + 1] = magnitudeSums[i][j] + magnitudes[i][j];
+      }
+      peakIndices[i] = getPeakIndex(i);
+
+      double[] reference = magnitudes[i];
+      double[] other = magnitudes[(i + 1) % NUMBER_TO_LOAD];
+      for (int j = 0; j < length; ++j) {
+        // added terms exist to prevent division by 0
+        double ratio = (reference[j] + Double.MIN_VALUE) / (other[j] + Double.MIN_VALUE);
+        ratioSums[i][j + 1] = ratioSums[i][j] + ratio;
+        ratioSquareSums[i][j + 1] = ratioSquareSums[i][j] + ratio * ratio;
+      }
+    }
   }
 
   @Override
@@ -161,7 +205,7 @@ public class GainExperiment extends Experiment {
    */
   private double[] getOctaveCenteredAtPeak(int index) {
 
-    int center = getPeakIndex(index);
+    int center = peakIndices[index];
     double[] freqs = fftResults[index].getFreqs();
     int max = freqs.length - 1;
     double peakFreq = freqs[center];
@@ -252,32 +296,73 @@ public class GainExperiment extends Experiment {
 
     int refIndexPlusOne = (refIndex + 1) % NUMBER_TO_LOAD;
 
+    double[] statistics = getRangeStatistics(refIndex, lowerBound, upperBound);
+    double ratio = statistics[2];
+    double sigma = statistics[3];
+
+    double refGain = gainStage1[refIndex];
+    double calcGain = gainStage1[refIndexPlusOne] / Math.sqrt(ratio);
+
+    double normalFreqRef = A0Freqs[refIndex];
+    double normalFreqCalc = A0Freqs[refIndexPlusOne];
+
+    return new double[]{Math.sqrt(ratio), sigma, refGain, calcGain, normalFreqRef, normalFreqCalc};
+  }
+
+  /**
+   * Get the mean magnitude of each PSD over a range of indices, and the ratio of the means and the
+   * deviation of the point-by-point ratio from it, using the precomputed running sums. These are
+   * the same values NumericUtils.getFFTMean and getFFTSDev give for the range: the bounds are
+   * inclusive and the sums are divided by the width of the range (upper minus lower bound).
+   *
+   * @param refIndex Index of the reference PSD (numerator of the ratio)
+   * @param lowerBound Lower-bound index of PSDs' frequency array
+   * @param upperBound Upper-bound index of PSDs' frequency array
+   * @return Array of form {reference mean, other mean, ratio of means, standard deviation}
+   */
+  double[] getRangeStatistics(int refIndex, int lowerBound, int upperBound) {
+
+    int refIndexPlusOne = (refIndex + 1) % NUMBER_TO_LOAD;
+
     // make sure lowInd really is the lower index
     int temp = Math.min(lowerBound, upperBound);
     upperBound = Math.max(lowerBound, upperBound);
     lowerBound = temp;
 
-    FFTResult plot0 = fftResults[refIndex];
-    FFTResult plot1 = fftResults[refIndexPlusOne];
+    // both PSDs have the same frequencies since their intervals match
+    upperBound = Math.min(upperBound, ratioSums[refIndex].length - 2);
+    lowerBound = Math.min(lowerBound, upperBound);
+    int range = upperBound - lowerBound;
+    int points = range + 1;
 
-    double mean0 = getFFTMean(plot0, lowerBound, upperBound);
-    // since both datasets must have matching interval, PSDs have same frequencies
-    double mean1 = getFFTMean(plot1, lowerBound, upperBound);
+    double mean0 = (magnitudeSums[refIndex][upperBound + 1] - magnitudeSums[refIndex][lowerBound])
+        / range;
+    double mean1 = (magnitudeSums[refIndexPlusOne][upperBound + 1]
+        - magnitudeSums[refIndexPlusOne][lowerBound]) / range;
 
     // double MIN_VALUE field is effectively java's machine epsilon
     // calculate ratio and sigma over the range
     double ratio = (mean0 + Double.MIN_VALUE) / (mean1 + Double.MIN_VALUE);
     // added terms exist to prevent division by 0
 
-    double sigma = getFFTSDev(plot0, plot1, ratio, lowerBound, upperBound);
+    // sum of (r - ratio)^2 over the range, expanded into the sums of r and r^2
+    double sum = ratioSums[refIndex][upperBound + 1] - ratioSums[refIndex][lowerBound];
+    double squareSum =
+        ratioSquareSums[refIndex][upperBound + 1] - ratioSquareSums[refIndex][lowerBound];
+    double deviation = squareSum - 2 * ratio * sum + ratio * ratio * points;
+    double sigma = Math.sqrt(Math.max(deviation, 0.) / range);
 
-    double refGain = gainStage1[refIndex];
-    double calcGain = gainStage1[refIndexPlusOne] / Math.sqrt(ratio);
-
-    double normalFreqRef = A0Freqs[refIndex];
-    double normalFreqCalc = A0Freqs[refIndexPlusOne];
+    return new double[]{mean0, mean1, ratio, sigma};
+  }
 
-    return new double[]{Math.sqrt(ratio), sigma, refGain, calcGain, normalFreqRef, normalFreqCalc};
+  /**
+   * Used for testing.
+   *
+   * @param psds PSDs of the two inputs, to take statistics from as if they came from a run
+   */
+  void setPSDs(FFTResult[] psds) {
+    fftResults = psds.clone();
+    accumulateSums();
   }
 
   @Override
@@ -117,19 +117,24 @@ public class GainSixExperiment extends Experiment {
     double[] east2Sensor = eastRotate.getData();
 
     // see also the rotation used in the 9-input self noise backend
-    fireStateChange("Getting second north sensor orientation...");
-    northAngle = -AzimuthExperiment.getAzimuth(northRefSensor, eastRefSensor,
-        northRotateSensor, interval, start, end);
+    // reference data is preprocessed once and shared by both (concurrent) orientation solves
+    fireStateChange("Getting second north and east sensor orientations...");
+    AzimuthExperiment.PreparedReference preparedReference =
+        new AzimuthExperiment.PreparedReference(northRefSensor, eastRefSensor, interval);
+    double[][] toAlign = new double[][]{northRotateSensor, east2Sensor};
+    double[] azimuths = new double[toAlign.length];
+    IntStream.range(0, toAlign.length).parallel().forEach(i ->
+        azimuths[i] = AzimuthExperiment.getAzimuth(preparedReference, toAlign[i], start, end)
+    );
+    northAngle = -azimuths[0];
 
-    fireStateChange("Getting second east sensor orientation...");
     // direction north angle should be if north and east truly orthogonal
     // then east component is x component of rotation in that direction
     // i.e., need to correct by 90 degrees to get rotation angle rather than
     // azimuth of east sensor
     // offset by 3Pi/2 is the same as offset Pi/2 (90 degrees) in other
     // rotation direction
-    eastAngle = -AzimuthExperiment.getAzimuth(northRefSensor, eastRefSensor,
-        east2Sensor, interval, start, end) + (3 * Math.PI / 2);
+    eastAngle = -azimuths[1] + (3 * Math.PI / 2);
 
     // now to rotate the data according to these angles
     fireStateChange("Rotating data...");
@@ -146,6 +151,7 @@ public class GainSixExperiment extends Experiment {
     //for (int i = 0; i < DIMENSIONS; ++i) {
     IntStream.range(0, DIMENSIONS).parallel().forEach(i -> {
       fireStateChange("Running calculations on " + direction[i] + " components...");
+      componentBackends[i].setPlotBinsPerOctave(plotBinsPerOctave);
       componentBackends[i].runExperimentOnData(stores[i]);
     });
 
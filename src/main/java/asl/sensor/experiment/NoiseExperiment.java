@@ -1,10 +1,20 @@
 package asl.sensor.experiment;
 
+import static asl.utils.TimeSeriesUtils.ONE_HZ_INTERVAL;
+import static asl.utils.TimeSeriesUtils.getFirstTimeSeries;
+
 import asl.sensor.input.DataStore;
+import asl.sensor.input.ResponseCache;
 import asl.utils.FFTResult;
 import asl.utils.input.DataBlock;
 import asl.utils.input.InstrumentResponse;
+import edu.iris.dmc.seedcodec.CodecException;
+import edu.sc.seis.seisFile.mseed.SeedFormatException;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
 import org.apache.commons.math3.complex.Complex;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
@@ -32,11 +42,28 @@ public class NoiseExperiment extends Experiment {
 
   protected static final int DATA_NEEDED = 3;
 
+  /**
+   * Approximate length of each spectral segment for streaming noise calculations, in seconds.
+   * This resolves periods of a few hours while still giving over a dozen segments per day.
+   */
+  private static final double STREAMING_SEGMENT_SECONDS = 16384.;
+
+  private static final long ONE_DAY_MS = 86400000L;
+
   /**
    * To keep track of the response data used in this experiment
    */
   int[] respIndices;
 
+  // state for streaming noise calculations, where data is added a chunk at a time
+  private CrossSpectralAccumulator streamingSpectra; // over all completed days
+  private CrossSpectralAccumulator dailySpectra; // over the current day only
+  private InstrumentResponse[] streamingResponses;
+  private String[] streamingNames;
+  private int streamingSegmentLength;
+  private long currentDay; // days since epoch
+  private List<DailyNoise> dailyNoise;
+
   /**
    * Instantiates a noise experiment -- axis titles and scales
    */
@@ -67,66 +94,75 @@ public class NoiseExperiment extends Experiment {
   @Override
   protected void backend(final DataStore dataStore) {
 
-    XYSeriesCollection xysc = new XYSeriesCollection();
-    xysc.setAutoWidth(true);
-
     // there are 3 inputs required in order to do this calculation correctly
     respIndices = new int[DATA_NEEDED]; // first 3 fully-loaded data sets
 
     // get the first (index.length) seed/resp pairs. while we expect to
     // have the first three plots be the ones with loaded data, in general
     // it is probably better to keep the program flexible against valid input
-    int maxLength = Integer.MAX_VALUE;
     for (int i = 0; i < respIndices.length; ++i) {
       // xth fully loaded function begins at 1
       int idx = dataStore.getXthFullyLoadedIndex(i + 1);
       respIndices[i] = idx;
       dataNames.add(dataStore.getBlock(idx).getName());
-      maxLength = Math.min(maxLength, dataStore.getBlock(idx).size());
       dataNames.add(dataStore.getResponse(idx).getName());
     }
 
-    DataBlock[] dataIn = new DataBlock[respIndices.length];
-    InstrumentResponse[] responses = new InstrumentResponse[respIndices.length];
+    xySeriesData.add(getNoiseData(dataStore, respIndices));
+  }
 
-    for (int i = 0; i < respIndices.length; ++i) {
-      dataIn[i] = dataStore.getBlock(respIndices[i]);
-      responses[i] = dataStore.getResponse(respIndices[i]);
-    }
+  /**
+   * Get the PSDs and self-noise of three sets of data and plot them. The PSDs come from the data
+   * store, as they do for SpectrumExperiment, and the cross-powers from FFTResult.crossPower.
+   *
+   * @param dataStore Data and responses, which should already have matching sample intervals
+   * @param indices Indices in the data store of the three sets of data to use
+   * @return Plots of each input's PSD and self-noise along with the low and high noise models
+   */
+  XYSeriesCollection getNoiseData(final DataStore dataStore, final int[] indices) {
 
-    Complex[][] spectra = new Complex[DATA_NEEDED][];
-    double[] freqs = new double[]{}; // initialize to prevent later errors
+    XYSeriesCollection xysc = new XYSeriesCollection();
+    xysc.setAutoWidth(true);
 
-    // gets the PSDs of each given index for given freqSpace
-    for (int i = 0; i < respIndices.length; ++i) {
-      int idx = respIndices[i];
-      fireStateChange("Getting PSDs of data " + (idx + 1) + "...");
-      String name = "PSD " + dataStore.getBlock(idx).getName() + " [" + idx + "]";
-      XYSeries powerSeries = new XYSeries(name);
-      FFTResult psdCalc = dataStore.getPSD(idx, maxLength);
-      Complex[] fft = psdCalc.getFFT();
-      spectra[i] = fft;
-      freqs = psdCalc.getFreqs();
-      addToPlot(powerSeries, fft, freqs, freqSpace, xysc);
-    }
+    int maxLength = Integer.MAX_VALUE;
+    DataBlock[] dataIn = new DataBlock[indices.length];
+    InstrumentResponse[] responses = new InstrumentResponse[indices.length];
 
-    String getting = "Getting crosspower of series ";
+    for (int i = 0; i < indices.length; ++i) {
+      dataIn[i] = dataStore.getBlock(indices[i]);
+      responses[i] = dataStore.getResponse(indices[i]);
+      maxLength = Math.min(maxLength, dataIn[i].size());
+    }
 
-    // spectra[i] is crosspower pii, now to get pij terms for i!=j
-    fireStateChange(getting + "1 & 3");
-    FFTResult fft =
-        FFTResult.crossPower(dataIn[0], dataIn[2], responses[0], responses[2], maxLength);
-    Complex[] c13 = fft.getFFT();
+    fireStateChange("Getting PSDs and crosspowers of data...");
+    // the PSDs p11, p22, p33 followed by the crosspowers p13, p21, p23
+    final int[][] pairs = {{0, 0}, {1, 1}, {2, 2}, {0, 2}, {1, 0}, {1, 2}};
+    final FFTResult[] results = new FFTResult[pairs.length];
+    final int length = maxLength;
+    IntStream.range(0, pairs.length).parallel().forEach(i -> {
+      int first = pairs[i][0];
+      int second = pairs[i][1];
+      if (first == second) {
+        results[i] = dataStore.getPSD(indices[first], length);
+      } else {
+        results[i] = FFTResult.crossPower(dataIn[first], dataIn[second],
+            responses[first], responses[second], length);
+      }
+    });
 
-    fireStateChange(getting + "2 & 1");
-    fft =
-        FFTResult.crossPower(dataIn[1], dataIn[0], responses[1], responses[0], maxLength);
-    Complex[] c21 = fft.getFFT();
+    Complex[][] spectra = new Complex[DATA_NEEDED][];
+    double[] freqs = results[0].getFreqs();
+    for (int i = 0; i < DATA_NEEDED; ++i) {
+      int idx = indices[i];
+      String name = "PSD " + dataIn[i].getName() + " [" + idx + "]";
+      XYSeries powerSeries = new XYSeries(name);
+      spectra[i] = results[i].getFFT();
+      addToPlot(powerSeries, spectra[i], freqs, freqSpace, xysc);
+    }
 
-    fireStateChange(getting + "2 & 3");
-    fft =
-        FFTResult.crossPower(dataIn[1], dataIn[2], responses[1], responses[2], maxLength);
-    Complex[] c23 = fft.getFFT();
+    Complex[] c13 = results[3].getFFT();
+    Complex[] c21 = results[4].getFFT();
+    Complex[] c23 = results[5].getFFT();
 
     // WIP: use PSD results to get noise at each point see spectra
     XYSeries[] noiseSeriesArr = new XYSeries[DATA_NEEDED];
@@ -138,18 +174,42 @@ public class NoiseExperiment extends Experiment {
 
     fireStateChange("Doing noise estimation calculations...");
 
+    Complex[][] noise = getSelfNoise(spectra, c13, c21, c23);
+
+    // now that we've calculated the noise, add it to the plot w/ smoothing applied
+    // (the point at 0 Hz has no noise estimate, so it is left out)
+    double[] noiseRange = Arrays.copyOfRange(freqs, 1, freqs.length);
+    for (int i = 0; i < noiseSeriesArr.length; ++i) {
+      Complex[] noiseData = Arrays.copyOfRange(noise[i], 1, noise[i].length);
+      XYSeries noiseSeries = noiseSeriesArr[i];
+      addToPlot(noiseSeries, noiseData, noiseRange, freqSpace, xysc);
+    }
+
+    xysc.addSeries(FFTResult.getLowNoiseModel(freqSpace));
+    xysc.addSeries(FFTResult.getHighNoiseModel(freqSpace));
+
+    return xysc;
+  }
+
+  /**
+   * Calculate the self-noise of each of three sensors from their power and cross-power spectra
+   * using the Sleeman three-channel formula.
+   *
+   * @param spectra Power spectrum of each sensor (p11, p22, p33)
+   * @param c13 Cross-power of sensors 1 and 3
+   * @param c21 Cross-power of sensors 2 and 1
+   * @param c23 Cross-power of sensors 2 and 3
+   * @return Noise of each sensor at each frequency (the point at 0 Hz is set to 0)
+   */
+  static Complex[][] getSelfNoise(Complex[][] spectra, Complex[] c13, Complex[] c21,
+      Complex[] c23) {
     Complex[][] noise = new Complex[DATA_NEEDED][];
     for (int i = 0; i < noise.length; ++i) {
       noise[i] = new Complex[spectra[0].length];
       noise[i][0] = Complex.ZERO;
     }
 
-    final double[] finalFreqs = freqs;
-    for (int i = 1; i < freqs.length; ++i) {
-      if ((1. / finalFreqs[i]) > MAX_PLOT_PERIOD) {
-        return;
-      }
-
+    for (int i = 1; i < spectra[0].length; ++i) {
       Complex p11 = spectra[0][i];
       Complex p22 = spectra[1][i];
       Complex p33 = spectra[2][i];
@@ -171,22 +231,253 @@ public class NoiseExperiment extends Experiment {
       noise[2][i] =
           p33.subtract(
               p23.multiply(p13.conjugate()).divide(p21)); //n_33
+    }
+    return noise;
+  }
+
+  /**
+   * Begin a streaming noise calculation, where data spanning days to months is added in chunks
+   * (i.e., a day file per sensor at a time) rather than loaded all at once. Each chunk is folded
+   * into running Welch averages of the auto- and cross-power spectra of the current UTC day and
+   * then discarded, so memory use depends only on the spectral segment length and the size of a
+   * single chunk, not on the total length of the data. Noise is calculated for each day (see
+   * getDailyNoise), so changes in a sensor's noise over time can be tracked, and each finished
+   * day's spectral sums are added into the totals for the whole span of the data, so every segment
+   * is only transformed once. Segments do not cross day boundaries, so the span totals are those of
+   * the segments of each day. Any previously accumulated streaming data is discarded.
+   *
+   * @param responses Response of each of the three sensors
+   * @param interval Sample interval of the data to be added in ms
+   */
+  public void startStreamingNoise(InstrumentResponse[] responses, long interval) {
+    if (responses.length != DATA_NEEDED) {
+      throw new IllegalArgumentException("Expected " + DATA_NEEDED + " responses, got "
+          + responses.length);
+    }
+    int targetLength = (int) (STREAMING_SEGMENT_SECONDS * ONE_HZ_INTERVAL / interval);
+    // largest power of 2 not exceeding the target, so no zero-padding is needed for the FFT
+    streamingSegmentLength = Integer.highestOneBit(Math.max(targetLength, 4));
+    streamingSpectra = new CrossSpectralAccumulator(DATA_NEEDED, streamingSegmentLength, interval);
+    dailySpectra = new CrossSpectralAccumulator(DATA_NEEDED, streamingSegmentLength, interval);
+    streamingResponses = responses.clone();
+    streamingNames = null;
+    dailyNoise = new ArrayList<>();
+    start = 0L;
+    end = 0L;
+  }
 
+  /**
+   * Add the next chunk of data to a streaming noise calculation begun with startStreamingNoise.
+   * Chunks are expected to follow on from the previous chunk; if there is a gap (or overlap)
+   * between them, any partially-filled spectral segment is dropped so that no segment spans the
+   * discontinuity. Chunks may cross a day boundary, in which case the noise of the completed day
+   * is calculated and the next day's averages are started.
+   *
+   * @param blocks Next chunk of data from each of the three sensors, in the same order as the
+   * responses, all covering the same time range
+   */
+  public void addStreamingData(DataBlock... blocks) {
+    if (streamingSpectra == null) {
+      throw new IllegalStateException("Streaming noise calculation has not been started");
+    }
+    if (blocks.length != DATA_NEEDED) {
+      throw new IllegalArgumentException("Expected data for " + DATA_NEEDED + " sensors, got "
+          + blocks.length);
+    }
+    long interval = streamingSpectra.getInterval();
+    int length = Integer.MAX_VALUE;
+    for (DataBlock block : blocks) {
+      if (block.getInterval() != interval) {
+        throw new IllegalArgumentException("Data interval does not match streaming interval");
+      }
+      length = Math.min(length, block.size());
     }
 
-    // now that we've calculated the noise, add it to the plot w/ smoothing applied
+    long blockStart = blocks[0].getStartTime();
+    if (streamingNames == null) {
+      streamingNames = new String[DATA_NEEDED];
+      for (int i = 0; i < DATA_NEEDED; ++i) {
+        streamingNames[i] = blocks[i].getName();
+      }
+      start = blockStart;
+      currentDay = Math.floorDiv(blockStart, ONE_DAY_MS);
+    } else if (Math.abs(blockStart - end) > interval / 2) {
+      dailySpectra.discardPending();
+    }
+
+    double[][] data = new double[DATA_NEEDED][];
+    for (int i = 0; i < DATA_NEEDED; ++i) {
+      data[i] = Arrays.copyOf(blocks[i].getData(), length);
+    }
+
+    // split the chunk at any day boundaries it crosses
+    int offset = 0;
+    while (offset < length) {
+      long sampleTime = blockStart + offset * interval;
+      long day = Math.floorDiv(sampleTime, ONE_DAY_MS);
+      if (day != currentDay) {
+        finishStreamingDay();
+        currentDay = day;
+      }
+      long untilNextDay = (day + 1) * ONE_DAY_MS - sampleTime;
+      int dayEnd = (int) Math.min(length, offset + (untilNextDay + interval - 1) / interval);
+      double[][] dayData = new double[DATA_NEEDED][];
+      for (int i = 0; i < DATA_NEEDED; ++i) {
+        dayData[i] = Arrays.copyOfRange(data[i], offset, dayEnd);
+      }
+      dailySpectra.append(dayData);
+      offset = dayEnd;
+    }
+    end = blockStart + length * interval;
+  }
+
+  /**
+   * Decode the next file of each sensor's data and add it to a streaming noise calculation (see
+   * addStreamingData). The data is trimmed to the range the three files have in common. Only
+   * these three files are held in memory at a time, so a long span of data can be processed by
+   * calling this once per day file.
+   *
+   * @param fileNames Name of the next data file for each of the three sensors
+   * @throws IOException If a string does not refer to a valid accessible file
+   * @throws SeedFormatException If a data file cannot be parsed as a seed file
+   * @throws CodecException If there is an issue with the compression of the seed files
+   */
+  public void addStreamingFiles(String... fileNames)
+      throws IOException, SeedFormatException, CodecException {
+    DataBlock[] blocks = new DataBlock[fileNames.length];
+    long commonStart = Long.MIN_VALUE;
+    long commonEnd = Long.MAX_VALUE;
+    for (int i = 0; i < fileNames.length; ++i) {
+      blocks[i] = getFirstTimeSeries(fileNames[i]);
+      commonStart = Math.max(commonStart, blocks[i].getStartTime());
+      commonEnd = Math.min(commonEnd, blocks[i].getEndTime());
+    }
+    for (DataBlock block : blocks) {
+      block.trim(commonStart, commonEnd);
+    }
+    addStreamingData(blocks);
+  }
+
+  /**
+   * Finish a streaming noise calculation, calculating the noise of the last (possibly partial) day
+   * and producing the PSD and noise plots over the whole span of data that was added. After this
+   * is called, no more data can be added until a new calculation is started.
+   *
+   * @throws IllegalStateException if there was not enough data to produce a spectrum
+   */
+  public void finishStreamingNoise() {
+    if (streamingSpectra == null) {
+      throw new IllegalStateException("Streaming noise calculation has not been started");
+    }
+    finishStreamingDay();
+
+    dataNames = new ArrayList<>();
+    xySeriesData = new ArrayList<>();
+    for (int i = 0; i < DATA_NEEDED; ++i) {
+      dataNames.add(streamingNames[i]);
+      dataNames.add(streamingResponses[i].getName());
+    }
+
+    XYSeriesCollection xysc = new XYSeriesCollection();
+    xysc.setAutoWidth(true);
+    fireStateChange("Getting accumulated PSDs of data...");
+    Complex[][] spectra = getCorrectedSpectra(streamingSpectra, streamingResponses);
+    double[] freqs = streamingSpectra.getFrequencies();
+    for (int i = 0; i < DATA_NEEDED; ++i) {
+      String name = "PSD " + streamingNames[i] + " [" + i + "]";
+      addToPlot(new XYSeries(name), spectra[i], freqs, freqSpace, xysc);
+    }
+
+    fireStateChange("Doing noise estimation calculations...");
+    Complex[][] noise = getSelfNoise(spectra, spectra[3], spectra[4], spectra[5]);
     double[] noiseRange = Arrays.copyOfRange(freqs, 1, freqs.length);
-    for (int i = 0; i < noiseSeriesArr.length; ++i) {
-      Complex[] noiseData = noise[i];
-      XYSeries noiseSeries = noiseSeriesArr[i];
+    for (int i = 0; i < DATA_NEEDED; ++i) {
+      XYSeries noiseSeries = new XYSeries("Noise " + streamingNames[i] + " [" + i + "]");
+      Complex[] noiseData = Arrays.copyOfRange(noise[i], 1, noise[i].length);
       addToPlot(noiseSeries, noiseData, noiseRange, freqSpace, xysc);
     }
 
     xysc.addSeries(FFTResult.getLowNoiseModel(freqSpace));
     xysc.addSeries(FFTResult.getHighNoiseModel(freqSpace));
-
     xySeriesData.add(xysc);
 
+    streamingSpectra = null;
+    dailySpectra = null;
+  }
+
+  /**
+   * Calculate the noise of the day currently being accumulated, if it has enough data for a
+   * spectrum, add its spectral sums to the totals over all days, and start accumulating a new day
+   */
+  private void finishStreamingDay() {
+    if (dailySpectra.getSegmentCount() > 0) {
+      Complex[][] spectra = getCorrectedSpectra(dailySpectra, streamingResponses);
+      Complex[][] noise = getSelfNoise(spectra, spectra[3], spectra[4], spectra[5]);
+      dailyNoise.add(new DailyNoise(currentDay * ONE_DAY_MS, dailySpectra.getSegmentCount(),
+          dailySpectra.getFrequencies(), noise));
+      streamingSpectra.merge(dailySpectra);
+    }
+    dailySpectra = new CrossSpectralAccumulator(DATA_NEEDED, streamingSegmentLength,
+        streamingSpectra.getInterval());
+  }
+
+  /**
+   * Get the response-corrected spectra used by the noise calculation from accumulated spectra
+   *
+   * @param accumulator Accumulated spectra of the three sensors
+   * @param sensorResponses Response of each of the three sensors
+   * @return Array of the PSDs p11, p22, p33 followed by the cross-powers p13, p21, p23
+   */
+  private static Complex[][] getCorrectedSpectra(CrossSpectralAccumulator accumulator,
+      InstrumentResponse[] sensorResponses) {
+    double[] freqs = accumulator.getFrequencies();
+    Complex[][] responses = new Complex[DATA_NEEDED][];
+    for (int i = 0; i < DATA_NEEDED; ++i) {
+      responses[i] = ResponseCache.applyResponseToInput(sensorResponses[i], freqs);
+    }
+    int[][] pairs = {{0, 0}, {1, 1}, {2, 2}, {0, 2}, {1, 0}, {1, 2}};
+    Complex[][] spectra = new Complex[pairs.length][];
+    for (int i = 0; i < pairs.length; ++i) {
+      int first = pairs[i][0];
+      int second = pairs[i][1];
+      spectra[i] = removeResponse(accumulator.getCrossSpectrum(first, second),
+          responses[first], responses[second]);
+    }
+    return spectra;
+  }
+
+  /**
+   * Remove the response of two sensors from their cross-power spectrum, in place
+   *
+   * @param spectrum Cross-power of the two sensors' uncorrected data
+   * @param firstResponse Response of the first sensor evaluated at the spectrum's frequencies
+   * @param secondResponse Response of the second sensor evaluated at the same frequencies
+   * @return The spectrum divided by firstResponse * conj(secondResponse) at each frequency
+   */
+  static Complex[] removeResponse(Complex[] spectrum, Complex[] firstResponse,
+      Complex[] secondResponse) {
+    for (int k = 0; k < spectrum.length; ++k) {
+      Complex scale = firstResponse[k].multiply(secondResponse[k].conjugate());
+      if (scale.abs() == 0.) {
+        scale = new Complex(Double.MIN_VALUE, 0.);
+      }
+      spectrum[k] = spectrum[k].divide(scale);
+    }
+    return spectrum;
+  }
+
+  /**
+   * Get the noise of each UTC day of data added to a streaming noise calculation, in order. A
+   * day's noise is available once data from a later day has been added or the calculation has
+   * been finished. Days with less data than one spectral segment are not included.
+   *
+   * @return Noise calculated for each day
+   */
+  public List<DailyNoise> getDailyNoise() {
+    if (dailyNoise == null) {
+      return new ArrayList<>();
+    }
+    return new ArrayList<>(dailyNoise);
   }
 
   @Override
@@ -224,4 +515,81 @@ public class NoiseExperiment extends Experiment {
     this.freqSpace = freqSpace;
   }
 
+  /**
+   * Self-noise of the three sensors over a single UTC day of a streaming noise calculation
+   */
+  public static class DailyNoise {
+
+    private final long dayStart;
+    private final int segmentCount;
+    private final double[] freqs;
+    private final double[][] noise;
+
+    private DailyNoise(long dayStart, int segmentCount, double[] freqs, Complex[][] noise) {
+      this.dayStart = dayStart;
+      this.segmentCount = segmentCount;
+      // the point at 0 Hz has no noise estimate, so it is left out
+      this.freqs = Arrays.copyOfRange(freqs, 1, freqs.length);
+      this.noise = new double[noise.length][this.freqs.length];
+      for (int i = 0; i < noise.length; ++i) {
+        for (int j = 0; j < this.freqs.length; ++j) {
+          this.noise[i][j] = 10 * Math.log10(noise[i][j + 1].abs());
+        }
+      }
+    }
+
+    /**
+     * @return Start of the day as epoch milliseconds
+     */
+    public long getDayStart() {
+      return dayStart;
+    }
+
+    /**
+     * @return Number of spectral segments averaged over the day
+     */
+    public int getSegmentCount() {
+      return segmentCount;
+    }
+
+    /**
+     * @return Frequencies (Hz) of each point of the noise estimates
+     */
+    public double[] getFrequencies() {
+      return freqs.clone();
+    }
+
+    /**
+     * Get the noise of one of the sensors
+     *
+     * @param sensor Index of the sensor (0 to 2)
+     * @return Noise in dB at each frequency
+     */
+    public double[] getNoise(int sensor) {
+      return noise[sensor].clone();
+    }
+
+    /**
+     * Get the mean noise of one of the sensors over a range of periods, i.e., a single value
+     * that can be compared from day to day
+     *
+     * @param sensor Index of the sensor (0 to 2)
+     * @param lowPeriod Shortest period of the range (s)
+     * @param highPeriod Longest period of the range (s)
+     * @return Mean noise in dB over the period range (NaN if no points are in the range)
+     */
+    public double getMeanNoise(int sensor, double lowPeriod, double highPeriod) {
+      double sum = 0.;
+      int count = 0;
+      for (int i = 0; i < freqs.length; ++i) {
+        double period = 1. / freqs[i];
+        if (period >= lowPeriod && period <= highPeriod) {
+          sum += noise[sensor][i];
+          ++count;
+        }
+      }
+      return sum / count;
+    }
+  }
+
 }
@@ -0,0 +1,211 @@
+package asl.sensor.experiment;
+
+import static asl.sensor.experiment.NoiseExperiment.removeResponse;
+
+import asl.sensor.input.DataStore;
+import asl.sensor.input.ResponseCache;
+import asl.utils.FFTResult;
+import asl.utils.input.DataBlock;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import org.apache.commons.math3.complex.Complex;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+/**
+ * Produces the data for a self-noise test of any number of co-located sensors (at least three, up
+ * to the number of inputs a DataStore can hold) in a single pass. Where the 3-channel Sleeman
+ * calculation in NoiseExperiment would have to be repeated for every triplet of sensors, this
+ * takes the FFT of each sensor's data once, builds the full matrix of power and cross-power
+ * spectra from them, and then estimates each sensor's noise from every other pair of sensors at
+ * once.
+ *
+ * For sensors i, j, k recording a common signal, p_ij * p_ki / p_kj gives the coherent part of
+ * sensor i's power, which is what the Sleeman formula subtracts from p_ii. With more than two
+ * reference sensors there is one such ratio for every ordered pair of references, so the coherent
+ * power is instead taken as the least-squares solution of p_ij * p_ki = c_i * p_kj over all of
+ * them. This weights each pair by its cross-power, so that well-correlated references dominate the
+ * estimate. For exactly three sensors the result is the real part of the Sleeman estimate.
+ */
+public class NoiseMultiExperiment extends Experiment {
+
+  /**
+   * Fewest sensors the noise can be estimated from
+   */
+  private static final int MIN_DATA_NEEDED = 3;
+
+  /**
+   * Controls plotting in Hz vs. time interval between samples
+   */
+  private boolean freqSpace;
+
+  /**
+   * To keep track of the response data used in this experiment
+   */
+  private int[] respIndices;
+
+  public NoiseMultiExperiment() {
+    super();
+    respIndices = new int[]{};
+    freqSpace = false;
+  }
+
+  @Override
+  public String[] getInsetStrings() {
+    return new String[]{getFormattedDateRange()};
+  }
+
+  /**
+   * Calculates the cross-spectral matrix of every fully loaded set of data (each sensor's data
+   * is transformed only once per segment) and then the self-noise of each sensor from it. The
+   * data is cut to the length of the shortest input and split into segments 1/4 of that length,
+   * each overlapping the next by 75%, as FFTResult.crossPower splits the data for NoiseExperiment.
+   * The taper and scaling are those of CrossSpectralAccumulator, so the spectra can still differ
+   * slightly from those of the 3-channel calculation.
+   */
+  @Override
+  protected void backend(final DataStore dataStore) {
+
+    int sensorCount = 0;
+    for (int i = 0; i < DataStore.FILE_COUNT; ++i) {
+      if (dataStore.bothComponentsSet(i)) {
+        ++sensorCount;
+      }
+    }
+
+    respIndices = new int[sensorCount];
+    DataBlock[] dataIn = new DataBlock[sensorCount];
+    int length = Integer.MAX_VALUE;
+    for (int i = 0; i < sensorCount; ++i) {
+      // xth fully loaded function begins at 1
+      int idx = dataStore.getXthFullyLoadedIndex(i + 1);
+      respIndices[i] = idx;
+      dataIn[i] = dataStore.getBlock(idx);
+      dataNames.add(dataIn[i].getName());
+      dataNames.add(dataStore.getResponse(idx).getName());
+      length = Math.min(length, dataIn[i].size());
+    }
+
+    fireStateChange("Getting cross-spectral matrix of data...");
+    CrossSpectralAccumulator accumulator = new CrossSpectralAccumulator(sensorCount,
+        CrossSpectralAccumulator.getCrossPowerSegmentLength(length), dataIn[0].getInterval());
+    double[][] data = new double[sensorCount][];
+    for (int i = 0; i < sensorCount; ++i) {
+      data[i] = Arrays.copyOf(dataIn[i].getData(), length);
+    }
+    accumulator.append(data);
+
+    final double[] freqs = accumulator.getFrequencies();
+    final Complex[][] responses = new Complex[sensorCount][];
+    IntStream.range(0, sensorCount).parallel().forEach(i ->
+        responses[i] =
+            ResponseCache.applyResponseToInput(dataStore.getResponse(respIndices[i]), freqs));
+
+    Complex[][][] spectra = new Complex[sensorCount][sensorCount][];
+    for (int i = 0; i < sensorCount; ++i) {
+      for (int j = 0; j < sensorCount; ++j) {
+        spectra[i][j] =
+            removeResponse(accumulator.getCrossSpectrum(i, j), responses[i], responses[j]);
+      }
+    }
+
+    XYSeriesCollection xysc = new XYSeriesCollection();
+    xysc.setAutoWidth(true);
+    for (int i = 0; i < sensorCount; ++i) {
+      String name = "PSD " + dataIn[i].getName() + " [" + respIndices[i] + "]";
+      addToPlot(new XYSeries(name), spectra[i][i], freqs, freqSpace, xysc);
+    }
+
+    fireStateChange("Doing noise estimation calculations...");
+    Complex[][] noise = getIncoherentNoise(spectra);
+
+    double[] noiseRange = Arrays.copyOfRange(freqs, 1, freqs.length);
+    for (int i = 0; i < sensorCount; ++i) {
+      String name = "Noise " + dataIn[i].getName() + " [" + respIndices[i] + "]";
+      XYSeries noiseSeries = new XYSeries(name);
+      Complex[] noiseData = Arrays.copyOfRange(noise[i], 1, noise[i].length);
+      addToPlot(noiseSeries, noiseData, noiseRange, freqSpace, xysc);
+    }
+
+    xysc.addSeries(FFTResult.getLowNoiseModel(freqSpace));
+    xysc.addSeries(FFTResult.getHighNoiseModel(freqSpace));
+    xySeriesData.add(xysc);
+  }
+
+  /**
+   * Estimate the incoherent (self-) noise of each of a set of sensors from their full
+   * cross-spectral matrix. The coherent power of sensor i is the least-squares fit of
+   * p_ij * p_ki = c_i * p_kj over every ordered pair of distinct reference sensors j, k, that is,
+   * c_i = sum(p_ij * p_ki * conj(p_kj)) / sum(|p_kj|^2), and its noise is p_ii - c_i.
+   *
+   * @param spectra Power and cross-power spectra of each pair of sensors, where spectra[i][j] is
+   * the cross-power of sensors i and j (and spectra[i][i] the power of sensor i); at least three
+   * sensors are required
+   * @return Noise of each sensor at each frequency (the point at 0 Hz is set to 0). The values
+   * are real, but are returned as complex numbers to match the 3-channel calculation.
+   */
+  static Complex[][] getIncoherentNoise(final Complex[][][] spectra) {
+    final int sensorCount = spectra.length;
+    if (sensorCount < MIN_DATA_NEEDED) {
+      throw new IllegalArgumentException("Noise estimation needs at least " + MIN_DATA_NEEDED
+          + " sensors, got " + sensorCount);
+    }
+    final int freqCount = spectra[0][0].length;
+    final Complex[][] noise = new Complex[sensorCount][freqCount];
+
+    IntStream.range(0, sensorCount).parallel().forEach(i -> {
+      noise[i][0] = Complex.ZERO;
+      for (int f = 1; f < freqCount; ++f) {
+        double numerator = 0.;
+        double denominator = 0.;
+        for (int j = 0; j < sensorCount; ++j) {
+          for (int k = 0; k < sensorCount; ++k) {
+            if (j == i || k == i || j == k) {
+              continue;
+            }
+            Complex reference = spectra[k][j][f];
+            // the sum over all pairs is real, as the (j, k) and (k, j) terms are conjugates
+            numerator += spectra[i][j][f].multiply(spectra[k][i][f])
+                .multiply(reference.conjugate()).getReal();
+            denominator += reference.abs() * reference.abs();
+          }
+        }
+        double coherent = (denominator == 0.) ? 0. : numerator / denominator;
+        noise[i][f] = new Complex(spectra[i][i][f].getReal() - coherent, 0.);
+      }
+    });
+    return noise;
+  }
+
+  @Override
+  public int blocksNeeded() {
+    // number of input panel components to show; not all of them need to be filled
+    return DataStore.FILE_COUNT;
+  }
+
+  @Override
+  public boolean hasEnoughData(DataStore dataStore) {
+    int loaded = 0;
+    for (int i = 0; i < DataStore.FILE_COUNT; ++i) {
+      if (dataStore.bothComponentsSet(i)) {
+        ++loaded;
+      }
+    }
+    return loaded >= MIN_DATA_NEEDED;
+  }
+
+  @Override
+  public int[] listActiveResponseIndices() {
+    return respIndices;
+  }
+
+  /**
+   * Used to set the x-axis over which the PSDs are plotted,
+   * either frequency (Hz) units or sample-interval (s) units
+   *
+   * @param freqSpace True if the plot should use units of Hz
+   */
+  public void setFreqSpace(boolean freqSpace) {
+    this.freqSpace = freqSpace;
+  }
+}
@@ -5,6 +5,7 @@ import static asl.utils.TimeSeriesUtils.rotateX;
 
 import asl.sensor.input.DataStore;
 import asl.utils.input.DataBlock;
+import java.util.Arrays;
 import java.util.stream.IntStream;
 import org.jfree.data.xy.XYSeriesCollection;
 
@@ -161,6 +162,9 @@ public class NoiseNineExperiment extends NoiseExperiment {
     DataBlock eastRef = stores[1].getBlock(indexOfAngleRefData);
     double[] northReference = northRef.getData();
     double[] eastReference = eastRef.getData();
+    // reference data is preprocessed once and shared by every sensor's orientation solves
+    AzimuthExperiment.PreparedReference preparedReference =
+        new AzimuthExperiment.PreparedReference(northReference, eastReference, interval);
 
     // bound here is the number of unknown angles -- one is assumed to be fixed at N & E
     // for (int i = 0; i < DATA_NEEDED; ++i) {
@@ -181,21 +185,22 @@ public class NoiseNineExperiment extends NoiseExperiment {
 
       // angle is set negative because we are finding angle of reference input
       // which is what northRotateData is here
-      fireStateChange("Getting north sensor " + (i + 1)
-          + " orientation...");
-      northAngles[i] = -AzimuthExperiment.getAzimuth(northReference, eastReference,
-          northRotateData, interval, start, end);
+      fireStateChange("Getting north and east sensor " + (i + 1)
+          + " orientations...");
+      double[][] toAlign = new double[][]{northRotateData, eastRotateData};
+      double[] azimuths = new double[toAlign.length];
+      IntStream.range(0, toAlign.length).parallel().forEach(j ->
+          azimuths[j] = AzimuthExperiment.getAzimuth(preparedReference, toAlign[j], start, end)
+      );
+      northAngles[i] = -azimuths[0];
 
-      fireStateChange("Getting east sensor " + (i + 1)
-          + " orientation...");
       // direction north angle should be if north and east truly orthogonal
       // then east component is x component of rotation in that direction
       // i.e., need to correct by 90 degrees to get rotation angle rather than
       // azimuth of east sensor
       // offset by 3Pi/2 is the same as offset Pi/2 (90 degrees) in other
       // rotation direction
-      eastAngles[i] = -AzimuthExperiment.getAzimuth(northReference, eastReference,
-          eastRotateData, interval, start, end) + (3 * Math.PI / 2);
+      eastAngles[i] = -azimuths[1] + (3 * Math.PI / 2);
 
       fireStateChange("Rotating data " + (i + 1) + "...");
       DataBlock northUnknownRotate =
@@ -209,16 +214,13 @@ public class NoiseNineExperiment extends NoiseExperiment {
     // set components into N,E,Z directional subcomponents
 
     // get noise from each axis's data
-    NoiseExperiment noiseExp = new NoiseExperiment();
-    noiseExp.setFreqSpace(freqSpace);
-    String[] directions = new String[]{"north", "east", "vertical"};
-    for (int i = 0; i < DIMENSIONS; ++i) {
-      String sb = "Calculating " + directions[i] + " noise components...";
-      fireStateChange(sb);
-      noiseExp.runExperimentOnData(stores[i]);
-      XYSeriesCollection xys = noiseExp.getData().get(0);
-      xySeriesData.add(xys);
-    }
+    fireStateChange("Calculating north, east and vertical noise components...");
+    final int[] indices = new int[]{0, 1, 2};
+    XYSeriesCollection[] directionalNoise = new XYSeriesCollection[DIMENSIONS];
+    IntStream.range(0, DIMENSIONS).parallel().forEach(i ->
+        directionalNoise[i] = getNoiseData(stores[i], indices)
+    );
+    xySeriesData.addAll(Arrays.asList(directionalNoise));
 
   }
 
@@ -10,6 +10,7 @@ import static org.apache.commons.math3.linear.MatrixUtils.createRealVector;
 import asl.sensor.input.DataStore;
 import asl.utils.input.DataBlock;
 import java.util.Arrays;
+import java.util.stream.IntStream;
 import org.apache.commons.math3.linear.RealVector;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
@@ -118,14 +119,20 @@ public class OrthogonalExperiment extends Experiment {
     double[] testYArr = Arrays.copyOfRange(testLH1, 0, len);
     double[] testXArr = Arrays.copyOfRange(testLH2, 0, len);
 
-    AzimuthExperiment azi = new AzimuthExperiment();
-    azi.setSimple(false); // set to see if damped window estimates are hurting our results
-    fireStateChange("Getting y (north sensor) angle");
-    azi.alternateEntryPoint(refYArr, refXArr, testYArr, interval, start, end);
-    double angleY = -azi.getFitAngle(); // degrees
-    fireStateChange("Getting x (east sensor) angle");
-    azi.alternateEntryPoint(refYArr, refXArr, testXArr, interval, start, end);
-    double angleX = -azi.getFitAngle();
+    // reference data is preprocessed once and shared by both (concurrent) orientation solves
+    AzimuthExperiment.PreparedReference preparedReference =
+        new AzimuthExperiment.PreparedReference(refYArr, refXArr, interval);
+    double[][] toAlign = new double[][]{testYArr, testXArr};
+    double[] fitAngles = new double[toAlign.length];
+    fireStateChange("Getting y (north sensor) and x (east sensor) angles");
+    IntStream.range(0, toAlign.length).parallel().forEach(i -> {
+      AzimuthExperiment azi = new AzimuthExperiment();
+      azi.setSimple(false); // set to see if damped window estimates are hurting our results
+      azi.alternateEntryPoint(preparedReference, toAlign[i], start, end);
+      fitAngles[i] = azi.getFitAngle();
+    });
+    double angleY = -fitAngles[0]; // degrees
+    double angleX = -fitAngles[1];
 
     angle = Math.abs(angleY - angleX);
 
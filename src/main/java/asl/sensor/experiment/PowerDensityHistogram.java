@@ -0,0 +1,394 @@
+package asl.sensor.experiment;
+
+import static asl.utils.NumericUtils.demean;
+import static asl.utils.NumericUtils.detrend;
+import static asl.utils.TimeSeriesUtils.ONE_HZ_INTERVAL;
+
+import asl.sensor.input.ResponseCache;
+import asl.utils.FFTResult;
+import asl.utils.input.InstrumentResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.apache.commons.math3.complex.Complex;
+import org.jfree.data.xy.XYSeries;
+
+/**
+ * Histogram of the power spectral densities of many segments of data, binned by period and power
+ * level, i.e., the probability density function (PDF) of the PSD as described by McNamara and
+ * Buland: 'Ambient Noise Levels in the Continental United States', BSSA (2004).
+ * Rather than a single averaged PSD, this describes how often each power level was seen at each
+ * period, from which the mode, median and other percentile curves can be taken.
+ *
+ * Each segment's PSD is averaged over a full octave around each period bin's center (with bins
+ * spaced at a fraction of an octave), converted to dB and counted in the corresponding power bin.
+ * Only the counts are kept, in a single flat int array, so the memory used does not depend on how
+ * many segments have been added. Histograms with the same bins can be merged, so results from
+ * different files or days can be computed separately (or in parallel) and combined afterwards.
+ */
+public class PowerDensityHistogram {
+
+  /**
+   * Default number of period bins per octave
+   */
+  public static final int DEFAULT_BINS_PER_OCTAVE = 8;
+
+  /**
+   * Default range and width of the power bins, in dB
+   */
+  public static final double DEFAULT_MIN_POWER = -200.;
+  public static final double DEFAULT_MAX_POWER = -50.;
+  public static final double DEFAULT_POWER_STEP = 1.;
+
+  /**
+   * Approximate length of the segments data is split into by addData, in seconds
+   */
+  private static final double SEGMENT_SECONDS = 3600.;
+
+  /**
+   * Width of the cosine taper applied to each segment before taking its FFT
+   */
+  private static final double TAPER_WIDTH = 0.05;
+
+  private final double[] periods;
+  private final double minPower;
+  private final double powerStep;
+  private final int powerBinCount;
+  // counts[i * powerBinCount + j] is the count of the i-th period bin's j-th power bin
+  private final int[] counts;
+  private int segmentCount;
+
+  /**
+   * Create an empty histogram using the default period and power bin sizes
+   *
+   * @param minPeriod Shortest period to bin (s)
+   * @param maxPeriod Longest period to bin (s)
+   */
+  public PowerDensityHistogram(double minPeriod, double maxPeriod) {
+    this(minPeriod, maxPeriod, DEFAULT_BINS_PER_OCTAVE, DEFAULT_MIN_POWER, DEFAULT_MAX_POWER,
+        DEFAULT_POWER_STEP);
+  }
+
+  /**
+   * Create an empty histogram
+   *
+   * @param minPeriod Shortest period to bin (s)
+   * @param maxPeriod Longest period to bin (s)
+   * @param binsPerOctave Number of period bins in each octave
+   * @param minPower Lower edge of the lowest power bin (dB); lower powers are counted in this bin
+   * @param maxPower Upper edge of the highest power bin (dB); higher powers are counted in this bin
+   * @param powerStep Width of each power bin (dB)
+   */
+  public PowerDensityHistogram(double minPeriod, double maxPeriod, int binsPerOctave,
+      double minPower, double maxPower, double powerStep) {
+    if (minPeriod <= 0. || maxPeriod <= minPeriod) {
+      throw new IllegalArgumentException("Invalid period range: " + minPeriod + " to "
+          + maxPeriod);
+    }
+    if (maxPower <= minPower || powerStep <= 0.) {
+      throw new IllegalArgumentException("Invalid power range: " + minPower + " to " + maxPower
+          + " by " + powerStep);
+    }
+    int periodCount =
+        (int) Math.floor(binsPerOctave * Math.log(maxPeriod / minPeriod) / Math.log(2)) + 1;
+    periods = new double[periodCount];
+    for (int i = 0; i < periodCount; ++i) {
+      periods[i] = minPeriod * Math.pow(2, i / (double) binsPerOctave);
+    }
+    this.minPower = minPower;
+    this.powerStep = powerStep;
+    powerBinCount = (int) Math.ceil((maxPower - minPower) / powerStep);
+    counts = new int[periodCount * powerBinCount];
+    segmentCount = 0;
+  }
+
+  /**
+   * Add a single segment's PSD to the histogram
+   *
+   * @param freqs Frequency of each PSD point (Hz)
+   * @param power PSD of the segment, in linear units (i.e., (m/s^2)^2/Hz, not dB)
+   */
+  public void addSegment(double[] freqs, double[] power) {
+    addBins(getPowerBins(freqs, power));
+  }
+
+  /**
+   * Add many segments' PSDs to the histogram; the binning of each segment is done in parallel
+   *
+   * @param freqs Frequency of each PSD point (Hz), shared by all segments
+   * @param powers PSD of each segment, in linear units
+   */
+  public void addSegments(double[] freqs, List<double[]> powers) {
+    final int[][] bins = new int[powers.size()][];
+    IntStream.range(0, powers.size()).parallel().forEach(i ->
+        bins[i] = getPowerBins(freqs, powers.get(i)));
+    for (int[] segmentBins : bins) {
+      addBins(segmentBins);
+    }
+  }
+
+  /**
+   * Split a timeseries into hour-long segments overlapping by 50%, get the response-corrected PSD
+   * of each segment, and add them to the histogram. Segments are transformed in parallel.
+   *
+   * @param data Timeseries data (i.e., from DataBlock.getData)
+   * @param interval Sample interval of the data in ms
+   * @param response Response of the sensor the data came from
+   */
+  public void addData(double[] data, long interval, InstrumentResponse response) {
+    int targetLength = (int) (SEGMENT_SECONDS * ONE_HZ_INTERVAL / interval);
+    // largest power of 2 not exceeding the target, so no zero-padding is needed for the FFT
+    int segmentLength = Integer.highestOneBit(Math.max(targetLength, 4));
+    if (data.length < segmentLength) {
+      return;
+    }
+    int step = segmentLength / 2;
+    int segments = (data.length - segmentLength) / step + 1;
+    double sampleRate = ONE_HZ_INTERVAL / (double) interval;
+
+    // normalize according to the power of the taper window to get a one-sided PSD
+    double[] window = new double[segmentLength];
+    Arrays.fill(window, 1.);
+    FFTResult.cosineTaper(window, TAPER_WIDTH);
+    double windowPower = 0.;
+    for (double point : window) {
+      windowPower += point * point;
+    }
+    final double scale = 2. / (sampleRate * windowPower);
+
+    final double[] freqs = FFTResult.singleSidedFFT(
+        new double[segmentLength], sampleRate, false).getFreqs();
+    Complex[] responseCurve = ResponseCache.applyResponseToInput(response, freqs);
+    final double[] responsePower = new double[freqs.length];
+    for (int i = 0; i < freqs.length; ++i) {
+      double magnitude = responseCurve[i].abs();
+      responsePower[i] = Math.max(magnitude * magnitude, Double.MIN_VALUE);
+    }
+
+    final int[][] bins = new int[segments][];
+    IntStream.range(0, segments).parallel().forEach(i -> {
+      double[] segment = Arrays.copyOfRange(data, i * step, i * step + segmentLength);
+      segment = detrend(demean(segment));
+      FFTResult.cosineTaper(segment, TAPER_WIDTH);
+      Complex[] fft = FFTResult.singleSidedFFT(segment, sampleRate, false).getFFT();
+      double[] power = new double[fft.length];
+      for (int j = 0; j < fft.length; ++j) {
+        double magnitude = fft[j].abs();
+        power[j] = magnitude * magnitude * scale / responsePower[j];
+      }
+      bins[i] = getPowerBins(freqs, power);
+    });
+    for (int[] segmentBins : bins) {
+      addBins(segmentBins);
+    }
+  }
+
+  /**
+   * Add the counts of another histogram to this one (i.e., to combine results of different days)
+   *
+   * @param other Histogram with the same period and power bins as this one
+   */
+  public void merge(PowerDensityHistogram other) {
+    if (!Arrays.equals(periods, other.periods) || minPower != other.minPower ||
+        powerStep != other.powerStep || powerBinCount != other.powerBinCount) {
+      throw new IllegalArgumentException("Histograms to be merged must have the same bins");
+    }
+    synchronized (this) {
+      for (int i = 0; i < counts.length; ++i) {
+        counts[i] += other.counts[i];
+      }
+      segmentCount += other.segmentCount;
+    }
+  }
+
+  /**
+   * Get the power bin each period bin's octave-averaged power falls in for a single PSD
+   *
+   * @return Index of the power bin for each period bin, or -1 if the PSD has no points within
+   * that period bin's octave
+   */
+  private int[] getPowerBins(double[] freqs, double[] power) {
+    // running sum of the power, so each octave's average is found without rescanning the PSD
+    double[] cumulative = new double[power.length + 1];
+    for (int j = 0; j < power.length; ++j) {
+      cumulative[j + 1] = cumulative[j] + power[j];
+    }
+    int[] bins = new int[periods.length];
+    for (int i = 0; i < periods.length; ++i) {
+      // average over the octave centered on the period, that is, from T/sqrt(2) to T*sqrt(2)
+      double lowFreq = 1. / (periods[i] * Math.sqrt(2));
+      double highFreq = Math.sqrt(2) / periods[i];
+      int first = getInsertionPoint(freqs, lowFreq);
+      int last = getInsertionPoint(freqs, Math.nextUp(highFreq));
+      int points = last - first;
+      if (points <= 0) {
+        bins[i] = -1;
+        continue;
+      }
+      double sum = cumulative[last] - cumulative[first];
+      double decibels = 10 * Math.log10(sum / points);
+      int bin = (int) Math.floor((decibels - minPower) / powerStep);
+      bins[i] = Math.max(0, Math.min(powerBinCount - 1, bin));
+    }
+    return bins;
+  }
+
+  /**
+   * Get the index of the first frequency not less than the given value
+   *
+   * @param freqs Frequencies in increasing order
+   * @param value Frequency to search for
+   * @return Index of the first point at or above the value (freqs.length if there is none)
+   */
+  private static int getInsertionPoint(double[] freqs, double value) {
+    int index = Arrays.binarySearch(freqs, value);
+    if (index < 0) {
+      return -(index + 1);
+    }
+    // step back over any repeated values so the first one is returned
+    while (index > 0 && freqs[index - 1] == value) {
+      --index;
+    }
+    return index;
+  }
+
+  private synchronized void addBins(int[] bins) {
+    for (int i = 0; i < bins.length; ++i) {
+      if (bins[i] >= 0) {
+        ++counts[i * powerBinCount + bins[i]];
+      }
+    }
+    ++segmentCount;
+  }
+
+  /**
+   * @return Center period of each period bin (s), in increasing order
+   */
+  public double[] getPeriods() {
+    return periods.clone();
+  }
+
+  /**
+   * @return Center power level of each power bin (dB), in increasing order
+   */
+  public double[] getPowerLevels() {
+    double[] levels = new double[powerBinCount];
+    for (int i = 0; i < powerBinCount; ++i) {
+      levels[i] = minPower + (i + 0.5) * powerStep;
+    }
+    return levels;
+  }
+
+  /**
+   * @return Number of segments added to the histogram
+   */
+  public synchronized int getSegmentCount() {
+    return segmentCount;
+  }
+
+  /**
+   * Get the number of segments counted in each power bin of a period bin
+   *
+   * @param periodIndex Index of the period bin (see getPeriods)
+   * @return Count of each power bin (see getPowerLevels)
+   */
+  public synchronized int[] getCounts(int periodIndex) {
+    int offset = periodIndex * powerBinCount;
+    return Arrays.copyOfRange(counts, offset, offset + powerBinCount);
+  }
+
+  /**
+   * Get the probability of each power level at each period, that is, each bin's count divided by
+   * the total count of its period bin
+   *
+   * @return Array indexed by period bin, then power bin
+   */
+  public double[][] getProbabilities() {
+    double[][] probabilities = new double[periods.length][];
+    for (int i = 0; i < periods.length; ++i) {
+      int[] periodCounts = getCounts(i);
+      int total = Arrays.stream(periodCounts).sum();
+      probabilities[i] = new double[powerBinCount];
+      for (int j = 0; j < powerBinCount && total > 0; ++j) {
+        probabilities[i][j] = periodCounts[j] / (double) total;
+      }
+    }
+    return probabilities;
+  }
+
+  /**
+   * Get the power level at each period below which the given percentage of segments fall
+   *
+   * @param percentile Percentage (0 to 100)
+   * @return Power (dB, as the center of the bin the percentile falls in) at each period bin,
+   * or NaN for bins with no counts
+   */
+  public double[] getPercentile(double percentile) {
+    double[] levels = getPowerLevels();
+    double[] curve = new double[periods.length];
+    for (int i = 0; i < periods.length; ++i) {
+      int[] periodCounts = getCounts(i);
+      int total = Arrays.stream(periodCounts).sum();
+      curve[i] = Double.NaN;
+      if (total == 0) {
+        continue;
+      }
+      double target = total * percentile / 100.;
+      int cumulative = 0;
+      for (int j = 0; j < powerBinCount; ++j) {
+        cumulative += periodCounts[j];
+        if (cumulative >= target && cumulative > 0) {
+          curve[i] = levels[j];
+          break;
+        }
+      }
+    }
+    return curve;
+  }
+
+  /**
+   * @return Median power (dB) at each period bin, or NaN for bins with no counts
+   */
+  public double[] getMedian() {
+    return getPercentile(50.);
+  }
+
+  /**
+   * @return Most common power (dB) at each period bin, or NaN for bins with no counts
+   */
+  public double[] getMode() {
+    double[] levels = getPowerLevels();
+    double[] curve = new double[periods.length];
+    for (int i = 0; i < periods.length; ++i) {
+      int[] periodCounts = getCounts(i);
+      curve[i] = Double.NaN;
+      int best = 0;
+      for (int j = 0; j < powerBinCount; ++j) {
+        if (periodCounts[j] > best) {
+          best = periodCounts[j];
+          curve[i] = levels[j];
+        }
+      }
+    }
+    return curve;
+  }
+
+  /**
+   * Create a plottable series from a curve taken from this histogram (i.e., getMode)
+   *
+   * @param name Name of the series
+   * @param curve Power (dB) at each period bin
+   * @param freqSpace True if the series should be in units of Hz rather than seconds
+   * @return Series of the curve, skipping bins with no data
+   */
+  public XYSeries toXYSeries(String name, double[] curve, boolean freqSpace) {
+    XYSeries series = new XYSeries(name);
+    for (int i = 0; i < periods.length; ++i) {
+      if (Double.isNaN(curve[i])) {
+        continue;
+      }
+      series.add(freqSpace ? 1. / periods[i] : periods[i], curve[i]);
+    }
+    return series;
+  }
+}
@@ -18,12 +18,17 @@ import asl.utils.input.DataBlock;
 import asl.utils.input.InstrumentResponse;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.stream.IntStream;
 import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.exception.MathIllegalStateException;
 import org.apache.commons.math3.fitting.leastsquares.LeastSquaresBuilder;
 import org.apache.commons.math3.fitting.leastsquares.LeastSquaresOptimizer;
 import org.apache.commons.math3.fitting.leastsquares.LeastSquaresProblem;
@@ -34,6 +39,7 @@ import org.apache.commons.math3.linear.DiagonalMatrix;
 import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.optim.ConvergenceChecker;
 import org.apache.commons.math3.util.Pair;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
@@ -77,6 +83,44 @@ public class RandomizedExperiment extends Experiment {
    */
   private static final double HIGH_FREQ_ZERO_TARGET = 1.0;
 
+  /**
+   * Number of starting points used by the solver when multi-start fitting is enabled from the GUI
+   */
+  public static final int DEFAULT_MULTI_START_COUNT = 8;
+
+  /**
+   * Largest relative change applied to each fit parameter when perturbing the starting point
+   * for an additional solver start (i.e., each parameter is scaled by a value in [0.75, 1.25])
+   */
+  private static final double MULTI_START_SPREAD = 0.25;
+
+  /**
+   * A start is abandoned once its cost is more than this multiple of the best cost found by any
+   * start so far, since it is then very unlikely to produce the best fit
+   */
+  private static final double MULTI_START_ABANDON_RATIO = 2.0;
+
+  /**
+   * Number of iterations a start is always allowed to run before it may be abandoned
+   */
+  private static final int MULTI_START_MIN_ITERATIONS = 5;
+
+  /**
+   * Approximate length of each spectral segment for progressive low-frequency cals, in seconds.
+   * This is long enough to resolve the lowest frequency fit over (0.001 Hz) several times over.
+   */
+  private static final double PROGRESSIVE_LOW_FREQ_SEGMENT_SECONDS = 4096.;
+
+  /**
+   * Approximate length of each spectral segment for progressive high-frequency cals, in seconds
+   */
+  private static final double PROGRESSIVE_HIGH_FREQ_SEGMENT_SECONDS = 256.;
+
+  /**
+   * Default number of new spectral segments to accumulate between progressive refits.
+   * Segments overlap by 75%, so this refits once per segment length's worth of new data.
+   */
+  public static final int DEFAULT_PROGRESSIVE_REFIT_SEGMENTS = 4;
 
   private double initialResidual, fitResidual;
   private List<Complex> initialPoles;
@@ -102,10 +146,20 @@ public class RandomizedExperiment extends Experiment {
   private double maxMagWeight, maxArgWeight; // max values of magnitude, phase
   private double nyquistMultiplier; // region up to nyquist to take for data
   private int numIterations; // how much the solver ran
+  private int multiStartCount; // number of starting points to run the solver from
+
+  // state for progressive (incremental) calibrations, where data is added over time
+  private CrossSpectralAccumulator progressiveSpectra;
+  private InstrumentResponse progressiveResponse; // solver starting point for the next refit
+  private String[] progressiveNames;
+  private int progressiveRefitSegments;
+  private int segmentsAtLastFit;
 
   public RandomizedExperiment() {
     super();
     isCapacitive = false;
+    multiStartCount = 1;
+    progressiveRefitSegments = DEFAULT_PROGRESSIVE_REFIT_SEGMENTS;
     isLowFrequencyCalibration = false;
     numIterations = 0;
     plotUsingHz = true;
@@ -445,22 +499,13 @@ public class RandomizedExperiment extends Experiment {
    */
   @Override
   protected void backend(DataStore dataStore) {
-    numIterations = 0;
-
     DataBlock calib = dataStore.getBlock(0);
     DataBlock sensorOut = dataStore.getBlock(1);
-    fitResponse = new InstrumentResponse(dataStore.getResponse(1));
+    InstrumentResponse nominalResponse = dataStore.getResponse(1);
 
     dataNames.add(calib.getName());
-    String name = sensorOut.getName();
-    dataNames.add(name);
-    dataNames.add(fitResponse.getName());
-    XYSeries calcMag = new XYSeries("Calc. resp. (" + name + ") magnitude");
-    XYSeries calcArg = new XYSeries("Calc. resp. (" + name + ") phase");
-
-    InstrumentResponse initResponse = new InstrumentResponse(fitResponse);
-    initialPoles = new ArrayList<>(fitResponse.getPoles());
-    initialZeros = new ArrayList<>(fitResponse.getZeros());
+    dataNames.add(sensorOut.getName());
+    dataNames.add(nominalResponse.getName());
 
     // get the plots of the calculated response from deconvolution
     // PSD(out, in) / PSD(in, in) gives us PSD(out) / PSD(in) while removing
@@ -474,10 +519,37 @@ public class RandomizedExperiment extends Experiment {
     denominatorPSD = FFTResult.spectralCalc(calib, calib);
     crossPSD = FFTResult.spectralCalc(sensorOut, calib);
 
-    double[] freqsUntrimmed = numeratorPSD.getFreqs(); // should be same for both results
+    fitSpectra(numeratorPSD.getFFT(), denominatorPSD.getFFT(), crossPSD.getFFT(),
+        numeratorPSD.getFreqs(), sensorOut.getInterval(), sensorOut.getName(), nominalResponse);
+  }
+
+  /**
+   * Fit the response to the calculated response curve given by the spectra of the calibration
+   * input and sensor output, and populate the plots and results of the experiment from the fit.
+   *
+   * @param numeratorPSDVals Power spectrum of the sensor output
+   * @param denominatorPSDVals Power spectrum of the calibration input
+   * @param crossPSDVals Cross-power spectrum of the sensor output with the calibration input
+   * @param freqsUntrimmed Frequencies of the spectra's points (should be the same for all three)
+   * @param interval Sample interval of the sensor output data in ms
+   * @param name Name of the sensor output data
+   * @param startingResponse Response whose poles and zeros the solver starts from
+   */
+  private void fitSpectra(Complex[] numeratorPSDVals, Complex[] denominatorPSDVals,
+      Complex[] crossPSDVals, double[] freqsUntrimmed, long interval, String name,
+      InstrumentResponse startingResponse) {
+    numIterations = 0;
+    fitResponse = new InstrumentResponse(startingResponse);
+
+    XYSeries calcMag = new XYSeries("Calc. resp. (" + name + ") magnitude");
+    XYSeries calcArg = new XYSeries("Calc. resp. (" + name + ") phase");
+
+    InstrumentResponse initResponse = new InstrumentResponse(fitResponse);
+    initialPoles = new ArrayList<>(fitResponse.getPoles());
+    initialZeros = new ArrayList<>(fitResponse.getZeros());
 
     // store nyquist rate of data because freqs will be trimmed down later
-    double nyquist = ONE_HZ_INTERVAL / (double) sensorOut.getInterval();
+    double nyquist = ONE_HZ_INTERVAL / (double) interval;
     nyquist = nyquist / 2.;
 
     // trim frequency window in order to restrict range of response fits
@@ -513,10 +585,6 @@ public class RandomizedExperiment extends Experiment {
     int normalIdx = FFTResult.getIndexOfFrequency(freqs,
         getFrequencyForNormalization(isLowFrequencyCalibration));
 
-    // trim the PSDs to the data in the trimmed frequency range
-    Complex[] numeratorPSDVals = numeratorPSD.getFFT();
-    Complex[] denominatorPSDVals = denominatorPSD.getFFT();
-    Complex[] crossPSDVals = crossPSD.getFFT();
     double[] untrimmedAmplitude = new double[freqsUntrimmed.length];
     double[] untrimmedPhase = new double[freqsUntrimmed.length];
 
@@ -717,7 +785,12 @@ public class RandomizedExperiment extends Experiment {
 
     RealVector finalResultVector;
 
-    LeastSquaresOptimizer.Optimum optimum = optimizer.optimize(lsp);
+    LeastSquaresOptimizer.Optimum optimum;
+    if (multiStartCount > 1) {
+      optimum = multiStartOptimize(optimizer, initialGuess, obsResVector, weightMat, numZeros);
+    } else {
+      optimum = optimizer.optimize(lsp);
+    }
     finalResultVector = optimum.getPoint();
     numIterations = optimum.getIterations();
 
@@ -1087,6 +1160,205 @@ public class RandomizedExperiment extends Experiment {
     return initialResidual;
   }
 
+  /**
+   * Run the solver from the nominal starting point and from perturbed copies of it concurrently,
+   * returning the lowest-cost optimum found by any of them. All starts share the best cost seen
+   * so far, and a perturbed start whose cost is still well above that after a few iterations is
+   * stopped early. Starts that fail to converge are discarded; if every start fails, the failure
+   * from the nominal start is rethrown.
+   *
+   * @param optimizer Solver to run (stateless, so it can be shared across starts)
+   * @param initialGuess Fit parameters derived from the nominal response
+   * @param obsResVector Target amplitude and phase values the solver fits to
+   * @param weightMat Weights applied to the amplitude and phase residuals
+   * @param numZeros Number of fit parameters in the vector that come from zeros
+   * @return Optimum with the lowest cost of all starts
+   */
+  private LeastSquaresOptimizer.Optimum multiStartOptimize(LeastSquaresOptimizer optimizer,
+      RealVector initialGuess, RealVector obsResVector, RealMatrix weightMat, int numZeros) {
+
+    final double[] freqsSet = freqs;
+    final InstrumentResponse fitSet = fitResponse;
+    final boolean isLowFrequency = isLowFrequencyCalibration;
+    final PoleValidator validator = new PoleValidator(numZeros);
+
+    final DoubleAccumulator bestCost =
+        new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+    // the nominal start only reports its cost and always runs to completion, so that enabling
+    // multiple starts can never produce a worse fit than the single-start solver would
+    ConvergenceChecker<LeastSquaresProblem.Evaluation> nominalChecker =
+        (iteration, previous, current) -> {
+          bestCost.accumulate(current.getCost());
+          return false;
+        };
+    ConvergenceChecker<LeastSquaresProblem.Evaluation> abandonChecker =
+        (iteration, previous, current) -> {
+          double cost = current.getCost();
+          bestCost.accumulate(cost);
+          return iteration >= MULTI_START_MIN_ITERATIONS &&
+              cost > MULTI_START_ABANDON_RATIO * bestCost.get();
+        };
+
+    // builder isn't thread-safe, so set up each start's problem before running any of them
+    LeastSquaresBuilder builder = new LeastSquaresBuilder().
+        target(obsResVector).
+        model(point -> jacobian(point, freqsSet, numZeros, fitSet, isLowFrequency)).
+        weight(weightMat).
+        parameterValidator(validator).
+        lazyEvaluation(false).
+        maxEvaluations(Integer.MAX_VALUE).
+        maxIterations(Integer.MAX_VALUE);
+    List<LeastSquaresProblem> problems = new ArrayList<>();
+    problems.add(builder.start(initialGuess).checker(nominalChecker).build());
+    builder.checker(abandonChecker);
+    for (int i = 1; i < multiStartCount; ++i) {
+      // seeded by start index so that repeated runs over the same data produce the same fit
+      Random random = new Random(i);
+      RealVector perturbed = initialGuess.copy();
+      for (int j = 0; j < perturbed.getDimension(); ++j) {
+        double scale = 1. + MULTI_START_SPREAD * (2. * random.nextDouble() - 1.);
+        perturbed.setEntry(j, perturbed.getEntry(j) * scale);
+      }
+      problems.add(builder.start(validator.validate(perturbed)).build());
+    }
+
+    fireStateChange("Running solver from " + multiStartCount + " starting points...");
+    LeastSquaresOptimizer.Optimum[] optima =
+        new LeastSquaresOptimizer.Optimum[problems.size()];
+    List<RuntimeException> failures = Collections.synchronizedList(new ArrayList<>());
+    IntStream.range(0, problems.size()).parallel().forEach(i -> {
+      try {
+        optima[i] = optimizer.optimize(problems.get(i));
+      } catch (MathIllegalStateException e) {
+        // ConvergenceException and TooManyIterationsException are both subclasses of this
+        if (i == 0) {
+          failures.add(0, e);
+        } else {
+          failures.add(e);
+        }
+      }
+    });
+
+    LeastSquaresOptimizer.Optimum best = null;
+    for (LeastSquaresOptimizer.Optimum optimum : optima) {
+      if (optimum != null && (best == null || optimum.getCost() < best.getCost())) {
+        best = optimum;
+      }
+    }
+    if (best == null) {
+      throw failures.get(0);
+    }
+    return best;
+  }
+
+  /**
+   * Begin a progressive calibration, where calibration data is added over time (i.e., file by file
+   * or hour by hour as it is acquired) and the response is periodically refit as more data arrives.
+   * This gives early estimates of the fit poles and zeros during long calibrations, which are
+   * refined as the cal proceeds. Only the averaged spectra of the data are kept, so memory usage
+   * does not grow with the length of the calibration.
+   * The low-frequency calibration setting must be set before calling this, as it determines the
+   * spectral resolution used. Any previously accumulated progressive data is discarded.
+   *
+   * @param nominalResponse Response of the sensor under calibration, used as the initial guess
+   * @param interval Sample interval of the data to be added in ms
+   */
+  public void startProgressiveCalibration(InstrumentResponse nominalResponse, long interval) {
+    double segmentSeconds = isLowFrequencyCalibration ?
+        PROGRESSIVE_LOW_FREQ_SEGMENT_SECONDS : PROGRESSIVE_HIGH_FREQ_SEGMENT_SECONDS;
+    int targetLength = (int) (segmentSeconds * ONE_HZ_INTERVAL / interval);
+    // largest power of 2 not exceeding the target, so no zero-padding is needed for the FFT
+    int segmentLength = Integer.highestOneBit(Math.max(targetLength, 4));
+    progressiveSpectra = new CrossSpectralAccumulator(2, segmentLength, interval);
+    progressiveResponse = new InstrumentResponse(nominalResponse);
+    progressiveNames = null;
+    segmentsAtLastFit = 0;
+    start = 0L;
+    end = 0L;
+  }
+
+  /**
+   * Add the next contiguous chunk of calibration data to a progressive calibration begun with
+   * startProgressiveCalibration, and refit the response if enough new data has accumulated since
+   * the last fit (see setProgressiveRefitInterval). Each refit starts from the previous fit's
+   * poles and zeros, so the initial values reported by this experiment after a refit are those of
+   * the previous fit rather than the nominal response.
+   *
+   * @param calib Next chunk of the calibration input signal
+   * @param sensorOut Next chunk of the sensor output, covering the same time range as calib
+   * @return True if the response was refit using the new data
+   */
+  public boolean addProgressiveData(DataBlock calib, DataBlock sensorOut) {
+    if (progressiveSpectra == null) {
+      throw new IllegalStateException("Progressive calibration has not been started");
+    }
+    if (calib.getInterval() != progressiveSpectra.getInterval() ||
+        sensorOut.getInterval() != progressiveSpectra.getInterval()) {
+      throw new IllegalArgumentException("Data interval does not match progressive cal interval");
+    }
+    if (progressiveNames == null) {
+      progressiveNames = new String[]{calib.getName(), sensorOut.getName()};
+      start = calib.getStartTime();
+    }
+    end = calib.getEndTime();
+
+    double[] calibData = calib.getData();
+    double[] sensorData = sensorOut.getData();
+    if (sensorOut.needsSignFlip()) {
+      sensorData = Arrays.stream(sensorData).map(point -> -point).toArray();
+    }
+    progressiveSpectra.append(calibData, sensorData);
+
+    int segmentCount = progressiveSpectra.getSegmentCount();
+    if (segmentCount == 0 || segmentCount - segmentsAtLastFit < progressiveRefitSegments) {
+      return false;
+    }
+    runProgressiveFit();
+    return true;
+  }
+
+  /**
+   * Fit the response to all data added to the current progressive calibration so far, regardless
+   * of how much data has been added since the last fit (i.e., to get a final result once the
+   * last of the calibration data has been added).
+   *
+   * @throws IllegalStateException if there is not yet enough data to produce a spectrum
+   */
+  public void runProgressiveFit() {
+    if (progressiveSpectra == null) {
+      throw new IllegalStateException("Progressive calibration has not been started");
+    }
+    dataNames = new ArrayList<>();
+    xySeriesData = new ArrayList<>();
+    dataNames.add(progressiveNames[0]);
+    dataNames.add(progressiveNames[1]);
+    dataNames.add(progressiveResponse.getName());
+
+    fireStateChange("Getting accumulated PSDs of data...");
+    // channel 0 is the calibration input, channel 1 is the sensor output
+    fitSpectra(progressiveSpectra.getCrossSpectrum(1, 1),
+        progressiveSpectra.getCrossSpectrum(0, 0),
+        progressiveSpectra.getCrossSpectrum(1, 0),
+        progressiveSpectra.getFrequencies(),
+        progressiveSpectra.getInterval(), progressiveNames[1], progressiveResponse);
+
+    progressiveResponse = fitResponse;
+    segmentsAtLastFit = progressiveSpectra.getSegmentCount();
+    fireStateChange("Calculations done!");
+  }
+
+  /**
+   * Get the number of spectral segments accumulated in the current progressive calibration
+   *
+   * @return Number of segments averaged so far, or 0 if no progressive cal has been started
+   */
+  public int getProgressiveSegmentCount() {
+    if (progressiveSpectra == null) {
+      return 0;
+    }
+    return progressiveSpectra.getSegmentCount();
+  }
+
   /**
    * Get the number of times the algorithm iterated to produce the optimum
    * response fit, from the underlying least squares solver
@@ -1137,6 +1409,29 @@ public class RandomizedExperiment extends Experiment {
     this.isCapacitive = isCapacitive;
   }
 
+  /**
+   * Set the number of starting points the solver is run from. A value of 1 (the default) runs the
+   * solver only from the nominal response's poles and zeros. Larger values also run the solver
+   * concurrently from randomly perturbed copies of those values and keep the best fit, which can
+   * avoid poor local minima when the nominal response is far from the sensor's actual response.
+   *
+   * @param multiStartCount Number of solver starts, including the nominal one (minimum 1)
+   */
+  public void setMultiStartCount(int multiStartCount) {
+    this.multiStartCount = Math.max(1, multiStartCount);
+  }
+
+  /**
+   * Set how many new spectral segments must be accumulated in a progressive calibration before
+   * the response is refit. Segments are 75% overlapping, so the default value (4) refits after
+   * each segment length's worth of new data.
+   *
+   * @param refitSegments Number of new segments between refits (minimum 1)
+   */
+  public void setProgressiveRefitInterval(int refitSegments) {
+    progressiveRefitSegments = Math.max(1, refitSegments);
+  }
+
   /**
    * Set the new peak multiplier for the data region under analysis.
    * This should be a positive value, and is bounded by 0.8 (@see NumericUtils.PEAK_MULTIPLIER)
@@ -1200,7 +1495,7 @@ public class RandomizedExperiment extends Experiment {
   }
 
 
-  private class PoleValidator implements ParameterValidator {
+  private static class PoleValidator implements ParameterValidator {
 
     int numZeros;
 
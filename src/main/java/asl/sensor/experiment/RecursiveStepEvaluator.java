@@ -0,0 +1,127 @@
+package asl.sensor.experiment;
+
+import static asl.utils.NumericUtils.detrendEnds;
+import static asl.utils.NumericUtils.normalize;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates the step calibration model used by StepExperiment in the time domain, as an
+ * alternative to StepResponseEvaluator's FFT round-trip. The response being removed is
+ * s / ((s - p1)(s - p2)) = s / (s^2 + 2 h w s + w^2) for corner w = 2 pi f and damping h, so
+ * removing it means applying (s^2 + 2 h w s + w^2) / s to the sensor output. Mapping this to
+ * discrete time with the bilinear transform s = K (1 - 1/z) / (1 + 1/z) (prewarped so that the
+ * corner frequency maps exactly) gives a second-order numerator over (1 - 1/z)(1 + 1/z). The pole
+ * at z = 1 is the integrator of the original filter; the pole at z = -1 (Nyquist) is an artifact
+ * of the transform of a filter with more zeros than poles, and is cancelled by a half-sample
+ * average (1 + 1/z) / 2, whose gain at the sub-0.1 Hz frequencies the data is filtered to is
+ * effectively unity. The resulting filter is a single recursive pass over the data:
+ * y[n] = y[n - 1] + (b0 x[n] + b1 x[n - 1] + b2 x[n - 2]) / 2K.
+ *
+ * Each evaluation is O(n) with no transforms and no water level, and the result is trimmed,
+ * detrended and normalized in the same way as the FFT model's, so that the integration constant
+ * and any drift are removed. Because the filter is not circular, the result can differ slightly
+ * from the FFT model's near the ends of the trimmed range.
+ */
+class RecursiveStepEvaluator implements StepModel {
+
+  private final double[] sensorData;
+  private final double sampleRate;
+  private final int cutAmount;
+  private final int upperBound;
+
+  /**
+   * Create an evaluator over the sensor's step output
+   *
+   * @param sensorData Sensor output, with the same filtering, taper and sign correction that is
+   * applied before taking its FFT for the frequency-domain model
+   * @param sampleRate Sample rate of the data (Hz)
+   * @param cutAmount Number of points trimmed from the start of the result
+   * @param trimmedLength Number of points in the trimmed result
+   */
+  RecursiveStepEvaluator(double[] sensorData, double sampleRate, int cutAmount,
+      int trimmedLength) {
+    this.sensorData = sensorData;
+    this.sampleRate = sampleRate;
+    this.cutAmount = cutAmount;
+    upperBound = Math.min(sensorData.length, trimmedLength + cutAmount);
+  }
+
+  @Override
+  public double[] evaluate(double corner, double damping) {
+    double[] coefficients = getCoefficients(corner, damping);
+    double b0 = coefficients[0];
+    double b1 = coefficients[1];
+    double b2 = coefficients[2];
+    double[] filtered = new double[upperBound];
+    double previous = 0.;
+    double x1 = 0.;
+    double x2 = 0.;
+    for (int i = 0; i < upperBound; ++i) {
+      double x0 = sensorData[i];
+      previous += b0 * x0 + b1 * x1 + b2 * x2;
+      filtered[i] = previous;
+      x2 = x1;
+      x1 = x0;
+    }
+    return finishEvaluation(filtered);
+  }
+
+  @Override
+  public double[][] evaluateWithPerturbations(double corner, double damping, double step) {
+    double[] c0 = getCoefficients(corner, damping);
+    double[] cF = getCoefficients(corner + step, damping);
+    double[] cH = getCoefficients(corner, damping + step);
+    double[] filtered0 = new double[upperBound];
+    double[] filteredF = new double[upperBound];
+    double[] filteredH = new double[upperBound];
+    double y0 = 0.;
+    double yF = 0.;
+    double yH = 0.;
+    double x1 = 0.;
+    double x2 = 0.;
+    // the three filters share their input, so they are run together in one pass over the data
+    for (int i = 0; i < upperBound; ++i) {
+      double x0 = sensorData[i];
+      y0 += c0[0] * x0 + c0[1] * x1 + c0[2] * x2;
+      yF += cF[0] * x0 + cF[1] * x1 + cF[2] * x2;
+      yH += cH[0] * x0 + cH[1] * x1 + cH[2] * x2;
+      filtered0[i] = y0;
+      filteredF[i] = yF;
+      filteredH[i] = yH;
+      x2 = x1;
+      x1 = x0;
+    }
+    return new double[][]{
+        finishEvaluation(filtered0), finishEvaluation(filteredF), finishEvaluation(filteredH)};
+  }
+
+  /**
+   * Get the numerator coefficients of the discrete filter, already divided by the 2K gain of the
+   * denominator
+   *
+   * @param corner Corner frequency of the response (Hz)
+   * @param damping Damping of the response
+   * @return Array {b0, b1, b2}
+   */
+  private double[] getCoefficients(double corner, double damping) {
+    double omega = 2 * Math.PI * corner;
+    // prewarp so that the corner is at the same frequency after the transform
+    double k = omega / Math.tan(omega / (2 * sampleRate));
+    double kSquared = k * k;
+    double omegaSquared = omega * omega;
+    double dampingTerm = 2 * damping * omega * k;
+    double scale = 2 * k;
+    return new double[]{
+        (kSquared + dampingTerm + omegaSquared) / scale,
+        (2 * omegaSquared - 2 * kSquared) / scale,
+        (kSquared - dampingTerm + omegaSquared) / scale};
+  }
+
+  private double[] finishEvaluation(double[] filtered) {
+    // trim data around areas with filter ringing and remove linear trend
+    double[] trimmed = Arrays.copyOfRange(filtered, cutAmount, upperBound);
+    trimmed = detrendEnds(trimmed);
+    return normalize(trimmed);
+  }
+}
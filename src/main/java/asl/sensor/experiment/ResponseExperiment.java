@@ -4,13 +4,21 @@ import static asl.utils.NumericUtils.atanc;
 import static asl.utils.NumericUtils.unwrap;
 
 import asl.sensor.input.DataStore;
+import asl.sensor.input.ResponseCache;
 import asl.utils.input.InstrumentResponse;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.util.Pair;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
@@ -20,6 +28,8 @@ import org.jfree.data.xy.XYSeriesCollection;
  * No timeseries data (that is, miniSEED) is used in this calculation.
  * Response curves can be plotted in either frequency or interval space
  * (units of Hz or seconds respectively).
+ * Each response is only evaluated at as many frequencies as are needed to draw its curve
+ * accurately, and the curves of different responses are evaluated concurrently.
  *
  * @author akearns
  */
@@ -28,43 +38,51 @@ public class ResponseExperiment extends Experiment {
   public static final String MAGNITUDE = "Amplitude";
   public static final String ARGUMENT = "Phase";
 
+  /**
+   * Range of frequencies response curves are plotted over (Hz)
+   */
+  private static final double LOW_FREQ = .0001;
+  private static final double HIGH_FREQ = 200;
+
+  /**
+   * Spacing of the initial grid for adaptive sampling; fine enough to not step over the ripple of
+   * FIR stages near a response's corner before any refinement happens
+   */
+  private static final int ADAPTIVE_POINTS_PER_DECADE = 100;
+
+  /**
+   * Largest difference between a response curve and its adaptively-sampled plot that is allowed
+   * before more points are added; each is well under a pixel at typical plot sizes
+   */
+  private static final double MAGNITUDE_TOLERANCE = 0.05; // dB
+  private static final double PHASE_TOLERANCE = 0.25; // degrees
+
+  /**
+   * Most times an interval between sampled points is halved (with the initial grid, this is
+   * still finer spacing than the fixed grid)
+   */
+  private static final int MAX_REFINEMENTS = 10;
+
   private boolean freqSpace; // choose between units of Hz or seconds (time between samples)
 
+  private boolean adaptiveSampling;
+
   private Set<InstrumentResponse> responses;
 
   public ResponseExperiment() {
     super();
     freqSpace = false;
+    adaptiveSampling = true;
   }
 
   @Override
-  protected void backend(DataStore dataStore) {
+  protected void backend(final DataStore dataStore) {
 
     responses = new HashSet<>();
 
-    double lowFreq = .0001;
-    double highFreq = 200;
-
-    int pointCount = 100000;
-    double linearChange = (highFreq - lowFreq) / pointCount;
-    // find logarithmic parameters for linear components
-    double b = Math.log10(lowFreq / highFreq) / (lowFreq - highFreq);
-    double a = lowFreq / Math.pow(10, b * lowFreq);
-
-    // hard-code length here because the limits of the calculated range are fixed
-    double[] freqArray = new double[pointCount];
-
-    double currentFreq = lowFreq;
-    for (int i = 0; i < freqArray.length; ++i) {
-      freqArray[i] = currentFreq;
-      currentFreq = a * Math.pow(10, b * (i * linearChange));
-    }
-
     // used to prevent issues with duplicate response plotting / XYSeries names
-    Set<String> respNames = new HashSet<>();
-
-    XYSeriesCollection args = new XYSeriesCollection();
-    XYSeriesCollection mags = new XYSeriesCollection();
+    Set<String> respNames = new LinkedHashSet<>();
+    final List<InstrumentResponse> toPlot = new ArrayList<>();
 
     for (int responseIndex = 0; responseIndex < 3; ++responseIndex) {
       if (!dataStore.responseIsSet(responseIndex)) {
@@ -75,18 +93,33 @@ public class ResponseExperiment extends Experiment {
       String name = instrumentResponse.getName() + " [" +
           DateTimeFormatter.ofPattern("uuuu.DDD").withZone(ZoneOffset.UTC)
               .format(instrumentResponse.getEpochStart()) + ']';
-      if (respNames.contains(name)) {
-        continue;
-      } else {
-        respNames.add(name);
+      if (respNames.add(name)) {
         responses.add(instrumentResponse);
+        toPlot.add(instrumentResponse);
       }
+    }
 
-      Complex[] result = instrumentResponse.applyResponseToInput(freqArray);
+    final String[] names = respNames.toArray(new String[0]);
+    final XYSeries[] magnitudes = new XYSeries[names.length];
+    final XYSeries[] arguments = new XYSeries[names.length];
+    IntStream.range(0, names.length).parallel().forEach(j -> {
+      InstrumentResponse instrumentResponse = toPlot.get(j);
+      double[] freqArray;
+      Complex[] result;
+      if (adaptiveSampling) {
+        // the curve was already evaluated at each point while the points were chosen
+        Pair<double[], Complex[]> curve =
+            getAdaptiveCurve(instrumentResponse::applyResponseToInput, LOW_FREQ, HIGH_FREQ);
+        freqArray = curve.getFirst();
+        result = curve.getSecond();
+      } else {
+        freqArray = getFixedFrequencies();
+        result = ResponseCache.applyResponseToInput(instrumentResponse, freqArray);
+      }
 
       double phiPrev = 0; // use with unwrapping
-      XYSeries magnitude = new XYSeries(name);
-      XYSeries argument = new XYSeries(name);
+      XYSeries magnitude = new XYSeries(names[j]);
+      XYSeries argument = new XYSeries(names[j]);
       for (int i = 0; i < freqArray.length; ++i) {
         Complex tmp = result[i];
         double phi = atanc(tmp);
@@ -101,10 +134,15 @@ public class ResponseExperiment extends Experiment {
         magnitude.add(xVal, magAccel);
         argument.add(xVal, phi);
       }
+      magnitudes[j] = magnitude;
+      arguments[j] = argument;
+    });
 
-      mags.addSeries(magnitude);
-      args.addSeries(argument);
-
+    XYSeriesCollection args = new XYSeriesCollection();
+    XYSeriesCollection mags = new XYSeriesCollection();
+    for (int j = 0; j < names.length; ++j) {
+      mags.addSeries(magnitudes[j]);
+      args.addSeries(arguments[j]);
     }
 
     xySeriesData.add(mags);
@@ -114,6 +152,106 @@ public class ResponseExperiment extends Experiment {
 
   }
 
+  /**
+   * Get the fixed, dense grid of frequencies that responses were evaluated over before adaptive
+   * sampling was added (see setAdaptiveSampling)
+   *
+   * @return 100,000 frequencies spanning the plotted range
+   */
+  private static double[] getFixedFrequencies() {
+    int pointCount = 100000;
+    double linearChange = (HIGH_FREQ - LOW_FREQ) / pointCount;
+    // find logarithmic parameters for linear components
+    double b = Math.log10(LOW_FREQ / HIGH_FREQ) / (LOW_FREQ - HIGH_FREQ);
+    double a = LOW_FREQ / Math.pow(10, b * LOW_FREQ);
+
+    // hard-code length here because the limits of the calculated range are fixed
+    double[] freqArray = new double[pointCount];
+
+    double currentFreq = LOW_FREQ;
+    for (int i = 0; i < freqArray.length; ++i) {
+      freqArray[i] = currentFreq;
+      currentFreq = a * Math.pow(10, b * (i * linearChange));
+    }
+    return freqArray;
+  }
+
+  /**
+   * Evaluate a response curve at only the frequencies needed to draw it, so that the curve drawn by
+   * connecting the points is as faithful as the fixed dense grid but with far fewer points.
+   * Starting from a log-spaced grid, each interval between adjacent points is split at its
+   * (logarithmic) midpoint, and the response there is compared to what interpolating the
+   * interval's ends would give. Only intervals where that differs by more than can be seen in a
+   * plot, that is, where the magnitude or phase bends sharply, are split further. All midpoints of
+   * each pass are evaluated together in a single call.
+   *
+   * @param response Function evaluating a response at each of an array of frequencies, such as
+   * InstrumentResponse.applyResponseToInput
+   * @param lowFreq Lowest frequency to evaluate the response at (Hz)
+   * @param highFreq Highest frequency to evaluate the response at (Hz)
+   * @return Frequencies the response was evaluated at, in ascending order, and the response at
+   * each of them
+   */
+  static Pair<double[], Complex[]> getAdaptiveCurve(Function<double[], Complex[]> response,
+      double lowFreq, double highFreq) {
+    double logLow = Math.log10(lowFreq);
+    double decades = Math.log10(highFreq) - logLow;
+    int initialCount = (int) Math.ceil(decades * ADAPTIVE_POINTS_PER_DECADE) + 1;
+    double[] initial = new double[initialCount];
+    for (int i = 0; i < initialCount; ++i) {
+      initial[i] = Math.pow(10, logLow + decades * i / (initialCount - 1));
+    }
+
+    TreeMap<Double, Complex> curve = new TreeMap<>();
+    Complex[] initialValues = response.apply(initial);
+    for (int i = 0; i < initialCount; ++i) {
+      curve.put(initial[i], initialValues[i]);
+    }
+
+    // intervals to check, as pairs of adjacent frequencies
+    List<double[]> intervals = new ArrayList<>();
+    for (int i = 1; i < initialCount; ++i) {
+      intervals.add(new double[]{initial[i - 1], initial[i]});
+    }
+
+    for (int pass = 0; pass < MAX_REFINEMENTS && !intervals.isEmpty(); ++pass) {
+      double[] midpoints = new double[intervals.size()];
+      for (int i = 0; i < midpoints.length; ++i) {
+        double[] interval = intervals.get(i);
+        midpoints[i] = Math.sqrt(interval[0] * interval[1]);
+      }
+      Complex[] midValues = response.apply(midpoints);
+
+      List<double[]> nextIntervals = new ArrayList<>();
+      for (int i = 0; i < midpoints.length; ++i) {
+        double[] interval = intervals.get(i);
+        curve.put(midpoints[i], midValues[i]);
+        Complex low = curve.get(interval[0]);
+        Complex high = curve.get(interval[1]);
+        // interpolating log(response) linearly in log(frequency) puts the midpoint at the
+        // geometric mean of the ends, so the ratio to that is the error in magnitude and phase
+        Complex error = midValues[i].divide(low).divide(high.divide(low).sqrt());
+        double magnitudeError = Math.abs(10 * Math.log10(error.abs()));
+        double phaseError = Math.abs(Math.toDegrees(error.getArgument()));
+        if (magnitudeError > MAGNITUDE_TOLERANCE || phaseError > PHASE_TOLERANCE) {
+          nextIntervals.add(new double[]{interval[0], midpoints[i]});
+          nextIntervals.add(new double[]{midpoints[i], interval[1]});
+        }
+      }
+      intervals = nextIntervals;
+    }
+
+    double[] freqs = new double[curve.size()];
+    Complex[] values = new Complex[curve.size()];
+    int i = 0;
+    for (Map.Entry<Double, Complex> point : curve.entrySet()) {
+      freqs[i] = point.getKey();
+      values[i] = point.getValue();
+      ++i;
+    }
+    return new Pair<>(freqs, values);
+  }
+
   @Override
   public int blocksNeeded() {
     return 0;
@@ -146,6 +284,17 @@ public class ResponseExperiment extends Experiment {
     return false;
   }
 
+  /**
+   * Choose whether to evaluate each response only where needed to draw its curve accurately (see
+   * getAdaptiveCurve), typically a few thousand points, or over a fixed grid of 100,000
+   * frequencies. Adaptive sampling is used by default.
+   *
+   * @param adaptiveSampling True if the frequencies should be chosen adaptively
+   */
+  public void setAdaptiveSampling(boolean adaptiveSampling) {
+    this.adaptiveSampling = adaptiveSampling;
+  }
+
   /**
    * Used to set the x-axis over which the response curve is plotted,
    * either frequency (Hz) units or sample-interval (s) units
@@ -1,10 +1,13 @@
 package asl.sensor.experiment;
 
-import static asl.utils.NumericUtils.demean;
-
 import asl.sensor.input.DataStore;
+import asl.utils.input.DataBlock;
+import asl.utils.input.InstrumentResponse;
 import java.util.ArrayList;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.apache.commons.math3.complex.Complex;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
@@ -22,17 +25,83 @@ import org.jfree.data.xy.XYSeriesCollection;
  * "Obtaining Changes in Calibration-Coil to Seismometer Output Constants Using Sine Waves",
  * Bulletin of the Seismological Society of America, Vol 104 (Feb. 2014).
  *
+ * In addition to these estimates, a sine wave and its harmonics are fit to both signals (see
+ * SineFit), giving a much more precise frequency, the amplitude and phase of each signal's
+ * fundamental, and each signal's total harmonic distortion, which measures the linearity of the
+ * sensor. Because a calibration can be millions of samples long, the linearity plot of the output
+ * against the calibration input is binned into a grid, with a point plotted for each cell of the
+ * grid holding more than a few stray samples rather than for every sample, and the time series
+ * plot is reduced to the smallest and largest sample of each of a limited number of intervals.
+ *
+ * A stepped-sine sweep, a sequence of tones of different frequencies, can also be run in one pass
+ * (see setSweepMode). The record is split into the interval of each tone using the zero crossings
+ * of the calibration input, each tone is fit independently (and concurrently), and the ratio and
+ * phase difference of the output to the input at each tone give a measured frequency response.
+ * Once scaled for the type of calibration coil (see setCapacitiveCalibration), this can be
+ * compared against the output's nominal response.
+ *
  * @author akearns - KBRWyle
  */
 public class SineExperiment extends Experiment {
 
+  /**
+   * Number of cells along each axis of the linearity plot's grid unless set otherwise
+   */
+  public static final int DEFAULT_LINEARITY_GRID_SIZE = 256;
+
+  /**
+   * Most points plotted for each signal of the time series plot unless set otherwise
+   */
+  public static final int DEFAULT_TIME_SERIES_POINT_LIMIT = 20000;
+
+  /**
+   * Fraction of the mean sample count of the occupied cells of the linearity grid a cell must have
+   * to be plotted, so that a few outlying samples (such as glitches) do not draw points that look
+   * as significant as the cells the signal spends most of its time in
+   */
+  private static final double MIN_LINEARITY_CELL_FRACTION = 0.01;
+
+  /**
+   * Fraction of the calibration input's standard deviation it must fall below zero by before the
+   * next upward zero crossing is counted, so that noise near zero does not add extra crossings
+   */
+  private static final double CROSSING_HYSTERESIS = 0.1;
+
+  /**
+   * Largest relative difference of a cycle's period from the mean period of the tone so far for
+   * the cycle to still be considered part of that tone
+   */
+  private static final double TONE_PERIOD_TOLERANCE = 0.05;
+
+  /**
+   * Fewest cycles a tone must have (not counting its first and last cycles, which are dropped as
+   * they may contain the transition between tones) to be fit
+   */
+  private static final int MIN_TONE_CYCLES = 5;
+
   private double calSDev, outSDev, peakPeakFreq;
 
+  private SineFit calFit, outFit;
+
+  private int linearityGridSize;
+
+  private int timeSeriesPointLimit;
+
+  private int[][] linearityDensity;
+
+  private boolean sweepMode;
+
+  private boolean isCapacitive;
+
+  private List<SweepTone> sweepTones;
+
   public SineExperiment() {
     super();
     calSDev = 0.;
     outSDev = 0.;
     peakPeakFreq = 0.;
+    linearityGridSize = DEFAULT_LINEARITY_GRID_SIZE;
+    timeSeriesPointLimit = DEFAULT_TIME_SERIES_POINT_LIMIT;
   }
 
   private String getResultData() {
@@ -49,11 +118,35 @@ public class SineExperiment extends Experiment {
         + "\nAmplitude ratio: "
         + ratio
         + "\nEstimated sine frequency: "
-        + estimatedFrequency;
+        + estimatedFrequency
+        + "\nFitted sine frequency (Hz): "
+        + DECIMAL_FORMAT.get().format(outFit.getFrequency())
+        + "\nFitted amplitude ratio: "
+        + DECIMAL_FORMAT.get().format(getFitAmplitudeRatio())
+        + "\nPhase difference (deg): "
+        + DECIMAL_FORMAT.get().format(getFitPhaseDifference())
+        + "\nOutput THD (%): "
+        + DECIMAL_FORMAT.get().format(outFit.getTotalHarmonicDistortion() * 100)
+        + "\nCalibration THD (%): "
+        + DECIMAL_FORMAT.get().format(calFit.getTotalHarmonicDistortion() * 100);
+  }
+
+  private String getSweepResultData() {
+    StringBuilder table = new StringBuilder("FREQ. (Hz)\tGAIN\tPHASE (deg)\tOUTPUT THD (%)");
+    for (SweepTone tone : sweepTones) {
+      table.append('\n').append(DECIMAL_FORMAT.get().format(tone.getFrequency()))
+          .append('\t').append(DECIMAL_FORMAT.get().format(tone.getGain()))
+          .append('\t').append(DECIMAL_FORMAT.get().format(tone.getPhase()))
+          .append('\t').append(DECIMAL_FORMAT.get().format(tone.getOutDistortion() * 100));
+    }
+    return table.toString();
   }
 
   @Override
   public String[] getDataStrings() {
+    if (sweepTones != null) {
+      return new String[]{getSweepResultData()};
+    }
     return new String[]{getResultData()};
   }
 
@@ -69,23 +162,171 @@ public class SineExperiment extends Experiment {
     return peakPeakFreq;
   }
 
+  /**
+   * @return Sine wave and harmonics fit to the calibration input from the last run, or null if
+   * it was not a single-tone run (in sweep mode, each tone's fits are in getSweepTones)
+   */
+  public SineFit getCalFit() {
+    return calFit;
+  }
+
+  /**
+   * @return Sine wave and harmonics fit to the sensor output from the last run, or null if it
+   * was not a single-tone run (in sweep mode, each tone's fits are in getSweepTones)
+   */
+  public SineFit getOutFit() {
+    return outFit;
+  }
+
+  /**
+   * @return Ratio of the fitted calibration amplitude to the fitted output amplitude, or NaN if
+   * the last run was not a single-tone run
+   */
+  public double getFitAmplitudeRatio() {
+    if (calFit == null || outFit == null) {
+      return Double.NaN;
+    }
+    return calFit.getAmplitude() / outFit.getAmplitude();
+  }
+
+  /**
+   * @return Phase of the fitted output relative to the fitted calibration input, in degrees
+   * between -180 and 180, or NaN if the last run was not a single-tone run
+   */
+  public double getFitPhaseDifference() {
+    if (calFit == null || outFit == null) {
+      return Double.NaN;
+    }
+    return wrapPhase(Math.toDegrees(outFit.getPhase() - calFit.getPhase()));
+  }
+
+  /**
+   * Wrap an angle to lie between -180 and 180 degrees
+   */
+  private static double wrapPhase(double degrees) {
+    return degrees - 360 * Math.floor((degrees + 180) / 360);
+  }
+
+  /**
+   * Get the number of samples in each cell of the linearity plot's grid from the last run. Cells
+   * are indexed by calibration value and then output value, each in increasing order; the grid
+   * spans the range of each (demeaned) signal.
+   *
+   * @return Sample counts of the grid, or null if the linearity plot was not binned
+   */
+  public int[][] getLinearityDensity() {
+    return linearityDensity;
+  }
+
+  /**
+   * Get the fit of each tone found by the last run in sweep mode
+   *
+   * @return Results for each tone, in time order (empty if not run in sweep mode)
+   */
+  public List<SweepTone> getSweepTones() {
+    if (sweepTones == null) {
+      return new ArrayList<>();
+    }
+    return new ArrayList<>(sweepTones);
+  }
+
+  /**
+   * Treat the data as a stepped-sine sweep, fitting each tone separately rather than the whole
+   * record as a single sine. The plots produced are then the measured amplitude (in dB) and phase
+   * of the output relative to the calibration input at each tone, along with the nominal response
+   * of the output if one is loaded. For comparison, the measured and nominal amplitude and phase
+   * are each offset to be zero at the tone nearest the nominal response's normalization frequency.
+   *
+   * @param sweepMode True if the data should be treated as a stepped-sine sweep
+   */
+  public void setSweepMode(boolean sweepMode) {
+    this.sweepMode = sweepMode;
+  }
+
+  /**
+   * Used to control the scaling of each tone's measured response in sweep mode, as for random
+   * calibrations (see RandomizedExperiment.setCapactiveCalibration). The output of a resistive
+   * (inductive coil) calibration is the derivative of what the calibration input drives, so its
+   * measured gain is multiplied by 2 * pi * f and its phase advanced by 90 degrees to compare
+   * with the nominal response; a capacitive calibration is not scaled. The default value is false.
+   *
+   * @param isCapacitive True if the calibration is capacitive
+   */
+  public void setCapacitiveCalibration(boolean isCapacitive) {
+    this.isCapacitive = isCapacitive;
+  }
+
+  /**
+   * Set how finely the linearity plot is binned. Each cell of a size x size grid over the range of
+   * the data is plotted as a single point at the cell's center, unless it holds only a small
+   * fraction of the samples of a typical occupied cell (all samples are still counted in the
+   * density returned by getLinearityDensity).
+   *
+   * @param size Number of cells along each axis, or 0 to plot every sample
+   */
+  public void setLinearityGridSize(int size) {
+    linearityGridSize = size;
+  }
+
+  /**
+   * Set how many points of each signal the time series plot may have. Longer data is split into
+   * half as many intervals as this, and only the smallest and largest sample of each interval are
+   * plotted, so the plot still shows the full extent of the signal and any glitches in it.
+   *
+   * @param limit Most points to plot for each signal, or 0 to plot every sample
+   */
+  public void setTimeSeriesPointLimit(int limit) {
+    timeSeriesPointLimit = limit;
+  }
+
   @Override
   protected void backend(DataStore dataStore) {
     calSDev = 0.;
     outSDev = 0.;
     peakPeakFreq = 0.;
+    linearityDensity = null;
+    sweepTones = null;
+    calFit = null;
+    outFit = null;
 
-    double[] calTimeSeries = dataStore.getBlock(0).getData().clone();
-    double[] outTimeSeries = dataStore.getBlock(1).getData().clone();
+    DataBlock calBlock = dataStore.getBlock(0);
+    DataBlock outBlock = dataStore.getBlock(1);
+    double[] calTimeSeries = calBlock.getData();
+    double[] outTimeSeries = outBlock.getData();
+    int length = Math.min(calTimeSeries.length, outTimeSeries.length);
 
-    dataNames.add(dataStore.getBlock(0).getName());
-    dataNames.add(dataStore.getBlock(1).getName());
+    dataNames.add(calBlock.getName());
+    dataNames.add(outBlock.getName());
 
-    // get the sine wave frequency by measuring wavelengths (get distance between peaks)
+    if (sweepMode) {
+      InstrumentResponse nominal = dataStore.responseIsSet(1) ? dataStore.getResponse(1) : null;
+      fitSweep(Arrays.copyOf(calTimeSeries, length), Arrays.copyOf(outTimeSeries, length),
+          calBlock.getSampleRate(), outBlock.getName(), nominal);
+      return;
+    }
+
+    // get the sine wave frequency by measuring wavelengths (get distance between peaks),
+    // gathering the sums for the means and standard deviations in the same pass; the sums are
+    // taken relative to the first sample to avoid losing precision to a large DC offset
     int currentPeakDistance = 0;
     int totalPeakDistance = 0;
     int peakCount = -1; // start at negative 1 so first peak counts as 0
-    for (int i = 1; i < outTimeSeries.length - 1; ++i) {
+    double calShift = calTimeSeries[0];
+    double outShift = outTimeSeries[0];
+    double calSum = 0.;
+    double outSum = 0.;
+    double calSumSquares = 0.;
+    double outSumSquares = 0.;
+    for (int i = 0; i < length; ++i) {
+      double calPoint = calTimeSeries[i] - calShift;
+      double outPoint = outTimeSeries[i] - outShift;
+      calSum += calPoint;
+      outSum += outPoint;
+      calSumSquares += calPoint * calPoint;
+      outSumSquares += outPoint * outPoint;
+      if (i == 0 || i == length - 1) {
+        continue;
+      }
       if (outTimeSeries[i] > outTimeSeries[i - 1] && outTimeSeries[i] > outTimeSeries[i + 1]) {
         ++peakCount;
         totalPeakDistance += currentPeakDistance;
@@ -101,23 +342,32 @@ public class SineExperiment extends Experiment {
     }
 
     // we would like to have the signals centered on 0 for lining them up
-    calTimeSeries = demean(calTimeSeries);
-    outTimeSeries = demean(outTimeSeries);
+    final double calMean = calShift + calSum / length;
+    final double outMean = outShift + outSum / length;
     // standard deviation is a good
-    calSDev = new DescriptiveStatistics(calTimeSeries).getStandardDeviation();
-    outSDev = new DescriptiveStatistics(outTimeSeries).getStandardDeviation();
+    calSDev = Math.sqrt((calSumSquares - calSum * calSum / length) / (length - 1));
+    outSDev = Math.sqrt((outSumSquares - outSum * outSum / length) / (length - 1));
+
+    // fit both signals at the frequency of the (cleaner) calibration input
+    double sampleRate = calBlock.getSampleRate();
+    if (calTimeSeries.length != length || outTimeSeries.length != length) {
+      calTimeSeries = Arrays.copyOf(calTimeSeries, length);
+      outTimeSeries = Arrays.copyOf(outTimeSeries, length);
+    }
+    fireStateChange("Fitting sine waves...");
+    double frequency = SineFit.estimateFrequency(calTimeSeries, sampleRate);
+    calFit = SineFit.fit(calTimeSeries, sampleRate, frequency, SineFit.DEFAULT_HARMONICS);
+    outFit = SineFit.fit(outTimeSeries, sampleRate, frequency, SineFit.DEFAULT_HARMONICS);
 
     // add plots sine waves
     XYSeriesCollection xysc = new XYSeriesCollection();
-    XYSeries cal = new XYSeries(dataStore.getBlock(0).getName() + " [cal]");
-    XYSeries out = new XYSeries(dataStore.getBlock(1).getName() + " [out, scaled]");
-    double interval =
-        dataStore.getBlock(0).getInterval();
+    XYSeries cal = new XYSeries(calBlock.getName() + " [cal]");
+    XYSeries out = new XYSeries(outBlock.getName() + " [out, scaled]");
+    double interval = calBlock.getInterval();
     double start = getStart();
-    for (int i = 0; i < calTimeSeries.length; ++i) {
-      cal.add(start + interval * i, calTimeSeries[i]);
-      out.add(start + interval * i, outTimeSeries[i] * calSDev / outSDev);
-    }
+    double scale = calSDev / outSDev;
+    addTimeSeries(calTimeSeries, length, calMean, 1., start, interval, cal);
+    addTimeSeries(outTimeSeries, length, outMean, scale, start, interval, out);
     xysc.addSeries(cal);
     xysc.addSeries(out);
     xySeriesData = new ArrayList<>();
@@ -125,14 +375,246 @@ public class SineExperiment extends Experiment {
     // produce linearity plots
     xysc = new XYSeriesCollection();
     // booleans: don't autosort, do allow duplicate values
-    XYSeries lin = new XYSeries(dataStore.getBlock(1).getName() + " linearity", false, true);
-    for (int i = 0; i < calTimeSeries.length; ++i) {
-      lin.add(calTimeSeries[i], outTimeSeries[i]);
+    XYSeries lin = new XYSeries(outBlock.getName() + " linearity", false, true);
+    if (linearityGridSize > 0) {
+      binLinearity(calTimeSeries, calMean, outTimeSeries, outMean, lin);
+    } else {
+      for (int i = 0; i < length; ++i) {
+        lin.add(calTimeSeries[i] - calMean, outTimeSeries[i] - outMean);
+      }
     }
     xysc.addSeries(lin);
     xySeriesData.add(xysc);
   }
 
+  /**
+   * Add the demeaned and scaled samples of a signal to its time series plot, or if there are more
+   * of them than the point limit, the smallest and largest of each of half that many intervals
+   * (in the order they occur in)
+   */
+  private void addTimeSeries(double[] timeSeries, int length, double mean, double scale,
+      double start, double interval, XYSeries series) {
+    if (timeSeriesPointLimit <= 0 || length <= timeSeriesPointLimit) {
+      for (int i = 0; i < length; ++i) {
+        series.add(start + interval * i, (timeSeries[i] - mean) * scale);
+      }
+      return;
+    }
+    int bins = Math.max(timeSeriesPointLimit / 2, 1);
+    for (int bin = 0; bin < bins; ++bin) {
+      int from = (int) ((long) bin * length / bins);
+      int to = (int) ((long) (bin + 1) * length / bins);
+      int minIndex = from;
+      int maxIndex = from;
+      for (int i = from + 1; i < to; ++i) {
+        if (timeSeries[i] < timeSeries[minIndex]) {
+          minIndex = i;
+        } else if (timeSeries[i] > timeSeries[maxIndex]) {
+          maxIndex = i;
+        }
+      }
+      int first = Math.min(minIndex, maxIndex);
+      int last = Math.max(minIndex, maxIndex);
+      series.add(start + interval * first, (timeSeries[first] - mean) * scale);
+      if (last != first) {
+        series.add(start + interval * last, (timeSeries[last] - mean) * scale);
+      }
+    }
+  }
+
+  /**
+   * Bin the demeaned output against the demeaned calibration input into the linearity grid and
+   * add a point to the linearity plot for each cell holding more than a few stray samples
+   */
+  private void binLinearity(double[] calTimeSeries, double calMean, double[] outTimeSeries,
+      double outMean, XYSeries lin) {
+    int length = calTimeSeries.length;
+    double calMin = Double.POSITIVE_INFINITY;
+    double calMax = Double.NEGATIVE_INFINITY;
+    double outMin = Double.POSITIVE_INFINITY;
+    double outMax = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < length; ++i) {
+      calMin = Math.min(calMin, calTimeSeries[i]);
+      calMax = Math.max(calMax, calTimeSeries[i]);
+      outMin = Math.min(outMin, outTimeSeries[i]);
+      outMax = Math.max(outMax, outTimeSeries[i]);
+    }
+    int size = linearityGridSize;
+    // avoid zero-width cells if a signal is constant
+    double calWidth = Math.max(calMax - calMin, Double.MIN_NORMAL) / size;
+    double outWidth = Math.max(outMax - outMin, Double.MIN_NORMAL) / size;
+
+    linearityDensity = new int[size][size];
+    int occupied = 0;
+    for (int i = 0; i < length; ++i) {
+      int calCell = Math.min((int) ((calTimeSeries[i] - calMin) / calWidth), size - 1);
+      int outCell = Math.min((int) ((outTimeSeries[i] - outMin) / outWidth), size - 1);
+      if (linearityDensity[calCell][outCell]++ == 0) {
+        ++occupied;
+      }
+    }
+    // a fraction of the mean count of the occupied cells, and never less than one sample
+    double threshold = Math.max(MIN_LINEARITY_CELL_FRACTION * length / occupied, 1.);
+    for (int i = 0; i < size; ++i) {
+      for (int j = 0; j < size; ++j) {
+        if (linearityDensity[i][j] >= threshold) {
+          lin.add(calMin - calMean + (i + 0.5) * calWidth, outMin - outMean + (j + 0.5) * outWidth);
+        }
+      }
+    }
+  }
+
+  /**
+   * Fit each tone of a stepped-sine sweep and plot the measured response at each tone
+   */
+  private void fitSweep(final double[] calTimeSeries, final double[] outTimeSeries,
+      final double sampleRate, String outName, InstrumentResponse nominal) {
+    fireStateChange("Finding tones of sweep...");
+    final List<int[]> segments = findToneSegments(calTimeSeries);
+
+    fireStateChange("Fitting " + segments.size() + " tones...");
+    final SweepTone[] tones = new SweepTone[segments.size()];
+    final double interval = 1000. / sampleRate;
+    IntStream.range(0, tones.length).parallel().forEach(i -> {
+      int[] segment = segments.get(i);
+      double[] cal = Arrays.copyOfRange(calTimeSeries, segment[0], segment[1]);
+      double[] out = Arrays.copyOfRange(outTimeSeries, segment[0], segment[1]);
+      double frequency = SineFit.estimateFrequency(cal, sampleRate);
+      SineFit calToneFit = SineFit.fit(cal, sampleRate, frequency, SineFit.DEFAULT_HARMONICS);
+      SineFit outToneFit = SineFit.fit(out, sampleRate, frequency, SineFit.DEFAULT_HARMONICS);
+      long toneStart = start + (long) (segment[0] * interval);
+      long toneEnd = start + (long) (segment[1] * interval);
+      tones[i] = new SweepTone(toneStart, toneEnd, calToneFit, outToneFit, isCapacitive);
+    });
+    sweepTones = new ArrayList<>(Arrays.asList(tones));
+
+    XYSeries measuredAmplitude = new XYSeries(outName + " measured amplitude");
+    XYSeries measuredPhase = new XYSeries(outName + " measured phase");
+    XYSeriesCollection amplitudes = new XYSeriesCollection();
+    XYSeriesCollection phases = new XYSeriesCollection();
+    xySeriesData = new ArrayList<>();
+    xySeriesData.add(amplitudes);
+    xySeriesData.add(phases);
+    if (tones.length == 0) {
+      amplitudes.addSeries(measuredAmplitude);
+      phases.addSeries(measuredPhase);
+      return;
+    }
+
+    double[] freqs = new double[tones.length];
+    for (int i = 0; i < tones.length; ++i) {
+      freqs[i] = tones[i].getFrequency();
+    }
+    Complex[] nominalCurve = null;
+    int reference = 0;
+    if (nominal != null) {
+      nominalCurve = nominal.applyResponseToInput(freqs);
+      double normalization = nominal.getNormalizationFrequency();
+      for (int i = 1; i < freqs.length; ++i) {
+        if (Math.abs(Math.log(freqs[i] / normalization))
+            < Math.abs(Math.log(freqs[reference] / normalization))) {
+          reference = i;
+        }
+      }
+    }
+
+    double amplitudeOffset = 20 * Math.log10(tones[reference].getGain());
+    double phaseOffset = tones[reference].getPhase();
+    for (SweepTone tone : tones) {
+      measuredAmplitude.add(tone.getFrequency(), 20 * Math.log10(tone.getGain()) - amplitudeOffset);
+      measuredPhase.add(tone.getFrequency(), wrapPhase(tone.getPhase() - phaseOffset));
+    }
+    amplitudes.addSeries(measuredAmplitude);
+    phases.addSeries(measuredPhase);
+
+    if (nominalCurve != null) {
+      XYSeries nominalAmplitude = new XYSeries(nominal.getName() + " nominal amplitude");
+      XYSeries nominalPhase = new XYSeries(nominal.getName() + " nominal phase");
+      double nominalAmplitudeOffset = 20 * Math.log10(nominalCurve[reference].abs());
+      double nominalPhaseOffset = Math.toDegrees(nominalCurve[reference].getArgument());
+      for (int i = 0; i < freqs.length; ++i) {
+        double amplitude = 20 * Math.log10(nominalCurve[i].abs()) - nominalAmplitudeOffset;
+        double phase = Math.toDegrees(nominalCurve[i].getArgument()) - nominalPhaseOffset;
+        nominalAmplitude.add(freqs[i], amplitude);
+        nominalPhase.add(freqs[i], wrapPhase(phase));
+      }
+      amplitudes.addSeries(nominalAmplitude);
+      phases.addSeries(nominalPhase);
+    }
+  }
+
+  /**
+   * Split a stepped-sine sweep into the interval of each tone. Each cycle of the calibration
+   * input is found from its upward zero crossings, and consecutive cycles whose periods agree
+   * with each other are grouped into a tone. The first and last cycle of each tone are dropped,
+   * as they may include the transition from or to the neighboring tone, and tones with too few
+   * cycles left (such as noise between tones) are dropped entirely.
+   *
+   * @param calTimeSeries Calibration input of a sweep
+   * @return Start (inclusive) and end (exclusive) sample index of each tone, in order
+   */
+  static List<int[]> findToneSegments(double[] calTimeSeries) {
+    double sum = 0.;
+    for (double point : calTimeSeries) {
+      sum += point;
+    }
+    double mean = sum / calTimeSeries.length;
+    double sumSquares = 0.;
+    for (double point : calTimeSeries) {
+      sumSquares += (point - mean) * (point - mean);
+    }
+    double threshold = CROSSING_HYSTERESIS * Math.sqrt(sumSquares / calTimeSeries.length);
+
+    // upward zero crossings, interpolated between samples
+    List<Double> crossings = new ArrayList<>();
+    boolean armed = false;
+    for (int i = 1; i < calTimeSeries.length; ++i) {
+      double point = calTimeSeries[i] - mean;
+      if (point < -threshold) {
+        armed = true;
+      } else if (armed && point > 0.) {
+        double previous = calTimeSeries[i - 1] - mean;
+        crossings.add(i - 1 + previous / (previous - point));
+        armed = false;
+      }
+    }
+
+    List<int[]> segments = new ArrayList<>();
+    int first = 0; // crossing that starts the current tone's first cycle
+    double periodSum = 0.;
+    for (int cycle = 0; cycle < crossings.size() - 1; ++cycle) {
+      double period = crossings.get(cycle + 1) - crossings.get(cycle);
+      int cycles = cycle - first;
+      double meanPeriod = periodSum / cycles;
+      if (cycles > 0 && Math.abs(period - meanPeriod) > TONE_PERIOD_TOLERANCE * meanPeriod) {
+        addToneSegment(crossings, first, cycle, segments);
+        first = cycle;
+        periodSum = 0.;
+      }
+      periodSum += period;
+    }
+    addToneSegment(crossings, first, crossings.size() - 1, segments);
+    return segments;
+  }
+
+  /**
+   * Add the samples of a tone, less its first and last cycle, if it has enough cycles left
+   *
+   * @param crossings Upward zero crossings of the calibration input
+   * @param first Index of the crossing starting the tone
+   * @param last Index of the crossing ending the tone
+   * @param segments List of tone intervals to add to
+   */
+  private static void addToneSegment(List<Double> crossings, int first, int last,
+      List<int[]> segments) {
+    if (last - first - 2 < MIN_TONE_CYCLES) {
+      return;
+    }
+    int start = (int) Math.ceil(crossings.get(first + 1));
+    int end = (int) Math.ceil(crossings.get(last - 1));
+    segments.add(new int[]{start, end});
+  }
+
   @Override
   public int blocksNeeded() {
     return 2;
@@ -148,5 +630,84 @@ public class SineExperiment extends Experiment {
     return true;
   }
 
+  /**
+   * Fit of a single tone of a stepped-sine sweep
+   */
+  public static class SweepTone {
+
+    private final long startTime;
+    private final long endTime;
+    private final SineFit calFit;
+    private final SineFit outFit;
+    private final boolean isCapacitive;
+
+    private SweepTone(long startTime, long endTime, SineFit calFit, SineFit outFit,
+        boolean isCapacitive) {
+      this.startTime = startTime;
+      this.endTime = endTime;
+      this.calFit = calFit;
+      this.outFit = outFit;
+      this.isCapacitive = isCapacitive;
+    }
+
+    /**
+     * @return Time of the first sample fit for this tone (epoch ms)
+     */
+    public long getStartTime() {
+      return startTime;
+    }
+
+    /**
+     * @return Time just past the last sample fit for this tone (epoch ms)
+     */
+    public long getEndTime() {
+      return endTime;
+    }
 
+    /**
+     * @return Fitted frequency of the tone (Hz)
+     */
+    public double getFrequency() {
+      return calFit.getFrequency();
+    }
+
+    /**
+     * @return Ratio of the output's fitted amplitude to the calibration input's, multiplied by
+     * 2 * pi * f unless the calibration is capacitive (see setCapacitiveCalibration)
+     */
+    public double getGain() {
+      double gain = outFit.getAmplitude() / calFit.getAmplitude();
+      if (isCapacitive) {
+        return gain;
+      }
+      return gain * 2 * Math.PI * getFrequency();
+    }
+
+    /**
+     * @return Phase of the output relative to the calibration input, advanced by 90 degrees unless
+     * the calibration is capacitive, in degrees between -180 and 180
+     */
+    public double getPhase() {
+      double phase = Math.toDegrees(outFit.getPhase() - calFit.getPhase());
+      if (isCapacitive) {
+        return wrapPhase(phase);
+      }
+      return wrapPhase(phase + 90.);
+    }
+
+    /**
+     * @return Total harmonic distortion of the output during this tone, as a ratio
+     */
+    public double getOutDistortion() {
+      return outFit.getTotalHarmonicDistortion();
+    }
+
+    public SineFit getCalFit() {
+      return calFit;
+    }
+
+    public SineFit getOutFit() {
+      return outFit;
+    }
+  }
 }
@@ -0,0 +1,267 @@
+package asl.sensor.experiment;
+
+import asl.utils.FFTResult;
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.QRDecomposition;
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * Least-squares fit of a sine wave and its harmonics to a timeseries, such as the calibration
+ * input or sensor output of a sine calibration. The frequency of the sine is first estimated from
+ * the peak of the data's FFT and then refined by searching for the maximum of the data's
+ * (windowed) spectrum between the neighboring FFT bins, using the Goertzel algorithm to evaluate
+ * the spectrum at arbitrary frequencies. With the frequency known, the amplitude and phase of the
+ * fundamental and each harmonic (along with a constant offset) are linear parameters, and are
+ * solved for from normal equations whose sums are gathered in a single pass over the data.
+ *
+ * The amplitude of the harmonics relative to the fundamental gives the total harmonic distortion
+ * of the signal, a measure of how linear the sensor's (or calibration coil's) behavior is.
+ */
+public class SineFit {
+
+  /**
+   * Number of harmonics (including the fundamental) fit by default
+   */
+  public static final int DEFAULT_HARMONICS = 5;
+
+  /**
+   * Number of golden-section steps refining the frequency between FFT bins; each narrows the
+   * search range by a factor of 0.618, so this gets well below a millionth of a bin
+   */
+  private static final int FREQUENCY_REFINEMENTS = 40;
+
+  private static final double GOLDEN_RATIO = (Math.sqrt(5) - 1) / 2;
+
+  private final double frequency;
+  private final double offset;
+  private final double[] amplitudes;
+  private final double[] phases;
+  private final double residualRMS;
+
+  private SineFit(double frequency, double offset, double[] amplitudes, double[] phases,
+      double residualRMS) {
+    this.frequency = frequency;
+    this.offset = offset;
+    this.amplitudes = amplitudes;
+    this.phases = phases;
+    this.residualRMS = residualRMS;
+  }
+
+  /**
+   * Fit a sine wave of unknown frequency and its harmonics to data
+   *
+   * @param data Timeseries to fit, which should span at least a few cycles of the sine
+   * @param sampleRate Sample rate of the data (Hz)
+   * @return Parameters of the fit
+   */
+  public static SineFit fit(double[] data, double sampleRate) {
+    return fit(data, sampleRate, estimateFrequency(data, sampleRate), DEFAULT_HARMONICS);
+  }
+
+  /**
+   * Fit a sine wave of a known frequency and its harmonics to data. Harmonics at or above the
+   * nyquist frequency are not fit, and have an amplitude of zero.
+   *
+   * @param data Timeseries to fit
+   * @param sampleRate Sample rate of the data (Hz)
+   * @param frequency Frequency of the sine wave (Hz)
+   * @param harmonics Number of harmonics to fit, including the fundamental
+   * @return Parameters of the fit
+   */
+  public static SineFit fit(double[] data, double sampleRate, double frequency, int harmonics) {
+    double omega = 2 * Math.PI * frequency / sampleRate;
+    int fitted = 0;
+    while (fitted < harmonics && (fitted + 1) * omega < Math.PI) {
+      ++fitted;
+    }
+
+    // basis is a constant followed by the cosine and sine of each harmonic
+    int parameters = 2 * fitted + 1;
+    double[][] normal = new double[parameters][parameters];
+    double[] projection = new double[parameters];
+    double[] basis = new double[parameters];
+    double sumSquares = 0.;
+    basis[0] = 1.;
+    for (int n = 0; n < data.length; ++n) {
+      sumSquares += data[n] * data[n];
+      if (fitted > 0) {
+        double cosine = Math.cos(omega * n);
+        double sine = Math.sin(omega * n);
+        basis[1] = cosine;
+        basis[2] = sine;
+        // higher harmonics from the angle-addition formulas
+        for (int k = 1; k < fitted; ++k) {
+          basis[2 * k + 1] = basis[2 * k - 1] * cosine - basis[2 * k] * sine;
+          basis[2 * k + 2] = basis[2 * k] * cosine + basis[2 * k - 1] * sine;
+        }
+      }
+      for (int i = 0; i < parameters; ++i) {
+        projection[i] += basis[i] * data[n];
+        for (int j = i; j < parameters; ++j) {
+          normal[i][j] += basis[i] * basis[j];
+        }
+      }
+    }
+    for (int i = 0; i < parameters; ++i) {
+      for (int j = 0; j < i; ++j) {
+        normal[i][j] = normal[j][i];
+      }
+    }
+
+    RealVector solution = new QRDecomposition(MatrixUtils.createRealMatrix(normal)).getSolver()
+        .solve(MatrixUtils.createRealVector(projection));
+
+    double[] amplitudes = new double[harmonics];
+    double[] phases = new double[harmonics];
+    for (int k = 0; k < fitted; ++k) {
+      // a*cos(wt) + b*sin(wt) = A*cos(wt + phi) where A = |a - ib| and phi = arg(a - ib)
+      double cosine = solution.getEntry(2 * k + 1);
+      double sine = solution.getEntry(2 * k + 2);
+      amplitudes[k] = Math.hypot(cosine, sine);
+      phases[k] = Math.atan2(-sine, cosine);
+    }
+
+    // residual sum of squares, from the normal equations rather than another pass over the data
+    double residual = sumSquares - solution.dotProduct(MatrixUtils.createRealVector(projection));
+    double residualRMS = Math.sqrt(Math.max(residual, 0.) / data.length);
+
+    return new SineFit(frequency, solution.getEntry(0), amplitudes, phases, residualRMS);
+  }
+
+  /**
+   * Estimate the frequency of the dominant sine wave in data. The FFT bin with the most power
+   * gives a first estimate, which is refined to the frequency maximizing the power of the data's
+   * (continuous) discrete-time Fourier transform between the two neighboring bins.
+   *
+   * @param data Timeseries containing a sine wave
+   * @param sampleRate Sample rate of the data (Hz)
+   * @return Frequency of the sine wave (Hz)
+   */
+  public static double estimateFrequency(double[] data, double sampleRate) {
+    double mean = 0.;
+    for (double point : data) {
+      mean += point;
+    }
+    mean /= data.length;
+    // a Hann window keeps the leakage of the negative-frequency image (and of any other
+    // components) from pulling the peak of the spectrum away from the sine's frequency
+    double[] windowed = new double[data.length];
+    for (int i = 0; i < data.length; ++i) {
+      double window = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (data.length - 1));
+      windowed[i] = (data[i] - mean) * window;
+    }
+
+    FFTResult fft = FFTResult.singleSidedFFT(windowed, sampleRate, false);
+    Complex[] spectrum = fft.getFFT();
+    double[] freqs = fft.getFreqs();
+    int peak = 1;
+    for (int i = 2; i < spectrum.length; ++i) {
+      if (spectrum[i].abs() > spectrum[peak].abs()) {
+        peak = i;
+      }
+    }
+
+    // golden-section search for the spectral peak between the neighboring bins
+    double low = freqs[peak - 1];
+    double high = freqs[Math.min(peak + 1, freqs.length - 1)];
+    double lower = high - GOLDEN_RATIO * (high - low);
+    double upper = low + GOLDEN_RATIO * (high - low);
+    double lowerPower = goertzelPower(windowed, lower / sampleRate);
+    double upperPower = goertzelPower(windowed, upper / sampleRate);
+    for (int i = 0; i < FREQUENCY_REFINEMENTS; ++i) {
+      if (lowerPower > upperPower) {
+        high = upper;
+        upper = lower;
+        upperPower = lowerPower;
+        lower = high - GOLDEN_RATIO * (high - low);
+        lowerPower = goertzelPower(windowed, lower / sampleRate);
+      } else {
+        low = lower;
+        lower = upper;
+        lowerPower = upperPower;
+        upper = low + GOLDEN_RATIO * (high - low);
+        upperPower = goertzelPower(windowed, upper / sampleRate);
+      }
+    }
+    return (low + high) / 2;
+  }
+
+  /**
+   * Power of data's discrete-time Fourier transform at a single frequency, calculated using the
+   * Goertzel algorithm (a second-order recurrence, so no trig functions are evaluated per sample)
+   *
+   * @param data Timeseries to evaluate
+   * @param normalizedFrequency Frequency to evaluate at, in cycles per sample
+   * @return Squared magnitude of the transform at that frequency
+   */
+  static double goertzelPower(double[] data, double normalizedFrequency) {
+    double coefficient = 2 * Math.cos(2 * Math.PI * normalizedFrequency);
+    double previous = 0.;
+    double beforePrevious = 0.;
+    for (double point : data) {
+      double current = point + coefficient * previous - beforePrevious;
+      beforePrevious = previous;
+      previous = current;
+    }
+    return previous * previous + beforePrevious * beforePrevious
+        - coefficient * previous * beforePrevious;
+  }
+
+  /**
+   * @return Frequency of the fundamental (Hz)
+   */
+  public double getFrequency() {
+    return frequency;
+  }
+
+  /**
+   * @return Amplitude (zero to peak) of the fundamental
+   */
+  public double getAmplitude() {
+    return amplitudes[0];
+  }
+
+  /**
+   * @return Phase of the fundamental relative to the first sample (radians), that is, phi in
+   * A*cos(2*pi*f*t + phi)
+   */
+  public double getPhase() {
+    return phases[0];
+  }
+
+  /**
+   * @return Constant (DC) offset of the data
+   */
+  public double getOffset() {
+    return offset;
+  }
+
+  /**
+   * @return Amplitude of the fundamental and each harmonic, in order (the fundamental is first)
+   */
+  public double[] getHarmonicAmplitudes() {
+    return amplitudes.clone();
+  }
+
+  /**
+   * Get the total harmonic distortion of the data, the RMS amplitude of the harmonics relative to
+   * that of the fundamental
+   *
+   * @return Total harmonic distortion as a ratio (multiply by 100 for percent)
+   */
+  public double getTotalHarmonicDistortion() {
+    double harmonicPower = 0.;
+    for (int k = 1; k < amplitudes.length; ++k) {
+      harmonicPower += amplitudes[k] * amplitudes[k];
+    }
+    return Math.sqrt(harmonicPower) / amplitudes[0];
+  }
+
+  /**
+   * @return RMS of what remains of the data after the fitted sine and harmonics are removed
+   */
+  public double getResidualRMS() {
+    return residualRMS;
+  }
+}
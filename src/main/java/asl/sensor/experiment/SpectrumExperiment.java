@@ -2,11 +2,17 @@ package asl.sensor.experiment;
 
 import asl.sensor.input.DataStore;
 import asl.utils.FFTResult;
+import asl.utils.input.DataBlock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
 /**
- * Calculates PSD to get cross-power. Can be done on 1-3 different series of data; does not estimate
- * noise parameters taken from these PSDs due to having such limited data.
+ * Calculates PSD to get cross-power. Can be done on any number of series of data up to the number
+ * of inputs a DataStore holds (i.e., all components of three sensors at a station); does not
+ * estimate noise parameters taken from these PSDs due to having such limited data.
  * Based on code in the seedscan timeseries package, see
  * https://github.com/usgs/seedscan/tree/master/src/main/java/asl/timeseries
  *
@@ -22,7 +28,19 @@ public class SpectrumExperiment extends Experiment {
 
   private int[] respIndices;
 
-  private static final int MAX_DATA_EXPECTED = 3;
+  private static final int MAX_DATA_EXPECTED = DataStore.FILE_COUNT;
+
+  /**
+   * Longest period included in the PSD probability density histograms (s)
+   */
+  private static final double PDF_MAX_PERIOD = 1000.;
+
+  /**
+   * True if PSD probability density histograms of each series should also be produced
+   */
+  private boolean probabilityDensity;
+
+  private List<PowerDensityHistogram> histograms;
 
   /**
    * Instantiates a noise experiment -- axis titles and scales
@@ -31,6 +49,8 @@ public class SpectrumExperiment extends Experiment {
     super();
     respIndices = new int[MAX_DATA_EXPECTED];
     freqSpace = false;
+    probabilityDensity = false;
+    histograms = new ArrayList<>();
   }
 
   @Override
@@ -58,7 +78,7 @@ public class SpectrumExperiment extends Experiment {
     plotTimeseries.setAutoWidth(true);
 
     int loadedDataCount = 0;
-    for (int i = 0; i < 3; ++i) {
+    for (int i = 0; i < MAX_DATA_EXPECTED; ++i) {
       if (dataStore.bothComponentsSet(i)) {
         ++loadedDataCount;
       }
@@ -78,15 +98,38 @@ public class SpectrumExperiment extends Experiment {
 
     fireStateChange("Getting PSDs of each series...");
 
-    // gets the PSDs of each given index for given freqSpace
-    for (int index : respIndices) {
-      fireStateChange("Getting PSDs of data " + index + "...");
-      addToPlot(dataStore, freqSpace, index, plotTimeseries);
+    final FFTResult[] psds = new FFTResult[respIndices.length];
+    IntStream.range(0, respIndices.length).parallel().forEach(i ->
+        psds[i] = dataStore.getPSD(respIndices[i]));
+
+    for (int i = 0; i < respIndices.length; ++i) {
+      int index = respIndices[i];
+      XYSeries powerSeries =
+          new XYSeries("PSD " + dataStore.getBlock(index).getName() + " [" + index + "]");
+      addToPlot(powerSeries, psds[i].getFFT(), psds[i].getFreqs(), freqSpace, plotTimeseries);
     }
 
     plotTimeseries.addSeries(FFTResult.getLowNoiseModel(freqSpace));
     plotTimeseries.addSeries(FFTResult.getHighNoiseModel(freqSpace));
 
+    histograms = new ArrayList<>();
+    if (probabilityDensity) {
+      for (int index : respIndices) {
+        fireStateChange("Getting PSD probability density of data " + index + "...");
+        DataBlock block = dataStore.getBlock(index);
+        // shortest period whose octave-wide average lies entirely below the nyquist frequency
+        double minPeriod = 4. / block.getSampleRate();
+        PowerDensityHistogram histogram = new PowerDensityHistogram(minPeriod, PDF_MAX_PERIOD);
+        histogram.addData(block.getData(), block.getInterval(), dataStore.getResponse(index));
+        histograms.add(histogram);
+        String name = block.getName() + " [" + index + "]";
+        plotTimeseries.addSeries(
+            histogram.toXYSeries("PDF mode " + name, histogram.getMode(), freqSpace));
+        plotTimeseries.addSeries(
+            histogram.toXYSeries("PDF median " + name, histogram.getMedian(), freqSpace));
+      }
+    }
+
     xySeriesData.add(plotTimeseries);
 
   }
@@ -128,6 +171,26 @@ public class SpectrumExperiment extends Experiment {
     return freqSpace;
   }
 
+  /**
+   * Get the PSD probability density histograms of each series from the last run, if they were
+   * enabled (see setProbabilityDensity)
+   *
+   * @return Histogram of each series' segment PSDs, in the order of the active response indices
+   */
+  public List<PowerDensityHistogram> getPowerDensityHistograms() {
+    return new ArrayList<>(histograms);
+  }
+
+  /**
+   * Also produce probability density histograms of the PSDs of hour-long segments of each series
+   * (see PowerDensityHistogram), plotting the mode and median of each alongside the averaged PSD
+   *
+   * @param probabilityDensity True if the histograms should be produced
+   */
+  public void setProbabilityDensity(boolean probabilityDensity) {
+    this.probabilityDensity = probabilityDensity;
+  }
+
   /**
    * Used to set the x-axis over which the PSDs / cross-powers are plotted,
    * either frequency (Hz) units or sample-interval (s) units
@@ -17,6 +17,7 @@ import asl.utils.input.InstrumentResponse;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.IntStream;
 import org.apache.commons.math3.complex.Complex;
 import org.apache.commons.math3.fitting.leastsquares.LeastSquaresBuilder;
 import org.apache.commons.math3.fitting.leastsquares.LeastSquaresOptimizer;
@@ -56,25 +57,52 @@ public class StepExperiment extends Experiment {
   /**
    * Resolution of step size for iterative solution process
    */
-  private final double STEP_FACTOR = 1E-15;
+  private static final double STEP_FACTOR = 1E-15;
   /**
    * Used in the least squared solver (quit when function output changes by less than this value)
    */
-  private final double F_TOLER = 1E-15;
+  private static final double F_TOLER = 1E-15;
   /**
    * Used in the least squared solver (limit in change to apply to corner and damping params)
    */
-  private final double X_TOLER = 1E-15;
+  private static final double X_TOLER = 1E-15;
+  /**
+   * Time over which the change in the calibration signal is measured to find step onsets (s)
+   */
+  private static final double ONSET_LAG_SECONDS = 1.;
+  /**
+   * Minimum ratio of the largest change in the calibration signal to its typical change for any
+   * steps to be considered present
+   */
+  private static final double STEP_CONTRAST = 10.;
+  /**
+   * Fraction of the largest change in the calibration signal that marks a step onset
+   */
+  private static final double ONSET_FRACTION = 0.5;
+  /**
+   * Shortest length of data for a single step to be fit on its own (s)
+   */
+  private static final double MIN_STEP_SECONDS = 120.;
+  /**
+   * Longest length of data before each step's onset to include in its fit (s)
+   */
+  private static final double PRE_STEP_SECONDS = 60.;
   private double f, h; //corner and damping of output (uncorrected)
   private double fCorr, hCorr; // fit parameters to turn output into cal input
   private double initResid, fitResid; // residual values
   private int trimmedLength, cutAmount;
   private double[] freqs; // frequency (i.e., x-axis values) of step cal FFT series
-  private Complex[] sensorFFTSeries; // FFT of step cal from sensor
+  private StepModel evaluator; // deconvolves fit responses from step cal output
+  private boolean recursiveModel; // true if model is evaluated in time domain rather than by FFT
+  private boolean multiStep; // true if each step in the data is also fit individually
+  private List<StepFit> stepFits; // fits of individual steps from most recent multi-step run
   private int sensorOutIdx; // used to keep track of response location for report generation
 
   public StepExperiment() {
     super();
+    recursiveModel = false;
+    multiStep = false;
+    stepFits = new ArrayList<>();
   }
 
   @Override
@@ -108,7 +136,29 @@ public class StepExperiment extends Experiment {
         + "\nDamping: "
         + DECIMAL_FORMAT.get().format(fitDamping)
         + "\n";
-    return new String[]{sb, sb2};
+    if (stepFits.size() < 2) {
+      return new String[]{sb, sb2};
+    }
+    return new String[]{sb, sb2, getStepFitString()};
+  }
+
+  /**
+   * Get a summary of the fits of each step found in the data, with their mean and spread
+   *
+   * @return String listing each step's fit parameters and their statistics
+   */
+  private String getStepFitString() {
+    StringBuilder sb = new StringBuilder("Per-step fits (").append(stepFits.size())
+        .append(" steps)");
+    for (int i = 0; i < stepFits.size(); ++i) {
+      sb.append("\nStep ").append(i + 1).append(": ").append(stepFits.get(i));
+    }
+    double[] statistics = getStepStatistics();
+    sb.append("\nMean corner (Hz): ").append(DECIMAL_FORMAT.get().format(statistics[0]))
+        .append(" (+/- ").append(DECIMAL_FORMAT.get().format(statistics[1])).append(")")
+        .append("\nMean damping: ").append(DECIMAL_FORMAT.get().format(statistics[2]))
+        .append(" (+/- ").append(DECIMAL_FORMAT.get().format(statistics[3])).append(")\n");
+    return sb.toString();
   }
 
   /**
@@ -216,8 +266,9 @@ public class StepExperiment extends Experiment {
     FFTResult sensorsFFT =
         FFTResult.singleSidedFFT(data, sensorOutput.getSampleRate(), needsFlip);
     // these values used in calculating the response deconvolution
-    sensorFFTSeries = sensorsFFT.getFFT();
     freqs = sensorsFFT.getFreqs();
+    evaluator = createModel(data, sensorsFFT, sensorOutput.getSampleRate(), needsFlip,
+        cutAmount, trimmedLength, recursiveModel);
     // calculate method applies the current f, h value to the FFT (removes response),
     // inverts the FFT back into time space, and then does additional filtering on the result
     // (i.e., lowpass, demean, normalize)
@@ -252,7 +303,7 @@ public class StepExperiment extends Experiment {
     LeastSquaresProblem lsp = new LeastSquaresBuilder().
         start(startVector).
         target(observedComponents).
-        model(this::jacobian).
+        model(point -> jacobian(evaluator, point)).
         lazyEvaluation(false).
         maxEvaluations(Integer.MAX_VALUE).
         maxIterations(Integer.MAX_VALUE).
@@ -296,6 +347,13 @@ public class StepExperiment extends Experiment {
     // add plot of step stuff
     xySeriesData.add(xysc);
 
+    stepFits = new ArrayList<>();
+    if (multiStep) {
+      fireStateChange("Fitting individual steps...");
+      stepFits = fitEachStep(stepCalRaw, sensorOutput.getData(), needsFlip, params,
+          recursiveModel);
+    }
+
     fireStateChange("Fit gotten. Getting Bode plots...");
 
     // now add the plots of response curve and magnitude from init & fit value
@@ -378,71 +436,7 @@ public class StepExperiment extends Experiment {
    * response from the sensor-input timeseries (done in frequency space)
    */
   private double[] calculate(double[] params) {
-
-    // the original length of the timeseries data we've gotten the FFT of
-    int inverseTrim = trimmedLength + 2 * cutAmount;
-    // the upper bound on the returned data (trimmed length plus amount cut from start as offset)
-    int upperBound = trimmedLength + cutAmount;
-
-    // use these terms to calculate the poles
-    double f = params[0];
-    double h = params[1];
-
-    // term inside the square root in the calculations of p1, p2
-    // (h^2-1)
-    Complex tempResult = new Complex(Math.pow(h, 2) - 1);
-
-    double omega = 2 * Math.PI * f; // omega_0
-
-    // casting h as a complex number to enable these calculations
-    Complex hCast = new Complex(h);
-
-    // - (h + sqrt(h^2-1))
-    Complex pole1 = hCast.add(tempResult.sqrt()).multiply(-1);
-    pole1 = pole1.multiply(omega);
-    // cannot modify complex numbers "in-place"; they MUST be (re)assigned
-
-    // - (h - sqrt(h^2-1))
-    Complex pole2 = hCast.subtract(tempResult.sqrt()).multiply(-1);
-    pole2 = pole2.multiply(omega);
-
-    // calculate the FFT of the response
-    // recall that sensorFFTSeries is the FFT of the sensor output from the step signal
-    Complex[] respFFT = new Complex[sensorFFTSeries.length]; // array of resps
-    // don't let denominator be zero
-    respFFT[0] = Complex.ONE;
-    for (int i = 1; i < respFFT.length; ++i) {
-      // replaced freqs[i] with 2*pi*i*f
-      Complex factor = new Complex(0, 2 * Math.PI * freqs[i]);
-      // (2*pi*i*f - p1) * (2*pi*f*i - p2)
-      Complex denom = factor.subtract(pole1).multiply(factor.subtract(pole2));
-      respFFT[i] = factor.divide(denom);
-    }
-
-    // get water level for response curve (gets multiplicative inverse as well)
-    respFFT = setWaterLevel(respFFT);
-
-    // now that we have the response curve, we can remove it from the FFT of the sensor data
-    Complex[] toDeconvolve = new Complex[sensorFFTSeries.length];
-    // deconvolving response is dividing fft(signal) by fft(response)
-    // note that setting water level involves inverting the respFFT value, so we multiply here
-    for (int i = 0; i < sensorFFTSeries.length; ++i) {
-      toDeconvolve[i] = sensorFFTSeries[i].multiply(respFFT[i]);
-    }
-
-    int lastIdx = toDeconvolve.length - 1;
-    toDeconvolve[lastIdx] = new Complex(toDeconvolve[lastIdx].abs(), 0.);
-
-    // return data to time space
-    double[] returnValue = FFTResult.singleSidedInverseFFT(toDeconvolve, inverseTrim);
-
-    // trim data around areas with filter ringing and remove linear trend
-    int trimOffset = 0;
-    returnValue = Arrays.copyOfRange(returnValue, cutAmount + trimOffset, upperBound + trimOffset);
-    returnValue = detrendEnds(returnValue);
-    returnValue = normalize(returnValue);
-
-    return returnValue;
+    return evaluator.evaluate(params[0], params[1]);
   }
 
   /**
@@ -483,25 +477,25 @@ public class StepExperiment extends Experiment {
    * Computes the forward change in value of the calculations for response
    * formed from a given corner and damping value
    *
+   * @param model Model of the deconvolved step to get the derivatives of
    * @param variables Vector with the corner and damping values (in that order) from which the
    * derivatives are calculated
    * @return The result at the passed-in point plus the approximate derivative
    * of these points, as a vector and matrix respectively
    */
-  private Pair<RealVector, RealMatrix> jacobian(RealVector variables) {
-    // approximate through forward differences
-    double[][] jacobian = new double[trimmedLength][2];
-
+  private static Pair<RealVector, RealMatrix> jacobian(StepModel model, RealVector variables) {
     double f1 = variables.getEntry(0);
     double h1 = variables.getEntry(1);
-    double f2 = f1 + STEP_FACTOR;
-    double h2 = h1 + STEP_FACTOR;
 
-    double[] fInit = calculate(new double[]{f1, h1});
-    double[] diffOnF = calculate(new double[]{f2, h1});
-    double[] diffOnH = calculate(new double[]{f1, h2});
+    // the model at the current point and with each parameter perturbed are evaluated together
+    double[][] evaluations = model.evaluateWithPerturbations(f1, h1, STEP_FACTOR);
+    double[] fInit = evaluations[0];
+    double[] diffOnF = evaluations[1];
+    double[] diffOnH = evaluations[2];
 
-    for (int i = 0; i < trimmedLength; ++i) {
+    // approximate through forward differences
+    double[][] jacobian = new double[fInit.length][2];
+    for (int i = 0; i < fInit.length; ++i) {
       jacobian[i][0] = (diffOnF[i] - fInit[i]) / STEP_FACTOR;
       jacobian[i][1] = (diffOnH[i] - fInit[i]) / STEP_FACTOR;
     }
@@ -512,6 +506,240 @@ public class StepExperiment extends Experiment {
     return new Pair<>(fnc, jMat);
   }
 
+  /**
+   * Create the model used to deconvolve fit responses from the sensor output
+   *
+   * @param data Sensor output, already lowpassed and tapered
+   * @param sensorsFFT FFT of the data (used only by the FFT model)
+   * @param sps Sample rate of the data
+   * @param needsFlip True if the sensor output must be inverted
+   * @param cutAmount Number of points trimmed from the start of the model's result
+   * @param trimmedLength Number of points in the model's result
+   * @param recursive True if the recursive time-domain model should be used
+   * @return Model of the deconvolved step
+   */
+  private static StepModel createModel(double[] data, FFTResult sensorsFFT, double sps,
+      boolean needsFlip, int cutAmount, int trimmedLength, boolean recursive) {
+    if (!recursive) {
+      return new StepResponseEvaluator(
+          sensorsFFT.getFFT(), sensorsFFT.getFreqs(), cutAmount, trimmedLength);
+    }
+    double[] sensorData = data.clone();
+    if (needsFlip) {
+      for (int i = 0; i < sensorData.length; ++i) {
+        sensorData[i] *= -1;
+      }
+    }
+    return new RecursiveStepEvaluator(sensorData, sps, cutAmount, trimmedLength);
+  }
+
+  /**
+   * Find the steps in the calibration signal and fit the corner and damping of each one, with
+   * all steps fit concurrently
+   *
+   * @param stepCalRaw Calibration input
+   * @param sensorData Sensor output, unfiltered
+   * @param needsFlip True if the sensor output must be inverted
+   * @param initParams Corner and damping from the sensor's response, used as the starting point
+   * @param recursive True if the recursive time-domain model should be used
+   * @return Fit of each step found, in chronological order (empty if fewer than two steps were
+   * found, as the full-range fit already covers a single step)
+   */
+  private static List<StepFit> fitEachStep(DataBlock stepCalRaw, double[] sensorData,
+      boolean needsFlip, double[] initParams, boolean recursive) {
+    double sps = stepCalRaw.getSampleRate();
+    double[] calData = stepCalRaw.getData();
+    int length = Math.min(calData.length, sensorData.length);
+    List<Pair<Integer, Integer>> segments =
+        findStepSegments(Arrays.copyOfRange(calData, 0, length), sps);
+    if (segments.size() < 2) {
+      return new ArrayList<>();
+    }
+    StepFit[] fits = new StepFit[segments.size()];
+    IntStream.range(0, segments.size()).parallel().forEach(i -> {
+      Pair<Integer, Integer> segment = segments.get(i);
+      double[] calSegment =
+          Arrays.copyOfRange(calData, segment.getFirst(), segment.getSecond());
+      double[] outSegment =
+          Arrays.copyOfRange(sensorData, segment.getFirst(), segment.getSecond());
+      long onsetTime =
+          stepCalRaw.getStartTime() + segment.getFirst() * stepCalRaw.getInterval();
+      fits[i] = fitStep(calSegment, outSegment, sps, needsFlip, initParams, recursive, onsetTime);
+    });
+    return new ArrayList<>(Arrays.asList(fits));
+  }
+
+  /**
+   * Fit the corner and damping of a single step, using the same processing as the full-range fit
+   */
+  private static StepFit fitStep(double[] calData, double[] outData, double sps,
+      boolean needsFlip, double[] initParams, boolean recursive, long startTime) {
+    int cutAmount = (int) sps * 10;
+    int highBound = calData.length - cutAmount;
+    int trimmedLength = highBound - cutAmount;
+
+    double[] stepCalSeries = lowPassFilter(calData.clone(), sps, 0.1, 2);
+    stepCalSeries = Arrays.copyOfRange(stepCalSeries, cutAmount, highBound);
+    stepCalSeries = demean(stepCalSeries);
+    stepCalSeries = detrendEnds(stepCalSeries);
+    stepCalSeries = normalize(stepCalSeries);
+
+    double[] data = lowPassFilter(outData.clone(), sps, 0.1, 2);
+    FFTResult.cosineTaper(data, 0.025);
+    FFTResult sensorsFFT = recursive ? null : FFTResult.singleSidedFFT(data, sps, needsFlip);
+    StepModel model =
+        createModel(data, sensorsFFT, sps, needsFlip, cutAmount, trimmedLength, recursive);
+
+    LeastSquaresProblem lsp = new LeastSquaresBuilder().
+        start(createRealVector(initParams)).
+        target(createRealVector(stepCalSeries)).
+        model(point -> jacobian(model, point)).
+        lazyEvaluation(false).
+        maxEvaluations(Integer.MAX_VALUE).
+        maxIterations(Integer.MAX_VALUE).
+        build();
+    LeastSquaresOptimizer optimizer = new LevenbergMarquardtOptimizer().
+        withCostRelativeTolerance(F_TOLER).
+        withParameterRelativeTolerance(X_TOLER);
+    LeastSquaresOptimizer.Optimum optimum = optimizer.optimize(lsp);
+    double[] fit = optimum.getPoint().toArray();
+    return new StepFit(startTime, fit[0], fit[1], optimum.getRMS() * 100);
+  }
+
+  /**
+   * Find the individual steps in a calibration signal containing one or more steps (such as
+   * a series of positive and negative pulses, each edge of which is a step). Step onsets are
+   * where the change in the signal over ONSET_LAG_SECONDS peaks above half of its largest value
+   * (steps are assumed to be of similar size). Each step's range of data begins shortly before
+   * its onset and ends shortly before the next step's, so that each range holds a single step
+   * and the level before it.
+   *
+   * @param calData Calibration input signal
+   * @param sps Sample rate of the signal
+   * @return List of (start, end) sample index ranges of each step long enough to be fit, in
+   * chronological order; empty if no steps can be distinguished from the background signal
+   */
+  static List<Pair<Integer, Integer>> findStepSegments(double[] calData, double sps) {
+    List<Pair<Integer, Integer>> segments = new ArrayList<>();
+    int lag = Math.max(1, (int) Math.round(ONSET_LAG_SECONDS * sps));
+    int diffLength = calData.length - lag;
+    if (diffLength < 2) {
+      return segments;
+    }
+    double[] changes = new double[diffLength];
+    double maxChange = 0.;
+    for (int i = 0; i < diffLength; ++i) {
+      changes[i] = Math.abs(calData[i + lag] - calData[i]);
+      maxChange = Math.max(maxChange, changes[i]);
+    }
+    double[] sorted = changes.clone();
+    Arrays.sort(sorted);
+    double typicalChange = sorted[diffLength / 2];
+    if (maxChange == 0. || maxChange <= STEP_CONTRAST * typicalChange) {
+      return segments;
+    }
+
+    // onset is the center of the peak change in each run of samples above the threshold;
+    // onsets closer together than the minimum step length are treated as one step
+    double threshold = ONSET_FRACTION * maxChange;
+    int minSeparation = (int) (MIN_STEP_SECONDS * sps);
+    List<Integer> onsets = new ArrayList<>();
+    int peak = -1;
+    for (int i = 0; i <= diffLength; ++i) {
+      if (i < diffLength && changes[i] >= threshold) {
+        if (peak < 0 || changes[i] > changes[peak]) {
+          peak = i;
+        }
+      } else if (peak >= 0) {
+        int onset = peak + lag / 2;
+        if (onsets.isEmpty() || onset - onsets.get(onsets.size() - 1) >= minSeparation) {
+          onsets.add(onset);
+        }
+        peak = -1;
+      }
+    }
+
+    int preStep = (int) (PRE_STEP_SECONDS * sps);
+    int[] starts = new int[onsets.size()];
+    for (int i = 0; i < onsets.size(); ++i) {
+      int previous = (i == 0) ? 0 : onsets.get(i - 1);
+      // don't take more than a quarter of the previous step's range
+      int lead = (i == 0) ? preStep : Math.min(preStep, (onsets.get(i) - previous) / 4);
+      starts[i] = Math.max(0, onsets.get(i) - lead);
+    }
+    for (int i = 0; i < starts.length; ++i) {
+      int end = (i + 1 < starts.length) ? starts[i + 1] : calData.length;
+      if (end - starts[i] >= minSeparation) {
+        segments.add(new Pair<>(starts[i], end));
+      }
+    }
+    return segments;
+  }
+
+  /**
+   * Get the fits of each step in the data from the most recent multi-step run
+   *
+   * @return Fit of each step, in chronological order (empty if multi-step fitting was not
+   * enabled or fewer than two steps were found)
+   */
+  public List<StepFit> getStepFits() {
+    return stepFits;
+  }
+
+  /**
+   * Get the mean and standard deviation of the corner and damping over all individual steps
+   *
+   * @return Array of {mean corner, corner std. dev., mean damping, damping std. dev.}; all zero
+   * if there are no per-step fits
+   */
+  public double[] getStepStatistics() {
+    int count = stepFits.size();
+    if (count == 0) {
+      return new double[4];
+    }
+    double cornerSum = 0.;
+    double dampingSum = 0.;
+    for (StepFit fit : stepFits) {
+      cornerSum += fit.getCorner();
+      dampingSum += fit.getDamping();
+    }
+    double cornerMean = cornerSum / count;
+    double dampingMean = dampingSum / count;
+    double cornerSquares = 0.;
+    double dampingSquares = 0.;
+    for (StepFit fit : stepFits) {
+      cornerSquares += Math.pow(fit.getCorner() - cornerMean, 2);
+      dampingSquares += Math.pow(fit.getDamping() - dampingMean, 2);
+    }
+    int degrees = Math.max(1, count - 1);
+    return new double[]{cornerMean, Math.sqrt(cornerSquares / degrees),
+        dampingMean, Math.sqrt(dampingSquares / degrees)};
+  }
+
+  /**
+   * Set whether each step in the data is also fit on its own. A step calibration record often
+   * holds several steps (e.g., positive and negative pulses); when enabled, the steps are found
+   * from the calibration signal and fit concurrently, and each step's corner and damping are
+   * reported along with their mean and spread. The full-range fit is still done as before.
+   *
+   * @param useMultiStep True if individual steps should be found and fit
+   */
+  public void setMultiStep(boolean useMultiStep) {
+    multiStep = useMultiStep;
+  }
+
+  /**
+   * Set whether the response is removed from the sensor output with a recursive time-domain
+   * filter (the bilinear transform of the inverse response) instead of by division of FFTs.
+   * The recursive model is much cheaper to evaluate on long, high sample rate data; its results
+   * closely match those of the FFT model but can differ slightly near the ends of the data.
+   *
+   * @param useRecursiveModel True if the recursive model should be used
+   */
+  public void setRecursiveModel(boolean useRecursiveModel) {
+    recursiveModel = useRecursiveModel;
+  }
+
   /**
    * NOTE: not used by corresponding panel, overrides with active indices
    * of components in the combo-box
@@ -523,4 +751,47 @@ public class StepExperiment extends Experiment {
     return new int[]{sensorOutIdx};
   }
 
+  /**
+   * Corner and damping fit to a single step of a multi-step calibration
+   */
+  public static class StepFit {
+
+    private final long startTime;
+    private final double corner;
+    private final double damping;
+    private final double residual;
+
+    StepFit(long startTime, double corner, double damping, double residual) {
+      this.startTime = startTime;
+      this.corner = corner;
+      this.damping = damping;
+      this.residual = residual;
+    }
+
+    /**
+     * @return Start of the data range used to fit the step, as epoch milliseconds
+     */
+    public long getStartTime() {
+      return startTime;
+    }
+
+    public double getCorner() {
+      return corner;
+    }
+
+    public double getDamping() {
+      return damping;
+    }
+
+    public double getResidual() {
+      return residual;
+    }
+
+    @Override
+    public String toString() {
+      return "corner " + DECIMAL_FORMAT.get().format(corner) + " Hz, damping "
+          + DECIMAL_FORMAT.get().format(damping);
+    }
+  }
+
 }
@@ -0,0 +1,30 @@
+package asl.sensor.experiment;
+
+/**
+ * Model used by StepExperiment to remove a response given by corner frequency and damping from
+ * the sensor's step output, which is fit to the step calibration input by the solver
+ */
+interface StepModel {
+
+  /**
+   * Get the deconvolved step for the given response parameters
+   *
+   * @param corner Corner frequency of the response (Hz)
+   * @param damping Damping of the response
+   * @return The trimmed, detrended and normalized time series resulting from removing the
+   * response from the sensor output
+   */
+  double[] evaluate(double corner, double damping);
+
+  /**
+   * Get the deconvolved step for the given response parameters, as well as for each parameter
+   * increased by the given step, for estimating derivatives by forward difference
+   *
+   * @param corner Corner frequency of the response (Hz)
+   * @param damping Damping of the response
+   * @param step Amount to increase each parameter by
+   * @return Array of the results at (corner, damping), (corner + step, damping), and
+   * (corner, damping + step), in that order
+   */
+  double[][] evaluateWithPerturbations(double corner, double damping, double step);
+}
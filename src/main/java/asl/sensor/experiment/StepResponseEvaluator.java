@@ -0,0 +1,319 @@
+package asl.sensor.experiment;
+
+import static asl.utils.NumericUtils.detrendEnds;
+import static asl.utils.NumericUtils.normalize;
+
+import asl.utils.FFTResult;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import org.apache.commons.math3.complex.Complex;
+
+/**
+ * Evaluates the step calibration model used by StepExperiment: removes the response given by a
+ * corner frequency and damping from the FFT of the sensor's step output, returns the result to
+ * the time domain, and trims, detrends and normalizes it.
+ *
+ * The solver evaluates this model many times over the same FFT, varying only the two response
+ * parameters. Rather than building arrays of Complex objects and a new transform for each
+ * evaluation, this class keeps the sensor FFT and the angular frequencies as primitive arrays,
+ * precomputes the twiddle factors of the inverse transform once (the "plan"), and reuses its
+ * work buffers between calls. The inverse transform itself is done as a half-length complex FFT,
+ * since the time-domain result is real. The Jacobian needs the model at the current point and at
+ * a perturbation of each parameter; all three responses are computed in a single pass over the
+ * frequencies, and the three inverse transforms are done concurrently.
+ *
+ * An instance is not safe for concurrent use, as evaluations share the work buffers.
+ */
+class StepResponseEvaluator implements StepModel {
+
+  /**
+   * Number of models evaluated for a Jacobian (current point, perturbed corner, perturbed damping)
+   */
+  private static final int VARIANTS = 3;
+
+  private final double[] sensorReal;
+  private final double[] sensorImag;
+  /**
+   * Angular frequency (2 * pi * f) of each point of the sensor FFT
+   */
+  private final double[] omegas;
+  private final int cutAmount;
+  private final int upperBound;
+  /**
+   * Length of the full (two-sided) transform; the half-length complex FFT has half this length
+   */
+  private final int fftLength;
+  /**
+   * cos(2 * pi * k / fftLength) and sin(2 * pi * k / fftLength) for k up to fftLength / 2
+   */
+  private final double[] cosTable;
+  private final double[] sinTable;
+  /**
+   * Number of bits in the indices of the half-length FFT, for bit-reversal permutation
+   */
+  private final int log2HalfLength;
+  private final Workspace[] workspaces;
+
+  /**
+   * Create an evaluator over the FFT of the sensor's step output
+   *
+   * @param sensorFFT Single-sided FFT of the sensor output (as from FFTResult.singleSidedFFT)
+   * @param freqs Frequencies of each point of the FFT
+   * @param cutAmount Number of points trimmed from the start of the time-domain result
+   * @param trimmedLength Number of points in the trimmed time-domain result
+   */
+  StepResponseEvaluator(Complex[] sensorFFT, double[] freqs, int cutAmount, int trimmedLength) {
+    int length = sensorFFT.length;
+    sensorReal = new double[length];
+    sensorImag = new double[length];
+    omegas = new double[length];
+    for (int i = 0; i < length; ++i) {
+      sensorReal[i] = sensorFFT[i].getReal();
+      sensorImag[i] = sensorFFT[i].getImaginary();
+      omegas[i] = 2 * Math.PI * freqs[i];
+    }
+    this.cutAmount = cutAmount;
+    upperBound = trimmedLength + cutAmount;
+
+    fftLength = (length - 1) * 2;
+    int halfLength = fftLength / 2;
+    if (halfLength > 0 && Integer.bitCount(halfLength) == 1) {
+      log2HalfLength = Integer.numberOfTrailingZeros(halfLength);
+      cosTable = new double[halfLength];
+      sinTable = new double[halfLength];
+      for (int k = 0; k < halfLength; ++k) {
+        double angle = 2 * Math.PI * k / fftLength;
+        cosTable[k] = Math.cos(angle);
+        sinTable[k] = Math.sin(angle);
+      }
+    } else {
+      // not a power of two (FFTResult pads to one, so this should not happen); no plan is made,
+      // and inverse transforms are done by FFTResult instead
+      log2HalfLength = -1;
+      cosTable = null;
+      sinTable = null;
+    }
+
+    workspaces = new Workspace[VARIANTS];
+    for (int i = 0; i < VARIANTS; ++i) {
+      workspaces[i] = new Workspace(length, Math.max(halfLength, 1));
+    }
+  }
+
+  @Override
+  public double[] evaluate(double corner, double damping) {
+    Workspace workspace = workspaces[0];
+    workspace.setPoles(corner, damping);
+    fillResponses(workspace);
+    return finishEvaluation(workspace);
+  }
+
+  @Override
+  public double[][] evaluateWithPerturbations(double corner, double damping, double step) {
+    workspaces[0].setPoles(corner, damping);
+    workspaces[1].setPoles(corner + step, damping);
+    workspaces[2].setPoles(corner, damping + step);
+    fillResponses(workspaces);
+    double[][] results = new double[VARIANTS][];
+    IntStream.range(0, VARIANTS).parallel().forEach(i ->
+        results[i] = finishEvaluation(workspaces[i]));
+    return results;
+  }
+
+  /**
+   * Compute the response of each workspace's poles at every frequency, along with the largest
+   * magnitude of each response (needed for the water level)
+   */
+  private void fillResponses(Workspace... toFill) {
+    for (Workspace workspace : toFill) {
+      // response is set to 1 at index 0 so that the denominator is never zero
+      workspace.responseReal[0] = 1.;
+      workspace.responseImag[0] = 0.;
+      workspace.maxMagnitude = 1.;
+    }
+    for (int i = 1; i < omegas.length; ++i) {
+      double omega = omegas[i];
+      for (Workspace workspace : toFill) {
+        // (i * omega - p1) * (i * omega - p2)
+        double aReal = -workspace.pole1Real;
+        double aImag = omega - workspace.pole1Imag;
+        double bReal = -workspace.pole2Real;
+        double bImag = omega - workspace.pole2Imag;
+        double denomReal = aReal * bReal - aImag * bImag;
+        double denomImag = aReal * bImag + aImag * bReal;
+        // i * omega / denominator
+        double denomSquared = denomReal * denomReal + denomImag * denomImag;
+        double real = omega * denomImag / denomSquared;
+        double imag = omega * denomReal / denomSquared;
+        workspace.responseReal[i] = real;
+        workspace.responseImag[i] = imag;
+        double magnitude = Math.sqrt(real * real + imag * imag);
+        if (magnitude > workspace.maxMagnitude) {
+          workspace.maxMagnitude = magnitude;
+        }
+      }
+    }
+  }
+
+  /**
+   * Apply the water level to the workspace's response, deconvolve it from the sensor FFT, and
+   * return the result to the time domain (see StepExperiment.setWaterLevel)
+   */
+  private double[] finishEvaluation(Workspace workspace) {
+    double scaleBy = workspace.maxMagnitude * 1E-30;
+    double[] specReal = workspace.spectrumReal;
+    double[] specImag = workspace.spectrumImag;
+    for (int i = 0; i < omegas.length; ++i) {
+      double real = workspace.responseReal[i];
+      double imag = workspace.responseImag[i];
+      double magnitude = Math.sqrt(real * real + imag * imag);
+      if (magnitude == 0.) {
+        specReal[i] = 0.;
+        specImag[i] = 0.;
+        continue;
+      }
+      if (magnitude < scaleBy) {
+        real *= scaleBy / magnitude;
+        imag *= scaleBy / magnitude;
+        magnitude = scaleBy;
+      }
+      // sensor FFT divided by response is sensor * conj(response) / |response|^2
+      double squared = magnitude * magnitude;
+      double sReal = sensorReal[i];
+      double sImag = sensorImag[i];
+      specReal[i] = (sReal * real + sImag * imag) / squared;
+      specImag[i] = (sImag * real - sReal * imag) / squared;
+    }
+    int lastIdx = specReal.length - 1;
+    specReal[lastIdx] = Math.sqrt(specReal[lastIdx] * specReal[lastIdx]
+        + specImag[lastIdx] * specImag[lastIdx]);
+    specImag[lastIdx] = 0.;
+
+    double[] timeSeries;
+    if (cosTable == null) {
+      Complex[] spectrum = new Complex[specReal.length];
+      for (int i = 0; i < spectrum.length; ++i) {
+        spectrum[i] = new Complex(specReal[i], specImag[i]);
+      }
+      timeSeries = FFTResult.singleSidedInverseFFT(spectrum, upperBound);
+    } else {
+      timeSeries = inverseTransform(workspace);
+    }
+
+    // trim data around areas with filter ringing and remove linear trend
+    double[] trimmed = Arrays.copyOfRange(timeSeries, cutAmount, upperBound);
+    trimmed = detrendEnds(trimmed);
+    return normalize(trimmed);
+  }
+
+  /**
+   * Get the real time series whose single-sided spectrum is held in the workspace. The even and
+   * odd samples of the series are packed as the real and imaginary parts of a half-length complex
+   * series, whose spectrum is assembled from the single-sided one and then inverted.
+   *
+   * @return Time series up to the upper bound of the trimmed range
+   */
+  private double[] inverseTransform(Workspace workspace) {
+    int halfLength = fftLength / 2;
+    double[] specReal = workspace.spectrumReal;
+    double[] specImag = workspace.spectrumImag;
+    double[] zReal = workspace.packedReal;
+    double[] zImag = workspace.packedImag;
+
+    for (int k = 0; k < halfLength; ++k) {
+      // X[k] and conj(X[N/2 - k])
+      double xReal = specReal[k];
+      double xImag = specImag[k];
+      double yReal = specReal[halfLength - k];
+      double yImag = -specImag[halfLength - k];
+      // even part is (X[k] + conj(X[N/2 - k])) / 2
+      double evenReal = (xReal + yReal) / 2;
+      double evenImag = (xImag + yImag) / 2;
+      // odd part is (X[k] - conj(X[N/2 - k])) / 2, times e^(2 * pi * i * k / N)
+      double diffReal = (xReal - yReal) / 2;
+      double diffImag = (xImag - yImag) / 2;
+      double oddReal = diffReal * cosTable[k] - diffImag * sinTable[k];
+      double oddImag = diffReal * sinTable[k] + diffImag * cosTable[k];
+      // Z[k] = even + i * odd, stored at its bit-reversed index for the in-place transform
+      int index = Integer.reverse(k) >>> (32 - log2HalfLength);
+      zReal[index] = evenReal - oddImag;
+      zImag[index] = evenImag + oddReal;
+    }
+
+    // radix-2 decimation-in-time inverse FFT; twiddle e^(2 * pi * i * j / len) is at table
+    // index j * (N / len)
+    for (int len = 2; len <= halfLength; len <<= 1) {
+      int half = len >> 1;
+      int stride = fftLength / len;
+      for (int blockStart = 0; blockStart < halfLength; blockStart += len) {
+        for (int j = 0; j < half; ++j) {
+          double wReal = cosTable[j * stride];
+          double wImag = sinTable[j * stride];
+          int top = blockStart + j;
+          int bottom = top + half;
+          double tReal = zReal[bottom] * wReal - zImag[bottom] * wImag;
+          double tImag = zReal[bottom] * wImag + zImag[bottom] * wReal;
+          zReal[bottom] = zReal[top] - tReal;
+          zImag[bottom] = zImag[top] - tImag;
+          zReal[top] += tReal;
+          zImag[top] += tImag;
+        }
+      }
+    }
+
+    double[] timeSeries = new double[upperBound];
+    for (int i = 0; i < upperBound; ++i) {
+      int index = i >> 1;
+      timeSeries[i] = ((i & 1) == 0 ? zReal[index] : zImag[index]) / halfLength;
+    }
+    return timeSeries;
+  }
+
+  /**
+   * Poles and buffers used by a single model evaluation
+   */
+  private static class Workspace {
+
+    private final double[] responseReal;
+    private final double[] responseImag;
+    private final double[] spectrumReal;
+    private final double[] spectrumImag;
+    private final double[] packedReal;
+    private final double[] packedImag;
+    private double pole1Real;
+    private double pole1Imag;
+    private double pole2Real;
+    private double pole2Imag;
+    private double maxMagnitude;
+
+    private Workspace(int spectrumLength, int packedLength) {
+      responseReal = new double[spectrumLength];
+      responseImag = new double[spectrumLength];
+      spectrumReal = new double[spectrumLength];
+      spectrumImag = new double[spectrumLength];
+      packedReal = new double[packedLength];
+      packedImag = new double[packedLength];
+    }
+
+    /**
+     * Set the poles -(h +/- sqrt(h^2 - 1)) * 2 * pi * f from the corner and damping
+     */
+    private void setPoles(double corner, double damping) {
+      double omega = 2 * Math.PI * corner;
+      double discriminant = damping * damping - 1;
+      if (discriminant >= 0) {
+        double root = Math.sqrt(discriminant);
+        pole1Real = -(damping + root) * omega;
+        pole2Real = -(damping - root) * omega;
+        pole1Imag = 0.;
+        pole2Imag = 0.;
+      } else {
+        double root = Math.sqrt(-discriminant);
+        pole1Real = -damping * omega;
+        pole2Real = -damping * omega;
+        pole1Imag = -root * omega;
+        pole2Imag = root * omega;
+      }
+    }
+  }
+}
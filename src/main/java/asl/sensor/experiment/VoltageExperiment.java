@@ -3,6 +3,7 @@ package asl.sensor.experiment;
 import asl.sensor.input.DataStore;
 import asl.utils.input.DataBlock;
 import java.util.ArrayList;
+import java.util.stream.IntStream;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
@@ -63,13 +64,11 @@ public class VoltageExperiment extends Experiment {
     xySeriesData = new ArrayList<>();
     XYSeriesCollection xysc = new XYSeriesCollection();
 
+    final DataBlock[] blocks = new DataBlock[loadedAmount];
     for (int i = 0; i < loadedAmount; ++i) {
       int indexUnderAnalysis = loadedData[i];
-      fireStateChange("Calculating input " + (i+1)
-          + " of " + (loadedAmount) + " (slot " + (indexUnderAnalysis+1) + ")...");
-
-      DataBlock currentBlock = dataStore.getBlock(indexUnderAnalysis);
-      dataNames.add(currentBlock.getName());
+      blocks[i] = dataStore.getBlock(indexUnderAnalysis);
+      dataNames.add(blocks[i].getName());
 
       // stage 2 gain is the value from the digitizer, i.e., 2^24/40 or 2^26/40
       // depending on the digitizer's bit-depth
@@ -80,40 +79,19 @@ public class VoltageExperiment extends Experiment {
         gain[i] = dataStore.getResponse(indexUnderAnalysis).getGain()[3];
         gainStage[i] = 3;
       }
+    }
 
-      double[] data = currentBlock.getData();
-      double min = data[0];
-      double max = data[0];
-      int minIndex = 0; // track value indices to get ~1s range on each side
-      int maxIndex = 0;
+    fireStateChange("Calculating sensitivity of " + loadedAmount + " input(s)...");
+    final XYSeries[] plots = new XYSeries[loadedAmount];
+    IntStream.range(0, loadedAmount).parallel().forEach(i -> {
+      double[] data = blocks[i].getData();
 
       // offset by a second on either side to make sure that the data doesn't include ringing
       // artifacts -- i.e., data on either side of min/max should be flat relative to it
-      int offset = (int) dataStore.getBlock(loadedData[i]).getSampleRate() + 1;
-
-      outerLoop:
-      for (int j = offset; j < data.length - offset; ++j) {
-
-        // make sure the extremes are in a roughly flat part of the signal
-        // i.e., all values to consider for analysis should have low variances
-        for (int k = j - offset; k <= j + offset; ++k) {
-          // represent error as magnitude difference between values
-          double pctDiff = Math.abs(data[k] - data[j]) / Math.abs(data[j]) * 100;
-          if (pctDiff > 5) {
-            // if the percent error is too high, skip to next possible point
-            continue outerLoop;
-          }
-        }
-
-        if (data[j] <= min) {
-          min = data[j];
-          minIndex = j;
-        }
-        if (data[j] >= max) {
-          max = data[j];
-          maxIndex = j;
-        }
-      }
+      int offset = (int) blocks[i].getSampleRate() + 1;
+      int[] extremes = getFlatExtremes(data, offset);
+      int minIndex = extremes[0];
+      int maxIndex = extremes[1];
 
       // to reduce sucsceptibility to noise, get a few samples over
       double avgMin = 0.;
@@ -137,17 +115,94 @@ public class VoltageExperiment extends Experiment {
         avgMax += data[maxIndex + i];
       }
 
-      xysc.addSeries(xys);
+      plots[i] = xys;
 
       // take mean (div by 10 points), divide by 10 (volts) -- average is sensitivity (counts/volt)
       // we can divide by 2 to get mean because we took equal range of data from either side
       sensitivity[i] = (Math.abs(avgMin) + Math.abs(avgMax)) / (100.);
-    }
+    });
 
+    for (XYSeries xys : plots) {
+      xysc.addSeries(xys);
+    }
     xySeriesData.add(xysc);
 
   }
 
+  /**
+   * Find the minimum and maximum of the data among the points in flat parts of the signal, that
+   * is, points which every other point within the given offset on either side is within 5% of.
+   *
+   * Rather than comparing each point against every point in its neighborhood, the smallest and
+   * largest values of the neighborhood are tracked as it slides across the data, using a
+   * monotonic queue of indices for each. A point is in a flat region exactly when those two
+   * extremes are within 5% of it, so each point is checked in constant (amortized) time, and the
+   * whole search takes time linear in the length of the data regardless of the sample rate.
+   *
+   * @param data Timeseries to search
+   * @param offset Number of points on either side of a point that must be flat relative to it
+   * @return Index of the minimum and of the maximum flat point, in that order (0 if no point is
+   * flat)
+   */
+  static int[] getFlatExtremes(double[] data, int offset) {
+    double min = data[0];
+    double max = data[0];
+    int minIndex = 0;
+    int maxIndex = 0;
+
+    // indices of the window's candidate minima (values increasing from head to tail)
+    // and candidate maxima (values decreasing from head to tail); the queues never hold more
+    // than a window's worth of indices (plus the one about to leave it), so they are stored as
+    // ring buffers of that size
+    int capacity = 2 * offset + 2;
+    int[] minQueue = new int[capacity];
+    int[] maxQueue = new int[capacity];
+    int minHead = 0, minTail = 0, maxHead = 0, maxTail = 0;
+
+    int next = 0; // next point to add to the window
+    for (int j = offset; j < data.length - offset; ++j) {
+      // window is [j - offset, j + offset]
+      for (; next <= j + offset; ++next) {
+        while (minTail > minHead && data[minQueue[(minTail - 1) % capacity]] >= data[next]) {
+          --minTail;
+        }
+        minQueue[minTail++ % capacity] = next;
+        while (maxTail > maxHead && data[maxQueue[(maxTail - 1) % capacity]] <= data[next]) {
+          --maxTail;
+        }
+        maxQueue[maxTail++ % capacity] = next;
+      }
+      while (minQueue[minHead % capacity] < j - offset) {
+        ++minHead;
+      }
+      while (maxQueue[maxHead % capacity] < j - offset) {
+        ++maxHead;
+      }
+
+      // make sure the extremes are in a roughly flat part of the signal
+      // i.e., all values to consider for analysis should have low variances;
+      // the window's min and max are the values furthest from this one on either side
+      double windowMin = data[minQueue[minHead % capacity]];
+      double windowMax = data[maxQueue[maxHead % capacity]];
+      double lowDiff = Math.abs(windowMin - data[j]) / Math.abs(data[j]) * 100;
+      double highDiff = Math.abs(windowMax - data[j]) / Math.abs(data[j]) * 100;
+      if (lowDiff > 5 || highDiff > 5) {
+        // if the percent error is too high, skip to next possible point
+        continue;
+      }
+
+      if (data[j] <= min) {
+        min = data[j];
+        minIndex = j;
+      }
+      if (data[j] >= max) {
+        max = data[j];
+        maxIndex = j;
+      }
+    }
+    return new int[]{minIndex, maxIndex};
+  }
+
   /**
    * Get an array representing the mean values of each trace's min and max values, for plotting for
    * each data loaded in.
@@ -0,0 +1,209 @@
+package asl.sensor.experiment;
+
+import static asl.utils.NumericUtils.TAU;
+
+import org.apache.commons.math3.util.Pair;
+
+/**
+ * Cumulative sums of the products of a test sensor's north and east components and a reference
+ * sensor's north component, used to get the covariances of the three traces over any range of
+ * samples in constant time. Azimuth estimation looks at many heavily-overlapping windows of the
+ * same (already filtered) data; with this index, each window's statistics come from the
+ * difference of two entries of each sum rather than a new pass over the window's samples.
+ *
+ * Covariances are taken about each window's own mean, so the data does not need to be demeaned
+ * over each window separately.
+ */
+class WindowCovarianceIndex {
+
+  // indices of each running sum in the prefix sum array
+  private static final int N = 0;
+  private static final int E = 1;
+  private static final int R = 2;
+  private static final int NN = 3;
+  private static final int EE = 4;
+  private static final int RR = 5;
+  private static final int NE = 6;
+  private static final int RN = 7;
+  private static final int RE = 8;
+  private static final int SUM_COUNT = 9;
+
+  /**
+   * Sums of each term over the first i samples are at index i, so entry 0 is always zero
+   */
+  private final double[][] prefixSums;
+
+  /**
+   * Build the index from the test and reference data. If the arrays differ in length, only the
+   * samples common to all of them are indexed.
+   *
+   * @param testNorth Data from the test sensor's north-facing component
+   * @param testEast Data from the test sensor's east-facing component
+   * @param refNorth Data from the known north-facing sensor
+   */
+  WindowCovarianceIndex(double[] testNorth, double[] testEast, double[] refNorth) {
+    int length = Math.min(refNorth.length, Math.min(testNorth.length, testEast.length));
+    prefixSums = new double[SUM_COUNT][length + 1];
+    for (int i = 0; i < length; ++i) {
+      double n = testNorth[i];
+      double e = testEast[i];
+      double r = refNorth[i];
+      prefixSums[N][i + 1] = prefixSums[N][i] + n;
+      prefixSums[E][i + 1] = prefixSums[E][i] + e;
+      prefixSums[R][i + 1] = prefixSums[R][i] + r;
+      prefixSums[NN][i + 1] = prefixSums[NN][i] + n * n;
+      prefixSums[EE][i + 1] = prefixSums[EE][i] + e * e;
+      prefixSums[RR][i + 1] = prefixSums[RR][i] + r * r;
+      prefixSums[NE][i + 1] = prefixSums[NE][i] + n * e;
+      prefixSums[RN][i + 1] = prefixSums[RN][i] + r * n;
+      prefixSums[RE][i + 1] = prefixSums[RE][i] + r * e;
+    }
+  }
+
+  /**
+   * Get the covariances of the data over a range of samples in a single pass, without building an
+   * index (i.e., for when only one range of the data is of interest).
+   *
+   * @param testNorth Data from the test sensor's north-facing component
+   * @param testEast Data from the test sensor's east-facing component
+   * @param refNorth Data from the known north-facing sensor
+   * @return Covariances of the data over the samples common to all three arrays
+   */
+  static Covariances getCovariances(double[] testNorth, double[] testEast, double[] refNorth) {
+    int length = Math.min(refNorth.length, Math.min(testNorth.length, testEast.length));
+    double[] sums = new double[SUM_COUNT];
+    for (int i = 0; i < length; ++i) {
+      double n = testNorth[i];
+      double e = testEast[i];
+      double r = refNorth[i];
+      sums[N] += n;
+      sums[E] += e;
+      sums[R] += r;
+      sums[NN] += n * n;
+      sums[EE] += e * e;
+      sums[RR] += r * r;
+      sums[NE] += n * e;
+      sums[RN] += r * n;
+      sums[RE] += r * e;
+    }
+    return new Covariances(length, sums);
+  }
+
+  /**
+   * Get the covariances of the data over a range of samples
+   *
+   * @param start Index of the first sample of the range
+   * @param end Index after the last sample of the range
+   * @return Covariances of the data over the range
+   */
+  Covariances getCovariances(int start, int end) {
+    double[] sums = new double[SUM_COUNT];
+    for (int i = 0; i < SUM_COUNT; ++i) {
+      sums[i] = prefixSums[i][end] - prefixSums[i][start];
+    }
+    return new Covariances(end - start, sums);
+  }
+
+  /**
+   * Get the number of samples that were indexed
+   *
+   * @return Length of the indexed data
+   */
+  int size() {
+    return prefixSums[0].length - 1;
+  }
+
+  /**
+   * Covariances of test north (N), test east (E) and reference north (R) data over some range.
+   * Each value is scaled by the number of samples, which cancels out of any correlation.
+   */
+  static class Covariances {
+
+    private final double varN;
+    private final double varE;
+    private final double varR;
+    private final double covNE;
+    private final double covRN;
+    private final double covRE;
+
+    private Covariances(int length, double[] sums) {
+      varN = sums[NN] - sums[N] * sums[N] / length;
+      varE = sums[EE] - sums[E] * sums[E] / length;
+      varR = sums[RR] - sums[R] * sums[R] / length;
+      covNE = sums[NE] - sums[N] * sums[E] / length;
+      covRN = sums[RN] - sums[R] * sums[N] / length;
+      covRE = sums[RE] - sums[R] * sums[E] / length;
+    }
+
+    /**
+     * Get the angle maximizing the correlation of the reference with the rotated test data.
+     * Rotating the test data by theta gives north * cos(theta) - east * sin(theta) (see
+     * TimeSeriesUtils.rotate), which is a linear combination u = (cos(theta), -sin(theta)) of the
+     * test components. Its correlation with the reference is (a . u) / sqrt(var(ref) * u'Su),
+     * where a holds the covariances of the reference with the test north and east components and
+     * S is the covariance matrix of the test components. This ratio does not depend on the length
+     * of u, and by the Cauchy-Schwarz inequality it is maximized by u = inverse(S) * a, at which
+     * point the correlation is sqrt(a' * inverse(S) * a / var(ref)).
+     *
+     * @return Angle of maximum correlation (radians, between 0 and 2pi) and the correlation at
+     * that angle; if the test components are degenerate (i.e., zero or collinear) or the
+     * reference has no variance, the angle and correlation are both 0.
+     */
+    Pair<Double, Double> getClosedFormEstimate() {
+      double determinant = varN * varE - covNE * covNE;
+      if (!(determinant > 0.) || !(varR > 0.)) {
+        return new Pair<>(0., 0.);
+      }
+      // u = inverse(S) * a
+      double northWeight = (varE * covRN - covNE * covRE) / determinant;
+      double eastWeight = (varN * covRE - covNE * covRN) / determinant;
+      double theta = Math.atan2(-eastWeight, northWeight);
+      theta = ((theta % TAU) + TAU) % TAU;
+      double explained = northWeight * covRN + eastWeight * covRE;
+      double correlation = Math.sqrt(Math.max(0., explained) / varR);
+      return new Pair<>(theta, Math.min(1., correlation));
+    }
+
+    /**
+     * Get the correlation of the reference with the test data rotated by the given angle
+     *
+     * @param theta Angle of rotation (radians)
+     * @return Pearson's correlation of the reference and rotated test data
+     */
+    double getCorrelation(double theta) {
+      double cos = Math.cos(theta);
+      double sin = Math.sin(theta);
+      double rotatedVariance = getRotatedVariance(cos, sin);
+      if (!(rotatedVariance > 0.) || !(varR > 0.)) {
+        return 0.;
+      }
+      return (cos * covRN - sin * covRE) / Math.sqrt(varR * rotatedVariance);
+    }
+
+    /**
+     * Get the derivative of the correlation with respect to the angle of rotation
+     *
+     * @param theta Angle of rotation (radians)
+     * @return Derivative of getCorrelation at the given angle
+     */
+    double getCorrelationDerivative(double theta) {
+      double cos = Math.cos(theta);
+      double sin = Math.sin(theta);
+      double rotatedVariance = getRotatedVariance(cos, sin);
+      if (!(rotatedVariance > 0.) || !(varR > 0.)) {
+        return 0.;
+      }
+      double covariance = cos * covRN - sin * covRE;
+      double covarianceDerivative = -sin * covRN - cos * covRE;
+      double varianceDerivative =
+          2 * sin * cos * (varE - varN) - 2 * (cos * cos - sin * sin) * covNE;
+      double numerator =
+          covarianceDerivative * rotatedVariance - covariance * varianceDerivative / 2;
+      return numerator / (Math.sqrt(varR) * Math.pow(rotatedVariance, 1.5));
+    }
+
+    private double getRotatedVariance(double cos, double sin) {
+      return cos * cos * varN - 2 * sin * cos * covNE + sin * sin * varE;
+    }
+  }
+}
@@ -13,6 +13,7 @@ import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
 import java.util.List;
 import javax.swing.BoxLayout;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -49,6 +50,10 @@ public class AzimuthPanel extends ExperimentPanel {
 
   private final JSpinner offsetSpinner; // select how far from north to set reference data
   private final JComboBox<String> chartSelector;
+  private final JCheckBox parallelWindows; // fit windows independently for speed on long data
+  private final JCheckBox closedForm; // solve angles directly instead of iteratively
+  private final JCheckBox multiBand; // solve over several period bands for a consensus angle
+  private final JCheckBox gridSearch; // seed iterative solver from a grid search of angles
   // note that some overrides are necessary because angle chart is a polar plot, not xy plot
   // so things like progress updates are called in a different manner
   private JFreeChart angleChart, estimationChart; // plot angle, plot windowed estimation angle and correlation
@@ -66,6 +71,15 @@ public class AzimuthPanel extends ExperimentPanel {
     JPanel labelPanel = new JPanel();
     labelPanel.add(offsetSpinnerLabel);
 
+    parallelWindows = new JCheckBox("Fit windows in parallel");
+    parallelWindows.setSelected(false);
+    closedForm = new JCheckBox("Closed-form estimate");
+    closedForm.setSelected(false);
+    multiBand = new JCheckBox("Multi-band estimate");
+    multiBand.setSelected(false);
+    gridSearch = new JCheckBox("Grid search seed");
+    gridSearch.setSelected(false);
+
     chartSelector = new JComboBox<>();
     chartSelector.addItem("Azimuth angle");
     chartSelector.addItem("Estimation");
@@ -107,6 +121,10 @@ public class AzimuthPanel extends ExperimentPanel {
     offsetPanel.setLayout(new BoxLayout(offsetPanel, BoxLayout.X_AXIS));
     offsetPanel.add(offsetSpinnerLabel);
     offsetPanel.add(offsetSpinner);
+    offsetPanel.add(parallelWindows);
+    offsetPanel.add(closedForm);
+    offsetPanel.add(multiBand);
+    offsetPanel.add(gridSearch);
     constraints.weighty = 0.0;
     constraints.gridy += 1;
     constraints.gridwidth = 1;
@@ -219,6 +237,10 @@ public class AzimuthPanel extends ExperimentPanel {
 
     AzimuthExperiment experiment = (AzimuthExperiment) expResult;
     experiment.setOffset(value);
+    experiment.setParallelWindows(parallelWindows.isSelected());
+    experiment.setClosedFormEstimate(closedForm.isSelected());
+    experiment.setMultiBand(multiBand.isSelected());
+    experiment.setGridSearchSeed(gridSearch.isSelected());
 
     XYPlot estimationPlot;
 
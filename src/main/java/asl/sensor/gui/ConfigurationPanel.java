@@ -24,7 +24,7 @@ public class ConfigurationPanel extends JPanel {
   private JTextField fdsnDomain, fdsnProtocol, fdsnPort, fdsnService;
 
   // fields for controlling plot display parameters
-  private JTextField lineWidthOffset;
+  private JTextField lineWidthOffset, spectralBinsPerOctave;
   private JCheckBox colorblindColors;
 
   /**
@@ -59,6 +59,11 @@ public class ConfigurationPanel extends JPanel {
     intDocument.setDocumentFilter(new PositiveIntegerFilter());
     lineWidthOffset.setText(Integer.toString(instance.getLineWidthOffset()));
 
+    spectralBinsPerOctave = new JTextField();
+    intDocument = (AbstractDocument) spectralBinsPerOctave.getDocument();
+    intDocument.setDocumentFilter(new PositiveIntegerFilter());
+    spectralBinsPerOctave.setText(Integer.toString(instance.getSpectralBinsPerOctave()));
+
     colorblindColors = new JCheckBox();
     colorblindColors.setEnabled(true);
     colorblindColors.setSelected(instance.useColorblindColors());
@@ -86,6 +91,8 @@ public class ConfigurationPanel extends JPanel {
     this.add(lineWidthOffset);
     this.add(new JLabel("Plot colorblind-friendly colors:"));
     this.add(colorblindColors);
+    this.add(new JLabel("Spectral plot points per octave (0 for all):"));
+    this.add(spectralBinsPerOctave);
   }
 
   /**
@@ -105,6 +112,7 @@ public class ConfigurationPanel extends JPanel {
 
     instance.setLineWidthOffset(Integer.parseInt(lineWidthOffset.getText()));
     instance.setUseColorblindColors(colorblindColors.isSelected());
+    instance.setSpectralBinsPerOctave(Integer.parseInt(spectralBinsPerOctave.getText()));
 
     instance.saveCurrentConfig();
   }
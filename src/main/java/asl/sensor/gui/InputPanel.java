@@ -125,6 +125,7 @@ public class InputPanel
   private final JButton save; // save every input of note in a png plot
   private final JButton zoomIn; // select a given window
   private final JButton zoomOut; // revert to full data region
+  private final JButton zoomToCal; // select region of active cal signal in first input
   private final JButton clearAll; // remove all data
   private final JSlider leftSlider;
   private final JSlider rightSlider;
@@ -243,6 +244,10 @@ public class InputPanel
     zoomOut.addActionListener(this);
     zoomOut.setEnabled(false);
 
+    zoomToCal = new JButton("Zoom to cal signal (input 1)");
+    zoomToCal.addActionListener(this);
+    zoomToCal.setEnabled(false);
+
     save = new JButton("Save input (PNG)");
     save.addActionListener(this);
     save.setEnabled(false);
@@ -286,6 +291,9 @@ public class InputPanel
     constraints.anchor = GridBagConstraints.WEST;
     this.add(zoomOut, constraints);
 
+    constraints.gridx += 1;
+    this.add(zoomToCal, constraints);
+
     constraints.gridwidth = 1;
     constraints.anchor = GridBagConstraints.CENTER;
     constraints.gridx = 7;
@@ -536,6 +544,11 @@ public class InputPanel
       return;
     }
 
+    if (event.getSource() == zoomToCal) {
+      showCalibrationRegion();
+      return;
+    }
+
     if (event.getSource() == zoomOut) {
       // restore original loaded dataStore
       dataStore.untrim(activePlots);
@@ -578,6 +591,7 @@ public class InputPanel
 
     zoomIn.setEnabled(false);
     zoomOut.setEnabled(false);
+    zoomToCal.setEnabled(false);
 
     leftSlider.setEnabled(false);
     rightSlider.setEnabled(false);
@@ -1118,6 +1132,7 @@ public class InputPanel
         start.getTime(), end.getTime(), activePlots));
 
     zoomIn.setEnabled(true);
+    zoomToCal.setEnabled(dataStore.blockIsSet(0));
     leftSlider.setEnabled(true);
     rightSlider.setEnabled(true);
     save.setEnabled(true);
@@ -1497,6 +1512,7 @@ public class InputPanel
     setVerticalBars();
 
     zoomIn.setEnabled(dataStore.numberOfBlocksSet() > 0);
+    zoomToCal.setEnabled(dataStore.blockIsSet(0));
 
     // using this test means the panel doesn't try to scroll when it's
     // only got a few inputs to deal with, when stuff is still pretty readable
@@ -1506,6 +1522,38 @@ public class InputPanel
     inputScrollPane.setPreferredSize(inputScrollPane.getMinimumSize());
   }
 
+  /**
+   * Zooms in on the region of data where a calibration signal is active in the first input
+   * (see CalibrationWindowDetector), which will be passed into backend functions for experiment
+   * calculations
+   */
+  private void showCalibrationRegion() {
+    boolean foundCal;
+    try {
+      foundCal = dataStore.trimToCalibrationWindow(0, activePlots);
+    } catch (IndexOutOfBoundsException e) {
+      foundCal = false;
+    }
+    if (!foundCal) {
+      JOptionPane.showMessageDialog(this,
+          "Could not find an active calibration signal in input 1 within the current range.",
+          "Calibration Not Found", JOptionPane.WARNING_MESSAGE);
+      return;
+    }
+
+    leftSlider.setValue(0);
+    rightSlider.setValue(SLIDER_MAX);
+    zoomOut.setEnabled(true);
+    for (int i = 0; i < activePlots; ++i) {
+      if (!dataStore.blockIsSet(i)) {
+        continue;
+      }
+      resetPlotZoom(i);
+    }
+
+    setVerticalBars();
+  }
+
   /**
    * Zooms in on the current range of data, which will be passed into
    * backend functions for experiment calculations
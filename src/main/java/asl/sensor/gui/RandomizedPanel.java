@@ -63,7 +63,7 @@ public class RandomizedPanel extends ExperimentPanel {
       residualXAxis, residualPeriodAxis;
   private JRadioButton lowFrequency, autoFrequency;
   // high frequency button created in constructor but not checked explicitly for status
-  private JCheckBox showParams, frequencySpace, capacitiveCal;
+  private JCheckBox showParams, frequencySpace, capacitiveCal, multiStart;
   private JFreeChart magnitudeChart, argumentChart, residualAmplitudeChart, residualPhaseChart;
 
   public RandomizedPanel(ExperimentFactory experiment) {
@@ -141,6 +141,8 @@ public class RandomizedPanel extends ExperimentPanel {
     optionsPanel.add(frequencySpace);
     capacitiveCal.setAlignmentX(LEFT_ALIGNMENT);
     optionsPanel.add(capacitiveCal);
+    multiStart.setAlignmentX(LEFT_ALIGNMENT);
+    optionsPanel.add(multiStart);
     this.add(optionsPanel, constraints);
 
     constraints.gridx += 1;
@@ -530,6 +532,9 @@ public class RandomizedPanel extends ExperimentPanel {
 
     capacitiveCal = new JCheckBox("Capacitive calibration");
     capacitiveCal.setSelected(false);
+
+    multiStart = new JCheckBox("Multi-start solver (slower)");
+    multiStart.setSelected(false);
   }
 
   @Override
@@ -582,6 +587,8 @@ public class RandomizedPanel extends ExperimentPanel {
     rndExp.setPlotUsingHz(frequencySpace.isSelected());
     rndExp.setNyquistMultiplier(multiplier);
     rndExp.setCapactiveCalibration(capacitiveCal.isSelected());
+    rndExp.setMultiStartCount(
+        multiStart.isSelected() ? RandomizedExperiment.DEFAULT_MULTI_START_COUNT : 1);
     expResult.runExperimentOnData(dataStore);
 
     String appendFreqTitle;
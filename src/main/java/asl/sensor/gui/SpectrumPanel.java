@@ -7,6 +7,7 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
+import javax.swing.BoxLayout;
 import javax.swing.JCheckBox;
 import javax.swing.JPanel;
 import org.jfree.chart.annotations.XYTitleAnnotation;
@@ -22,7 +23,8 @@ import org.jfree.data.xy.XYSeriesCollection;
  * Panel for displaying the results of the self-noise experiment (3-input).
  * In addition to general requirements of output panels, also includes
  * a checkbox to choose between frequency and interval x-axis and
- * the variant axes for when that box is checked.
+ * the variant axes for when that box is checked, and a checkbox to also plot
+ * the mode and median of each input's PSD probability density.
  *
  * @author akearns - KBRWyle
  */
@@ -31,6 +33,7 @@ public class SpectrumPanel extends ExperimentPanel {
   private static final long serialVersionUID = 9018553361096758354L;
 
   private final JCheckBox freqSpaceBox;
+  private final JCheckBox probabilityDensityBox;
   private final NumberAxis freqAxis;
   private int plotCount;
 
@@ -42,7 +45,7 @@ public class SpectrumPanel extends ExperimentPanel {
     super(experiment);
 
     plotCount = 0;
-    for (int i = 0; i < 3; ++i) {
+    for (int i = 0; i < panelsNeeded(); ++i) {
       channelType[i] = "Input data (RESP required)";
     }
 
@@ -62,6 +65,9 @@ public class SpectrumPanel extends ExperimentPanel {
     freqSpaceBox = new JCheckBox("Use Hz units (requires regen)");
     freqSpaceBox.setSelected(false);
 
+    probabilityDensityBox = new JCheckBox("Show PSD probability density (requires regen)");
+    probabilityDensityBox.setSelected(false);
+
     applyAxesToChart(); // now that we've got axes defined
 
     // set the GUI components
@@ -85,7 +91,11 @@ public class SpectrumPanel extends ExperimentPanel {
     constraints.fill = GridBagConstraints.NONE;
     constraints.gridy += 1;
     constraints.gridx = 0;
-    this.add(freqSpaceBox, constraints);
+    JPanel optionsPanel = new JPanel();
+    optionsPanel.setLayout(new BoxLayout(optionsPanel, BoxLayout.Y_AXIS));
+    optionsPanel.add(freqSpaceBox);
+    optionsPanel.add(probabilityDensityBox);
+    this.add(optionsPanel, constraints);
 
     constraints.gridx += 1;
     constraints.weightx = 1.0;
@@ -99,7 +109,7 @@ public class SpectrumPanel extends ExperimentPanel {
     constraints.weightx = 0;
     constraints.anchor = GridBagConstraints.WEST;
     JPanel spacer = new JPanel();
-    spacer.setPreferredSize(freqSpaceBox.getPreferredSize());
+    spacer.setPreferredSize(optionsPanel.getPreferredSize());
     this.add(spacer, constraints);
   }
 
@@ -128,7 +138,7 @@ public class SpectrumPanel extends ExperimentPanel {
 
   @Override
   public int panelsNeeded() {
-    return 3;
+    return DataStore.FILE_COUNT;
   }
 
   @Override
@@ -150,7 +160,9 @@ public class SpectrumPanel extends ExperimentPanel {
       }
     }
 
-    ((SpectrumExperiment) expResult).setFreqSpace(freqSpaceBox.isSelected());
+    SpectrumExperiment spectrumExperiment = (SpectrumExperiment) expResult;
+    spectrumExperiment.setFreqSpace(freqSpaceBox.isSelected());
+    spectrumExperiment.setProbabilityDensity(probabilityDensityBox.isSelected());
     expResult.runExperimentOnData(dataStore);
 
     XYSeriesCollection timeseries = expResult.getData().get(0);
@@ -162,6 +174,12 @@ public class SpectrumPanel extends ExperimentPanel {
       }
       Color plotColor = getColor(i);
       seriesColorMap.put(name, plotColor);
+      // PDF curves of an input share its PSD's color, dashed to tell them apart
+      String inputName = name.substring("PSD ".length());
+      for (String pdfName : new String[]{"PDF mode " + inputName, "PDF median " + inputName}) {
+        seriesColorMap.put(pdfName, plotColor);
+        seriesDashedSet.add(pdfName);
+      }
     }
   }
 
@@ -7,6 +7,8 @@ import java.awt.Font;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.event.ActionEvent;
+import javax.swing.BoxLayout;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JPanel;
 import org.jfree.chart.JFreeChart;
@@ -35,6 +37,8 @@ public class StepPanel extends ExperimentPanel {
   private static final long serialVersionUID = 3693391540945130688L;
   private static final int TITLE_IDX = 0;
   private final JComboBox<String> plotSelection;
+  private final JCheckBox recursiveModel; // fit with time-domain filter instead of FFT
+  private final JCheckBox multiStep; // also fit each step in the data individually
   private final ValueAxis freqAxis;
   private final ValueAxis magAxis;
   private final ValueAxis phaseAxis;
@@ -81,6 +85,11 @@ public class StepPanel extends ExperimentPanel {
     plotSelection.addItem("Response phase");
     plotSelection.addActionListener(this);
 
+    recursiveModel = new JCheckBox("Recursive (time-domain) model");
+    recursiveModel.setSelected(false);
+    multiStep = new JCheckBox("Fit each step");
+    multiStep.setSelected(false);
+
     applyAxesToChart();
 
     this.setLayout(new GridBagLayout());
@@ -94,16 +103,18 @@ public class StepPanel extends ExperimentPanel {
     constraints.anchor = GridBagConstraints.CENTER;
     this.add(chartPanel, constraints);
 
-    // add empty space on left side to space out other components
-    JPanel space = new JPanel();
-    space.setMaximumSize(plotSelection.getMaximumSize());
-    space.setPreferredSize(plotSelection.getPreferredSize());
+    // model selection on left side to space out other components
     constraints.weighty = 0.0;
     constraints.weightx = 1.0;
-    constraints.fill = GridBagConstraints.BOTH;
+    constraints.fill = GridBagConstraints.NONE;
     constraints.gridwidth = 1;
     constraints.gridy += 1;
-    this.add(space, constraints);
+    constraints.anchor = GridBagConstraints.LINE_START;
+    JPanel optionsPanel = new JPanel();
+    optionsPanel.setLayout(new BoxLayout(optionsPanel, BoxLayout.Y_AXIS));
+    optionsPanel.add(recursiveModel);
+    optionsPanel.add(multiStep);
+    this.add(optionsPanel, constraints);
 
     constraints.fill = GridBagConstraints.NONE;
     constraints.anchor = GridBagConstraints.CENTER;
@@ -235,6 +246,8 @@ public class StepPanel extends ExperimentPanel {
 
     set = true;
 
+    ((StepExperiment) expResult).setRecursiveModel(recursiveModel.isSelected());
+    ((StepExperiment) expResult).setMultiStep(multiStep.isSelected());
     expResult.runExperimentOnData(dataStore);
 
     XYSeriesCollection stepData = expResult.getData().get(0);
@@ -1,5 +1,6 @@
 package asl.sensor.gui;
 
+import asl.sensor.input.Configuration;
 import asl.sensor.input.DataStore;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
@@ -61,6 +62,8 @@ public class SwingWorkerSingleton {
     worker = new SwingWorker<Boolean, Void>() {
       @Override
       protected Boolean doInBackground() {
+        epHandle.expResult.setPlotBinsPerOctave(
+            Configuration.getInstance().getSpectralBinsPerOctave());
         epHandle.updateData(ds);
         // calculate backend and get chart, insets to show
         return epHandle.set;
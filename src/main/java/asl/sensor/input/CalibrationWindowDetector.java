@@ -0,0 +1,242 @@
+package asl.sensor.input;
+
+import static asl.utils.TimeSeriesUtils.ONE_HZ_INTERVAL;
+
+import asl.utils.input.DataBlock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.math3.util.Pair;
+
+/**
+ * Finds the region of a calibration input timeseries where a calibration signal is active.
+ * Calibration channel data is usually retrieved as full days of data, most of which is dead
+ * signal; the detector allows step, sine, and random calibrations to be trimmed to the
+ * calibration itself without an operator manually selecting the region.
+ *
+ * The detector splits the data into short blocks and gets each block's RMS deviation from the
+ * channel's resting level. Because the RMS is taken about the resting level rather than each
+ * block's own mean, a step held at a constant offset registers as active just as a sine or random
+ * signal does. Blocks are then classified as active using a pair of thresholds set between the
+ * quiet and peak RMS levels of the channel (hysteresis), and short dips below the lower
+ * threshold, such as the zero-crossings of a long-period sine, do not end an active region.
+ *
+ * The resting level is taken from the flattest blocks of the data (those whose own deviation is
+ * close to the smallest of any block), not from the bulk of the data, so that it is still found
+ * when the data has already been roughly trimmed to the calibration and is mostly active. Both an
+ * idle channel and a step held at its offset are flat, so when the flat blocks sit at more than
+ * one level, the level the data is at before and after the calibration (its first and last flat
+ * blocks) is used; if the data starts and ends at different levels, such as when it is trimmed
+ * partway through a step, the level nearer zero is taken as the resting level, as the calibration
+ * signal is off when at rest.
+ * Only a single pass over the data is needed, so this is cheap to run even over full days of
+ * high-sample-rate data.
+ */
+public class CalibrationWindowDetector {
+
+  /**
+   * Length of each block whose RMS is computed, in seconds
+   */
+  private static final double BLOCK_SECONDS = 10.;
+
+  /**
+   * How long the signal may stay below the lower threshold before an active region ends, in
+   * seconds
+   */
+  private static final double HOLD_SECONDS = 120.;
+
+  /**
+   * Fraction of the distance from the quiet level to the peak level a block's RMS must reach to
+   * begin an active region
+   */
+  private static final double ON_FRACTION = 0.25;
+
+  /**
+   * Fraction of the distance from the quiet level to the peak level a block's RMS must stay above
+   * for an active region to continue
+   */
+  private static final double OFF_FRACTION = 0.1;
+
+  /**
+   * Minimum ratio of peak level to quiet level for any calibration signal to be considered present
+   */
+  private static final double MIN_CONTRAST = 3.;
+
+  /**
+   * Largest ratio of a block's deviation about its own mean to the smallest such deviation of any
+   * block for the block to be considered flat
+   */
+  private static final double FLAT_FACTOR = 3.;
+
+  private CalibrationWindowDetector() {
+    // utility class, not to be instantiated
+  }
+
+  /**
+   * Find the time range of the calibration signal in a calibration input. If there are several
+   * disjoint regions of activity, the longest one is returned.
+   *
+   * @param calInput Calibration input timeseries to scan (the full loaded range is not used,
+   * only the range currently trimmed to)
+   * @return Start and end of the active calibration region as epoch milliseconds, or null if no
+   * calibration signal could be distinguished from the background level
+   */
+  public static Pair<Long, Long> findCalibrationWindow(DataBlock calInput) {
+    Pair<Long, Long> longest = null;
+    for (Pair<Long, Long> window : findActiveWindows(calInput)) {
+      if (longest == null ||
+          window.getSecond() - window.getFirst() > longest.getSecond() - longest.getFirst()) {
+        longest = window;
+      }
+    }
+    return longest;
+  }
+
+  /**
+   * Find the time ranges of all regions of a calibration input where a calibration signal is
+   * active, in chronological order. Each range is padded by one block on either side (limited by
+   * the range of the data) so that the onset and end of the signal are fully included.
+   *
+   * @param calInput Calibration input timeseries to scan
+   * @return List of (start, end) pairs of active regions as epoch milliseconds, which is empty if
+   * no calibration signal could be distinguished from the background level
+   */
+  public static List<Pair<Long, Long>> findActiveWindows(DataBlock calInput) {
+    List<Pair<Long, Long>> windows = new ArrayList<>();
+    double[] data = calInput.getData();
+    long interval = calInput.getInterval();
+    int blockLength = Math.max(1, (int) (BLOCK_SECONDS * ONE_HZ_INTERVAL / interval));
+    int blockCount = data.length / blockLength;
+    if (blockCount < 2) {
+      return windows;
+    }
+
+    // single pass over data to get sums and sums of squares for each block
+    // (any leftover samples after the last full block are ignored); the sums are taken relative
+    // to the first sample so that a large DC offset does not swamp the deviations computed below
+    double reference = data[0];
+    double[] blockMeans = new double[blockCount];
+    double[] blockMeanSquares = new double[blockCount];
+    for (int i = 0; i < blockCount; ++i) {
+      double sum = 0.;
+      double sumSquares = 0.;
+      for (int j = i * blockLength; j < (i + 1) * blockLength; ++j) {
+        double point = data[j] - reference;
+        sum += point;
+        sumSquares += point * point;
+      }
+      blockMeans[i] = sum / blockLength;
+      blockMeanSquares[i] = sumSquares / blockLength;
+    }
+
+    // deviation of each block about its own mean, used to find the flat blocks
+    double[] blockDeviations = new double[blockCount];
+    double smallestDeviation = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < blockCount; ++i) {
+      double variance = blockMeanSquares[i] - blockMeans[i] * blockMeans[i];
+      blockDeviations[i] = Math.sqrt(Math.max(0., variance));
+      smallestDeviation = Math.min(smallestDeviation, blockDeviations[i]);
+    }
+    double flatDeviation = FLAT_FACTOR * smallestDeviation;
+    boolean[] flat = new boolean[blockCount];
+    int firstFlat = -1;
+    int lastFlat = -1;
+    for (int i = 0; i < blockCount; ++i) {
+      flat[i] = blockDeviations[i] <= flatDeviation;
+      if (flat[i]) {
+        if (firstFlat < 0) {
+          firstFlat = i;
+        }
+        lastFlat = i;
+      }
+    }
+
+    // flat blocks within this distance of each other are taken to be at the same level
+    double levelTolerance = MIN_CONTRAST * flatDeviation;
+    double restingLevel = blockMeans[lastFlat];
+    if (Math.abs(blockMeans[firstFlat] - blockMeans[lastFlat]) > levelTolerance
+        && Math.abs(blockMeans[firstFlat] + reference)
+        < Math.abs(blockMeans[lastFlat] + reference)) {
+      restingLevel = blockMeans[firstFlat];
+    }
+    List<Integer> restingBlocks = new ArrayList<>();
+    for (int i = 0; i < blockCount; ++i) {
+      if (flat[i] && Math.abs(blockMeans[i] - restingLevel) <= levelTolerance) {
+        restingBlocks.add(i);
+      }
+    }
+    double[] restingMeans = new double[restingBlocks.size()];
+    for (int i = 0; i < restingMeans.length; ++i) {
+      restingMeans[i] = blockMeans[restingBlocks.get(i)];
+    }
+    double baseline = percentile(restingMeans, 0.5);
+
+    double[] rms = new double[blockCount];
+    for (int i = 0; i < blockCount; ++i) {
+      // mean of (x - b)^2 = mean(x^2) - 2 * b * mean(x) + b^2
+      double meanSquare = blockMeanSquares[i] - 2 * baseline * blockMeans[i] + baseline * baseline;
+      rms[i] = Math.sqrt(Math.max(0., meanSquare));
+    }
+
+    double[] restingRMS = new double[restingBlocks.size()];
+    for (int i = 0; i < restingRMS.length; ++i) {
+      restingRMS[i] = rms[restingBlocks.get(i)];
+    }
+    double quietLevel = percentile(restingRMS, 0.5);
+    double peakLevel = percentile(rms, 0.99);
+    if (peakLevel <= MIN_CONTRAST * quietLevel || peakLevel == 0.) {
+      return windows;
+    }
+    double onThreshold = quietLevel + ON_FRACTION * (peakLevel - quietLevel);
+    double offThreshold = quietLevel + OFF_FRACTION * (peakLevel - quietLevel);
+    int holdBlocks = (int) Math.ceil(HOLD_SECONDS / BLOCK_SECONDS);
+
+    long blockDuration = blockLength * interval;
+    long dataStart = calInput.getStartTime();
+    boolean active = false;
+    int regionStart = 0;
+    int lastActive = 0;
+    for (int i = 0; i < blockCount; ++i) {
+      if (!active) {
+        if (rms[i] >= onThreshold) {
+          active = true;
+          regionStart = i;
+          lastActive = i;
+        }
+      } else if (rms[i] >= offThreshold) {
+        lastActive = i;
+      } else if (i - lastActive > holdBlocks) {
+        windows.add(getPaddedRange(calInput, dataStart, blockDuration, regionStart, lastActive));
+        active = false;
+      }
+    }
+    if (active) {
+      windows.add(getPaddedRange(calInput, dataStart, blockDuration, regionStart, lastActive));
+    }
+    return windows;
+  }
+
+  /**
+   * Convert a range of block indices into a time range, including one extra block on each side
+   * (limited to the range of the data itself)
+   */
+  private static Pair<Long, Long> getPaddedRange(DataBlock calInput, long dataStart,
+      long blockDuration, int firstBlock, int lastBlock) {
+    long start = dataStart + (firstBlock - 1) * blockDuration;
+    long end = dataStart + (lastBlock + 2) * blockDuration;
+    start = Math.max(start, calInput.getStartTime());
+    end = Math.min(end, calInput.getEndTime());
+    return new Pair<>(start, end);
+  }
+
+  /**
+   * Get the value at the given fraction of the sorted order of the data (i.e., 0.5 for median)
+   */
+  private static double percentile(double[] values, double fraction) {
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    int index = (int) Math.round(fraction * (sorted.length - 1));
+    return sorted[index];
+  }
+
+}
@@ -14,7 +14,8 @@ import org.apache.log4j.Logger;
  * the path of the FDSN data acquisition service,
  * the default location from which to load data and responses,
  * the default folder to which reports are outputted (i.e,. as PDF files),
- * and whether or not to use colorblind-friendly colors in result plots.
+ * whether or not to use colorblind-friendly colors in result plots,
+ * and how finely spectral plots are binned.
  */
 public class Configuration {
 
@@ -31,6 +32,7 @@ public class Configuration {
 
   private int lineWidthOffset = 2;
   private boolean useColorblindColors = true;
+  private int spectralBinsPerOctave = 0;
 
   private String fdsnProtocol = "http";
   private String fdsnDomain = "service.iris.edu";
@@ -77,6 +79,8 @@ public class Configuration {
           config.getBoolean("VisualOptions.ColorblindFriendly", true);
       lineWidthOffset =
           config.getInt("VisualOptions.LineThicknessIncrease", 2);
+      spectralBinsPerOctave =
+          config.getInt("VisualOptions.SpectralBinsPerOctave", 0);
 
       try {
         loadedConfigPath = config.getFile().getCanonicalPath();
@@ -254,6 +258,27 @@ public class Configuration {
     lineWidthOffset = replacementOffset;
   }
 
+  /**
+   * Gets the number of log-spaced bins per octave that PSDs and self-noise spectra are reduced to
+   * when plotted, or 0 if every frequency point is plotted. This value defaults to 0 if not
+   * specified in the configuration file.
+   *
+   * The property is defined from Configuration.VisualOptions.SpectralBinsPerOctave as an integer
+   * @return The number of plotted points per octave of spectral plots.
+   */
+  public int getSpectralBinsPerOctave() {
+    return spectralBinsPerOctave;
+  }
+
+  /**
+   * Set the number of bins per octave to use for spectral plots.
+   * This will not affect plots that have already been produced by the program.
+   * @param binsPerOctave Number of bins per octave, or 0 to plot every frequency point.
+   */
+  public void setSpectralBinsPerOctave(int binsPerOctave) {
+    spectralBinsPerOctave = binsPerOctave;
+  }
+
   /**
    * Gets the current protocol to use for FDSN data acquisition. This is a string value.
    * If not set in the configuration file, it defaults to "http".
@@ -349,6 +374,7 @@ public class Configuration {
       config.setProperty("FDSNPaths.Port", fdsnPort);
       config.setProperty("VisualOptions.ColorblindFriendly", useColorblindColors);
       config.setProperty("VisualOptions.LineThicknessIncrease", lineWidthOffset);
+      config.setProperty("VisualOptions.SpectralBinsPerOctave", spectralBinsPerOctave);
 
       config.save();
     } catch (ConfigurationException e) {
@@ -636,6 +636,27 @@ public class DataStore {
     }
   }
 
+  /**
+   * Trim the first [limit] blocks of data to the region where a calibration signal is active in
+   * the calibration input at the given index (see CalibrationWindowDetector). If no calibration
+   * signal can be found, the data is left as-is.
+   *
+   * @param calIndex Index of the block holding the calibration input signal
+   * @param limit upper bound of blocks to do trimming on
+   * @return True if a calibration signal was found and the data was trimmed to it
+   */
+  public boolean trimToCalibrationWindow(int calIndex, int limit) {
+    if (!thisBlockIsSet[calIndex]) {
+      return false;
+    }
+    Pair<Long, Long> window = CalibrationWindowDetector.findCalibrationWindow(getBlock(calIndex));
+    if (window == null) {
+      return false;
+    }
+    trim(window.getFirst(), window.getSecond(), limit);
+    return true;
+  }
+
   /**
    * Trims this object's data blocks to hold only points in their common range
    * WARNING: assumes each plot has its data taken at the same point in time
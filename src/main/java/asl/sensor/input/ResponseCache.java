@@ -0,0 +1,209 @@
+package asl.sensor.input;
+
+import asl.utils.input.InstrumentResponse;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import org.apache.commons.math3.complex.Complex;
+
+/**
+ * Process-wide cache of evaluated response curves. The same few responses (such as the embedded
+ * responses used in batch runs) tend to be applied to the same frequencies over and over, so
+ * curves are kept and reused rather than evaluated again each time.
+ *
+ * Curves are keyed by the content of the response (its poles, zeros, gain stages, normalization
+ * frequency and name) at the time of the lookup, not by the response object itself, so a response
+ * whose poles or zeros are changed after it is cached will not be given its old curve. They are
+ * also keyed by a copy of the frequencies they are evaluated at, compared point by point, and
+ * whether the curve is scaled by the response's gain. When the cached curves take up more memory
+ * than the limit, the least recently used ones are evicted first.
+ *
+ * Responses whose parameters change with every evaluation, such as the trial responses of a fit,
+ * should be evaluated directly instead, as they would only push reusable curves out of the cache.
+ */
+public class ResponseCache {
+
+  /**
+   * Approximate memory used per point of a cached curve: a Complex object and its reference, and
+   * the frequency kept in the curve's key
+   */
+  private static final long BYTES_PER_POINT = 48L;
+
+  /**
+   * Memory the cached curves may take up unless set otherwise (see setMaximumSize), in bytes
+   */
+  public static final long DEFAULT_MAXIMUM_SIZE = 64L * 1024 * 1024;
+
+  private static final Map<Key, Complex[]> curves = new LinkedHashMap<>(16, 0.75f, true);
+  private static long maximumBytes = DEFAULT_MAXIMUM_SIZE;
+  private static long usedBytes = 0L;
+  private static long hits = 0L;
+  private static long misses = 0L;
+
+  private ResponseCache() {
+  }
+
+  /**
+   * Get the response curve at the given frequencies (see InstrumentResponse.applyResponseToInput),
+   * evaluating it only if it is not already cached
+   *
+   * @param response Response to evaluate
+   * @param freqs Frequencies to evaluate the response at (Hz)
+   * @return Response at each frequency, including the gain
+   */
+  public static Complex[] applyResponseToInput(InstrumentResponse response, double[] freqs) {
+    return getCurve(response, freqs, true);
+  }
+
+  /**
+   * Get the response curve at the given frequencies without the gain stages applied (see
+   * InstrumentResponse.applyResponseToInputUnscaled), evaluating it only if it is not already
+   * cached
+   *
+   * @param response Response to evaluate
+   * @param freqs Frequencies to evaluate the response at (Hz)
+   * @return Response at each frequency, excluding the gain
+   */
+  public static Complex[] applyResponseToInputUnscaled(InstrumentResponse response,
+      double[] freqs) {
+    return getCurve(response, freqs, false);
+  }
+
+  private static Complex[] getCurve(InstrumentResponse response, double[] freqs, boolean scaled) {
+    Key key = new Key(response, freqs, scaled);
+    synchronized (ResponseCache.class) {
+      Complex[] curve = curves.get(key);
+      if (curve != null) {
+        ++hits;
+        return curve.clone();
+      }
+      ++misses;
+    }
+
+    // evaluate outside the lock so that other curves can be looked up in the meantime
+    Complex[] curve = scaled ?
+        response.applyResponseToInput(freqs) : response.applyResponseToInputUnscaled(freqs);
+
+    synchronized (ResponseCache.class) {
+      long size = curve.length * BYTES_PER_POINT;
+      if (size <= maximumBytes && !curves.containsKey(key)) {
+        curves.put(key, curve.clone());
+        usedBytes += size;
+        evict();
+      }
+    }
+    return curve;
+  }
+
+  /**
+   * Remove least-recently used curves until the cache is within its memory limit
+   */
+  private static void evict() {
+    Iterator<Complex[]> iterator = curves.values().iterator();
+    while (usedBytes > maximumBytes && iterator.hasNext()) {
+      usedBytes -= iterator.next().length * BYTES_PER_POINT;
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Set how much memory the cached curves may take up, evicting curves if they already exceed it
+   *
+   * @param bytes Approximate memory limit in bytes (0 disables caching)
+   */
+  public static synchronized void setMaximumSize(long bytes) {
+    maximumBytes = bytes;
+    evict();
+  }
+
+  /**
+   * Remove all curves from the cache and reset its hit and miss counts
+   */
+  public static synchronized void clear() {
+    curves.clear();
+    usedBytes = 0L;
+    hits = 0L;
+    misses = 0L;
+  }
+
+  /**
+   * @return Approximate memory taken up by the cached curves in bytes
+   */
+  public static synchronized long getSize() {
+    return usedBytes;
+  }
+
+  /**
+   * @return Number of curves currently cached
+   */
+  public static synchronized int getCurveCount() {
+    return curves.size();
+  }
+
+  /**
+   * @return Number of lookups answered from the cache since it was last cleared
+   */
+  public static synchronized long getHitCount() {
+    return hits;
+  }
+
+  /**
+   * @return Number of lookups that had to evaluate the response since it was last cleared
+   */
+  public static synchronized long getMissCount() {
+    return misses;
+  }
+
+  /**
+   * Identifies a curve by the content of its response and the frequencies it is evaluated at
+   */
+  private static class Key {
+
+    private final String name;
+    private final Object[] poles;
+    private final Object[] zeros;
+    private final double[] gain;
+    private final double normalizationFrequency;
+    private final double[] freqs;
+    private final boolean scaled;
+    private final int hash;
+
+    private Key(InstrumentResponse response, double[] freqs, boolean scaled) {
+      name = response.getName();
+      poles = response.getPoles().toArray();
+      zeros = response.getZeros().toArray();
+      gain = response.getGain().clone();
+      normalizationFrequency = response.getNormalizationFrequency();
+      // copied so that a caller reusing its array for another grid cannot change the key
+      this.freqs = freqs.clone();
+      this.scaled = scaled;
+      hash = Objects.hash(name, Arrays.hashCode(poles), Arrays.hashCode(zeros),
+          Arrays.hashCode(gain), normalizationFrequency, Arrays.hashCode(freqs), scaled);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return hash == key.hash && scaled == key.scaled
+          && Double.compare(normalizationFrequency, key.normalizationFrequency) == 0
+          && Objects.equals(name, key.name)
+          && Arrays.equals(poles, key.poles)
+          && Arrays.equals(zeros, key.zeros)
+          && Arrays.equals(gain, key.gain)
+          && Arrays.equals(freqs, key.freqs);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
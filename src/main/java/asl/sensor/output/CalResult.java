@@ -10,7 +10,9 @@ import java.util.Map;
  * (these are stored as byte arrays to be more easily imported into, say, a Django database backend)
  * and the other of which is a map from string descriptors to the variables fit by the solver,
  * given as a list of doubles (which has more than one entry in the case of, say, poles and zeros
- * returned by a randomized cal experiment).
+ * returned by a randomized cal experiment). Results that need to report messages, such as batch
+ * runs where some sets of data can fail while others succeed, also populate a third map from
+ * string descriptors to text.
  * Implementing classes don't need to add additional functions but must populate the maps with
  * actual data to be returned, which varies in content depending on the type of calibration done.
  * This class is not useful for the GUI interface, as the results there are contained within the
@@ -136,10 +138,12 @@ public class CalResult {
 
   Map<String, double[]> numerMap;
   Map<String, byte[]> imageMap;
+  Map<String, String[]> stringMap;
 
   private CalResult() {
     numerMap = new HashMap<>();
     imageMap = new HashMap<>();
+    stringMap = new HashMap<>();
   }
 
   /**
@@ -160,6 +164,33 @@ public class CalResult {
     return out;
   }
 
+  /**
+   * Get data from a batch of orientation solves. Sets that could not be solved have NaN values,
+   * and the reason each failed is given in the text data.
+   * @param azimuths Fit azimuth of each set's test north component, including reference offset
+   * @param uncertainties Uncertainty of each set's azimuth
+   * @param correlations Correlation of each set's reference and rotated test data
+   * @param solved 1 for each set that was loaded and solved without error, else 0
+   * @param enoughPoints 1 for each set with enough data to average over windows, else 0 (if 0
+   * for a solved set, its azimuth comes from the full range only and is less reliable)
+   * @param errors Description of why each set could not be solved (null for solved sets)
+   * @param resultTable Tab-separated table of the results of every set, one per line
+   * @return object holding these values in easily-accessed maps with variable descriptions
+   */
+  public static CalResult buildOrientationBatchData(double[] azimuths, double[] uncertainties,
+      double[] correlations, double[] solved, double[] enoughPoints, String[] errors,
+      String resultTable) {
+    CalResult out = new CalResult();
+    out.numerMap.put("Azimuths", azimuths);
+    out.numerMap.put("Azimuth_uncertainties", uncertainties);
+    out.numerMap.put("Correlations", correlations);
+    out.numerMap.put("Solved", solved);
+    out.numerMap.put("Enough_points", enoughPoints);
+    out.stringMap.put("Errors", errors);
+    out.stringMap.put("Result_table", new String[]{resultTable});
+    return out;
+  }
+
   /**
    * Return the map of images
    * @return map of byte arrays representing images, keyed by strings with image descriptions
@@ -176,4 +207,13 @@ public class CalResult {
   public Map<String, double[]> getNumerMap() {
     return numerMap;
   }
+
+  /**
+   * Return the map of text data
+   * @return map of string arrays representing messages about the calculation, such as the reason
+   * a set of data could not be solved, keyed by strings with descriptions of the given text
+   */
+  public Map<String, String[]> getStringMap() {
+    return stringMap;
+  }
 }
@@ -0,0 +1,100 @@
+package asl.sensor.experiment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import asl.utils.TimeSeriesUtils;
+import asl.utils.input.DataBlock;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class AzimuthBatchTest {
+
+  private static final int LENGTH = 8000;
+  private static final long INTERVAL = TimeSeriesUtils.ONE_HZ_INTERVAL;
+
+  private static DataBlock randomBlock(String name, Random random) {
+    double[] data = new double[LENGTH];
+    for (int i = 0; i < LENGTH; ++i) {
+      data[i] = random.nextGaussian();
+    }
+    return new DataBlock(data, INTERVAL, name, 0L);
+  }
+
+  /**
+   * Create a test sensor pair whose north component points at the given angle from the reference
+   */
+  private static void addTestPair(AzimuthBatch batch, String prefix, DataBlock reference,
+      double degrees, Random random) {
+    double[] refData = reference.getData();
+    double[] other = randomBlock(prefix + "_X", random).getData();
+    double theta = Math.toRadians(degrees);
+    // invert the rotation so that rotating the test pair by theta gives back the reference
+    double[] north = new double[LENGTH];
+    double[] east = new double[LENGTH];
+    for (int i = 0; i < LENGTH; ++i) {
+      north[i] = refData[i] * Math.cos(theta) + other[i] * Math.sin(theta);
+      east[i] = -refData[i] * Math.sin(theta) + other[i] * Math.cos(theta);
+      north[i] += 0.05 * random.nextGaussian();
+    }
+    batch.addDecodedBlock(prefix + "_N", new DataBlock(north, INTERVAL, prefix + "_N", 0L));
+    batch.addDecodedBlock(prefix + "_E", new DataBlock(east, INTERVAL, prefix + "_E", 0L));
+  }
+
+  @Test
+  public void run_solvesEachSetAgainstItsReference() {
+    Random random = new Random(42);
+    AzimuthBatch batch = new AzimuthBatch();
+    batch.setClosedFormEstimate(true);
+
+    DataBlock shared = randomBlock("SHARED", random);
+    batch.addDecodedBlock("SHARED", shared);
+    batch.setSharedReference("SHARED");
+    DataBlock own = randomBlock("OWN", random);
+    batch.addDecodedBlock("OWN", own);
+
+    addTestPair(batch, "A", shared, 75., random);
+    addTestPair(batch, "B", shared, 200., random);
+    addTestPair(batch, "C", own, 30., random);
+    batch.addJob("A_N", "A_E");
+    batch.addJob("B_N", "B_E");
+    batch.addJob("C_N", "C_E", "OWN", 10.);
+    assertEquals(3, batch.getJobCount());
+
+    List<AzimuthBatch.Result> results = batch.run();
+    assertEquals(3, results.size());
+    double[] expected = {75., 200., 40.};
+    for (int i = 0; i < expected.length; ++i) {
+      AzimuthBatch.Result result = results.get(i);
+      assertTrue(result.getError(), result.succeeded());
+      assertEquals(expected[i], result.getAzimuth(), 1.);
+      assertTrue(result.getCorrelation() > 0.95);
+    }
+    assertEquals("SHARED", results.get(0).getReferenceNorth());
+    assertEquals("OWN", results.get(2).getReferenceNorth());
+
+    String table = AzimuthBatch.getResultTable(results);
+    assertEquals(4, table.split("\n").length);
+  }
+
+  @Test
+  public void run_reportsSetsThatCannotBeSolved() {
+    Random random = new Random(43);
+    AzimuthBatch batch = new AzimuthBatch();
+    DataBlock reference = randomBlock("REF", random);
+    batch.addDecodedBlock("REF", reference);
+    addTestPair(batch, "A", reference, 120., random);
+    // no shared reference set, so this set has nothing to be solved against
+    batch.addJob("A_N", "A_E");
+
+    List<AzimuthBatch.Result> results = batch.run();
+    AzimuthBatch.Result result = results.get(0);
+    assertFalse(result.succeeded());
+    assertNotNull(result.getError());
+    assertTrue(Double.isNaN(result.getAzimuth()));
+    assertTrue(result.toString().endsWith(result.getError()));
+  }
+}
@@ -16,7 +16,9 @@ import edu.sc.seis.seisFile.mseed.SeedFormatException;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Random;
+import org.apache.commons.math3.util.Pair;
 import org.junit.Test;
 
 public class AzimuthExperimentTest {
@@ -569,5 +571,192 @@ public class AzimuthExperimentTest {
         AzimuthExperiment.getAzimuth(north, east, referenceNorth, interval, start, end),
         10E-7);
   }
-}
 
+  @Test
+  public void parallelWindows_matchesSequentialWindows() {
+    // 1Hz data, long enough for a dozen or so windows; reference is rotated 30 degrees
+    int length = 8000;
+    double[] north = new double[length];
+    double[] east = new double[length];
+    double[] referenceNorth = new double[length];
+    Random rand = new Random(44);
+    double trueAngle = Math.toRadians(30.);
+    for (int i = 0; i < length; i++) {
+      north[i] = rand.nextGaussian();
+      east[i] = rand.nextGaussian();
+    }
+    double[] rotated = TimeSeriesUtils.rotate(north, east, trueAngle);
+    for (int i = 0; i < length; i++) {
+      referenceNorth[i] = rotated[i] + 0.1 * rand.nextGaussian();
+    }
+    long interval = TimeSeriesUtils.ONE_HZ_INTERVAL;
+    long end = length * interval;
+
+    AzimuthExperiment sequential = new AzimuthExperiment();
+    sequential.alternateEntryPoint(north, east, referenceNorth, interval, 0L, end);
+    AzimuthExperiment parallel = new AzimuthExperiment();
+    parallel.setParallelWindows(true);
+    parallel.alternateEntryPoint(north, east, referenceNorth, interval, 0L, end);
+
+    assertTrue(sequential.hadEnoughPoints());
+    assertTrue(parallel.hadEnoughPoints());
+    assertEquals(sequential.getCorrelations().length, parallel.getCorrelations().length);
+    assertEquals(30., sequential.getFitAngle(), 0.5);
+    assertEquals(sequential.getFitAngle(), parallel.getFitAngle(), 0.5);
+  }
+
+  @Test
+  public void getClosedFormEstimate_exactRotation() {
+    double[] north = new double[2000];
+    double[] east = new double[2000];
+    Random rand = new Random(45);
+    for (int i = 0; i < north.length; i++) {
+      north[i] = rand.nextGaussian();
+      east[i] = rand.nextGaussian();
+    }
+    for (double degrees : new double[]{0., 15., 95., 180., 270., 355.}) {
+      double[] reference = TimeSeriesUtils.rotate(north, east, Math.toRadians(degrees));
+      Pair<Double, Double> estimate =
+          AzimuthExperiment.getClosedFormEstimate(north, east, reference);
+      double fitDegrees = Math.toDegrees(estimate.getFirst());
+      // angle is returned in the range [0, 360)
+      double difference = ((fitDegrees - degrees) % 360 + 540) % 360 - 180;
+      assertEquals(0., difference, 1E-8);
+      assertEquals(1., estimate.getSecond(), 1E-10);
+    }
+  }
+
+  @Test
+  public void getClosedFormEstimate_degenerateData() {
+    double[] north = new double[1000];
+    double[] east = new double[1000];
+    double[] reference = new double[1000];
+    Arrays.fill(north, 1.);
+    Arrays.fill(east, 2.);
+    Arrays.fill(reference, 1.);
+    Pair<Double, Double> estimate =
+        AzimuthExperiment.getClosedFormEstimate(north, east, reference);
+    assertEquals(0., estimate.getFirst(), 0.);
+    assertEquals(0., estimate.getSecond(), 0.);
+  }
+
+  @Test
+  public void closedFormEstimate_matchesIterativeSolver() {
+    int length = 8000;
+    double[] north = new double[length];
+    double[] east = new double[length];
+    double[] referenceNorth = new double[length];
+    Random rand = new Random(46);
+    for (int i = 0; i < length; i++) {
+      north[i] = rand.nextGaussian();
+      east[i] = rand.nextGaussian();
+    }
+    double[] rotated = TimeSeriesUtils.rotate(north, east, Math.toRadians(200.));
+    for (int i = 0; i < length; i++) {
+      referenceNorth[i] = rotated[i] + 0.1 * rand.nextGaussian();
+    }
+    long interval = TimeSeriesUtils.ONE_HZ_INTERVAL;
+    long end = length * interval;
+
+    AzimuthExperiment iterative = new AzimuthExperiment();
+    iterative.alternateEntryPoint(north, east, referenceNorth, interval, 0L, end);
+    AzimuthExperiment closedForm = new AzimuthExperiment();
+    closedForm.setClosedFormEstimate(true);
+    closedForm.alternateEntryPoint(north, east, referenceNorth, interval, 0L, end);
+    AzimuthExperiment refined = new AzimuthExperiment();
+    refined.setClosedFormEstimate(true);
+    refined.setLeastSquaresRefinement(true);
+    refined.alternateEntryPoint(north, east, referenceNorth, interval, 0L, end);
+
+    assertEquals(200., iterative.getFitAngle(), 0.5);
+    assertEquals(iterative.getFitAngle(), closedForm.getFitAngle(), 0.5);
+    assertEquals(iterative.getFitAngle(), refined.getFitAngle(), 0.1);
+    assertTrue(closedForm.hadEnoughPoints());
+  }
+
+  @Test
+  public void getAzimuth_preparedReferenceMatchesRawData() {
+    // 20Hz data so that the prepared reference has to be decimated
+    int length = 20 * 6000;
+    double[] north = new double[length];
+    double[] east = new double[length];
+    Random rand = new Random(47);
+    for (int i = 0; i < length; i++) {
+      north[i] = rand.nextGaussian();
+      east[i] = rand.nextGaussian();
+    }
+    double[] toAlignNorth = TimeSeriesUtils.rotate(north, east, Math.toRadians(40.));
+    double[] toAlignEast = TimeSeriesUtils.rotate(north, east, Math.toRadians(130.));
+    long interval = 50L;
+    long end = length * interval;
+
+    AzimuthExperiment.PreparedReference prepared =
+        new AzimuthExperiment.PreparedReference(north, east, interval);
+    for (double[] toAlign : new double[][]{toAlignNorth, toAlignEast}) {
+      double expected =
+          AzimuthExperiment.getAzimuth(north, east, toAlign, interval, 0L, end);
+      assertEquals(expected, AzimuthExperiment.getAzimuth(prepared, toAlign, 0L, end), 0.);
+    }
+  }
+
+  @Test
+  public void multiBand_consensusOfBandEstimates() {
+    int length = 8000;
+    double[] north = new double[length];
+    double[] east = new double[length];
+    double[] referenceNorth = new double[length];
+    Random rand = new Random(48);
+    for (int i = 0; i < length; i++) {
+      north[i] = rand.nextGaussian();
+      east[i] = rand.nextGaussian();
+    }
+    double[] rotated = TimeSeriesUtils.rotate(north, east, Math.toRadians(75.));
+    for (int i = 0; i < length; i++) {
+      referenceNorth[i] = rotated[i] + 0.1 * rand.nextGaussian();
+    }
+    long interval = TimeSeriesUtils.ONE_HZ_INTERVAL;
+    long end = length * interval;
+
+    AzimuthExperiment experiment = new AzimuthExperiment();
+    experiment.setMultiBand(true);
+    experiment.alternateEntryPoint(north, east, referenceNorth, interval, 0L, end);
+
+    List<AzimuthExperiment.BandEstimate> bands = experiment.getBandEstimates();
+    assertEquals(3, bands.size());
+    for (AzimuthExperiment.BandEstimate band : bands) {
+      assertEquals(75., band.getFitAngle(), 1.);
+      assertTrue(band.hadEnoughPoints());
+    }
+    assertEquals(75., experiment.getFitAngle(), 1.);
+    assertTrue(experiment.hadEnoughPoints());
+    assertEquals(3, experiment.getDataStrings().length);
+    assertEquals(3, experiment.getData().size());
+  }
+
+  @Test
+  public void gridSearchSeed_findsOppositeFacingSensor() {
+    // test sensor faces the opposite direction of the reference, so the solver's default start
+    // of 0 is at the correlation minimum
+    int length = 8000;
+    double[] north = new double[length];
+    double[] east = new double[length];
+    double[] referenceNorth = new double[length];
+    Random rand = new Random(49);
+    for (int i = 0; i < length; i++) {
+      north[i] = rand.nextGaussian();
+      east[i] = rand.nextGaussian();
+      referenceNorth[i] = -north[i] + 0.1 * rand.nextGaussian();
+    }
+    double gridAngle = AzimuthExperiment.getGridSearchAngle(
+        WindowCovarianceIndex.getCovariances(north, east, referenceNorth));
+    assertEquals(Math.PI, gridAngle, Math.toRadians(1.));
+
+    long interval = TimeSeriesUtils.ONE_HZ_INTERVAL;
+    AzimuthExperiment experiment = new AzimuthExperiment();
+    experiment.setSimple(true);
+    experiment.setGridSearchSeed(true);
+    experiment.alternateEntryPoint(north, east, referenceNorth, interval, 0L, length * interval);
+    assertEquals(180., experiment.getFitAngle(), 0.5);
+    assertTrue(experiment.getFitCorrelation() > 0.9);
+  }
+}
@@ -0,0 +1,128 @@
+package asl.sensor.experiment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+public class CrossSpectralAccumulatorTest {
+
+  private static double[][] randomData(int channels, int length) {
+    Random random = new Random(42);
+    double[][] data = new double[channels][length];
+    for (int i = 0; i < channels; ++i) {
+      for (int j = 0; j < length; ++j) {
+        data[i][j] = random.nextGaussian();
+      }
+    }
+    return data;
+  }
+
+  @Test
+  public void append_countsOverlappingSegments() {
+    double[][] data = randomData(2, 1000);
+    CrossSpectralAccumulator accumulator = new CrossSpectralAccumulator(2, 256, 1000L);
+    accumulator.append(data[0], data[1]);
+    // segments start every 64 samples; last full segment starts at 704
+    assertEquals(12, accumulator.getSegmentCount());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void getCrossSpectrum_failsWithoutFullSegment() {
+    double[][] data = randomData(2, 100);
+    CrossSpectralAccumulator accumulator = new CrossSpectralAccumulator(2, 256, 1000L);
+    accumulator.append(data[0], data[1]);
+    accumulator.getCrossSpectrum(0, 1);
+  }
+
+  @Test
+  public void append_chunkedMatchesSingleAppend() {
+    double[][] data = randomData(3, 3000);
+    CrossSpectralAccumulator whole = new CrossSpectralAccumulator(3, 512, 25L);
+    whole.append(data);
+
+    // uneven chunk boundaries, including chunks shorter than one segment step
+    CrossSpectralAccumulator chunked = new CrossSpectralAccumulator(3, 512, 25L);
+    int[] bounds = {0, 37, 600, 650, 1999, 3000};
+    for (int i = 1; i < bounds.length; ++i) {
+      double[][] chunk = new double[3][];
+      for (int j = 0; j < 3; ++j) {
+        chunk[j] = Arrays.copyOfRange(data[j], bounds[i - 1], bounds[i]);
+      }
+      chunked.append(chunk);
+    }
+
+    assertEquals(whole.getSegmentCount(), chunked.getSegmentCount());
+    assertArrayEquals(whole.getFrequencies(), chunked.getFrequencies(), 0.);
+    for (int i = 0; i < 3; ++i) {
+      for (int j = 0; j < 3; ++j) {
+        Complex[] expected = whole.getCrossSpectrum(i, j);
+        Complex[] result = chunked.getCrossSpectrum(i, j);
+        for (int k = 0; k < expected.length; ++k) {
+          assertEquals(expected[k].getReal(), result[k].getReal(), 1E-10);
+          assertEquals(expected[k].getImaginary(), result[k].getImaginary(), 1E-10);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void getCrossSpectrum_reversedIndicesAreConjugate() {
+    double[][] data = randomData(2, 2048);
+    CrossSpectralAccumulator accumulator = new CrossSpectralAccumulator(2, 512, 1000L);
+    accumulator.append(data[0], data[1]);
+    Complex[] forward = accumulator.getCrossSpectrum(0, 1);
+    Complex[] reverse = accumulator.getCrossSpectrum(1, 0);
+    for (int k = 0; k < forward.length; ++k) {
+      assertEquals(forward[k].getReal(), reverse[k].getReal(), 0.);
+      assertEquals(forward[k].getImaginary(), -reverse[k].getImaginary(), 0.);
+    }
+  }
+
+  @Test
+  public void merge_matchesAccumulatingBothRanges() {
+    double[][] data = randomData(3, 4000);
+    double[][] firstHalf = new double[3][];
+    double[][] secondHalf = new double[3][];
+    for (int i = 0; i < 3; ++i) {
+      firstHalf[i] = Arrays.copyOfRange(data[i], 0, 2000);
+      secondHalf[i] = Arrays.copyOfRange(data[i], 2000, 4000);
+    }
+
+    // no segment spans the two halves in either case
+    CrossSpectralAccumulator both = new CrossSpectralAccumulator(3, 512, 25L);
+    both.append(firstHalf);
+    both.discardPending();
+    both.append(secondHalf);
+
+    CrossSpectralAccumulator merged = new CrossSpectralAccumulator(3, 512, 25L);
+    CrossSpectralAccumulator first = new CrossSpectralAccumulator(3, 512, 25L);
+    first.append(firstHalf);
+    CrossSpectralAccumulator second = new CrossSpectralAccumulator(3, 512, 25L);
+    second.append(secondHalf);
+    merged.merge(first);
+    merged.merge(second);
+
+    assertEquals(both.getSegmentCount(), merged.getSegmentCount());
+    assertArrayEquals(both.getFrequencies(), merged.getFrequencies(), 0.);
+    for (int i = 0; i < 3; ++i) {
+      for (int j = 0; j < 3; ++j) {
+        Complex[] expected = both.getCrossSpectrum(i, j);
+        Complex[] result = merged.getCrossSpectrum(i, j);
+        for (int k = 0; k < expected.length; ++k) {
+          assertEquals(expected[k].getReal(), result[k].getReal(), 1E-10);
+          assertEquals(expected[k].getImaginary(), result[k].getImaginary(), 1E-10);
+        }
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void merge_rejectsDifferentSegmentLength() {
+    new CrossSpectralAccumulator(2, 512, 25L).merge(new CrossSpectralAccumulator(2, 256, 25L));
+  }
+
+}
@@ -135,5 +135,37 @@ public class ExperimentTest {
     assertEquals(expected, formattedDateString);
   }
 
+  @Test
+  public void smoothFractionalOctave_averagesEachBin() {
+    // one-sided frequencies of a 65536-point segment at 1Hz, with power proportional to frequency
+    double[] freqs = new double[32769];
+    double[] power = new double[freqs.length];
+    for (int i = 0; i < freqs.length; ++i) {
+      freqs[i] = i / 65536.;
+      power[i] = 2. * freqs[i];
+    }
+    double[][] smoothed = Experiment.smoothFractionalOctave(freqs, power, 8);
+    // 15 octaves from the lowest nonzero frequency to nyquist, at most 8 bins each (plus an end
+    // bin), though the lowest octaves have fewer points than bins
+    assertTrue(smoothed[0].length <= 8 * 15 + 1);
+    assertTrue(smoothed[0].length > 8 * 10);
+    // the lowest bins each hold a single point, plotted exactly where it is
+    assertEquals(freqs[1], smoothed[0][0], 1E-15);
+    assertEquals(power[1], smoothed[1][0], 1E-15);
+    for (int i = 1; i < smoothed[0].length; ++i) {
+      assertTrue(smoothed[0][i] > smoothed[0][i - 1]);
+      // the power of a linear trend averaged over a narrow bin is close to its value at the center
+      assertEquals(2. * smoothed[0][i], smoothed[1][i], 0.01 * smoothed[1][i]);
+    }
+  }
+
+  @Test
+  public void smoothFractionalOctave_skipsZeroFrequency() {
+    double[] freqs = {0., 1., 2., 4.};
+    double[] power = {100., 1., 2., 3.};
+    double[][] smoothed = Experiment.smoothFractionalOctave(freqs, power, 1);
+    assertArrayEquals(new double[]{1., 2., 4.}, smoothed[0], 1E-12);
+    assertArrayEquals(new double[]{1., 2., 3.}, smoothed[1], 1E-12);
+  }
 
 }
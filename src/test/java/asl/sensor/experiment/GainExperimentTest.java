@@ -5,11 +5,15 @@ import static org.junit.Assert.fail;
 
 import asl.sensor.input.DataStore;
 import asl.sensor.test.TestUtils;
+import asl.utils.FFTResult;
+import asl.utils.NumericUtils;
 import edu.iris.dmc.seedcodec.CodecException;
 import edu.sc.seis.seisFile.mseed.SeedFormatException;
 import java.io.IOException;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.Random;
+import org.apache.commons.math3.complex.Complex;
 import org.junit.Test;
 
 public class GainExperimentTest {
@@ -65,4 +69,43 @@ public class GainExperimentTest {
     // System.out.println( Arrays.toString(stats) );
     assertEquals(11719., gain, 2.0);
   }
+
+  @Test
+  public void getRangeStatistics_matchesNumericUtils() {
+    int length = 200;
+    Random random = new Random(43);
+    Complex[] reference = new Complex[length];
+    Complex[] other = new Complex[length];
+    double[] freqs = new double[length];
+    for (int i = 0; i < length; ++i) {
+      freqs[i] = i / 10.;
+      reference[i] = new Complex(random.nextGaussian(), random.nextGaussian()).multiply(100.);
+      other[i] = new Complex(random.nextGaussian(), random.nextGaussian());
+    }
+    FFTResult[] psds = {new FFTResult(reference, freqs), new FFTResult(other, freqs)};
+
+    GainExperiment ge = new GainExperiment();
+    ge.setPSDs(psds);
+
+    // last pair has reversed bounds, and the pair before it spans a single point (range 0)
+    int[][] bounds = {{10, 50}, {0, length - 1}, {73, 74}, {120, 120}, {150, 30}};
+    for (int refIndex = 0; refIndex < 2; ++refIndex) {
+      FFTResult ref = psds[refIndex];
+      FFTResult calc = psds[(refIndex + 1) % 2];
+      for (int[] bound : bounds) {
+        int lower = Math.min(bound[0], bound[1]);
+        int upper = Math.max(bound[0], bound[1]);
+        double mean0 = NumericUtils.getFFTMean(ref, lower, upper);
+        double mean1 = NumericUtils.getFFTMean(calc, lower, upper);
+        double ratio = (mean0 + Double.MIN_VALUE) / (mean1 + Double.MIN_VALUE);
+        double sigma = NumericUtils.getFFTSDev(ref, calc, ratio, lower, upper);
+
+        double[] stats = ge.getRangeStatistics(refIndex, bound[0], bound[1]);
+        assertEquals(mean0, stats[0], Math.abs(mean0) * 1E-10);
+        assertEquals(mean1, stats[1], Math.abs(mean1) * 1E-10);
+        assertEquals(ratio, stats[2], Math.abs(ratio) * 1E-10);
+        assertEquals(sigma, stats[3], Math.abs(sigma) * 1E-7);
+      }
+    }
+  }
 }
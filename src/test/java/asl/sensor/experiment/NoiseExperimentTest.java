@@ -1,16 +1,23 @@
 package asl.sensor.experiment;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import asl.sensor.input.DataStore;
 import asl.sensor.test.TestUtils;
 import asl.utils.TimeSeriesUtils;
+import asl.utils.input.DataBlock;
+import asl.utils.input.InstrumentResponse;
 import edu.iris.dmc.seedcodec.CodecException;
 import edu.sc.seis.seisFile.mseed.SeedFormatException;
 import java.io.IOException;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import org.jfree.data.xy.XYDataItem;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
@@ -258,4 +265,142 @@ public class NoiseExperimentTest {
 
   }
 
+  private static final long STREAM_START = 18500L * 86400000L; // midnight UTC
+  private static final int STREAM_LENGTH = 2 * 86400; // two days of 1Hz data
+
+  /**
+   * Create three sensors' data sharing a common signal, each with its own independent noise, with
+   * the noise of each sensor having twice the amplitude (6 dB more power) of the previous one's
+   */
+  private static double[][] streamingData() {
+    Random random = new Random(42);
+    double[][] data = new double[3][STREAM_LENGTH];
+    for (int i = 0; i < STREAM_LENGTH; ++i) {
+      double signal = random.nextGaussian();
+      for (int j = 0; j < data.length; ++j) {
+        data[j][i] = 0.5 * signal + (1 << j) * random.nextGaussian();
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Get the mean power of a plotted series over a range of periods (the series is in dB and
+   * plotted against period); power is averaged linearly, as noisy estimates can be near zero
+   */
+  private static double meanDecibels(XYSeries series, double lowPeriod, double highPeriod) {
+    double sum = 0.;
+    int count = 0;
+    for (int i = 0; i < series.getItemCount(); ++i) {
+      double period = series.getX(i).doubleValue();
+      if (period >= lowPeriod && period <= highPeriod) {
+        sum += Math.pow(10, series.getY(i).doubleValue() / 10);
+        ++count;
+      }
+    }
+    return 10 * Math.log10(sum / count);
+  }
+
+  @Test
+  public void getNoiseData_recoversRelativeNoiseOfEachSensor() throws IOException {
+    double[][] data = streamingData();
+    InstrumentResponse response = InstrumentResponse.loadEmbeddedResponse("STS2gen3_Q330HR");
+    DataStore dataStore = new DataStore();
+    for (int i = 0; i < data.length; ++i) {
+      dataStore.setBlock(i, new DataBlock(data[i], TimeSeriesUtils.ONE_HZ_INTERVAL,
+          "XX_TST" + i, STREAM_START));
+      dataStore.setResponse(i, response);
+    }
+    NoiseExperiment noise = new NoiseExperiment();
+    noise.runExperimentOnData(dataStore);
+
+    XYSeriesCollection plots = noise.getData().get(0);
+    // three PSDs, three noise estimates, and the low and high noise models
+    assertEquals(8, plots.getSeriesCount());
+    double first = meanDecibels(plots.getSeries(3), 4., 1000.);
+    // doubling the noise amplitude raises its power by 6 dB
+    assertEquals(6.02, meanDecibels(plots.getSeries(4), 4., 1000.) - first, 1.);
+    assertEquals(12.04, meanDecibels(plots.getSeries(5), 4., 1000.) - first, 1.);
+  }
+
+  @Test
+  public void getNoiseData_plotsSamePSDsAsSpectrumExperiment() throws IOException {
+    double[][] data = streamingData();
+    InstrumentResponse response = InstrumentResponse.loadEmbeddedResponse("STS2gen3_Q330HR");
+    DataStore dataStore = new DataStore();
+    for (int i = 0; i < data.length; ++i) {
+      dataStore.setBlock(i, new DataBlock(data[i], TimeSeriesUtils.ONE_HZ_INTERVAL,
+          "XX_TST" + i, STREAM_START));
+      dataStore.setResponse(i, response);
+    }
+    NoiseExperiment noise = new NoiseExperiment();
+    noise.runExperimentOnData(dataStore);
+    SpectrumExperiment spectrum = new SpectrumExperiment();
+    spectrum.runExperimentOnData(dataStore);
+
+    XYSeriesCollection noisePlots = noise.getData().get(0);
+    XYSeriesCollection spectrumPlots = spectrum.getData().get(0);
+    for (int i = 0; i < data.length; ++i) {
+      XYSeries expected = spectrumPlots.getSeries(i);
+      XYSeries actual = noisePlots.getSeries(i);
+      assertEquals(expected.getKey(), actual.getKey());
+      assertEquals(expected.getItemCount(), actual.getItemCount());
+      for (int j = 0; j < expected.getItemCount(); ++j) {
+        assertEquals(expected.getX(j).doubleValue(), actual.getX(j).doubleValue(), 0.);
+        assertEquals(expected.getY(j).doubleValue(), actual.getY(j).doubleValue(), 0.);
+      }
+    }
+  }
+
+  private static NoiseExperiment streamInChunks(double[][] data, int chunkLength)
+      throws IOException {
+    long interval = TimeSeriesUtils.ONE_HZ_INTERVAL;
+    InstrumentResponse response = InstrumentResponse.loadEmbeddedResponse("STS2gen3_Q330HR");
+    NoiseExperiment noise = new NoiseExperiment();
+    noise.startStreamingNoise(new InstrumentResponse[]{response, response, response}, interval);
+    for (int start = 0; start < STREAM_LENGTH; start += chunkLength) {
+      int end = Math.min(STREAM_LENGTH, start + chunkLength);
+      DataBlock[] chunk = new DataBlock[data.length];
+      for (int j = 0; j < data.length; ++j) {
+        chunk[j] = new DataBlock(Arrays.copyOfRange(data[j], start, end), interval,
+            "XX_TST" + j, STREAM_START + start * interval);
+      }
+      noise.addStreamingData(chunk);
+    }
+    noise.finishStreamingNoise();
+    return noise;
+  }
+
+  @Test
+  public void streamingNoise_recoversRelativeNoiseOfEachDay() throws IOException {
+    NoiseExperiment noise = streamInChunks(streamingData(), 3600);
+    List<NoiseExperiment.DailyNoise> days = noise.getDailyNoise();
+    assertEquals(2, days.size());
+    for (int i = 0; i < days.size(); ++i) {
+      NoiseExperiment.DailyNoise day = days.get(i);
+      assertEquals(STREAM_START + i * 86400000L, day.getDayStart());
+      assertTrue(day.getSegmentCount() > 10);
+      double first = day.getMeanNoise(0, 4., 1000.);
+      // doubling the noise amplitude raises its power by 6 dB
+      assertEquals(6.02, day.getMeanNoise(1, 4., 1000.) - first, 1.);
+      assertEquals(12.04, day.getMeanNoise(2, 4., 1000.) - first, 1.);
+    }
+    // three PSDs, three noise estimates, and the low and high noise models
+    assertEquals(8, noise.getData().get(0).getSeriesCount());
+  }
+
+  @Test
+  public void streamingNoise_chunkSizeDoesNotChangeResult() throws IOException {
+    double[][] data = streamingData();
+    List<NoiseExperiment.DailyNoise> whole = streamInChunks(data, STREAM_LENGTH).getDailyNoise();
+    List<NoiseExperiment.DailyNoise> chunked = streamInChunks(data, 1000).getDailyNoise();
+    assertEquals(whole.size(), chunked.size());
+    for (int i = 0; i < whole.size(); ++i) {
+      assertEquals(whole.get(i).getSegmentCount(), chunked.get(i).getSegmentCount());
+      for (int j = 0; j < 3; ++j) {
+        assertArrayEquals(whole.get(i).getNoise(j), chunked.get(i).getNoise(j), 1E-9);
+      }
+    }
+  }
+
 }
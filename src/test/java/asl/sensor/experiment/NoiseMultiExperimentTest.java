@@ -0,0 +1,152 @@
+package asl.sensor.experiment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import asl.sensor.input.DataStore;
+import asl.utils.TimeSeriesUtils;
+import asl.utils.input.DataBlock;
+import asl.utils.input.InstrumentResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.commons.math3.complex.Complex;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+import org.junit.Test;
+
+public class NoiseMultiExperimentTest {
+
+  private static final int LENGTH = 65536;
+
+  /**
+   * Create data for sensors sharing a common signal, each with its own independent noise, with
+   * the noise of each sensor having twice the amplitude (6 dB more power) of the previous one's
+   */
+  private static double[][] sensorData(int sensorCount) {
+    Random random = new Random(42);
+    double[][] data = new double[sensorCount][LENGTH];
+    for (int i = 0; i < LENGTH; ++i) {
+      double signal = random.nextGaussian();
+      for (int j = 0; j < sensorCount; ++j) {
+        data[j][i] = 0.5 * signal + (1 << j) * random.nextGaussian();
+      }
+    }
+    return data;
+  }
+
+  private static Complex[][][] crossSpectralMatrix(double[][] data) {
+    CrossSpectralAccumulator accumulator =
+        new CrossSpectralAccumulator(data.length, 4096, TimeSeriesUtils.ONE_HZ_INTERVAL);
+    accumulator.append(data);
+    Complex[][][] spectra = new Complex[data.length][data.length][];
+    for (int i = 0; i < data.length; ++i) {
+      for (int j = 0; j < data.length; ++j) {
+        spectra[i][j] = accumulator.getCrossSpectrum(i, j);
+      }
+    }
+    return spectra;
+  }
+
+  private static double meanDecibels(Complex[] noise) {
+    // individual estimates of a very noisy sensor can be negative, so average before taking dB
+    double sum = 0.;
+    for (int i = 1; i < noise.length; ++i) {
+      sum += noise[i].getReal();
+    }
+    return 10 * Math.log10(sum / (noise.length - 1));
+  }
+
+  @Test
+  public void getIncoherentNoise_matchesSleemanForThreeSensors() {
+    Complex[][][] spectra = crossSpectralMatrix(sensorData(3));
+    Complex[][] sleeman = NoiseExperiment.getSelfNoise(
+        new Complex[][]{spectra[0][0], spectra[1][1], spectra[2][2]},
+        spectra[0][2], spectra[1][0], spectra[1][2]);
+    Complex[][] noise = NoiseMultiExperiment.getIncoherentNoise(spectra);
+    for (int i = 0; i < 3; ++i) {
+      for (int j = 1; j < noise[i].length; ++j) {
+        double expected = sleeman[i][j].getReal();
+        assertEquals(expected, noise[i][j].getReal(), Math.abs(expected) * 1E-9);
+      }
+    }
+  }
+
+  @Test
+  public void getIncoherentNoise_recoversRelativeNoiseOfEachSensor() {
+    Complex[][] noise = NoiseMultiExperiment.getIncoherentNoise(crossSpectralMatrix(sensorData(5)));
+    double first = meanDecibels(noise[0]);
+    for (int i = 1; i < noise.length; ++i) {
+      // doubling the noise amplitude raises its power by 6 dB
+      assertEquals(6.02 * i, meanDecibels(noise[i]) - first, 1.);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void getIncoherentNoise_rejectsFewerThanThreeSensors() {
+    NoiseMultiExperiment.getIncoherentNoise(crossSpectralMatrix(sensorData(2)));
+  }
+
+  @Test
+  public void runExperimentOnData_usesEveryLoadedSensor() throws IOException {
+    int sensorCount = 5;
+    double[][] data = sensorData(sensorCount);
+    InstrumentResponse response = InstrumentResponse.loadEmbeddedResponse("STS2gen3_Q330HR");
+    DataStore dataStore = new DataStore();
+    NoiseMultiExperiment noise = new NoiseMultiExperiment();
+    for (int i = 0; i < sensorCount; ++i) {
+      // at least three sensors are needed
+      assertEquals(i >= 3, noise.hasEnoughData(dataStore));
+      dataStore.setBlock(i, new DataBlock(data[i], TimeSeriesUtils.ONE_HZ_INTERVAL,
+          "XX_TST" + i, 0L));
+      dataStore.setResponse(i, response);
+    }
+    assertTrue(noise.hasEnoughData(dataStore));
+    noise.runExperimentOnData(dataStore);
+    assertEquals(sensorCount, noise.listActiveResponseIndices().length);
+    // a PSD and noise estimate per sensor, and the low and high noise models
+    assertEquals(2 * sensorCount + 2, noise.getData().get(0).getSeriesCount());
+  }
+
+  @Test
+  public void runExperimentOnData_segmentsLikeCrossPower() throws IOException {
+    double[][] data = sensorData(3);
+    for (int i = 0; i < data.length; ++i) {
+      // a quarter of this is not a power of 2, so the segments are padded
+      data[i] = Arrays.copyOf(data[i], 60000);
+    }
+    InstrumentResponse response = InstrumentResponse.loadEmbeddedResponse("STS2gen3_Q330HR");
+    DataStore dataStore = new DataStore();
+    for (int i = 0; i < data.length; ++i) {
+      dataStore.setBlock(i, new DataBlock(data[i], TimeSeriesUtils.ONE_HZ_INTERVAL,
+          "XX_TST" + i, 0L));
+      dataStore.setResponse(i, response);
+    }
+    NoiseMultiExperiment multi = new NoiseMultiExperiment();
+    multi.runExperimentOnData(dataStore);
+
+    // segments a quarter of the data long, as FFTResult.crossPower uses
+    CrossSpectralAccumulator accumulator = new CrossSpectralAccumulator(data.length,
+        CrossSpectralAccumulator.getCrossPowerSegmentLength(data[0].length),
+        TimeSeriesUtils.ONE_HZ_INTERVAL);
+    accumulator.append(data);
+    double[] freqs = accumulator.getFrequencies();
+    Complex[] curve = response.applyResponseToInput(freqs);
+    XYSeriesCollection actual = multi.getData().get(0);
+    for (int i = 0; i < data.length; ++i) {
+      Complex[] power =
+          NoiseExperiment.removeResponse(accumulator.getCrossSpectrum(i, i), curve, curve);
+      XYSeriesCollection expected = new XYSeriesCollection();
+      multi.addToPlot(new XYSeries("expected"), power, freqs, false, expected);
+      XYSeries expectedSeries = expected.getSeries(0);
+      XYSeries actualSeries = actual.getSeries(i);
+      assertEquals(expectedSeries.getItemCount(), actualSeries.getItemCount());
+      for (int j = 0; j < expectedSeries.getItemCount(); ++j) {
+        assertEquals(expectedSeries.getX(j).doubleValue(), actualSeries.getX(j).doubleValue(),
+            0.);
+        assertEquals(expectedSeries.getY(j).doubleValue(), actualSeries.getY(j).doubleValue(),
+            1E-9);
+      }
+    }
+  }
+}
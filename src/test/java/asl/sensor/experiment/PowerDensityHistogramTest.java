@@ -0,0 +1,95 @@
+package asl.sensor.experiment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class PowerDensityHistogramTest {
+
+  private static final double[] FREQS = new double[2049];
+
+  static {
+    // one-sided frequencies of a 4096-point segment at 1Hz
+    for (int i = 0; i < FREQS.length; ++i) {
+      FREQS[i] = i / 4096.;
+    }
+  }
+
+  private static double[] flatPSD(double decibels) {
+    double[] power = new double[FREQS.length];
+    Arrays.fill(power, Math.pow(10, decibels / 10));
+    return power;
+  }
+
+  @Test
+  public void addSegment_binsFlatSpectrumAtEveryPeriod() {
+    PowerDensityHistogram histogram = new PowerDensityHistogram(4., 500.);
+    histogram.addSegment(FREQS, flatPSD(-119.5));
+    assertEquals(1, histogram.getSegmentCount());
+    double[] mode = histogram.getMode();
+    double[] periods = histogram.getPeriods();
+    assertEquals(4., periods[0], 1E-12);
+    // 1/8-octave spacing
+    assertEquals(Math.pow(2, 1. / 8), periods[1] / periods[0], 1E-12);
+    for (double level : mode) {
+      assertEquals(-119.5, level, 1E-12);
+    }
+  }
+
+  @Test
+  public void getPercentile_followsDistributionOfSegments() {
+    PowerDensityHistogram histogram = new PowerDensityHistogram(4., 500.);
+    List<double[]> segments = new ArrayList<>();
+    for (int i = 0; i < 100; ++i) {
+      segments.add(flatPSD(-150. + i + 0.5));
+    }
+    histogram.addSegments(FREQS, segments);
+    assertEquals(100, histogram.getSegmentCount());
+    double[] median = histogram.getMedian();
+    double[] ninetieth = histogram.getPercentile(90.);
+    for (int i = 0; i < median.length; ++i) {
+      assertEquals(-100.5, median[i], 1E-12);
+      assertEquals(-60.5, ninetieth[i], 1E-12);
+    }
+    double[][] probabilities = histogram.getProbabilities();
+    assertEquals(1., Arrays.stream(probabilities[0]).sum(), 1E-12);
+  }
+
+  @Test
+  public void merge_matchesSingleHistogram() {
+    PowerDensityHistogram all = new PowerDensityHistogram(4., 500.);
+    PowerDensityHistogram first = new PowerDensityHistogram(4., 500.);
+    PowerDensityHistogram second = new PowerDensityHistogram(4., 500.);
+    for (int i = 0; i < 20; ++i) {
+      double[] psd = flatPSD(-140. + 3 * i);
+      all.addSegment(FREQS, psd);
+      (i % 2 == 0 ? first : second).addSegment(FREQS, psd);
+    }
+    first.merge(second);
+    assertEquals(all.getSegmentCount(), first.getSegmentCount());
+    for (int i = 0; i < all.getPeriods().length; ++i) {
+      assertArrayEquals(all.getCounts(i), first.getCounts(i));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void merge_rejectsDifferentBins() {
+    PowerDensityHistogram histogram = new PowerDensityHistogram(4., 500.);
+    histogram.merge(new PowerDensityHistogram(2., 500.));
+  }
+
+  @Test
+  public void addSegment_skipsPeriodsBeyondResolution() {
+    // periods over the segment length have no PSD points in their octave
+    PowerDensityHistogram histogram = new PowerDensityHistogram(4., 20000.);
+    histogram.addSegment(FREQS, flatPSD(-100.5));
+    double[] mode = histogram.getMode();
+    assertEquals(-100.5, mode[0], 1E-12);
+    assertTrue(Double.isNaN(mode[mode.length - 1]));
+  }
+}
@@ -19,6 +19,8 @@ import asl.utils.NumericUtils;
 import asl.utils.ReportingUtils;
 import asl.utils.ResponseUnits.ResolutionType;
 import asl.utils.ResponseUnits.SensorType;
+import asl.utils.TimeSeriesUtils;
+import asl.utils.input.DataBlock;
 import asl.utils.input.InstrumentResponse;
 import edu.iris.dmc.seedcodec.CodecException;
 import edu.sc.seis.seisFile.mseed.SeedFormatException;
@@ -416,6 +418,91 @@ public class RandomizedExperimentTest {
 
   }
 
+  @Test
+  public void runExperiment_BCIP_HFCalibration_multiStartNoWorseThanSingleStart() {
+    String respName = RESP_LOCATION + "RESP.CU.BCIP.00.BHZ_2017_268";
+    String dataFolderName = getSeedFolder("CU", "BCIP", "2017", "268");
+    String calName = dataFolderName + "CB_BC0.512.seed";
+    String sensOutName = dataFolderName + "00_EHZ.512.seed";
+
+    DataStore ds = DataStoreUtils.createFromNames(respName, calName, sensOutName);
+    OffsetDateTime cCal = TestUtils.getStartCalendar(ds);
+    cCal = cCal.withHour(18).withMinute(49).withSecond(0).withNano(0);
+    long start = cCal.toInstant().toEpochMilli();
+
+    cCal = cCal.withHour(19).withMinute(4);
+    long end = cCal.toInstant().toEpochMilli();
+
+    ds.trim(start, end);
+
+    RandomizedExperiment rCal = (RandomizedExperiment)
+        ExperimentFactory.RANDOMCAL.createExperiment();
+    rCal.setLowFrequencyCalibration(false);
+    rCal.setNyquistMultiplier(.8);
+    rCal.runExperimentOnData(ds);
+    double singleStartResidual = rCal.getFitResidual();
+
+    rCal.setMultiStartCount(RandomizedExperiment.DEFAULT_MULTI_START_COUNT);
+    rCal.runExperimentOnData(ds);
+    double multiStartResidual = rCal.getFitResidual();
+
+    assertTrue(multiStartResidual <= singleStartResidual);
+    assertTrue(multiStartResidual <= rCal.getInitResidual());
+  }
+
+  @Test
+  public void progressiveCalibration_BCIP_HFCalibration_refinesFromChunks() {
+    String respName = RESP_LOCATION + "RESP.CU.BCIP.00.BHZ_2017_268";
+    String dataFolderName = getSeedFolder("CU", "BCIP", "2017", "268");
+    String calName = dataFolderName + "CB_BC0.512.seed";
+    String sensOutName = dataFolderName + "00_EHZ.512.seed";
+
+    DataStore ds = DataStoreUtils.createFromNames(respName, calName, sensOutName);
+    OffsetDateTime cCal = TestUtils.getStartCalendar(ds);
+    cCal = cCal.withHour(18).withMinute(49).withSecond(0).withNano(0);
+    long start = cCal.toInstant().toEpochMilli();
+
+    cCal = cCal.withHour(19).withMinute(4);
+    long end = cCal.toInstant().toEpochMilli();
+
+    ds.trim(start, end);
+    ds.matchIntervals(2);
+
+    RandomizedExperiment rCal = (RandomizedExperiment)
+        ExperimentFactory.RANDOMCAL.createExperiment();
+    rCal.setLowFrequencyCalibration(false);
+    rCal.setNyquistMultiplier(.8);
+
+    DataBlock calib = ds.getBlock(0);
+    DataBlock sensorOut = ds.getBlock(1);
+    long interval = calib.getInterval();
+    rCal.startProgressiveCalibration(ds.getResponse(1), interval);
+
+    // add the data in five-minute chunks, as if it were arriving while the cal runs
+    double[] calibData = calib.getData();
+    double[] sensorData = sensorOut.getData();
+    int length = Math.min(calibData.length, sensorData.length);
+    int chunkLength = (int) (5 * 60 * TimeSeriesUtils.ONE_HZ_INTERVAL / interval);
+    int refits = 0;
+    for (int i = 0; i < length; i += chunkLength) {
+      int chunkEnd = Math.min(i + chunkLength, length);
+      long chunkStart = calib.getStartTime() + i * interval;
+      DataBlock calibChunk = new DataBlock(Arrays.copyOfRange(calibData, i, chunkEnd),
+          interval, calib.getName(), chunkStart);
+      DataBlock sensorChunk = new DataBlock(Arrays.copyOfRange(sensorData, i, chunkEnd),
+          interval, sensorOut.getName(), chunkStart);
+      if (rCal.addProgressiveData(calibChunk, sensorChunk)) {
+        ++refits;
+      }
+    }
+    rCal.runProgressiveFit();
+
+    assertTrue(refits > 0);
+    assertTrue(rCal.getProgressiveSegmentCount() > refits);
+    assertTrue(rCal.getFitResidual() <= rCal.getInitResidual());
+    assertEquals(4, rCal.getData().size());
+  }
+
   @Test
   public void runExperiment_KIEV_LFCalibration() {
     String respName = RESP_LOCATION + "RESP.IU.KIEV.00.BH1";
@@ -0,0 +1,98 @@
+package asl.sensor.experiment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import asl.utils.FFTResult;
+import org.junit.Test;
+
+public class RecursiveStepEvaluatorTest {
+
+  private static final double SPS = 20.;
+  private static final int CUT = 200;
+  private static final int LENGTH = 20000;
+  private static final double CORNER = 0.01;
+  private static final double DAMPING = 0.7;
+  private static final double STEP_SECONDS = 200.;
+  private static final double RISE_SECONDS = 20.;
+
+  /**
+   * Output of a sensor with the given corner and damping to a step beginning at 200 seconds.
+   * The step rises smoothly over RISE_SECONDS (as the filtered calibration signal does), so the
+   * output is the impulse response of 1 / (s^2 + 2 h w s + w^2) convolved with the derivative of
+   * the step, which is a raised-cosine pulse.
+   */
+  private static double[] stepOutput() {
+    double omega = 2 * Math.PI * CORNER;
+    double dampedOmega = omega * Math.sqrt(1 - DAMPING * DAMPING);
+    int riseLength = (int) (RISE_SECONDS * SPS);
+    double[] pulse = new double[riseLength];
+    for (int i = 0; i < riseLength; ++i) {
+      pulse[i] = (1 - Math.cos(2 * Math.PI * i / riseLength)) / riseLength;
+    }
+    double[] impulse = new double[LENGTH];
+    for (int i = 0; i < LENGTH; ++i) {
+      double t = i / SPS;
+      impulse[i] = Math.exp(-DAMPING * omega * t) * Math.sin(dampedOmega * t) / dampedOmega;
+    }
+    int stepStart = (int) (STEP_SECONDS * SPS);
+    double[] data = new double[LENGTH];
+    for (int i = stepStart; i < LENGTH; ++i) {
+      for (int j = 0; j < riseLength && j <= i - stepStart; ++j) {
+        data[i] += pulse[j] * impulse[i - stepStart - j];
+      }
+    }
+    return data;
+  }
+
+  @Test
+  public void evaluate_matchesFFTModel() {
+    double[] data = stepOutput();
+    FFTResult fft = FFTResult.singleSidedFFT(data, SPS, false);
+    int trimmedLength = LENGTH - 2 * CUT;
+    StepModel fftModel =
+        new StepResponseEvaluator(fft.getFFT(), fft.getFreqs(), CUT, trimmedLength);
+    StepModel recursiveModel = new RecursiveStepEvaluator(data, SPS, CUT, trimmedLength);
+
+    double[][] parameters = {{CORNER, DAMPING}, {0.012, 0.6}, {0.008, 0.9}};
+    for (double[] params : parameters) {
+      double[] expected = fftModel.evaluate(params[0], params[1]);
+      double[] result = recursiveModel.evaluate(params[0], params[1]);
+      assertEquals(expected.length, result.length);
+      double maxDifference = 0.;
+      for (int i = 0; i < expected.length; ++i) {
+        maxDifference = Math.max(maxDifference, Math.abs(expected[i] - result[i]));
+      }
+      assertTrue("Max difference: " + maxDifference, maxDifference < 0.01);
+    }
+  }
+
+  @Test
+  public void evaluate_recoversStepAtTrueParameters() {
+    double[] data = stepOutput();
+    RecursiveStepEvaluator model =
+        new RecursiveStepEvaluator(data, SPS, CUT, LENGTH - 2 * CUT);
+    double[] result = model.evaluate(CORNER, DAMPING);
+    // the result is detrended between its ends, so a step becomes a jump between two lines of
+    // equal slope: check that the slope on either side of the step matches
+    int riseStart = (int) (STEP_SECONDS * SPS) - CUT;
+    int riseEnd = riseStart + (int) (RISE_SECONDS * SPS);
+    double slopeBefore = (result[riseStart] - result[0]) / riseStart;
+    double slopeAfter =
+        (result[result.length - 1] - result[riseEnd]) / (result.length - 1 - riseEnd);
+    assertEquals(slopeBefore, slopeAfter, 1E-6);
+    assertTrue(Math.abs(result[riseEnd] - result[riseStart]) > 0.9);
+  }
+
+  @Test
+  public void evaluateWithPerturbations_matchesSeparateEvaluations() {
+    RecursiveStepEvaluator model =
+        new RecursiveStepEvaluator(stepOutput(), SPS, CUT, LENGTH - 2 * CUT);
+    double step = 1E-4;
+    double[][] together = model.evaluateWithPerturbations(CORNER, DAMPING, step);
+    assertArrayEquals(model.evaluate(CORNER, DAMPING), together[0], 0.);
+    assertArrayEquals(model.evaluate(CORNER + step, DAMPING), together[1], 0.);
+    assertArrayEquals(model.evaluate(CORNER, DAMPING + step), together[2], 0.);
+  }
+}
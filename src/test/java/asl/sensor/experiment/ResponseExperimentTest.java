@@ -1,7 +1,9 @@
 package asl.sensor.experiment;
 
 import static asl.sensor.test.TestUtils.RESP_LOCATION;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import asl.sensor.input.DataStore;
 import asl.utils.input.InstrumentResponse;
@@ -10,6 +12,10 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.function.Function;
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.util.Pair;
 import org.jfree.data.xy.XYSeriesCollection;
 import org.junit.Test;
 
@@ -40,4 +46,53 @@ public class ResponseExperimentTest {
     }
   }
 
+  /**
+   * Response with a sharp (Q = 50) resonance at 1 Hz and a 2-pole rolloff above 50 Hz
+   */
+  private static final Function<double[], Complex[]> RESONANT_RESPONSE = freqs -> {
+    Complex[] response = new Complex[freqs.length];
+    for (int i = 0; i < freqs.length; ++i) {
+      double f = freqs[i];
+      Complex resonance = new Complex(1 - f * f, f / 50);
+      Complex rolloff = new Complex(1 - (f / 50) * (f / 50), Math.sqrt(2) * f / 50);
+      response[i] = resonance.multiply(rolloff).reciprocal();
+    }
+    return response;
+  };
+
+  @Test
+  public void getAdaptiveCurve_tracksCurveWithFewPoints() {
+    Pair<double[], Complex[]> curve =
+        ResponseExperiment.getAdaptiveCurve(RESONANT_RESPONSE, .0001, 200);
+    double[] freqs = curve.getFirst();
+    assertEquals(.0001, freqs[0], 1E-12);
+    assertEquals(200, freqs[freqs.length - 1], 1E-9);
+    assertTrue(freqs.length < 5000);
+    double[] sorted = freqs.clone();
+    Arrays.sort(sorted);
+    assertTrue(Arrays.equals(sorted, freqs));
+
+    // the returned values are the curve at the returned frequencies
+    Complex[] sampled = curve.getSecond();
+    assertArrayEquals(RESONANT_RESPONSE.apply(freqs), sampled);
+
+    // compare the curve drawn through the sampled points against a dense evaluation
+    double[] dense = new double[100000];
+    for (int i = 0; i < dense.length; ++i) {
+      dense[i] = Math.pow(10, -4 + Math.log10(2E6) * i / (dense.length - 1));
+    }
+    Complex[] denseValues = RESONANT_RESPONSE.apply(dense);
+    int upper = 1;
+    for (int i = 0; i < dense.length; ++i) {
+      while (upper < freqs.length - 1 && freqs[upper] < dense[i]) {
+        ++upper;
+      }
+      double t = Math.log(dense[i] / freqs[upper - 1]) / Math.log(freqs[upper] / freqs[upper - 1]);
+      double lowDecibels = 10 * Math.log10(sampled[upper - 1].abs());
+      double highDecibels = 10 * Math.log10(sampled[upper].abs());
+      double interpolated = lowDecibels + t * (highDecibels - lowDecibels);
+      assertEquals(10 * Math.log10(denseValues[i].abs()), interpolated, 0.2);
+    }
+  }
+
 }
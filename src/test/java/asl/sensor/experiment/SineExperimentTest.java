@@ -1,9 +1,20 @@
 package asl.sensor.experiment;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import asl.sensor.input.DataStore;
 import asl.sensor.test.TestUtils;
+import asl.utils.input.DataBlock;
+import asl.utils.input.InstrumentResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.apache.commons.math3.complex.Complex;
+import org.jfree.data.xy.XYSeries;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -44,4 +55,216 @@ public class SineExperimentTest {
     assertEquals(250, freq, 2.);
   }
 
+  @Test
+  public void fitSine_measuresAmplitudeRatioPhaseAndDistortion() {
+    // 0.25Hz sine at 40Hz, with the output at 20x the amplitude, lagging by 30 degrees, and
+    // with 1% second-harmonic distortion
+    double[] cal = new double[200000];
+    double[] out = new double[cal.length];
+    for (int i = 0; i < cal.length; ++i) {
+      double angle = 2 * Math.PI * 0.25 * i / 40.;
+      cal[i] = 100. * Math.sin(angle);
+      out[i] = 2000. * Math.sin(angle - Math.toRadians(30)) + 20. * Math.sin(2 * angle) + 5000.;
+    }
+    DataStore synthetic = new DataStore();
+    synthetic.setBlock(0, new DataBlock(cal, 25L, "XX_CAL", 0L));
+    synthetic.setBlock(1, new DataBlock(out, 25L, "XX_OUT", 0L));
+    SineExperiment sexp = new SineExperiment();
+    sexp.runExperimentOnData(synthetic);
+
+    assertEquals(0.25, sexp.getOutFit().getFrequency(), 1E-7);
+    assertEquals(0.05, sexp.getFitAmplitudeRatio(), 1E-6);
+    assertEquals(-30., sexp.getFitPhaseDifference(), 1E-3);
+    assertEquals(0.01, sexp.getOutFit().getTotalHarmonicDistortion(), 1E-5);
+    assertEquals(0., sexp.getCalFit().getTotalHarmonicDistortion(), 1E-6);
+
+    // linearity plot has at most a point per grid cell, and every sample is in some cell
+    int size = SineExperiment.DEFAULT_LINEARITY_GRID_SIZE;
+    assertTrue(sexp.getData().get(1).getSeries(0).getItemCount() <= size * size);
+    int total = 0;
+    for (int[] column : sexp.getLinearityDensity()) {
+      for (int count : column) {
+        total += count;
+      }
+    }
+    assertEquals(cal.length, total);
+  }
+
+  @Test
+  public void plots_limitPointsButKeepGlitches() {
+    // 0.25Hz sine at 40Hz with a few single-sample glitches in the output
+    double[] cal = new double[200000];
+    double[] out = new double[cal.length];
+    for (int i = 0; i < cal.length; ++i) {
+      double angle = 2 * Math.PI * 0.25 * i / 40.;
+      cal[i] = 100. * Math.sin(angle);
+      out[i] = 2000. * Math.sin(angle);
+    }
+    int[] glitches = {12345, 67890, 123456};
+    for (int glitch : glitches) {
+      out[glitch] = 10000.;
+    }
+    DataStore synthetic = new DataStore();
+    synthetic.setBlock(0, new DataBlock(cal, 25L, "XX_CAL", 0L));
+    synthetic.setBlock(1, new DataBlock(out, 25L, "XX_OUT", 0L));
+    SineExperiment sexp = new SineExperiment();
+    sexp.runExperimentOnData(synthetic);
+
+    // the time series is reduced, but still reaches each glitch
+    XYSeries outSeries = sexp.getData().get(0).getSeries(1);
+    assertTrue(outSeries.getItemCount() <= SineExperiment.DEFAULT_TIME_SERIES_POINT_LIMIT);
+    int peaks = 0;
+    for (int i = 0; i < outSeries.getItemCount(); ++i) {
+      if (outSeries.getY(i).doubleValue() > outSeries.getMaxY() * 0.99) {
+        ++peaks;
+        int sample = (int) (outSeries.getX(i).doubleValue() / 25);
+        assertTrue(Arrays.binarySearch(glitches, sample) >= 0);
+      }
+    }
+    assertEquals(glitches.length, peaks);
+
+    // the glitches are counted in the linearity grid, but too sparse to be plotted
+    int[][] density = sexp.getLinearityDensity();
+    int size = SineExperiment.DEFAULT_LINEARITY_GRID_SIZE;
+    int occupied = 0;
+    int total = 0;
+    for (int[] column : density) {
+      for (int count : column) {
+        total += count;
+        occupied += (count > 0) ? 1 : 0;
+      }
+      // glitches are in the top row of cells, which the sine itself never reaches
+      assertTrue(column[size - 1] <= glitches.length);
+    }
+    assertEquals(cal.length, total);
+    XYSeries linearity = sexp.getData().get(1).getSeries(0);
+    assertTrue(linearity.getItemCount() < occupied);
+    for (int i = 0; i < linearity.getItemCount(); ++i) {
+      assertTrue(linearity.getY(i).doubleValue() < 5000.);
+    }
+  }
+
+  private static final double[] SWEEP_TONES = {0.05, 0.2, 1., 5.};
+  private static final int TONE_LENGTH = 8000; // 200s at 40Hz
+
+  /**
+   * Create a stepped-sine sweep with a stretch of noise before and after the tones, where the
+   * output's gain rises by 10 and its phase lag by 10 degrees with each tone
+   */
+  private static double[][] sweepData() {
+    double[] cal = new double[SWEEP_TONES.length * TONE_LENGTH + 1000];
+    double[] out = new double[cal.length];
+    Random random = new Random(1);
+    for (int i = 0; i < cal.length; ++i) {
+      cal[i] = 0.01 * random.nextGaussian();
+      out[i] = cal[i];
+    }
+    for (int t = 0; t < SWEEP_TONES.length; ++t) {
+      for (int i = 0; i < TONE_LENGTH; ++i) {
+        int n = 500 + t * TONE_LENGTH + i;
+        double angle = 2 * Math.PI * SWEEP_TONES[t] * i / 40.;
+        cal[n] += Math.sin(angle);
+        out[n] += (t + 1) * 10. * Math.sin(angle - Math.toRadians(10 * t));
+      }
+    }
+    return new double[][]{cal, out};
+  }
+
+  @Test
+  public void findToneSegments_splitsSweepIntoTones() {
+    List<int[]> segments = SineExperiment.findToneSegments(sweepData()[0]);
+    assertEquals(SWEEP_TONES.length, segments.size());
+    for (int t = 0; t < SWEEP_TONES.length; ++t) {
+      int toneStart = 500 + t * TONE_LENGTH;
+      // a tone is recognized after a few cycles, and its first and last cycles are dropped
+      int cycle = (int) Math.ceil(40. / SWEEP_TONES[t]);
+      assertTrue(segments.get(t)[0] >= toneStart);
+      assertTrue(segments.get(t)[0] <= toneStart + 3 * cycle);
+      assertTrue(segments.get(t)[1] <= toneStart + TONE_LENGTH);
+      assertTrue(segments.get(t)[1] >= toneStart + TONE_LENGTH - 2 * cycle);
+    }
+  }
+
+  @Test
+  public void sweepMode_measuresResponseAtEachTone() {
+    double[][] data = sweepData();
+    DataStore synthetic = new DataStore();
+    synthetic.setBlock(0, new DataBlock(data[0], 25L, "XX_CAL", 0L));
+    synthetic.setBlock(1, new DataBlock(data[1], 25L, "XX_OUT", 0L));
+    SineExperiment sexp = new SineExperiment();
+    sexp.setSweepMode(true);
+    // the gain and phase of a capacitive calibration are not scaled
+    sexp.setCapacitiveCalibration(true);
+    sexp.runExperimentOnData(synthetic);
+
+    List<SineExperiment.SweepTone> tones = sexp.getSweepTones();
+    assertEquals(SWEEP_TONES.length, tones.size());
+    for (int t = 0; t < SWEEP_TONES.length; ++t) {
+      SineExperiment.SweepTone tone = tones.get(t);
+      assertEquals(SWEEP_TONES[t], tone.getFrequency(), SWEEP_TONES[t] * 1E-4);
+      assertEquals((t + 1) * 10., tone.getGain(), 0.05);
+      assertEquals(-10. * t, tone.getPhase(), 0.05);
+    }
+    // measured amplitude and phase, with no nominal response loaded to compare against
+    assertEquals(1, sexp.getData().get(0).getSeriesCount());
+    assertEquals(SWEEP_TONES.length, sexp.getData().get(0).getSeries(0).getItemCount());
+  }
+
+  @Test
+  public void sweepMode_clearsSingleToneFits() {
+    double[][] data = sweepData();
+    DataStore synthetic = new DataStore();
+    synthetic.setBlock(0, new DataBlock(data[0], 25L, "XX_CAL", 0L));
+    synthetic.setBlock(1, new DataBlock(data[1], 25L, "XX_OUT", 0L));
+    SineExperiment sexp = new SineExperiment();
+    sexp.runExperimentOnData(synthetic);
+    assertNotNull(sexp.getOutFit());
+
+    // a sweep run does not leave the previous single-tone run's results behind
+    sexp.setSweepMode(true);
+    sexp.runExperimentOnData(synthetic);
+    assertNull(sexp.getCalFit());
+    assertNull(sexp.getOutFit());
+    assertTrue(Double.isNaN(sexp.getFitAmplitudeRatio()));
+    assertTrue(Double.isNaN(sexp.getFitPhaseDifference()));
+  }
+
+  @Test
+  public void sweepMode_measuredResponseLinesUpWithNominal() throws IOException {
+    InstrumentResponse response = InstrumentResponse.loadEmbeddedResponse("STS2gen3_Q330HR");
+    double[] toneFreqs = {0.02, 0.1, 0.5, 2., 8.};
+    // output of an inductive calibration: the response to the derivative of the cal signal, so
+    // the output over the input is the response divided by (2 * pi * i * f)
+    Complex[] curve = response.applyResponseToInput(toneFreqs);
+    int toneLength = 20000; // 500s at 40Hz
+    double[] cal = new double[toneFreqs.length * toneLength + 1000];
+    double[] out = new double[cal.length];
+    for (int t = 0; t < toneFreqs.length; ++t) {
+      Complex ratio = curve[t].divide(new Complex(0., 2 * Math.PI * toneFreqs[t]));
+      for (int i = 0; i < toneLength; ++i) {
+        int n = 500 + t * toneLength + i;
+        double angle = 2 * Math.PI * toneFreqs[t] * i / 40.;
+        cal[n] = Math.sin(angle);
+        out[n] = 1000. * ratio.abs() * Math.sin(angle + ratio.getArgument());
+      }
+    }
+    DataStore synthetic = new DataStore();
+    synthetic.setBlock(0, new DataBlock(cal, 25L, "XX_CAL", 0L));
+    synthetic.setBlock(1, new DataBlock(out, 25L, "XX_OUT", 0L));
+    synthetic.setResponse(1, response);
+    SineExperiment sexp = new SineExperiment();
+    sexp.setSweepMode(true);
+    sexp.runExperimentOnData(synthetic);
+
+    assertEquals(toneFreqs.length, sexp.getSweepTones().size());
+    // measured then nominal curve in each of the amplitude and phase plots
+    for (int plot = 0; plot < 2; ++plot) {
+      XYSeries measured = sexp.getData().get(plot).getSeries(0);
+      XYSeries nominal = sexp.getData().get(plot).getSeries(1);
+      assertEquals(toneFreqs.length, measured.getItemCount());
+      for (int i = 0; i < toneFreqs.length; ++i) {
+        assertEquals(nominal.getY(i).doubleValue(), measured.getY(i).doubleValue(), 0.05);
+      }
+    }
+  }
 }
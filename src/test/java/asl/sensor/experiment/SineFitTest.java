@@ -0,0 +1,80 @@
+package asl.sensor.experiment;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class SineFitTest {
+
+  private static final double SAMPLE_RATE = 40.;
+
+  /**
+   * Create a sine wave with a DC offset, a small second harmonic and some noise
+   */
+  private static double[] sineData(double frequency, double amplitude, double phase,
+      double secondHarmonic) {
+    Random random = new Random(42);
+    double[] data = new double[100000];
+    for (int i = 0; i < data.length; ++i) {
+      double angle = 2 * Math.PI * frequency * i / SAMPLE_RATE;
+      data[i] = 1000. + amplitude * Math.cos(angle + phase)
+          + secondHarmonic * Math.cos(2 * angle) + 0.01 * amplitude * random.nextGaussian();
+    }
+    return data;
+  }
+
+  @Test
+  public void estimateFrequency_resolvesBetweenBins() {
+    // bins of the padded FFT are 40/131072 Hz apart; this frequency is between two of them
+    double frequency = 0.16 + 1.234E-5;
+    double[] data = sineData(frequency, 500., 0.3, 0.);
+    assertEquals(frequency, SineFit.estimateFrequency(data, SAMPLE_RATE), 1E-7);
+  }
+
+  @Test
+  public void fit_recoversAmplitudePhaseAndOffset() {
+    double[] data = sineData(0.16, 500., 0.3, 0.);
+    SineFit fit = SineFit.fit(data, SAMPLE_RATE);
+    assertEquals(0.16, fit.getFrequency(), 1E-7);
+    assertEquals(500., fit.getAmplitude(), 0.1);
+    assertEquals(0.3, fit.getPhase(), 1E-3);
+    assertEquals(1000., fit.getOffset(), 0.1);
+    // what's left over is the noise
+    assertEquals(5., fit.getResidualRMS(), 0.1);
+  }
+
+  @Test
+  public void fit_measuresHarmonicDistortion() {
+    double[] data = sineData(0.16, 500., 0.3, 5.);
+    SineFit fit = SineFit.fit(data, SAMPLE_RATE);
+    assertEquals(5., fit.getHarmonicAmplitudes()[1], 0.1);
+    assertEquals(0.01, fit.getTotalHarmonicDistortion(), 1E-3);
+  }
+
+  @Test
+  public void fit_skipsHarmonicsAboveNyquist() {
+    // the third harmonic and above are past the nyquist frequency of 20Hz
+    SineFit fit = SineFit.fit(sineData(7., 500., 0.3, 0.), SAMPLE_RATE, 7., 5);
+    double[] amplitudes = fit.getHarmonicAmplitudes();
+    assertEquals(5, amplitudes.length);
+    assertEquals(500., amplitudes[0], 0.1);
+    for (int k = 2; k < amplitudes.length; ++k) {
+      assertEquals(0., amplitudes[k], 0.);
+    }
+  }
+
+  @Test
+  public void goertzelPower_matchesDirectTransform() {
+    double[] data = sineData(0.16, 500., 0.3, 5.);
+    double frequency = 0.0041234;
+    double real = 0.;
+    double imaginary = 0.;
+    for (int i = 0; i < data.length; ++i) {
+      real += data[i] * Math.cos(2 * Math.PI * frequency * i);
+      imaginary -= data[i] * Math.sin(2 * Math.PI * frequency * i);
+    }
+    double expected = real * real + imaginary * imaginary;
+    assertEquals(expected, SineFit.goertzelPower(data, frequency), expected * 1E-6);
+  }
+}
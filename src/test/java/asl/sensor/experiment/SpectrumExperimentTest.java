@@ -7,9 +7,14 @@ import static org.junit.Assert.assertTrue;
 
 import asl.sensor.input.DataStore;
 import asl.sensor.test.TestUtils;
+import asl.utils.TimeSeriesUtils;
+import asl.utils.input.DataBlock;
+import asl.utils.input.InstrumentResponse;
 import edu.iris.dmc.seedcodec.CodecException;
 import edu.sc.seis.seisFile.mseed.SeedFormatException;
 import java.io.IOException;
+import java.util.Random;
+import org.jfree.data.xy.XYSeriesCollection;
 import org.junit.Test;
 
 public class SpectrumExperimentTest {
@@ -21,7 +26,7 @@ public class SpectrumExperimentTest {
     SpectrumExperiment experiment = new SpectrumExperiment();
 
     assertFalse(experiment.getFreqSpace());
-    assertArrayEquals(new int[3], experiment.listActiveResponseIndices());
+    assertArrayEquals(new int[DataStore.FILE_COUNT], experiment.listActiveResponseIndices());
 
     //This checks if super() was called as well
     assertTrue(experiment.dataNames.isEmpty());
@@ -61,7 +66,7 @@ public class SpectrumExperimentTest {
   @Test
   public void blocksNeeded() {
     SpectrumExperiment experiment = new SpectrumExperiment();
-    assertEquals(3, experiment.blocksNeeded());
+    assertEquals(DataStore.FILE_COUNT, experiment.blocksNeeded());
   }
 
   @Test
@@ -96,6 +101,36 @@ public class SpectrumExperimentTest {
     assertTrue(experiment.hasEnoughData(ds));
   }
 
+  @Test
+  public void backend_usesEveryLoadedInput() throws IOException {
+    // e.g., all three components of three sensors at a station
+    SpectrumExperiment experiment = new SpectrumExperiment();
+    DataStore ds = new DataStore();
+    InstrumentResponse response = InstrumentResponse.loadEmbeddedResponse("STS2gen3_Q330HR");
+    Random random = new Random(42);
+    for (int i = 0; i < DataStore.FILE_COUNT; ++i) {
+      double[] data = new double[8192];
+      for (int j = 0; j < data.length; ++j) {
+        data[j] = random.nextGaussian();
+      }
+      ds.setBlock(i, new DataBlock(data, TimeSeriesUtils.ONE_HZ_INTERVAL, "XX_TST" + i, 0L));
+      ds.setResponse(i, response);
+    }
+    experiment.runExperimentOnData(ds);
+
+    int[] expectedIndices = new int[DataStore.FILE_COUNT];
+    for (int i = 0; i < expectedIndices.length; ++i) {
+      expectedIndices[i] = i;
+    }
+    assertArrayEquals(expectedIndices, experiment.listActiveResponseIndices());
+    XYSeriesCollection plots = experiment.getData().get(0);
+    // a PSD per input, in input order, and the low and high noise models
+    assertEquals(DataStore.FILE_COUNT + 2, plots.getSeriesCount());
+    for (int i = 0; i < DataStore.FILE_COUNT; ++i) {
+      assertEquals("PSD XX_TST" + i + " [" + i + "]", plots.getSeriesKey(i));
+    }
+  }
+
   @Test
   public void setFreqSpace() {
     SpectrumExperiment experiment = new SpectrumExperiment();
@@ -9,7 +9,9 @@ import asl.sensor.test.TestUtils;
 import asl.utils.input.InstrumentResponse;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.util.Pair;
 import org.junit.Test;
 
 public class StepExperimentTest {
@@ -134,4 +136,49 @@ public class StepExperimentTest {
     }
   }
 
+  @Test
+  public void findStepSegments_pulsesGiveOneSegmentPerEdge() {
+    double sps = 20.;
+    int length = (int) (3600 * sps);
+    double[] data = new double[length];
+    Random random = new Random(42);
+    for (int i = 0; i < length; ++i) {
+      data[i] = 0.01 * random.nextGaussian();
+      // positive pulse from 10 to 25 minutes, negative pulse from 35 to 50 minutes
+      double seconds = i / sps;
+      if (seconds >= 600 && seconds < 1500) {
+        data[i] += 1.;
+      } else if (seconds >= 2100 && seconds < 3000) {
+        data[i] -= 1.;
+      }
+    }
+    List<Pair<Integer, Integer>> segments = StepExperiment.findStepSegments(data, sps);
+    assertEquals(4, segments.size());
+    double[] onsets = {600., 1500., 2100., 3000.};
+    for (int i = 0; i < onsets.length; ++i) {
+      Pair<Integer, Integer> segment = segments.get(i);
+      // each segment starts up to a minute (plus onset timing error) before its onset
+      double startSeconds = segment.getFirst() / sps;
+      assertTrue(startSeconds < onsets[i]);
+      assertTrue(onsets[i] - startSeconds <= 61.);
+      if (i + 1 < onsets.length) {
+        assertTrue(segment.getSecond() / sps < onsets[i + 1]);
+        assertEquals(segments.get(i + 1).getFirst(), segment.getSecond());
+      } else {
+        assertEquals(length, (int) segment.getSecond());
+      }
+    }
+  }
+
+  @Test
+  public void findStepSegments_noStepsInNoise() {
+    double sps = 20.;
+    double[] data = new double[(int) (1800 * sps)];
+    Random random = new Random(43);
+    for (int i = 0; i < data.length; ++i) {
+      data[i] = random.nextGaussian();
+    }
+    assertTrue(StepExperiment.findStepSegments(data, sps).isEmpty());
+  }
+
 }
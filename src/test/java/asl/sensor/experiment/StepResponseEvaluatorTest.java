@@ -0,0 +1,90 @@
+package asl.sensor.experiment;
+
+import static asl.utils.NumericUtils.detrendEnds;
+import static asl.utils.NumericUtils.normalize;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import asl.utils.FFTResult;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+public class StepResponseEvaluatorTest {
+
+  private static final double SPS = 20.;
+  private static final int CUT = 200;
+  private static final int LENGTH = 6000;
+
+  private static FFTResult stepOutputFFT() {
+    // step passed through a sensor-like decay, plus some noise
+    Random random = new Random(42);
+    double[] data = new double[LENGTH];
+    for (int i = LENGTH / 3; i < LENGTH; ++i) {
+      double t = (i - LENGTH / 3) / SPS;
+      data[i] = Math.exp(-t / 20.) * Math.cos(t / 10.);
+    }
+    for (int i = 0; i < LENGTH; ++i) {
+      data[i] += 0.01 * random.nextGaussian();
+    }
+    return FFTResult.singleSidedFFT(data, SPS, false);
+  }
+
+  /**
+   * Deconvolve the response from the FFT using Complex arithmetic and FFTResult's inverse
+   * transform, to compare against the evaluator's result
+   */
+  private static double[] referenceEvaluation(Complex[] sensorFFT, double[] freqs, double f,
+      double h) {
+    Complex root = new Complex(h * h - 1).sqrt();
+    double omega = 2 * Math.PI * f;
+    Complex pole1 = new Complex(h).add(root).multiply(-omega);
+    Complex pole2 = new Complex(h).subtract(root).multiply(-omega);
+    Complex[] response = new Complex[sensorFFT.length];
+    response[0] = Complex.ONE;
+    for (int i = 1; i < response.length; ++i) {
+      Complex factor = new Complex(0, 2 * Math.PI * freqs[i]);
+      response[i] = factor.divide(factor.subtract(pole1).multiply(factor.subtract(pole2)));
+    }
+    response = StepExperiment.setWaterLevel(response);
+    Complex[] deconvolved = new Complex[sensorFFT.length];
+    for (int i = 0; i < deconvolved.length; ++i) {
+      deconvolved[i] = sensorFFT[i].multiply(response[i]);
+    }
+    int last = deconvolved.length - 1;
+    deconvolved[last] = new Complex(deconvolved[last].abs(), 0.);
+    double[] timeSeries = FFTResult.singleSidedInverseFFT(deconvolved, LENGTH);
+    timeSeries = Arrays.copyOfRange(timeSeries, CUT, LENGTH - CUT);
+    return normalize(detrendEnds(timeSeries));
+  }
+
+  @Test
+  public void evaluate_matchesComplexDeconvolution() {
+    FFTResult fft = stepOutputFFT();
+    StepResponseEvaluator evaluator =
+        new StepResponseEvaluator(fft.getFFT(), fft.getFreqs(), CUT, LENGTH - 2 * CUT);
+    // underdamped, critically damped and overdamped responses
+    double[][] parameters = {{0.01, 0.707}, {0.05, 1.0}, {0.008, 1.3}};
+    for (double[] params : parameters) {
+      double[] expected = referenceEvaluation(fft.getFFT(), fft.getFreqs(), params[0], params[1]);
+      double[] result = evaluator.evaluate(params[0], params[1]);
+      assertEquals(LENGTH - 2 * CUT, result.length);
+      assertArrayEquals(expected, result, 1E-9);
+    }
+  }
+
+  @Test
+  public void evaluateWithPerturbations_matchesSeparateEvaluations() {
+    FFTResult fft = stepOutputFFT();
+    StepResponseEvaluator evaluator =
+        new StepResponseEvaluator(fft.getFFT(), fft.getFreqs(), CUT, LENGTH - 2 * CUT);
+    double f = 0.02;
+    double h = 0.6;
+    double step = 1E-4;
+    double[][] together = evaluator.evaluateWithPerturbations(f, h, step);
+    assertArrayEquals(evaluator.evaluate(f, h), together[0], 0.);
+    assertArrayEquals(evaluator.evaluate(f + step, h), together[1], 0.);
+    assertArrayEquals(evaluator.evaluate(f, h + step), together[2], 0.);
+  }
+}
@@ -13,6 +13,7 @@ import edu.iris.dmc.seedcodec.CodecException;
 import edu.sc.seis.seisFile.mseed.SeedFormatException;
 import java.io.IOException;
 import java.util.Calendar;
+import java.util.Random;
 import org.jfree.data.xy.XYSeries;
 import org.junit.Test;
 
@@ -177,4 +178,47 @@ public class VoltageExperimentTest {
     }
   }
 
+  @Test
+  public void getFlatExtremes_matchesNeighborhoodComparison() {
+    // 10-volt style steps between plateaus, with noise and a few spikes
+    Random random = new Random(10);
+    int offset = 41;
+    double[] data = new double[20000];
+    for (int i = 0; i < data.length; ++i) {
+      double level = ((i / 3000) % 2 == 0) ? 1.6E7 : -1.6E7;
+      if ((i / 3000) % 3 == 2) {
+        level = 2.E5;
+      }
+      data[i] = level * (1 + 0.01 * random.nextGaussian());
+      if (random.nextInt(500) == 0) {
+        data[i] *= 1.2;
+      }
+    }
+
+    // flat extremes found by comparing each point against its whole neighborhood
+    double min = data[0];
+    double max = data[0];
+    int minIndex = 0;
+    int maxIndex = 0;
+    outerLoop:
+    for (int j = offset; j < data.length - offset; ++j) {
+      for (int k = j - offset; k <= j + offset; ++k) {
+        if (Math.abs(data[k] - data[j]) / Math.abs(data[j]) * 100 > 5) {
+          continue outerLoop;
+        }
+      }
+      if (data[j] <= min) {
+        min = data[j];
+        minIndex = j;
+      }
+      if (data[j] >= max) {
+        max = data[j];
+        maxIndex = j;
+      }
+    }
+
+    assertArrayEquals(new int[]{minIndex, maxIndex},
+        VoltageExperiment.getFlatExtremes(data, offset));
+  }
+
 }
@@ -0,0 +1,87 @@
+package asl.sensor.experiment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import asl.sensor.experiment.WindowCovarianceIndex.Covariances;
+import asl.utils.TimeSeriesUtils;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
+import org.apache.commons.math3.util.Pair;
+import org.junit.Test;
+
+public class WindowCovarianceIndexTest {
+
+  private static double[][] randomData(int length) {
+    Random random = new Random(42);
+    double[][] data = new double[3][length];
+    for (int i = 0; i < length; ++i) {
+      // nonzero means, so that the index has to remove each window's mean itself
+      data[0][i] = 3. + random.nextGaussian();
+      data[1][i] = -2. + random.nextGaussian();
+      data[2][i] = 0.5 * data[0][i] - 0.8 * data[1][i] + 0.3 * random.nextGaussian();
+    }
+    return data;
+  }
+
+  @Test
+  public void getCovariances_windowCorrelationMatchesPearson() {
+    double[][] data = randomData(5000);
+    WindowCovarianceIndex index = new WindowCovarianceIndex(data[0], data[1], data[2]);
+    assertEquals(5000, index.size());
+    PearsonsCorrelation pearsons = new PearsonsCorrelation();
+    int[][] windows = {{0, 5000}, {0, 2000}, {500, 2500}, {1234, 4321}, {3000, 5000}};
+    for (int[] window : windows) {
+      double[] north = Arrays.copyOfRange(data[0], window[0], window[1]);
+      double[] east = Arrays.copyOfRange(data[1], window[0], window[1]);
+      double[] reference = Arrays.copyOfRange(data[2], window[0], window[1]);
+      Covariances covariances = index.getCovariances(window[0], window[1]);
+      for (double theta = 0.; theta < 2 * Math.PI; theta += 0.7) {
+        double[] rotated = TimeSeriesUtils.rotate(north, east, theta);
+        double expected = pearsons.correlation(reference, rotated);
+        assertEquals(expected, covariances.getCorrelation(theta), 1E-10);
+      }
+    }
+  }
+
+  @Test
+  public void getCovariances_indexMatchesSinglePass() {
+    double[][] data = randomData(3000);
+    WindowCovarianceIndex index = new WindowCovarianceIndex(data[0], data[1], data[2]);
+    double[] north = Arrays.copyOfRange(data[0], 1000, 3000);
+    double[] east = Arrays.copyOfRange(data[1], 1000, 3000);
+    double[] reference = Arrays.copyOfRange(data[2], 1000, 3000);
+    Pair<Double, Double> fromIndex = index.getCovariances(1000, 3000).getClosedFormEstimate();
+    Pair<Double, Double> direct =
+        WindowCovarianceIndex.getCovariances(north, east, reference).getClosedFormEstimate();
+    assertEquals(direct.getFirst(), fromIndex.getFirst(), 1E-10);
+    assertEquals(direct.getSecond(), fromIndex.getSecond(), 1E-10);
+  }
+
+  @Test
+  public void getClosedFormEstimate_isMaximumCorrelation() {
+    double[][] data = randomData(4000);
+    Covariances covariances = WindowCovarianceIndex.getCovariances(data[0], data[1], data[2]);
+    Pair<Double, Double> estimate = covariances.getClosedFormEstimate();
+    double theta = estimate.getFirst();
+    assertEquals(covariances.getCorrelation(theta), estimate.getSecond(), 1E-12);
+    // no angle nearby or elsewhere gives a higher correlation
+    for (double other = 0.; other < 2 * Math.PI; other += 0.01) {
+      assertTrue(covariances.getCorrelation(other) <= estimate.getSecond() + 1E-12);
+    }
+    assertEquals(0., covariances.getCorrelationDerivative(theta), 1E-8);
+  }
+
+  @Test
+  public void getCorrelationDerivative_matchesFiniteDifference() {
+    double[][] data = randomData(2000);
+    Covariances covariances = WindowCovarianceIndex.getCovariances(data[0], data[1], data[2]);
+    double step = 1E-6;
+    for (double theta = 0.1; theta < 2 * Math.PI; theta += 0.5) {
+      double expected = (covariances.getCorrelation(theta + step)
+          - covariances.getCorrelation(theta - step)) / (2 * step);
+      assertEquals(expected, covariances.getCorrelationDerivative(theta), 1E-7);
+    }
+  }
+}
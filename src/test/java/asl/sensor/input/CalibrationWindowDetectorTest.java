@@ -0,0 +1,118 @@
+package asl.sensor.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import asl.utils.input.DataBlock;
+import java.util.List;
+import java.util.Random;
+import org.apache.commons.math3.util.Pair;
+import org.junit.Test;
+
+public class CalibrationWindowDetectorTest {
+
+  // 20 Hz data, one hour long, starting at epoch
+  private static final long INTERVAL = 50L;
+  private static final int SPS = 20;
+  private static final int LENGTH = 3600 * SPS;
+
+  private static double[] quietData() {
+    Random random = new Random(42);
+    double[] data = new double[LENGTH];
+    for (int i = 0; i < LENGTH; ++i) {
+      data[i] = 500. + random.nextGaussian();
+    }
+    return data;
+  }
+
+  private static void assertWindowNear(Pair<Long, Long> window, long expectStart,
+      long expectEnd) {
+    // detector works in 10-second blocks and pads by one block on each side
+    long tolerance = 25000L;
+    assertEquals(expectStart, window.getFirst(), tolerance);
+    assertEquals(expectEnd, window.getSecond(), tolerance);
+  }
+
+  @Test
+  public void findCalibrationWindow_sineBurst() {
+    double[] data = quietData();
+    // 0.01 Hz sine from 10 to 40 minutes in
+    for (int i = 600 * SPS; i < 2400 * SPS; ++i) {
+      data[i] += 1000. * Math.sin(2 * Math.PI * 0.01 * i / SPS);
+    }
+    DataBlock block = new DataBlock(data, INTERVAL, "XX_CAL_00_BC0", 0L);
+    Pair<Long, Long> window = CalibrationWindowDetector.findCalibrationWindow(block);
+    assertWindowNear(window, 600000L, 2400000L);
+  }
+
+  @Test
+  public void findCalibrationWindow_stepHeldAtOffset() {
+    double[] data = quietData();
+    for (int i = 1200 * SPS; i < 1500 * SPS; ++i) {
+      data[i] += 2000.;
+    }
+    DataBlock block = new DataBlock(data, INTERVAL, "XX_CAL_00_BC0", 0L);
+    Pair<Long, Long> window = CalibrationWindowDetector.findCalibrationWindow(block);
+    assertWindowNear(window, 1200000L, 1500000L);
+  }
+
+  @Test
+  public void findCalibrationWindow_stepHeldForMostOfRange() {
+    // data already roughly trimmed to the cal, so the step level covers most of the blocks
+    double[] data = quietData();
+    for (int i = 300 * SPS; i < 3300 * SPS; ++i) {
+      data[i] += 2000.;
+    }
+    DataBlock block = new DataBlock(data, INTERVAL, "XX_CAL_00_BC0", 0L);
+    Pair<Long, Long> window = CalibrationWindowDetector.findCalibrationWindow(block);
+    assertWindowNear(window, 300000L, 3300000L);
+
+    // and with the step filling nearly all of the range
+    data = quietData();
+    for (int i = 120 * SPS; i < 3540 * SPS; ++i) {
+      data[i] += 2000.;
+    }
+    block = new DataBlock(data, INTERVAL, "XX_CAL_00_BC0", 0L);
+    window = CalibrationWindowDetector.findCalibrationWindow(block);
+    assertWindowNear(window, 120000L, 3540000L);
+  }
+
+  @Test
+  public void findCalibrationWindow_dataEndsDuringStep() {
+    // trimmed partway through a step that is held until the end of the data
+    double[] data = quietData();
+    for (int i = 600 * SPS; i < LENGTH; ++i) {
+      data[i] += 2000.;
+    }
+    DataBlock block = new DataBlock(data, INTERVAL, "XX_CAL_00_BC0", 0L);
+    Pair<Long, Long> window = CalibrationWindowDetector.findCalibrationWindow(block);
+    assertWindowNear(window, 600000L, 3600000L);
+  }
+
+  @Test
+  public void findCalibrationWindow_randomPicksLongestRegion() {
+    double[] data = quietData();
+    Random random = new Random(7);
+    // short burst, then a longer random cal well after the hold time has passed
+    for (int i = 300 * SPS; i < 420 * SPS; ++i) {
+      data[i] += 300. * random.nextGaussian();
+    }
+    for (int i = 1800 * SPS; i < 3000 * SPS; ++i) {
+      data[i] += 300. * random.nextGaussian();
+    }
+    DataBlock block = new DataBlock(data, INTERVAL, "XX_CAL_00_BC0", 0L);
+    List<Pair<Long, Long>> windows = CalibrationWindowDetector.findActiveWindows(block);
+    assertEquals(2, windows.size());
+    Pair<Long, Long> window = CalibrationWindowDetector.findCalibrationWindow(block);
+    assertWindowNear(window, 1800000L, 3000000L);
+  }
+
+  @Test
+  public void findCalibrationWindow_noSignal() {
+    DataBlock block = new DataBlock(quietData(), INTERVAL, "XX_CAL_00_BC0", 0L);
+    assertNull(CalibrationWindowDetector.findCalibrationWindow(block));
+    assertTrue(CalibrationWindowDetector.findActiveWindows(block).isEmpty());
+  }
+
+}
@@ -0,0 +1,137 @@
+package asl.sensor.input;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import asl.utils.input.InstrumentResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.math3.complex.Complex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResponseCacheTest {
+
+  private static double[] frequencies(int count) {
+    double[] freqs = new double[count];
+    for (int i = 0; i < count; ++i) {
+      freqs[i] = (i + 1) / 100.;
+    }
+    return freqs;
+  }
+
+  @Before
+  public void clearCache() {
+    ResponseCache.clear();
+  }
+
+  @After
+  public void resetCache() {
+    ResponseCache.setMaximumSize(ResponseCache.DEFAULT_MAXIMUM_SIZE);
+    ResponseCache.clear();
+  }
+
+  @Test
+  public void applyResponseToInput_matchesDirectEvaluation() throws IOException {
+    InstrumentResponse response = InstrumentResponse.loadEmbeddedResponse("STS2gen3_Q330HR");
+    double[] freqs = frequencies(1000);
+    Complex[] expected = response.applyResponseToInput(freqs);
+    assertArrayEquals(expected, ResponseCache.applyResponseToInput(response, freqs));
+    assertArrayEquals(expected, ResponseCache.applyResponseToInput(response, freqs));
+    assertEquals(1, ResponseCache.getMissCount());
+    assertEquals(1, ResponseCache.getHitCount());
+    assertEquals(1, ResponseCache.getCurveCount());
+  }
+
+  @Test
+  public void applyResponseToInput_keysOnContentNotIdentity() throws IOException {
+    InstrumentResponse response = InstrumentResponse.loadEmbeddedResponse("STS2gen3_Q330HR");
+    double[] freqs = frequencies(1000);
+    ResponseCache.applyResponseToInputUnscaled(response, freqs);
+    // an identical copy of the response can reuse its curve...
+    InstrumentResponse copy = new InstrumentResponse(response);
+    ResponseCache.applyResponseToInputUnscaled(copy, freqs);
+    assertEquals(1, ResponseCache.getHitCount());
+
+    // ...but once its poles are changed it must be evaluated again
+    List<Complex> poles = copy.getPoles();
+    poles.set(0, poles.get(0).multiply(2));
+    copy.setPoles(poles);
+    Complex[] changed = ResponseCache.applyResponseToInputUnscaled(copy, freqs);
+    assertEquals(2, ResponseCache.getMissCount());
+    assertArrayEquals(copy.applyResponseToInputUnscaled(freqs), changed);
+    assertFalse(Arrays.equals(ResponseCache.applyResponseToInputUnscaled(response, freqs),
+        changed));
+  }
+
+  @Test
+  public void applyResponseToInput_keysOnGridAndScaling() throws IOException {
+    InstrumentResponse response = InstrumentResponse.loadEmbeddedResponse("STS2gen3_Q330HR");
+    ResponseCache.applyResponseToInput(response, frequencies(1000));
+    ResponseCache.applyResponseToInput(response, frequencies(2000));
+    ResponseCache.applyResponseToInputUnscaled(response, frequencies(1000));
+    assertEquals(0, ResponseCache.getHitCount());
+    assertEquals(3, ResponseCache.getCurveCount());
+  }
+
+  /**
+   * Get the double whose bits have the same upper half as the given value's and whose hash (as in
+   * Double.hashCode) is the given hash
+   */
+  private static double withHash(double value, int hash) {
+    long high = Double.doubleToLongBits(value) >>> 32;
+    long low = (hash ^ high) & 0xFFFFFFFFL;
+    return Double.longBitsToDouble((high << 32) | low);
+  }
+
+  @Test
+  public void applyResponseToInput_keysOnEveryFrequency() throws IOException {
+    InstrumentResponse response = InstrumentResponse.loadEmbeddedResponse("STS2gen3_Q330HR");
+    double[] freqs = frequencies(1000);
+    // same length, endpoints and array hash, but two interior points moved
+    double[] colliding = freqs.clone();
+    colliding[500] = withHash(freqs[500], Double.hashCode(freqs[500]) + 1);
+    colliding[501] = withHash(freqs[501], Double.hashCode(freqs[501]) - 31);
+    assertFalse(Arrays.equals(freqs, colliding));
+    assertEquals(Arrays.hashCode(freqs), Arrays.hashCode(colliding));
+
+    ResponseCache.applyResponseToInput(response, freqs);
+    Complex[] curve = ResponseCache.applyResponseToInput(response, colliding);
+    assertEquals(0, ResponseCache.getHitCount());
+    assertEquals(2, ResponseCache.getCurveCount());
+    assertArrayEquals(response.applyResponseToInput(colliding), curve);
+
+    // changing the caller's array afterwards does not change what the cached curve is keyed by
+    double[] reused = frequencies(1000);
+    ResponseCache.applyResponseToInput(response, reused);
+    reused[500] = colliding[500];
+    reused[501] = colliding[501];
+    ResponseCache.applyResponseToInput(response, reused);
+    assertEquals(2, ResponseCache.getHitCount());
+  }
+
+  @Test
+  public void setMaximumSize_evictsLeastRecentlyUsed() throws IOException {
+    InstrumentResponse response = InstrumentResponse.loadEmbeddedResponse("STS2gen3_Q330HR");
+    double[] first = frequencies(1000);
+    double[] second = frequencies(1001);
+    double[] third = frequencies(999);
+    ResponseCache.applyResponseToInput(response, first);
+    ResponseCache.applyResponseToInput(response, second);
+    // room for the two curves in use and not a third
+    ResponseCache.setMaximumSize(ResponseCache.getSize() + 1);
+    ResponseCache.applyResponseToInput(response, first);
+    ResponseCache.applyResponseToInput(response, third);
+    assertEquals(2, ResponseCache.getCurveCount());
+
+    // the second curve was the least recently used, so it is the one that was evicted
+    long misses = ResponseCache.getMissCount();
+    ResponseCache.applyResponseToInput(response, first);
+    assertEquals(misses, ResponseCache.getMissCount());
+    ResponseCache.applyResponseToInput(response, second);
+    assertEquals(misses + 1, ResponseCache.getMissCount());
+  }
+}